@@ -3,70 +3,100 @@ package backupmanager;
 import java.awt.TrayIcon;
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 import javax.swing.filechooser.FileSystemView;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import backupmanager.Compression.CompressionCodecs;
+import backupmanager.Compression.ZipCheckpoint;
+import backupmanager.Deduplication.RepositoryEngine;
+import backupmanager.Deduplication.Snapshot;
 import backupmanager.Entities.Backup;
+import backupmanager.Entities.BackupManifest;
+import backupmanager.Entities.BackupProgress;
+import backupmanager.Entities.ProgressEvent;
 import backupmanager.Entities.RunningBackups;
-import backupmanager.Entities.TimeInterval;
+import backupmanager.Entities.ScanCache;
 import backupmanager.Entities.ZippingContext;
+import backupmanager.Enums.ArchiveFormatEnum;
 import backupmanager.Enums.BackupStatusEnum;
+import backupmanager.Enums.BackupTypeEnum;
+import backupmanager.Enums.ConfigKey;
 import backupmanager.Enums.ErrorTypes;
 import backupmanager.Enums.TranslationLoaderEnum.TranslationCategory;
 import backupmanager.Enums.TranslationLoaderEnum.TranslationKey;
 import backupmanager.GUI.BackupManagerGUI;
+import backupmanager.Json.JSONConfigReader;
 import static backupmanager.GUI.BackupManagerGUI.dateForfolderNameFormatter;
 import static backupmanager.GUI.BackupManagerGUI.formatter;
 import backupmanager.Managers.BackupManager;
 import backupmanager.Managers.ExceptionManager;
+import backupmanager.Services.ProgressEventBus;
 import backupmanager.Services.ZippingThread;
 import backupmanager.Table.TableDataManager;
 
 public class BackupOperations {
-    private static final Logger logger = LoggerFactory.getLogger(BackupOperations.class);    
+    private static final Logger logger = LoggerFactory.getLogger(BackupOperations.class);
+    private static final JSONConfigReader configReader = new JSONConfigReader(ConfigKey.CONFIG_FILE_STRING.getValue(), ConfigKey.CONFIG_DIRECTORY_STRING.getValue());
+    public static final String FULL_BACKUP_LABEL = "Backup";
+    public static final String INCREMENTAL_BACKUP_LABEL = "Incremental";
+    private static final String ARCHIVE_EXTENSION_REGEX = "\\.(?:zip|snapshot|tar\\.[a-z0-9]+)";
+    private static final long GUI_PROGRESS_INTERVAL_MILLIS = 100;
+    private static final long PROGRESS_INTERVAL_MILLIS = 1000;
+    private static final Map<String, Integer> loggedQuarters = new ConcurrentHashMap<>();
+
+    static {
+        subscribeProgressObservers();
+    }
+
     public static void SingleBackup(ZippingContext context) {
         if (context.backup == null) throw new IllegalArgumentException("Backup cannot be null!");
         
         logger.info("Event --> manual backup started");
 
         try {
-            String temp = "\\";
             String path1 = context.backup.getInitialPath();
             String path2 = context.backup.getDestinationPath();
 
             if(!CheckInputCorrect(context.backup.getBackupName(), path1, path2, context.trayIcon)) 
                 return;
 
+            // a second run would write the same partial archive of the one still running
+            if (isBackupRunning(context.backup.getBackupName())) {
+                logger.warn("The backup \"" + context.backup.getBackupName() + "\" is already running");
+                if (context.trayIcon == null) {
+                    JOptionPane.showMessageDialog(null, TranslationCategory.DIALOGS.getTranslation(TranslationKey.WARNING_BACKUP_ALREADY_IN_PROGRESS_MESSAGE), TranslationCategory.DIALOGS.getTranslation(TranslationKey.WARNING_GENERIC_TITLE), JOptionPane.WARNING_MESSAGE);
+                }
+                return;
+            }
+
             if (context.progressBar != null)
                 context.progressBar.setVisible(true);
 
             LocalDateTime dateNow = LocalDateTime.now();
             String date = dateNow.format(dateForfolderNameFormatter);
-            String name1 = path1.substring(path1.length()-1, path1.length()-1);
-
-            for(int i = path1.length() - 1; i >= 0; i--) {
-                if(path1.charAt(i) != temp.charAt(0)) name1 = path1.charAt(i) + name1;
-                else break;
-            }
-
-            name1 = removeExtension(name1);
-            path2 = path2 + "\\" + name1 + " (Backup " + date + ")";
+            String archiveBasePath = getArchiveBasePath(context.backup);
 
             logger.info("date backup: " + date);
 
-            ZippingThread.zipDirectory(path1, path2 + ".zip", context);
+            // the previous manifest is read by the job, it can be large
+            ZippingThread.zipBackup(path1, archiveBasePath, date, context);
         } catch (Exception ex) {
             logger.error("An error occurred: " + ex.getMessage(), ex);
             ExceptionManager.openExceptionMessage(ex.getMessage(), Arrays.toString(ex.getStackTrace()));
@@ -74,6 +104,166 @@ public class BackupOperations {
         }
     }
 
+    // the backup can be running in this process or in the other one (the GUI or the background service)
+    public static boolean isBackupRunning(String backupName) {
+        if (ZippingThread.isBackupRunning(backupName)) return true;
+
+        RunningBackups running = RunningBackups.readBackup(backupName);
+        if (running == null || running.status != BackupStatusEnum.Progress) return false;
+        if (running.isStale()) {
+            logger.warn("Ignoring the backup '" + running.backupName + "', it is not updated anymore");
+            return false;
+        }
+        return true;
+    }
+
+    // the archives of the backup are "<archiveBasePath> (<label> <date>)<extension>": the destination path and the name of the initial path
+    public static String getArchiveBasePath(Backup backup) {
+        String temp = "\\";
+        String path1 = backup.getInitialPath();
+        String name1 = path1.substring(path1.length()-1, path1.length()-1);
+
+        for(int i = path1.length() - 1; i >= 0; i--) {
+            if(path1.charAt(i) != temp.charAt(0)) name1 = path1.charAt(i) + name1;
+            else break;
+        }
+
+        name1 = removeExtension(name1);
+        return backup.getDestinationPath() + "\\" + name1;
+    }
+
+    // "<archiveBasePath> (Backup <date>)" for a full backup, "<archiveBasePath> (Incremental <date>)" for an incremental one
+    public static String getBackupFilePath(String archiveBasePath, String date, boolean incremental) {
+        return archiveBasePath + " (" + (incremental ? INCREMENTAL_BACKUP_LABEL : FULL_BACKUP_LABEL) + " " + date + ")";
+    }
+
+    // ".zip", ".tar.gz" / ".tar.zst"... for a solid archive, depending on the codec of the backup, ".snapshot" for a repository
+    public static String getArchiveExtension(Backup backup) {
+        if (backup.getArchiveFormat() == ArchiveFormatEnum.Tar) {
+            return ".tar." + CompressionCodecs.get(backup.getCompressionCodec()).getStreamExtension();
+        }
+        if (backup.getArchiveFormat() == ArchiveFormatEnum.Repository) {
+            return Snapshot.EXTENSION;
+        }
+        return ".zip";
+    }
+
+    // the archive of a new backup with its extension: the partial one left by an interrupted run if there is one (only a zip can be continued)
+    public static String getTargetFilePath(Backup backup, String archiveBasePath, String date, boolean incremental) {
+        String resumablePath = backup.getArchiveFormat() == ArchiveFormatEnum.Zip ? getResumableBackupFilePath(archiveBasePath, incremental) : null;
+        return (resumablePath != null ? resumablePath : getBackupFilePath(archiveBasePath, date, incremental)) + getArchiveExtension(backup);
+    }
+
+    // the partial archive with a checkpoint of the same type (full or incremental) without the ".zip" extension, null if there isn't any
+    public static String getResumableBackupFilePath(String archiveBasePath, boolean incremental) {
+        File archiveBase = new File(archiveBasePath).getAbsoluteFile();
+        File folder = archiveBase.getParentFile();
+        if (folder == null) return null;
+
+        File[] partialBackups = folder.listFiles((dir, name) -> name.matches(getBackupFileRegex(archiveBase.getName(), incremental ? INCREMENTAL_BACKUP_LABEL : FULL_BACKUP_LABEL)) && ZipCheckpoint.exists(new File(dir, name).toPath()));
+        if (partialBackups == null || partialBackups.length == 0) return null;
+
+        sortByBackupDate(partialBackups);
+        File latest = partialBackups[partialBackups.length - 1];
+        logger.info("Resuming the interrupted backup: " + latest.getName());
+
+        String path = latest.getPath();
+        return path.substring(0, path.length() - ".zip".length());
+    }
+
+    /*
+     * Returns the manifest of the previous backups to perform an incremental backup,
+     * or null if a full backup is required: the backup is not incremental, there is no valid manifest,
+     * the initial path has changed, too many incremental backups have been done or the full backup is missing.
+     */
+    public static BackupManifest getPreviousManifest(Backup backup, String sourcePath, String archiveBasePath) {
+        if (backup.getBackupType() != BackupTypeEnum.Incremental) return null;
+
+        // every snapshot of a repository is already a full backup that costs only the changed chunks
+        if (backup.getArchiveFormat() == ArchiveFormatEnum.Repository) return null;
+
+        BackupManifest manifest = BackupManifest.load(BackupManifest.getManifestPath(archiveBasePath));
+        if (manifest == null) {
+            logger.info("No manifest found, performing a full backup");
+            return null;
+        }
+        if (!manifest.getSourcePath().equals(sourcePath)) {
+            logger.info("Initial path changed, performing a full backup");
+            return null;
+        }
+        if (manifest.getIncrementalCount() >= configReader.getMaxIncrementalBackups()) {
+            logger.info("Max number of incremental backups reached, performing a full backup");
+            return null;
+        }
+
+        File archiveBase = new File(archiveBasePath).getAbsoluteFile();
+        File[] fullBackups = listBackupFiles(archiveBase.getParentFile(), archiveBase.getName(), FULL_BACKUP_LABEL);
+        if (fullBackups == null || fullBackups.length == 0) {
+            logger.info("No full backup found, performing a full backup");
+            return null;
+        }
+
+        logger.info("Performing an incremental backup (" + (manifest.getIncrementalCount() + 1) + "/" + configReader.getMaxIncrementalBackups() + ")");
+        return manifest;
+    }
+
+    // the settings that decide where and how the archive is written: a backup with other settings writes another archive
+    public static String getArchiveSettings(Backup backup) {
+        return String.join("|", Path.of(backup.getDestinationPath()).toAbsolutePath().normalize().toString(), String.valueOf(backup.getArchiveFormat()),
+            String.valueOf(backup.getBackupType()), backup.getCompressionCodec(), String.valueOf(backup.getCompressionLevel()), String.valueOf(backup.isCompressionDictionary()));
+    }
+
+    // the archive is there and complete, with the full backup it needs to be restored (the repository for a snapshot)
+    private static boolean isArchiveCompleted(String archivePath) {
+        if (archivePath.isEmpty()) return false;
+        Path archive = Path.of(archivePath);
+        if (!Files.isRegularFile(archive) || ZipCheckpoint.exists(archive)) return false;
+
+        if (archivePath.endsWith(Snapshot.EXTENSION)) return Files.isDirectory(RepositoryEngine.getRepositoryDirectory(archive));
+        return !getRestoreChain(archive).isEmpty();
+    }
+
+    // the incremental backups keep the manifest of the saved files, the full ones and the repositories don't need it
+    public static Path getManifestFile(Backup backup, String archiveBasePath) {
+        if (backup.getArchiveFormat() == ArchiveFormatEnum.Repository) return null;
+        return backup.getBackupType() == BackupTypeEnum.Incremental ? BackupManifest.getManifestPath(archiveBasePath) : null;
+    }
+
+    /*
+     * Checks with the scan cache of the last completed backup if something changed in the initial path.
+     * Only the directories modified since then are listed, and the scan stops at the first difference.
+     * The backup is needed anyway if the archive of the last backup is not there anymore (deleted, moved or never
+     * completed) or if it was written in another destination, format or compression.
+     */
+    public static boolean isBackupNeeded(Backup backup) {
+        Path sourceDir = Path.of(backup.getInitialPath());
+        if (!Files.isDirectory(sourceDir)) return true;
+
+        return isBackupNeeded(backup, ScanCache.load(backup.getBackupName(), sourceDir.toString()));
+    }
+
+    // with the scan cache of the last completed backup already loaded, null if there isn't any
+    public static boolean isBackupNeeded(Backup backup, ScanCache previousScan) {
+        Path sourceDir = Path.of(backup.getInitialPath());
+        if (previousScan == null || !Files.isDirectory(sourceDir)) return true;
+
+        if (!previousScan.getArchiveSettings().equals(getArchiveSettings(backup))) {
+            logger.info("The destination or the archive settings of \"" + backup.getBackupName() + "\" changed since the last backup");
+            return true;
+        }
+        if (!isArchiveCompleted(previousScan.getArchivePath())) {
+            logger.info("The last archive of \"" + backup.getBackupName() + "\" is missing: " + previousScan.getArchivePath());
+            return true;
+        }
+
+        try {
+            return new CachedFileWalker(previousScan).hasChanges(sourceDir);
+        } catch (IOException ex) {
+            logger.warn("Unable to check the changes of \"" + backup.getBackupName() + "\": " + ex.getMessage());
+            return true;
+        }
+    }
+
     public static String removeExtension(String fileName) {
         int dotIndex = fileName.lastIndexOf('.');
         if (dotIndex > 0) {
@@ -93,8 +283,7 @@ public class BackupOperations {
 
         // next day backup update
         if (context.backup.isAutoBackup() == true) {
-            TimeInterval time = context.backup.getTimeIntervalBackup();
-            LocalDateTime nextDateBackup = BackupManager.getNexDateBackup(time);
+            LocalDateTime nextDateBackup = BackupManager.getNexDateBackup(context.backup);
             context.backup.setNextDateBackup(nextDateBackup);
             logger.info("Next date backup setted to: " + nextDateBackup);
         }
@@ -173,8 +362,7 @@ public class BackupOperations {
     public static void interruptBackupProcess(ZippingContext context) {
         logger.info("Event --> interrupt backup process");
         
-        ZippingThread.stopExecutorService(1);
-        if (ZippingThread.isInterrupted())
+        if (ZippingThread.interruptBackup(context.backup.getBackupName(), 1))
             reEnableButtonsAndTable(context);
         
         if (context.progressBar != null)
@@ -182,49 +370,193 @@ public class BackupOperations {
     }
 
     public static void reEnableButtonsAndTable(ZippingContext context) {
+        reEnableButtonsAndTable(context, false);
+    }
+
+    public static void reEnableButtonsAndTable(ZippingContext context, boolean paused) {
+        // the last progress must be saved before the final state of the backup
+        ProgressEventBus.getInstance().flush();
+
         if (context.interruptBackupPopupItem != null) context.interruptBackupPopupItem.setEnabled(false);
         if (context.deleteBackupPopupItem != null) context.deleteBackupPopupItem.setEnabled(true);
 
         // edit the backup running state
-        RunningBackups.updateBackupStatusAfterCompletition(context.backup.getBackupName());
+        if (paused) {
+            RunningBackups.updateBackupStatusAfterPause(context.backup.getBackupName());
+        } else {
+            RunningBackups.updateBackupStatusAfterCompletition(context.backup.getBackupName());
+        }
 
         if (BackupManagerGUI.backupTable != null) 
             TableDataManager.removeProgressInTheTableAndRestoreAsDefault(context.backup, formatter);
     } 
     
-    public static void UpdateProgressPercentage(int value, String path1, String path2, ZippingContext context, String fileProcessed, int filesCopiedSoFar, int totalFilesCount) {
-        if (value == 0 || value == 25 || value == 50 || value == 75 || value == 100)
-            logger.info("Zipping progress: " + value + "%");
+    // the zipping thread only publishes the progress, the observers receive it coalesced on their own threads
+    public static void UpdateProgressPercentage(BackupProgress progress, String path1, String path2, ZippingContext context, String fileProcessed) {
+        ProgressEventBus.getInstance().publish(new ProgressEvent(context, path1, path2, fileProcessed, progress));
+
+        if (progress.getPercentage() == 100) {
+            updateAfterBackup(path1, path2, context);
+            deleteOldBackupsIfNecessary(context.backup.getMaxBackupsToKeep(), path2);
+        }
+    }
+
+    private static void subscribeProgressObservers() {
+        ProgressEventBus bus = ProgressEventBus.getInstance();
+        bus.subscribe("gui", GUI_PROGRESS_INTERVAL_MILLIS, BackupOperations::showProgress);
+        bus.subscribe("tray", PROGRESS_INTERVAL_MILLIS, BackupOperations::showProgressInTray);
+        bus.subscribe("running-backups", PROGRESS_INTERVAL_MILLIS, BackupOperations::saveProgress);
+        bus.subscribe("log", PROGRESS_INTERVAL_MILLIS, BackupOperations::logProgress);
+    }
+
+    private static void showProgress(ProgressEvent event) {
+        ZippingContext context = event.getContext();
+        BackupProgress progress = event.getProgress();
 
         if (context.progressBar != null) {
-            context.progressBar.updateProgressBar(value, fileProcessed, filesCopiedSoFar, totalFilesCount);
+            SwingUtilities.invokeLater(() -> context.progressBar.updateProgressBar(progress.getPercentage(), event.getFileProcessed(), progress));
         }
 
         if (BackupManagerGUI.backupTable != null) {
-            TableDataManager.updateProgressBarPercentage(context.backup, value, formatter);
+            TableDataManager.updateProgressBarPercentage(context.backup, progress, formatter);
         }
-        
-        // updating running backups file .json
-        RunningBackups running = RunningBackups.readBackupFromJSON(context.backup.getBackupName());
-        if (running != null) {
-            running.progress = value;
-            RunningBackups.updateBackupToJSON(running);
-        }else {
-            RunningBackups.updateBackupToJSON(new RunningBackups(context.backup.getBackupName(), path2, value, BackupStatusEnum.Progress));
-        }
-       
-        // if (value == 100) {
-        //     RunningBackups.updateBackupToJSON(new RunningBackups(context.backup.getBackupName(), path2, value, BackupStatusEnum.Finished));
-        // } else {
-        //     RunningBackups.updateBackupToJSON(new RunningBackups(context.backup.getBackupName(), path2, value, BackupStatusEnum.Progress));
-        // }
-
-        if (value == 100) {
-            updateAfterBackup(path1, path2, context);
-            deleteOldBackupsIfNecessary(context.backup.getMaxBackupsToKeep(), path2);
+    }
+
+    private static void showProgressInTray(ProgressEvent event) {
+        TrayIcon trayIcon = event.getContext().trayIcon;
+        if (trayIcon == null) return;
+
+        String tooltip = TranslationCategory.TRAY_ICON.getTranslation(TranslationKey.TRAY_TOOLTIP);
+        if (!event.isCompleted()) {
+            tooltip += "\n" + event.getBackupName() + ": " + event.getProgress().getPercentage() + "%";
         }
+        trayIcon.setToolTip(tooltip);
     }
-    
+
+    // updating running backups file .json
+    private static void saveProgress(ProgressEvent event) {
+        RunningBackups running = RunningBackups.readBackup(event.getBackupName());
+        if (running == null) {
+            running = new RunningBackups(event.getBackupName(), event.getTargetPath(), event.getProgress().getPercentage(), BackupStatusEnum.Progress);
+        }
+        running.updateProgress(event.getProgress());
+        RunningBackups.updateBackup(running);
+    }
+
+    // only every quarter of the backup
+    private static void logProgress(ProgressEvent event) {
+        int quarter = event.getProgress().getPercentage() / 25;
+        Integer lastQuarter = loggedQuarters.get(event.getBackupName());
+        if (lastQuarter != null && quarter <= lastQuarter) return;
+
+        logger.info("Zipping progress: " + event.getProgress().getPercentage() + "% " + event.getProgress().getDetails());
+        if (event.isCompleted()) {
+            loggedQuarters.remove(event.getBackupName());
+        } else {
+            loggedQuarters.put(event.getBackupName(), quarter);
+        }
+    }
+
+    /*
+     * The archives needed to restore the last backup: the last completed full backup followed by the incremental ones
+     * performed after it, in date order. Empty if there isn't a full backup.
+     */
+    public static List<Path> getBackupChain(String archiveBasePath) {
+        List<Path> chain = new ArrayList<>();
+        File archiveBase = new File(archiveBasePath).getAbsoluteFile();
+        File folder = archiveBase.getParentFile();
+        if (folder == null) return chain;
+
+        File[] fullBackups = listBackupFiles(folder, archiveBase.getName(), FULL_BACKUP_LABEL);
+        if (fullBackups == null || fullBackups.length == 0) return chain;
+        sortByBackupDate(fullBackups);
+        File fullBackup = fullBackups[fullBackups.length - 1];
+        chain.add(fullBackup.toPath());
+
+        LocalDateTime fullBackupDate = getBackupDate(fullBackup);
+        File[] incrementalBackups = listBackupFiles(folder, archiveBase.getName(), INCREMENTAL_BACKUP_LABEL);
+        if (incrementalBackups == null || fullBackupDate == null) return chain;
+        sortByBackupDate(incrementalBackups);
+        for (File incrementalBackup : incrementalBackups) {
+            LocalDateTime date = getBackupDate(incrementalBackup);
+            if (date != null && date.isAfter(fullBackupDate)) chain.add(incrementalBackup.toPath());
+        }
+        return chain;
+    }
+
+    /*
+     * The archives needed to restore the zip backup "archive": itself if it is a full backup, otherwise the last full
+     * backup before it followed by the incremental ones up to it, in date order. Empty if its full backup is missing.
+     */
+    public static List<Path> getRestoreChain(Path archive) {
+        List<Path> chain = new ArrayList<>();
+        File target = archive.toAbsolutePath().toFile();
+        File folder = target.getParentFile();
+        int labelStart = target.getName().lastIndexOf(" (");
+        LocalDateTime targetDate = getBackupDate(target);
+        if (folder == null || labelStart < 0 || targetDate == null) return chain;
+
+        if (target.getName().startsWith(" (" + FULL_BACKUP_LABEL + " ", labelStart)) {
+            chain.add(target.toPath());
+            return chain;
+        }
+
+        String baseName = target.getName().substring(0, labelStart);
+        File[] fullBackups = listBackupFiles(folder, baseName, FULL_BACKUP_LABEL);
+        if (fullBackups == null) return chain;
+        sortByBackupDate(fullBackups);
+        File fullBackup = null;
+        for (File candidate : fullBackups) {
+            LocalDateTime date = getBackupDate(candidate);
+            if (date != null && date.isBefore(targetDate) && candidate.getName().endsWith(".zip")) fullBackup = candidate;
+        }
+        if (fullBackup == null) return chain;
+        chain.add(fullBackup.toPath());
+
+        LocalDateTime fullBackupDate = getBackupDate(fullBackup);
+        File[] incrementalBackups = listBackupFiles(folder, baseName, INCREMENTAL_BACKUP_LABEL);
+        if (incrementalBackups == null || fullBackupDate == null) return chain;
+        sortByBackupDate(incrementalBackups);
+        for (File incrementalBackup : incrementalBackups) {
+            LocalDateTime date = getBackupDate(incrementalBackup);
+            if (date != null && date.isAfter(fullBackupDate) && !date.isAfter(targetDate)) chain.add(incrementalBackup.toPath());
+        }
+        return chain;
+    }
+
+    // the completed snapshots of the repository backup "archiveBasePath", in date order
+    public static List<Path> getSnapshots(String archiveBasePath) {
+        List<Path> snapshots = new ArrayList<>();
+        File archiveBase = new File(archiveBasePath).getAbsoluteFile();
+        File folder = archiveBase.getParentFile();
+        if (folder == null) return snapshots;
+
+        File[] fullBackups = listBackupFiles(folder, archiveBase.getName(), FULL_BACKUP_LABEL);
+        if (fullBackups == null) return snapshots;
+        sortByBackupDate(fullBackups);
+        for (File fullBackup : fullBackups) {
+            if (fullBackup.getName().endsWith(Snapshot.EXTENSION)) snapshots.add(fullBackup.toPath());
+        }
+        return snapshots;
+    }
+
+    // the last completed full zip of the same backup in the folder of targetZip, null if there isn't any
+    public static Path getPreviousFullBackup(Path targetZip) {
+        File target = targetZip.toAbsolutePath().toFile();
+        File folder = target.getParentFile();
+        int labelStart = target.getName().lastIndexOf(" (");
+        if (folder == null || labelStart < 0) return null;
+
+        File[] fullBackups = listBackupFiles(folder, target.getName().substring(0, labelStart), FULL_BACKUP_LABEL);
+        if (fullBackups == null) return null;
+
+        sortByBackupDate(fullBackups);
+        for (int i = fullBackups.length - 1; i >= 0; i--) {
+            if (fullBackups[i].getName().endsWith(".zip") && !fullBackups[i].equals(target)) return fullBackups[i].toPath();
+        }
+        return null;
+    }
+
     private static void deleteOldBackupsIfNecessary(int maxBackupsToKeep, String destinationPath) {
         logger.info("Deleting old backups if necessary");
 
@@ -232,47 +564,39 @@ public class BackupOperations {
         String fileBackuppedToSearch = new File(destinationPath).getName();
         
         // extract the file name (before the parentesis)
-        String baseName = fileBackuppedToSearch.substring(0, fileBackuppedToSearch.indexOf(" (Backup"));
+        String baseName = fileBackuppedToSearch.substring(0, fileBackuppedToSearch.lastIndexOf(" ("));
         
         if (folder != null && folder.isDirectory()) {
             // get current count
-            FilenameFilter filter = (dir, name) -> name.matches(baseName + " \\(Backup \\d{2}-\\d{2}-\\d{4} \\d{2}\\.\\d{2}\\.\\d{2}\\)\\.zip");
-            File[] matchingFiles = folder.listFiles(filter); // getting files for that filter  
+            File[] matchingFiles = listBackupFiles(folder, baseName, FULL_BACKUP_LABEL);
+            File[] incrementalFiles = listBackupFiles(folder, baseName, INCREMENTAL_BACKUP_LABEL);
 
-            if (matchingFiles == null) {
+            if (matchingFiles == null || incrementalFiles == null) {
                 logger.warn("Error during deleting old backups: none matching files");
                 return;
             }
 
+            sortByBackupDate(matchingFiles);
+
             // check if the max is passed, and if it is, remove the oldest
+            int firstFullBackupToKeep = 0;
             if (matchingFiles.length > maxBackupsToKeep) {
                 logger.info("Found " + matchingFiles.length + " matching files, exceeding max allowed: " + maxBackupsToKeep);
 
-                Arrays.sort(matchingFiles, (f1, f2) -> {
-                    String datePattern = "\\(Backup (\\d{2}-\\d{2}-\\d{4} \\d{2}\\.\\d{2}\\.\\d{2})\\)\\.zip"; // regex aggiornata
-                
-                    try {
-                        // extracting dates from file names
-                        String date1 = extractDateFromFileName(f1.getName(), datePattern);
-                        String date2 = extractDateFromFileName(f2.getName(), datePattern);
-                
-                        LocalDateTime dateTime1 = LocalDateTime.parse(date1, BackupManagerGUI.dateForfolderNameFormatter);
-                        LocalDateTime dateTime2 = LocalDateTime.parse(date2, BackupManagerGUI.dateForfolderNameFormatter);
-
-                        return dateTime1.compareTo(dateTime2);
-                    } catch (Exception e) {
-                        logger.error("Error parsing dates: " + e.getMessage(), e);
-                        return 0;
-                    }
-                });
-
                 // delete older files
-                for (int i = 0; i < matchingFiles.length - maxBackupsToKeep; i++) {
-                    File fileToDelete = matchingFiles[i];
-                    if (fileToDelete.delete()) {
-                        logger.info("Deleted old backup: " + fileToDelete.getName());
-                    } else {
-                        logger.warn("Failed to delete old backup: " + fileToDelete.getName());
+                firstFullBackupToKeep = matchingFiles.length - maxBackupsToKeep;
+                for (int i = 0; i < firstFullBackupToKeep; i++) {
+                    deleteBackupFile(matchingFiles[i]);
+                }
+            }
+
+            // the incremental backups older than the oldest full backup kept cannot be restored anymore
+            if (firstFullBackupToKeep < matchingFiles.length) {
+                LocalDateTime oldestFullBackup = getBackupDate(matchingFiles[firstFullBackupToKeep]);
+                for (File incrementalFile : incrementalFiles) {
+                    LocalDateTime date = getBackupDate(incrementalFile);
+                    if (oldestFullBackup != null && date != null && date.isBefore(oldestFullBackup)) {
+                        deleteBackupFile(incrementalFile);
                     }
                 }
             }
@@ -281,16 +605,59 @@ public class BackupOperations {
         }
     }
 
+    // the completed archives of the backup "baseName" of the given type (Backup or Incremental), the partial ones have a checkpoint
+    private static File[] listBackupFiles(File folder, String baseName, String label) {
+        FilenameFilter filter = (dir, name) -> name.matches(getBackupFileRegex(baseName, label)) && !ZipCheckpoint.exists(new File(dir, name).toPath());
+        return folder.listFiles(filter); // getting files for that filter
+    }
+
+    private static String getBackupFileRegex(String baseName, String label) {
+        return Pattern.quote(baseName) + " \\(" + label + " \\d{2}-\\d{2}-\\d{4} \\d{2}\\.\\d{2}\\.\\d{2}\\)" + ARCHIVE_EXTENSION_REGEX;
+    }
+
+    private static void sortByBackupDate(File[] files) {
+        Arrays.sort(files, (f1, f2) -> {
+            LocalDateTime dateTime1 = getBackupDate(f1);
+            LocalDateTime dateTime2 = getBackupDate(f2);
+
+            if (dateTime1 == null || dateTime2 == null) return 0;
+            return dateTime1.compareTo(dateTime2);
+        });
+    }
+
+    private static LocalDateTime getBackupDate(File file) {
+        String datePattern = "\\((?:" + FULL_BACKUP_LABEL + "|" + INCREMENTAL_BACKUP_LABEL + ") (\\d{2}-\\d{2}-\\d{4} \\d{2}\\.\\d{2}\\.\\d{2})\\)" + ARCHIVE_EXTENSION_REGEX;
+
+        try {
+            // extracting date from file name
+            String date = extractDateFromFileName(file.getName(), datePattern);
+            return LocalDateTime.parse(date, BackupManagerGUI.dateForfolderNameFormatter);
+        } catch (Exception e) {
+            logger.error("Error parsing dates: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private static void deleteBackupFile(File fileToDelete) {
+        if (fileToDelete.delete()) {
+            logger.info("Deleted old backup: " + fileToDelete.getName());
+        } else {
+            logger.warn("Failed to delete old backup: " + fileToDelete.getName());
+        }
+    }
+
     public static boolean deletePartialBackup(String filePath) {
         logger.info("Attempting to delete partial backup: " + filePath);
 
-        ZippingThread.stopExecutorService(1);
-        
         if (filePath == null || filePath.isEmpty()) {
             logger.warn("The file path is null or empty.");
             return false;
         }
 
+        // the other backups keep running
+        ZippingThread.interruptBackups(job -> job.getTarget().toString().equals(filePath), 1);
+        ZipCheckpoint.delete(Path.of(filePath));
+
         File file = new File(filePath);
 
         // Check if the file exists and is a valid file
@@ -0,0 +1,202 @@
+package backupmanager;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backupmanager.Entities.ScanCache;
+import backupmanager.Entities.ScanCache.DirectoryBuilder;
+import backupmanager.Entities.ScanCache.DirectoryState;
+
+/*
+ * Same walk of Files.walkFileTree (links not followed), but the directories not modified since the previous scan
+ * are not listed again: their children are taken from the ScanCache. Only the attributes of the children are read.
+ * While walking it builds the cache of the current scan and it detects if anything changed since the previous one.
+ * The totals of the previous scan are corrected with every directory walked, so they are an estimate of the current tree
+ * that gets exact when the walk ends.
+ */
+public class CachedFileWalker {
+    private static final Logger logger = LoggerFactory.getLogger(CachedFileWalker.class);
+
+    private final ScanCache previousScan;
+    private ScanCache currentScan;
+    private Path root;
+    private boolean changed;
+    private boolean stopOnChange;
+    private int listedDirectories;
+    private int cachedDirectories;
+    private int filesCountDelta;
+    private long totalBytesDelta;
+    // for every directory being walked, the differences already counted for its subdirectories (files, bytes)
+    private final Deque<long[]> walkedDeltas = new ArrayDeque<>();
+
+    public CachedFileWalker(ScanCache previousScan) {
+        this.previousScan = previousScan;
+    }
+
+    public ScanCache walk(Path start, FileVisitor<? super Path> visitor) throws IOException {
+        root = start;
+        currentScan = new ScanCache(start.toString(), System.currentTimeMillis());
+        changed = previousScan == null;
+        listedDirectories = 0;
+        cachedDirectories = 0;
+        filesCountDelta = 0;
+        totalBytesDelta = 0;
+        walkedDeltas.clear();
+
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(start, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            visitor.visitFileFailed(start, e);
+            return currentScan;
+        }
+
+        if (attrs.isDirectory()) {
+            walkDirectory(start, attrs, visitor);
+        } else {
+            visitor.visitFile(start, attrs);
+        }
+
+        logger.info("Scan completed: " + listedDirectories + " directories listed, " + cachedDirectories + " taken from the cache");
+        return currentScan;
+    }
+
+    // walks only until the first difference with the previous scan
+    public boolean hasChanges(Path start) throws IOException {
+        if (previousScan == null) return true;
+
+        stopOnChange = true;
+        try {
+            walk(start, new SimpleFileVisitor<Path>() {});
+        } finally {
+            stopOnChange = false;
+        }
+        return changed;
+    }
+
+    public boolean isChanged() {
+        return changed;
+    }
+
+    public ScanCache getScanCache() {
+        return currentScan;
+    }
+
+    // the files of the previous scan corrected by the directories walked so far, -1 without a previous scan
+    public int getEstimatedFilesCount() {
+        if (previousScan == null || previousScan.getFilesCount() < 0) return -1;
+        return previousScan.getFilesCount() + filesCountDelta;
+    }
+
+    // the bytes of the previous scan corrected by the directories walked so far, -1 without a previous scan
+    public long getEstimatedTotalBytes() {
+        if (previousScan == null || previousScan.getTotalBytes() < 0) return -1;
+        return previousScan.getTotalBytes() + totalBytesDelta;
+    }
+
+    private FileVisitResult walkDirectory(Path dir, BasicFileAttributes attrs, FileVisitor<? super Path> visitor) throws IOException {
+        String key = root.relativize(dir).toString();
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        DirectoryState previous = previousScan != null ? previousScan.getDirectory(key) : null;
+        DirectoryState reliable = previousScan != null ? previousScan.getReliableDirectory(key, lastModified) : null;
+
+        List<String> names;
+        if (reliable != null) {
+            names = reliable.getNames();
+            cachedDirectories++;
+        } else {
+            try {
+                names = listDirectory(dir);
+            } catch (IOException e) {
+                // like Files.walkFileTree, a directory that cannot be opened is reported as a failed file
+                changed = true;
+                return visitor.visitFileFailed(dir, e) == FileVisitResult.TERMINATE ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+            }
+            listedDirectories++;
+            if (previous == null || previous.getChildrenCount() != names.size()) {
+                changed = true;
+            }
+        }
+
+        FileVisitResult result = visitor.preVisitDirectory(dir, attrs);
+        if (result != FileVisitResult.CONTINUE) {
+            return result == FileVisitResult.TERMINATE ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+        }
+
+        walkedDeltas.push(new long[2]);
+        DirectoryBuilder builder = new DirectoryBuilder(lastModified);
+        for (String name : names) {
+            if (stopOnChange && changed) return FileVisitResult.TERMINATE;
+
+            Path child = dir.resolve(name);
+            BasicFileAttributes childAttrs;
+            try {
+                childAttrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException e) {
+                changed = true;
+                if (visitor.visitFileFailed(child, e) == FileVisitResult.TERMINATE) return FileVisitResult.TERMINATE;
+                continue;
+            }
+
+            long childLastModified = childAttrs.lastModifiedTime().toMillis();
+            if (childAttrs.isDirectory()) {
+                result = walkDirectory(child, childAttrs, visitor);
+                DirectoryState subtree = currentScan.getDirectory(root.relativize(child).toString());
+                builder.addDirectory(name, childLastModified, subtree != null ? subtree.getFilesCount() : 0, subtree != null ? subtree.getTotalBytes() : 0);
+            } else {
+                if (previous == null || !previous.containsFile(name, childAttrs.size(), childLastModified)) {
+                    changed = true;
+                }
+                builder.addFile(name, childAttrs.size(), childLastModified);
+                result = visitor.visitFile(child, childAttrs);
+            }
+
+            if (result == FileVisitResult.TERMINATE) return FileVisitResult.TERMINATE;
+            if (result == FileVisitResult.SKIP_SIBLINGS) break;
+        }
+
+        DirectoryState current = builder.build();
+        currentScan.putDirectory(key, current);
+        updateEstimate(previous, current);
+
+        return visitor.postVisitDirectory(dir, null) == FileVisitResult.TERMINATE ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+    }
+
+    // the subtree of the directory replaces the one of the previous scan in the estimate, its subdirectories are already counted
+    private void updateEstimate(DirectoryState previous, DirectoryState current) {
+        long[] subdirectories = walkedDeltas.pop();
+        long files = current.getFilesCount() - (previous != null ? previous.getFilesCount() : 0);
+        long bytes = current.getTotalBytes() - (previous != null ? previous.getTotalBytes() : 0);
+
+        filesCountDelta += (int) (files - subdirectories[0]);
+        totalBytesDelta += bytes - subdirectories[1];
+        if (!walkedDeltas.isEmpty()) {
+            walkedDeltas.peek()[0] += files;
+            walkedDeltas.peek()[1] += bytes;
+        }
+    }
+
+    private static List<String> listDirectory(Path dir) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path child : stream) {
+                names.add(child.getFileName().toString());
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,283 @@
+package backupmanager.Catalog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backupmanager.BackupOperations;
+import backupmanager.Compression.ArchiveChain;
+import backupmanager.Compression.CompressionDictionary;
+import backupmanager.Compression.ZipArchiveReader;
+import backupmanager.Deduplication.DeltaDecoder;
+import backupmanager.Deduplication.DeltaEncoder;
+import backupmanager.Enums.ConfigKey;
+
+/*
+ * Catalog of the files saved in all the zip archives, to find which backups have a file without opening them.
+ * Every completed archive adds a CatalogSegment with its entries (path, position of the local header, size, last
+ * modified time and crc): a search is a binary search in the mapped segments, so it takes milliseconds also with tens
+ * of millions of entries, and a single file is extracted seeking directly to its local header.
+ * The segments of the archives deleted or replaced are discarded at the next search.
+ */
+public class ArchiveCatalog {
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveCatalog.class);
+    private static final String SEGMENT_EXTENSION = ".catalog";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static ArchiveCatalog instance;
+
+    private final Path directory;
+    private final Map<Path, CatalogSegment> segments = new HashMap<>();
+
+    public ArchiveCatalog(Path directory) {
+        this.directory = directory;
+    }
+
+    public static synchronized ArchiveCatalog getInstance() {
+        if (instance == null) {
+            instance = new ArchiveCatalog(Path.of(ConfigKey.CACHE_DIRECTORY_STRING.getValue(), "catalog"));
+        }
+        return instance;
+    }
+
+    // adds a completed archive, the errors are only logged: the catalog must never fail a backup
+    public static void catalogArchive(Path archive) {
+        if (!archive.getFileName().toString().endsWith(".zip")) return;
+        try {
+            getInstance().addArchive(archive);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Unable to add " + archive + " to the catalog: " + e.getMessage(), e);
+        }
+    }
+
+    // reads the central directory of the archive and writes its segment, replacing the one of a previous version
+    public void addArchive(Path archive) throws IOException {
+        long start = System.currentTimeMillis();
+        Path absoluteArchive = archive.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(absoluteArchive, BasicFileAttributes.class);
+
+        List<CatalogEntry> entries = new ArrayList<>();
+        try (ZipArchiveReader reader = ZipArchiveReader.open(absoluteArchive)) {
+            for (ZipArchiveReader.Entry entry : reader.getEntries()) {
+                if (entry.isDirectory()) continue;
+
+                String path = entry.getName();
+                int flags = entry.getDictionaryId() != CompressionDictionary.NO_DICTIONARY ? CatalogEntry.FLAG_DICTIONARY : 0;
+                long size = entry.getSize();
+                long crc = entry.getCrc();
+                if (path.startsWith(DeltaEncoder.ENTRY_PREFIX)) {
+                    // the size and the crc of the file, not of its delta
+                    path = path.substring(DeltaEncoder.ENTRY_PREFIX.length());
+                    flags |= CatalogEntry.FLAG_DELTA;
+                    try (InputStream delta = reader.newInputStream(entry)) {
+                        long[] sizeAndCrc = DeltaDecoder.readTargetSizeAndCrc(delta);
+                        size = sizeAndCrc[0];
+                        crc = sizeAndCrc[1];
+                    }
+                } else if (path.startsWith(".backupmanager/")) {
+                    continue;
+                }
+                entries.add(new CatalogEntry(absoluteArchive, path, entry.getOffset(), size, entry.getCompressedSize(), entry.getLastModified(), crc, entry.getMethod(), flags));
+            }
+        }
+
+        Files.createDirectories(directory);
+        Path segmentFile = getSegmentFile(absoluteArchive, attributes.lastModifiedTime().toMillis());
+        CatalogSegment.write(segmentFile, absoluteArchive, attributes.size(), attributes.lastModifiedTime().toMillis(), entries);
+
+        // a replaced file can't be removed while it is mapped on some systems: every version of the archive has its own file
+        synchronized (this) {
+            String archivePrefix = getSegmentPrefix(absoluteArchive);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, archivePrefix + "*" + SEGMENT_EXTENSION)) {
+                for (Path file : files) {
+                    if (!file.equals(segmentFile)) deleteSegment(file);
+                }
+            }
+        }
+        logger.info("Catalog of " + absoluteArchive.getFileName() + " written with " + entries.size() + " entries in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /*
+     * The versions of the files matching the query in all the archives, sorted by path and then from the newest.
+     * A query with a "/" is the beginning of a path in the backup, otherwise it is the beginning of a file name (ignoring the case).
+     */
+    public List<CatalogEntry> search(String query, int limit) {
+        String trimmed = query.trim().replace('\\', '/');
+        while (trimmed.startsWith("/")) trimmed = trimmed.substring(1);
+        if (trimmed.isEmpty()) return new ArrayList<>();
+
+        List<CatalogEntry> results = new ArrayList<>();
+        for (CatalogSegment segment : getSegments()) {
+            List<CatalogEntry> segmentResults = new ArrayList<>();
+            try {
+                if (query.contains("/") || query.contains("\\")) segment.findPath(trimmed, false, limit, segmentResults);
+                else segment.findName(trimmed, false, limit, segmentResults);
+            } catch (RuntimeException e) {
+                logger.warn("Unable to read the catalog file " + segment.getFile() + ": " + e.getMessage());
+                continue;
+            }
+            results.addAll(segmentResults);
+        }
+        return sortAndLimit(results, limit);
+    }
+
+    // every saved version of the file with this path in the backup, from the newest
+    public List<CatalogEntry> findVersions(String path) {
+        List<CatalogEntry> results = new ArrayList<>();
+        for (CatalogSegment segment : getSegments()) {
+            try {
+                segment.findPath(path, true, Integer.MAX_VALUE, results);
+            } catch (RuntimeException e) {
+                logger.warn("Unable to read the catalog file " + segment.getFile() + ": " + e.getMessage());
+            }
+        }
+        return sortAndLimit(results, Integer.MAX_VALUE);
+    }
+
+    /*
+     * Writes the version of the file in target. The entry is read from its local header, a delta is rebuilt from the
+     * chain of its archive and an entry compressed with a dictionary needs the central directory to find it.
+     * The file is written next to target and checked against the crc of the catalog before replacing it.
+     */
+    public void extract(CatalogEntry entry, Path target) throws IOException {
+        Path absoluteTarget = target.toAbsolutePath();
+        Path parent = absoluteTarget.getParent();
+        Files.createDirectories(parent);
+        Path temp = parent.resolve("." + absoluteTarget.getFileName() + ".extract");
+
+        try {
+            if (entry.isDelta()) {
+                rebuildDelta(entry, temp);
+            } else if (entry.usesDictionary()) {
+                try (ZipArchiveReader reader = ZipArchiveReader.open(entry.getArchive())) {
+                    ZipArchiveReader.Entry archiveEntry = reader.getEntry(entry.getPath());
+                    if (archiveEntry == null) throw new IOException("The entry \"" + entry.getPath() + "\" is missing in " + entry.getArchive().getFileName());
+                    try (InputStream in = reader.newInputStream(archiveEntry)) {
+                        copy(in, temp);
+                    }
+                }
+            } else {
+                try (InputStream in = ZipArchiveReader.openEntry(entry.getArchive(), entry.getHeaderOffset(), entry.getMethod(), entry.getCompressedSize())) {
+                    copy(in, temp);
+                }
+            }
+
+            checkExtractedFile(entry, temp);
+            Files.setLastModifiedTime(temp, FileTime.fromMillis(entry.getLastModified()));
+            Files.move(temp, absoluteTarget, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        logger.info("Extracted \"" + entry.getPath() + "\" of " + entry.getArchive().getFileName() + " in " + absoluteTarget);
+    }
+
+    private static void rebuildDelta(CatalogEntry entry, Path temp) throws IOException {
+        List<Path> chain = BackupOperations.getRestoreChain(entry.getArchive());
+        if (chain.isEmpty() || !chain.get(chain.size() - 1).toAbsolutePath().normalize().equals(entry.getArchive())) {
+            throw new IOException("The full backup of " + entry.getArchive().getFileName() + " is missing");
+        }
+        try (ArchiveChain archives = ArchiveChain.open(chain)) {
+            ArchiveChain.FileVersion version = archives.getFiles().get(entry.getPath());
+            if (version == null || !version.isDelta()) throw new IOException("The delta of \"" + entry.getPath() + "\" is missing in " + entry.getArchive().getFileName());
+            ArchiveChain.rebuild(version, temp);
+        }
+    }
+
+    private static void copy(InputStream in, Path temp) throws IOException {
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            in.transferTo(out);
+        }
+    }
+
+    private static void checkExtractedFile(CatalogEntry entry, Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long size = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+                size += read;
+            }
+        }
+        if (size != entry.getSize() || crc.getValue() != entry.getCrc()) {
+            throw new IOException("The entry \"" + entry.getPath() + "\" of " + entry.getArchive().getFileName() + " is corrupted");
+        }
+    }
+
+    // the segments of the archives not changed since they have been cataloged, the other ones are discarded
+    private synchronized List<CatalogSegment> getSegments() {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_EXTENSION)) {
+            for (Path file : stream) files.add(file);
+        } catch (NoSuchFileException e) {
+            return new ArrayList<>();
+        } catch (IOException e) {
+            logger.error("Unable to list the catalog directory " + directory + ": " + e.getMessage(), e);
+        }
+
+        segments.keySet().retainAll(files);
+        for (Path file : files) {
+            if (segments.containsKey(file)) continue;
+            try {
+                segments.put(file, CatalogSegment.open(file));
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Invalid catalog file, it will be deleted: " + file + " (" + e.getMessage() + ")");
+                deleteSegment(file);
+            }
+        }
+
+        List<CatalogSegment> current = new ArrayList<>();
+        Iterator<CatalogSegment> iterator = segments.values().iterator();
+        while (iterator.hasNext()) {
+            CatalogSegment segment = iterator.next();
+            if (segment.isCurrent()) {
+                current.add(segment);
+            } else {
+                logger.info("The archive " + segment.getArchive() + " has been deleted or modified, its catalog is discarded");
+                iterator.remove();
+                deleteSegment(segment.getFile());
+            }
+        }
+        return current;
+    }
+
+    private static List<CatalogEntry> sortAndLimit(List<CatalogEntry> results, int limit) {
+        results.sort(Comparator.comparing(CatalogEntry::getPath).thenComparing(Comparator.comparingLong(CatalogEntry::getLastModified).reversed())
+            .thenComparing(entry -> entry.getArchive().toString()));
+        return results.size() > limit ? new ArrayList<>(results.subList(0, limit)) : results;
+    }
+
+    private Path getSegmentFile(Path archive, long archiveLastModified) {
+        return directory.resolve(getSegmentPrefix(archive) + Long.toHexString(archiveLastModified) + SEGMENT_EXTENSION);
+    }
+
+    // the archive name can contain characters not allowed in a glob, the hash of the path separates archives with the same name
+    private static String getSegmentPrefix(Path archive) {
+        return archive.getFileName().toString().replaceAll("[^A-Za-z0-9._-]", "_") + "_" + Integer.toHexString(archive.toString().hashCode()) + "_";
+    }
+
+    private static void deleteSegment(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Unable to delete the catalog file " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package backupmanager.Catalog;
+
+import java.nio.file.Path;
+
+/*
+ * A version of a file saved in an archive, as found in the ArchiveCatalog: where its local header is in the archive,
+ * its size, last modified time and crc. The size and the crc of a delta entry are the ones of the rebuilt file.
+ */
+public class CatalogEntry {
+    static final int FLAG_DELTA = 1;
+    static final int FLAG_DICTIONARY = 2;
+
+    private final Path archive;
+    private final String path;
+    private final long headerOffset;
+    private final long size;
+    private final long compressedSize;
+    private final long lastModified;
+    private final long crc;
+    private final int method;
+    private final int flags;
+
+    CatalogEntry(Path archive, String path, long headerOffset, long size, long compressedSize, long lastModified, long crc, int method, int flags) {
+        this.archive = archive;
+        this.path = path;
+        this.headerOffset = headerOffset;
+        this.size = size;
+        this.compressedSize = compressedSize;
+        this.lastModified = lastModified;
+        this.crc = crc;
+        this.method = method;
+        this.flags = flags;
+    }
+
+    public Path getArchive() {
+        return archive;
+    }
+    // the path of the file in the backup, without the delta prefix
+    public String getPath() {
+        return path;
+    }
+    public String getFileName() {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+    public long getHeaderOffset() {
+        return headerOffset;
+    }
+    public long getSize() {
+        return size;
+    }
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+    public long getLastModified() {
+        return lastModified;
+    }
+    public long getCrc() {
+        return crc;
+    }
+    public int getMethod() {
+        return method;
+    }
+    int getFlags() {
+        return flags;
+    }
+    // the entry is a delta of the previous version of the file, it is rebuilt from the chain of its archive
+    public boolean isDelta() {
+        return (flags & FLAG_DELTA) != 0;
+    }
+    // the entry is compressed with the dictionary of its archive
+    public boolean usesDictionary() {
+        return (flags & FLAG_DICTIONARY) != 0;
+    }
+}
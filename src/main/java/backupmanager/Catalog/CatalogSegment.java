@@ -0,0 +1,333 @@
+package backupmanager.Catalog;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * The catalog of a single archive: a file of the catalog directory written once, then mapped read only.
+ * The records are sorted by path and front coded (every path keeps only the bytes that differ from the previous one),
+ * every RESTART_INTERVAL records the whole path is written: a lookup is a binary search on these restart points
+ * followed by the decoding of at most RESTART_INTERVAL records. A second index, front coded in the same way, sorts
+ * the records by lowercase file name for the searches of a file without its folder.
+ *
+ * header: magic, version, archive path, size and last modified time of the archive, records count
+ * paths: shared bytes, suffix length, suffix, header offset, size, compressed size, last modified, crc, method, flags
+ * names: shared bytes, suffix length, suffix, ordinal of the path record
+ * restarts: positions of the restart records of the paths, then of the names
+ * trailer: positions of the names and of the two restarts arrays, magic
+ */
+class CatalogSegment {
+    private static final int MAGIC = 0x424B4354; // "BKCT"
+    private static final int VERSION = 1;
+    private static final int RESTART_INTERVAL = 16;
+    private static final int TRAILER_SIZE = 16;
+
+    private final Path file;
+    private final ByteBuffer buffer;
+    private final Path archive;
+    private final long archiveSize;
+    private final long archiveLastModified;
+    private final int count;
+    private final int namesStart;
+    private final int pathRestarts;
+    private final int nameRestarts;
+
+    private CatalogSegment(Path file, ByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+
+        int size = buffer.capacity();
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(size - 4) != MAGIC) throw new IOException("Not a catalog file: " + file);
+        if (buffer.getInt(4) != VERSION) throw new IOException("Unknown catalog version: " + file);
+
+        int archivePathLength = buffer.getInt(8);
+        byte[] archivePath = new byte[archivePathLength];
+        buffer.get(12, archivePath);
+        int position = 12 + archivePathLength;
+        this.archive = Path.of(new String(archivePath, StandardCharsets.UTF_8));
+        this.archiveSize = buffer.getLong(position);
+        this.archiveLastModified = buffer.getLong(position + 8);
+        this.count = buffer.getInt(position + 16);
+
+        this.namesStart = buffer.getInt(size - TRAILER_SIZE);
+        this.pathRestarts = buffer.getInt(size - TRAILER_SIZE + 4);
+        this.nameRestarts = buffer.getInt(size - TRAILER_SIZE + 8);
+        int restartsCount = getRestartsCount(count);
+        if (count < 0 || namesStart > pathRestarts || pathRestarts + restartsCount * 4 != nameRestarts || nameRestarts + restartsCount * 4 != size - TRAILER_SIZE) {
+            throw new IOException("The catalog file is corrupted: " + file);
+        }
+    }
+
+    static CatalogSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < TRAILER_SIZE || size > Integer.MAX_VALUE) throw new IOException("Not a catalog file: " + file);
+
+            // the mapping stays valid after the channel is closed
+            return new CatalogSegment(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    // archive: absolute path, archiveSize and archiveLastModified: the ones of the archive when its entries have been read
+    static void write(Path file, Path archive, long archiveSize, long archiveLastModified, List<CatalogEntry> entries) throws IOException {
+        int count = entries.size();
+        byte[][] pathKeys = new byte[count][];
+        byte[][] nameKeys = new byte[count][];
+        Integer[] byPath = new Integer[count];
+        Integer[] byName = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            pathKeys[i] = entries.get(i).getPath().getBytes(StandardCharsets.UTF_8);
+            nameKeys[i] = entries.get(i).getFileName().toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+            byPath[i] = i;
+            byName[i] = i;
+        }
+
+        // byte order, the same of the lookups on the mapped file
+        Arrays.sort(byPath, (a, b) -> Arrays.compareUnsigned(pathKeys[a], pathKeys[b]));
+        int[] ordinals = new int[count];
+        for (int i = 0; i < count; i++) ordinals[byPath[i]] = i;
+        Arrays.sort(byName, (a, b) -> {
+            int comparison = Arrays.compareUnsigned(nameKeys[a], nameKeys[b]);
+            return comparison != 0 ? comparison : Integer.compare(ordinals[a], ordinals[b]);
+        });
+
+        int restartsCount = getRestartsCount(count);
+        int[] pathRestarts = new int[restartsCount];
+        int[] nameRestarts = new int[restartsCount];
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile), 64 * 1024))) {
+            byte[] archivePath = archive.toString().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(archivePath.length);
+            out.write(archivePath);
+            out.writeLong(archiveSize);
+            out.writeLong(archiveLastModified);
+            out.writeInt(count);
+
+            byte[] previous = new byte[0];
+            for (int i = 0; i < count; i++) {
+                if (i % RESTART_INTERVAL == 0) pathRestarts[i / RESTART_INTERVAL] = out.size();
+                byte[] key = pathKeys[byPath[i]];
+                writeKey(out, key, i % RESTART_INTERVAL == 0 ? 0 : sharedLength(previous, key));
+                previous = key;
+
+                CatalogEntry entry = entries.get(byPath[i]);
+                writeVarLong(out, entry.getHeaderOffset());
+                writeVarLong(out, entry.getSize());
+                writeVarLong(out, entry.getCompressedSize());
+                writeVarLong(out, entry.getLastModified());
+                out.writeInt((int) entry.getCrc());
+                writeVarLong(out, entry.getMethod());
+                out.writeByte(entry.getFlags());
+            }
+
+            int namesStart = out.size();
+            previous = new byte[0];
+            for (int i = 0; i < count; i++) {
+                if (i % RESTART_INTERVAL == 0) nameRestarts[i / RESTART_INTERVAL] = out.size();
+                byte[] key = nameKeys[byName[i]];
+                writeKey(out, key, i % RESTART_INTERVAL == 0 ? 0 : sharedLength(previous, key));
+                writeVarLong(out, ordinals[byName[i]]);
+                previous = key;
+            }
+
+            int pathRestartsStart = out.size();
+            for (int restart : pathRestarts) out.writeInt(restart);
+            int nameRestartsStart = out.size();
+            for (int restart : nameRestarts) out.writeInt(restart);
+
+            // the positions are ints: a catalog file is mapped in a single buffer
+            if (out.size() > Integer.MAX_VALUE - TRAILER_SIZE) throw new IOException("The catalog of " + archive + " is too large");
+            out.writeInt(namesStart);
+            out.writeInt(pathRestartsStart);
+            out.writeInt(nameRestartsStart);
+            out.writeInt(MAGIC);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+
+        try {
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // the versions with the exact path (exact) or with a path starting with the prefix, in path order
+    void findPath(String path, boolean exact, int limit, List<CatalogEntry> results) {
+        find(false, path.getBytes(StandardCharsets.UTF_8), exact, limit, results);
+    }
+
+    // the versions with a file name starting with the prefix (or equal to it), ignoring the case
+    void findName(String name, boolean exact, int limit, List<CatalogEntry> results) {
+        find(true, name.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8), exact, limit, results);
+    }
+
+    // the record in path order
+    CatalogEntry get(int ordinal) {
+        if (ordinal < 0 || ordinal >= count) throw new IndexOutOfBoundsException("Record " + ordinal + " of " + count);
+        Cursor cursor = new Cursor(buffer.getInt(pathRestarts + ordinal / RESTART_INTERVAL * 4));
+        for (int i = ordinal - ordinal % RESTART_INTERVAL; i < ordinal; i++) {
+            cursor.readKey();
+            cursor.skipValues();
+        }
+        cursor.readKey();
+        return cursor.readEntry();
+    }
+
+    private void find(boolean names, byte[] target, boolean exact, int limit, List<CatalogEntry> results) {
+        if (count == 0 || results.size() >= limit) return;
+        int restarts = names ? nameRestarts : pathRestarts;
+
+        // the last restart point lower than the target, the first matching record is in its block or just after it
+        int low = 0;
+        int high = getRestartsCount(count) - 1;
+        int block = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            Cursor cursor = new Cursor(buffer.getInt(restarts + middle * 4));
+            cursor.readKey();
+            if (cursor.compareKey(target) < 0) {
+                block = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        Cursor cursor = new Cursor(buffer.getInt(restarts + block * 4));
+        for (int i = block * RESTART_INTERVAL; i < count && results.size() < limit; i++) {
+            cursor.readKey();
+            int comparison = cursor.compareKey(target);
+            if (comparison > 0 && (exact || !cursor.keyStartsWith(target))) return;
+
+            if (names) {
+                int ordinal = (int) cursor.readVarLong();
+                if (comparison >= 0) results.add(get(ordinal));
+            } else if (comparison >= 0) {
+                results.add(cursor.readEntry());
+            } else {
+                cursor.skipValues();
+            }
+        }
+    }
+
+    // the archive still has the size and the last modified time it had when it was cataloged
+    boolean isCurrent() {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(archive, BasicFileAttributes.class);
+            return attributes.size() == archiveSize && attributes.lastModifiedTime().toMillis() == archiveLastModified;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    Path getFile() {
+        return file;
+    }
+    Path getArchive() {
+        return archive;
+    }
+    int getCount() {
+        return count;
+    }
+
+    private static int getRestartsCount(int count) {
+        return (count + RESTART_INTERVAL - 1) / RESTART_INTERVAL;
+    }
+
+    private static int sharedLength(byte[] previous, byte[] key) {
+        int mismatch = Arrays.mismatch(previous, key);
+        return mismatch < 0 ? key.length : mismatch;
+    }
+
+    private static void writeKey(DataOutputStream out, byte[] key, int shared) throws IOException {
+        writeVarLong(out, shared);
+        writeVarLong(out, key.length - shared);
+        out.write(key, shared, key.length - shared);
+    }
+
+    // 7 bits for every byte, the high bit set on all of them but the last one
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    // reads the records one after the other from a restart point, only with absolute reads of the shared buffer
+    private class Cursor {
+        private int position;
+        private byte[] key = new byte[128];
+        private int keyLength;
+
+        Cursor(int position) {
+            this.position = position;
+        }
+
+        void readKey() {
+            int shared = (int) readVarLong();
+            int suffix = (int) readVarLong();
+            if (shared > keyLength) throw new IllegalStateException("The catalog file is corrupted: " + file);
+            if (shared + suffix > key.length) key = Arrays.copyOf(key, Math.max(key.length * 2, shared + suffix));
+            buffer.get(position, key, shared, suffix);
+            position += suffix;
+            keyLength = shared + suffix;
+        }
+
+        CatalogEntry readEntry() {
+            String path = new String(key, 0, keyLength, StandardCharsets.UTF_8);
+            long headerOffset = readVarLong();
+            long size = readVarLong();
+            long compressedSize = readVarLong();
+            long lastModified = readVarLong();
+            long crc = buffer.getInt(position) & 0xFFFFFFFFL;
+            position += 4;
+            int method = (int) readVarLong();
+            int flags = buffer.get(position++);
+            return new CatalogEntry(archive, path, headerOffset, size, compressedSize, lastModified, crc, method, flags);
+        }
+
+        void skipValues() {
+            for (int i = 0; i < 4; i++) readVarLong();
+            position += 4;
+            readVarLong();
+            position++;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte next = buffer.get(position++);
+                value |= (long) (next & 0x7F) << shift;
+                if (next >= 0) return value;
+                if (shift > 56) throw new IllegalStateException("The catalog file is corrupted: " + file);
+            }
+        }
+
+        int compareKey(byte[] target) {
+            return Arrays.compareUnsigned(key, 0, keyLength, target, 0, target.length);
+        }
+
+        boolean keyStartsWith(byte[] prefix) {
+            return keyLength >= prefix.length && Arrays.equals(key, 0, prefix.length, prefix, 0, prefix.length);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package backupmanager.Compression;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import backupmanager.Deduplication.DeltaDecoder;
+import backupmanager.Deduplication.DeltaEncoder;
+import backupmanager.Entities.BackupManifest;
+
+/*
+ * A full zip backup followed by the incremental ones performed after it, seen as the tree of the last backup:
+ * the last version of every file, taken from the newest archive that has it. The deleted files list of an incremental
+ * archive removes the files of the previous ones, a delta entry is applied on top of the previous version of its file.
+ * Used by the ArchiveMerger and the ArchiveRestorer, the readers can be used by many threads at once.
+ */
+public class ArchiveChain implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final List<ZipArchiveReader> readers;
+    private final Map<String, FileVersion> files;
+
+    private ArchiveChain(List<ZipArchiveReader> readers, Map<String, FileVersion> files) {
+        this.readers = readers;
+        this.files = files;
+    }
+
+    // archives: the full archive followed by its incremental ones in date order
+    public static ArchiveChain open(List<Path> archives) throws IOException {
+        List<ZipArchiveReader> readers = new ArrayList<>();
+        try {
+            for (Path archive : archives) {
+                readers.add(ZipArchiveReader.open(archive));
+            }
+            return new ArchiveChain(readers, collectVersions(readers));
+        } catch (IOException | RuntimeException e) {
+            for (ZipArchiveReader reader : readers) {
+                reader.close();
+            }
+            throw e;
+        }
+    }
+
+    public List<ZipArchiveReader> getReaders() {
+        return Collections.unmodifiableList(readers);
+    }
+
+    // the last version of every file and directory, by entry name in the order of the archives
+    public Map<String, FileVersion> getFiles() {
+        return Collections.unmodifiableMap(files);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (ZipArchiveReader reader : readers) {
+            reader.close();
+        }
+    }
+
+    private static Map<String, FileVersion> collectVersions(List<ZipArchiveReader> readers) throws IOException {
+        Map<String, FileVersion> files = new LinkedHashMap<>();
+        for (ZipArchiveReader reader : readers) {
+            ZipArchiveReader.Entry deletedFiles = reader.getEntry(BackupManifest.DELETED_FILES_ENTRY);
+            if (deletedFiles != null) {
+                try (InputStream in = reader.newInputStream(deletedFiles)) {
+                    for (String deleted : new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n")) {
+                        if (!deleted.isEmpty()) files.remove(deleted);
+                    }
+                }
+            }
+
+            for (ZipArchiveReader.Entry entry : reader.getEntries()) {
+                String name = entry.getName();
+                if (name.startsWith(DeltaEncoder.ENTRY_PREFIX)) {
+                    name = name.substring(DeltaEncoder.ENTRY_PREFIX.length());
+                    FileVersion previous = files.get(name);
+                    if (previous == null) {
+                        throw new IOException("The delta of \"" + name + "\" in " + reader.getPath().getFileName() + " has no previous version");
+                    }
+                    files.put(name, new FileVersion(reader, entry, previous));
+                } else if (!name.startsWith(".backupmanager/")) {
+                    files.put(name, new FileVersion(reader, entry, null));
+                }
+            }
+        }
+        return files;
+    }
+
+    // writes the file of a delta version in target, its previous versions are rebuilt first in temporary files next to it
+    public static void rebuild(FileVersion version, Path target) throws IOException {
+        Path previous = Files.createTempFile(target.toAbsolutePath().getParent(), ".rebuild-", ".tmp");
+        try {
+            if (version.base.base != null) {
+                rebuild(version.base, previous);
+            } else {
+                try (InputStream in = version.base.reader.newInputStream(version.base.entry)) {
+                    Files.copy(in, previous, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(previous);
+            throw e;
+        }
+
+        try (FileChannel previousVersion = FileChannel.open(previous, StandardOpenOption.READ);
+             InputStream delta = version.reader.newInputStream(version.entry);
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(target), BUFFER_SIZE)) {
+            DeltaDecoder.apply(delta, previousVersion, out);
+        } finally {
+            Files.deleteIfExists(previous);
+        }
+    }
+
+    // a version of a file: an entry of an archive, or a delta entry applied on the previous version (base)
+    public static class FileVersion {
+        private final ZipArchiveReader reader;
+        private final ZipArchiveReader.Entry entry;
+        private final FileVersion base;
+
+        FileVersion(ZipArchiveReader reader, ZipArchiveReader.Entry entry, FileVersion base) {
+            this.reader = reader;
+            this.entry = entry;
+            this.base = base;
+        }
+
+        public ZipArchiveReader getReader() {
+            return reader;
+        }
+        public ZipArchiveReader.Entry getEntry() {
+            return entry;
+        }
+        // null if the entry is the file itself
+        public FileVersion getBase() {
+            return base;
+        }
+        public boolean isDelta() {
+            return base != null;
+        }
+    }
+}
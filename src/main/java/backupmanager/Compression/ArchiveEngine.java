@@ -0,0 +1,33 @@
+package backupmanager.Compression;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/*
+ * What the ZippingThread writes the backups with: the entries are added in the order the tree is walked
+ * and the archive is complete only after finish(). close() releases the archive also when the backup has been interrupted.
+ */
+public interface ArchiveEngine extends Closeable {
+
+    void addDirectory(String entryName, BasicFileAttributes attrs) throws IOException;
+
+    void addFile(Path file, String entryName, BasicFileAttributes attrs) throws IOException;
+
+    // a file that is not written in the archive (unchanged since the previous backup), it only advances the progress
+    void skipFile(String entryName, long size) throws IOException;
+
+    // an entry generated by the application, not counted as a file of the backup
+    void addContent(String entryName, byte[] content, long lastModified) throws IOException;
+
+    // the totals used for the progress, counted while the archive is already being written
+    void setTotals(int totalFilesCount, long totalBytes);
+
+    void finish() throws IOException;
+
+    // stops the archive at the next entry, from any thread: the writing thread is never interrupted, so its channels stay open
+    void cancel();
+
+    boolean isInterrupted();
+}
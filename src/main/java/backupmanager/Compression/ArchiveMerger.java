@@ -0,0 +1,192 @@
+package backupmanager.Compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backupmanager.Compression.ArchiveChain.FileVersion;
+import backupmanager.Enums.CompressionModeEnum;
+
+/*
+ * Merges a full backup and the incremental backups performed after it into a new full archive (a synthetic full backup),
+ * without reading the source of the backup: the result is the archive a full backup would have written at the time of
+ * the last incremental one.
+ * Every file is taken from the newest archive that has it and its compressed data is copied as it is. Only the large
+ * files saved as delta are rebuilt from their previous version and compressed again, and the entries compressed with
+ * a dictionary that is not the one kept in the new archive (every archive of the chain can have its own).
+ */
+public class ArchiveMerger {
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveMerger.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final CompressionCodec codec;
+    private final int level;
+    private int copiedEntries;
+    private int rebuiltEntries;
+    private int recompressedEntries;
+    private volatile boolean cancelled;
+
+    // codec and level of the entries that are compressed again
+    public ArchiveMerger(CompressionCodec codec, int level) {
+        this.codec = codec;
+        this.level = level;
+    }
+
+    // stops the merge at the next file, from any thread: the partial archive is deleted
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /*
+     * chain: the full archive followed by its incremental ones in date order. The new archive is written next to target
+     * and moved in its place only when it is complete, so a failed merge never leaves a partial full backup.
+     */
+    public void merge(List<Path> chain, Path target) throws IOException {
+        Path partial = target.resolveSibling(target.getFileName() + ".partial");
+        try (ArchiveChain archives = ArchiveChain.open(chain)) {
+            Map<String, FileVersion> files = archives.getFiles();
+            ZipArchiveReader.Entry dictionary = null;
+            ZipArchiveReader dictionaryArchive = chooseDictionary(archives.getReaders(), files);
+
+            try (ZipArchiveWriter writer = new ZipArchiveWriter(partial)) {
+                if (dictionaryArchive != null) {
+                    dictionary = dictionaryArchive.getEntry(CompressionDictionary.ENTRY_NAME);
+                    writer.writeEntry(dictionaryArchive.copyEntry(dictionary, dictionary.getLastModified()));
+                }
+                long dictionaryId = dictionary != null ? dictionary.getCrc() : CompressionDictionary.NO_DICTIONARY;
+
+                for (Map.Entry<String, FileVersion> file : files.entrySet()) {
+                    if (cancelled) throw new InterruptedIOException("Merge interrupted");
+                    writeFile(writer, file.getKey(), file.getValue(), dictionaryId, partial.getParent());
+                }
+            }
+
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+            logger.info("Synthetic full backup written: " + target.getFileName() + " (" + copiedEntries + " entries copied, "
+                + rebuiltEntries + " rebuilt from their delta, " + recompressedEntries + " compressed again)");
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+    }
+
+    // the archive with the dictionary used by most of the entries copied as they are, the others are compressed again
+    private static ZipArchiveReader chooseDictionary(List<ZipArchiveReader> readers, Map<String, FileVersion> files) {
+        Map<Long, Integer> uses = new HashMap<>();
+        for (FileVersion version : files.values()) {
+            long id = version.getEntry().getDictionaryId();
+            if (!version.isDelta() && id != CompressionDictionary.NO_DICTIONARY) uses.merge(id, 1, Integer::sum);
+        }
+
+        ZipArchiveReader chosen = null;
+        int chosenUses = 0;
+        for (ZipArchiveReader reader : readers) {
+            ZipArchiveReader.Entry entry = reader.getEntry(CompressionDictionary.ENTRY_NAME);
+            if (entry == null) continue;
+            int entryUses = uses.getOrDefault(entry.getCrc(), 0);
+            if (entryUses > chosenUses) {
+                chosen = reader;
+                chosenUses = entryUses;
+            }
+        }
+        return chosen;
+    }
+
+    private void writeFile(ZipArchiveWriter writer, String name, FileVersion version, long dictionaryId, Path tempDirectory) throws IOException {
+        ZipArchiveReader.Entry entry = version.getEntry();
+        if (entry.isDirectory()) {
+            writer.writeDirectory(name, entry.getLastModified());
+            return;
+        }
+
+        if (version.isDelta()) {
+            Path rebuilt = Files.createTempFile(tempDirectory, ".merge-", ".tmp");
+            try {
+                ArchiveChain.rebuild(version, rebuilt);
+                writeRebuiltFile(writer, name, entry.getLastModified(), rebuilt);
+            } finally {
+                Files.deleteIfExists(rebuilt);
+            }
+            rebuiltEntries++;
+            return;
+        }
+
+        if (entry.getDictionaryId() != CompressionDictionary.NO_DICTIONARY && entry.getDictionaryId() != dictionaryId) {
+            try (InputStream in = version.getReader().newInputStream(entry)) {
+                compress(writer, name, entry.getLastModified(), entry.getSize(), level, in);
+            }
+            recompressedEntries++;
+            return;
+        }
+
+        writer.writeEntry(version.getReader().copyEntry(entry, entry.getLastModified()));
+        copiedEntries++;
+    }
+
+    // stored or compressed as the ParallelZipEngine would do with the file, see CompressionAdvisor
+    private void writeRebuiltFile(ZipArchiveWriter writer, String name, long lastModified, Path rebuilt) throws IOException {
+        CompressionModeEnum mode = level == 0 ? CompressionModeEnum.Stored : CompressionAdvisor.adviseByName(Path.of(name).getFileName().toString());
+        if (mode == null) {
+            ByteBuffer sample = ByteBuffer.allocate(CompressionAdvisor.SAMPLE_SIZE);
+            try (FileChannel channel = FileChannel.open(rebuilt, StandardOpenOption.READ)) {
+                while (sample.hasRemaining() && channel.read(sample) > 0) {}
+            }
+            mode = CompressionAdvisor.adviseBySample(sample.flip());
+        }
+
+        if (mode == CompressionModeEnum.Stored) {
+            writer.writeEntry(CompressedEntry.stored(name, Files.size(rebuilt), lastModified, rebuilt));
+            return;
+        }
+
+        try (InputStream in = Files.newInputStream(rebuilt)) {
+            compress(writer, name, lastModified, Files.size(rebuilt), mode == CompressionModeEnum.Fast ? Math.min(codec.getFastLevel(), level) : level, in);
+        }
+    }
+
+    // the content is compressed with the codec of the merge, in parallel as a large file of the ParallelZipEngine
+    private void compress(ZipArchiveWriter writer, String name, long lastModified, long size, int entryLevel, InputStream in) throws IOException {
+        OutputStream codecOut = codec.newParallelOutputStream(writer.beginEntry(name, codec.getZipMethod(), lastModified, size), entryLevel,
+            ParallelZipEngine.getCompressionPool(), ParallelZipEngine.getCompressionThreads());
+
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long written = 0;
+        try {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+                codecOut.write(buffer, 0, read);
+                written += read;
+            }
+            codecOut.close();
+        } catch (IOException | RuntimeException e) {
+            if (codecOut instanceof ParallelDeflaterOutputStream parallelOut) parallelOut.cancel();
+            throw e;
+        }
+        writer.endEntry(crc.getValue(), written);
+    }
+
+    public int getCopiedEntries() {
+        return copiedEntries;
+    }
+    public int getRebuiltEntries() {
+        return rebuiltEntries;
+    }
+    public int getRecompressedEntries() {
+        return recompressedEntries;
+    }
+}
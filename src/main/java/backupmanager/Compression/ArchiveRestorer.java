@@ -0,0 +1,402 @@
+package backupmanager.Compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backupmanager.Compression.ArchiveChain.FileVersion;
+import backupmanager.Deduplication.ChunkId;
+import backupmanager.Deduplication.ChunkRepository;
+import backupmanager.Deduplication.DeltaDecoder;
+import backupmanager.Deduplication.RepositoryEngine;
+import backupmanager.Deduplication.Snapshot;
+
+/*
+ * Restores the tree of a zip backup (a full archive and the incremental ones performed after it, see ArchiveChain)
+ * in a target directory. The files are extracted in parallel, every thread inflating its own entries from the
+ * shared archives with a large buffer, the largest files first so that the last ones don't run on a single thread.
+ * Every file is written in a temporary file next to it, checked against the crc of the archive and then moved over
+ * the existing one: an interrupted restore never leaves a half written file.
+ * With skipUnchanged the files of the target with the same size, last modified time and crc are not written again,
+ * so restoring over a tree that is mostly intact reads the target but writes only what differs.
+ * A snapshot of a repository is restored in the same way, every file rebuilt from its chunks (see restoreSnapshot).
+ * The listener is told of every file processed; cancel() (or interrupting the restoring thread) stops the restore
+ * between two buffers, the files already moved in the target stay restored.
+ */
+public class ArchiveRestorer {
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveRestorer.class);
+
+    private final int threads;
+    private final int bufferSize;
+    private final boolean skipUnchanged;
+    private final AtomicInteger restoredFiles = new AtomicInteger();
+    private final AtomicInteger skippedFiles = new AtomicInteger();
+    private final AtomicLong restoredBytes = new AtomicLong();
+    private final AtomicInteger processedFiles = new AtomicInteger();
+    private final ThreadLocal<byte[]> buffers;
+    private volatile ProgressListener progressListener;
+    private volatile boolean cancelled;
+
+    public interface ProgressListener {
+        // called by the restoring threads after every file, restored or skipped
+        void onProgress(int processedFiles, int totalFiles);
+    }
+
+    private interface FileRestorer<T> {
+        void restore(T file) throws IOException;
+    }
+
+    private interface ContentWriter {
+        void write(Path temp) throws IOException;
+    }
+
+    public ArchiveRestorer(int threads, int bufferSize, boolean skipUnchanged) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.bufferSize = bufferSize;
+        this.skipUnchanged = skipUnchanged;
+        this.buffers = ThreadLocal.withInitial(() -> new byte[bufferSize]);
+    }
+
+    // chain: the full archive followed by its incremental ones in date order, the last one is the backup restored
+    public void restore(List<Path> chain, Path targetDirectory) throws IOException {
+        logger.info("Restoring " + chain.size() + " archives in " + targetDirectory + " with " + threads + " threads");
+        long start = System.currentTimeMillis();
+
+        Files.createDirectories(targetDirectory);
+        Path target = targetDirectory.toRealPath();
+        Set<PosixFilePermission> permissions = getDefaultPermissions(target);
+
+        try (ArchiveChain archives = ArchiveChain.open(chain)) {
+            List<Map.Entry<String, FileVersion>> directories = new ArrayList<>();
+            List<Map.Entry<String, FileVersion>> files = new ArrayList<>();
+            for (Map.Entry<String, FileVersion> file : archives.getFiles().entrySet()) {
+                if (file.getValue().getEntry().isDirectory()) directories.add(file);
+                else files.add(file);
+            }
+
+            for (Map.Entry<String, FileVersion> directory : directories) {
+                Files.createDirectories(resolve(target, directory.getKey()));
+            }
+
+            files.sort(Comparator.comparingLong((Map.Entry<String, FileVersion> file) -> file.getValue().getEntry().getSize()).reversed());
+            extractFiles(files, file -> restoreFile(file.getKey(), file.getValue(), target, permissions));
+
+            // the directories are modified by the files written in them
+            for (int i = directories.size() - 1; i >= 0; i--) {
+                Map.Entry<String, FileVersion> directory = directories.get(i);
+                Files.setLastModifiedTime(resolve(target, directory.getKey()), FileTime.fromMillis(directory.getValue().getEntry().getLastModified()));
+            }
+        }
+
+        logger.info("Restore completed in " + (System.currentTimeMillis() - start) + " ms: " + restoredFiles.get() + " files restored ("
+            + restoredBytes.get() + " bytes), " + skippedFiles.get() + " unchanged files skipped");
+    }
+
+    /*
+     * The snapshot of a repository: the files are rebuilt from their chunks, every chunk checked against its id.
+     * The repository is locked while it is read, so a backup can't prune it meanwhile (and the restore fails if a backup
+     * is writing in it).
+     */
+    public void restoreSnapshot(Path snapshotFile, Path targetDirectory) throws IOException {
+        logger.info("Restoring the snapshot " + snapshotFile.getFileName() + " in " + targetDirectory + " with " + threads + " threads");
+        long start = System.currentTimeMillis();
+
+        Snapshot snapshot = Snapshot.load(snapshotFile);
+        if (snapshot == null) throw new IOException("Unable to read the snapshot " + snapshotFile.getFileName());
+        Path repositoryDirectory = RepositoryEngine.getRepositoryDirectory(snapshotFile);
+        if (!Files.isDirectory(repositoryDirectory)) throw new IOException("The repository of " + snapshotFile.getFileName() + " is missing");
+
+        Files.createDirectories(targetDirectory);
+        Path target = targetDirectory.toRealPath();
+        Set<PosixFilePermission> permissions = getDefaultPermissions(target);
+
+        try (ChunkRepository repository = ChunkRepository.open(repositoryDirectory)) {
+            List<Snapshot.Entry> directories = new ArrayList<>();
+            List<Snapshot.Entry> files = new ArrayList<>();
+            for (Snapshot.Entry entry : snapshot.getEntries()) {
+                if (entry.isDirectory()) directories.add(entry);
+                else files.add(entry);
+            }
+
+            for (Snapshot.Entry directory : directories) {
+                Files.createDirectories(resolve(target, directory.getName()));
+            }
+
+            files.sort(Comparator.comparingLong(Snapshot.Entry::getSize).reversed());
+            extractFiles(files, file -> restoreFile(repository, file, target, permissions));
+
+            for (int i = directories.size() - 1; i >= 0; i--) {
+                Snapshot.Entry directory = directories.get(i);
+                Files.setLastModifiedTime(resolve(target, directory.getName()), FileTime.fromMillis(directory.getLastModified()));
+            }
+        }
+
+        logger.info("Restore completed in " + (System.currentTimeMillis() - start) + " ms: " + restoredFiles.get() + " files restored ("
+            + restoredBytes.get() + " bytes), " + skippedFiles.get() + " unchanged files skipped");
+    }
+
+    private <T> void extractFiles(List<T> files, FileRestorer<T> restorer) throws IOException {
+        AtomicInteger counter = new AtomicInteger(0);
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "restore-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            ExecutorCompletionService<Void> completion = new ExecutorCompletionService<>(pool);
+            for (T file : files) {
+                completion.submit(() -> {
+                    restorer.restore(file);
+                    notifyProgress(files.size());
+                    return null;
+                });
+            }
+
+            // the first failure stops the restore
+            for (int i = 0; i < files.size(); i++) {
+                completion.take().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Restore interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) throw ioException;
+            if (cause instanceof RuntimeException runtimeException) throw runtimeException;
+            throw new IOException("Unable to restore the backup: " + cause.getMessage(), cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void restoreFile(String name, FileVersion version, Path target, Set<PosixFilePermission> permissions) throws IOException {
+        checkCancelled();
+
+        Path file = resolve(target, name);
+        ZipArchiveReader.Entry entry = version.getEntry();
+        if (skipUnchanged && isUnchanged(file, version)) {
+            skippedFiles.incrementAndGet();
+            return;
+        }
+
+        writeFile(file, name, target, permissions, entry.getLastModified(), temp -> {
+            if (version.isDelta()) {
+                ArchiveChain.rebuild(version, temp);
+            } else {
+                extract(version.getReader(), entry, temp);
+            }
+        });
+    }
+
+    private void restoreFile(ChunkRepository repository, Snapshot.Entry entry, Path target, Set<PosixFilePermission> permissions) throws IOException {
+        checkCancelled();
+
+        Path file = resolve(target, entry.getName());
+        if (skipUnchanged && isUnchanged(file, repository, entry)) {
+            skippedFiles.incrementAndGet();
+            return;
+        }
+
+        writeFile(file, entry.getName(), target, permissions, entry.getLastModified(), temp -> {
+            long size = 0;
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                for (int i = 0; i < entry.getChunksCount(); i++) {
+                    checkCancelled();
+                    byte[] chunk = repository.read(entry.getChunkId(i));
+                    out.write(chunk);
+                    size += chunk.length;
+                }
+            }
+            if (size != entry.getSize()) throw new IOException("The file \"" + entry.getName() + "\" of the snapshot is corrupted");
+        });
+    }
+
+    // the content is written in a temporary file next to the file and then moved over it
+    private void writeFile(Path file, String name, Path target, Set<PosixFilePermission> permissions, long lastModified, ContentWriter writer) throws IOException {
+        Path parent = file.getParent();
+        Files.createDirectories(parent);
+        checkRealPath(parent, target, name);
+
+        // the temporary file is created readable only by the owner, the restored file gets the permissions of a new file
+        Path temp = Files.createTempFile(parent, ".restore-", ".tmp");
+        try {
+            if (permissions != null) Files.setPosixFilePermissions(temp, permissions);
+            writer.write(temp);
+            Files.setLastModifiedTime(temp, FileTime.fromMillis(lastModified));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        restoredFiles.incrementAndGet();
+        restoredBytes.addAndGet(Files.size(file));
+    }
+
+    private void extract(ZipArchiveReader reader, ZipArchiveReader.Entry entry, Path temp) throws IOException {
+        byte[] buffer = buffers.get();
+        CRC32 crc = new CRC32();
+        long size = 0;
+        try (InputStream in = reader.newInputStream(entry); OutputStream out = Files.newOutputStream(temp)) {
+            int read;
+            while ((read = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+                checkCancelled();
+                crc.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+                size += read;
+            }
+        }
+        if (size != entry.getSize() || crc.getValue() != entry.getCrc()) {
+            throw new IOException("The entry \"" + entry.getName() + "\" of " + reader.getPath().getFileName() + " is corrupted");
+        }
+    }
+
+    private void checkCancelled() throws InterruptedIOException {
+        if (cancelled) throw new InterruptedIOException("Restore cancelled");
+        if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Restore interrupted");
+    }
+
+    private void notifyProgress(int totalFiles) {
+        int processed = processedFiles.incrementAndGet();
+        ProgressListener listener = progressListener;
+        if (listener != null) listener.onProgress(processed, totalFiles);
+    }
+
+    // same size, same last modified time (the archives keep the seconds) and same crc of the version to restore
+    private boolean isUnchanged(Path file, FileVersion version) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            return false;
+        }
+        if (!attributes.isRegularFile()) return false;
+
+        ZipArchiveReader.Entry entry = version.getEntry();
+        if (attributes.lastModifiedTime().toMillis() / 1000 != entry.getLastModified() / 1000) return false;
+
+        long size = entry.getSize();
+        long crc = entry.getCrc();
+        if (version.isDelta()) {
+            try (InputStream delta = version.getReader().newInputStream(entry)) {
+                long[] sizeAndCrc = DeltaDecoder.readTargetSizeAndCrc(delta);
+                size = sizeAndCrc[0];
+                crc = sizeAndCrc[1];
+            }
+        }
+        if (attributes.size() != size) return false;
+
+        byte[] buffer = buffers.get();
+        CRC32 fileCrc = new CRC32();
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) fileCrc.update(buffer, 0, read);
+        }
+        return fileCrc.getValue() == crc;
+    }
+
+    // same size, same last modified time and the same chunks of the snapshot, read with the lengths of its chunks
+    private boolean isUnchanged(Path file, ChunkRepository repository, Snapshot.Entry entry) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            return false;
+        }
+        if (!attributes.isRegularFile() || attributes.size() != entry.getSize()) return false;
+        if (attributes.lastModifiedTime().toMillis() / 1000 != entry.getLastModified() / 1000) return false;
+
+        try (InputStream in = Files.newInputStream(file)) {
+            for (int i = 0; i < entry.getChunksCount(); i++) {
+                ChunkId id = entry.getChunkId(i);
+                int length = repository.getRawLength(id);
+                if (length < 0) return false;
+                byte[] chunk = in.readNBytes(length);
+                if (chunk.length != length || !ChunkId.of(chunk, 0, length).equals(id)) return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * The entries can't be written outside of the target directory (its real path), neither with ".." nor through a symbolic
+     * link already in the target. The root directory of the backup is the entry "/".
+     */
+    private static Path resolve(Path target, String name) throws IOException {
+        while (name.startsWith("/")) name = name.substring(1);
+        Path file = target.resolve(name).normalize();
+        if (!file.startsWith(target)) throw new IOException("Invalid entry name: " + name);
+        if (file.equals(target)) return target;
+        checkRealPath(file.getParent(), target, name);
+        return file;
+    }
+
+    // the deepest existing directory of the path must be in the target once its links are resolved
+    private static void checkRealPath(Path directory, Path target, String name) throws IOException {
+        while (directory != null && !Files.exists(directory)) {
+            directory = directory.getParent();
+        }
+        if (directory == null || !directory.toRealPath().startsWith(target)) {
+            throw new IOException("The entry " + name + " would be written outside of the target directory");
+        }
+    }
+
+    // the permissions of a new file in the target (with the umask of the process), null if the file system doesn't have them
+    private static Set<PosixFilePermission> getDefaultPermissions(Path target) throws IOException {
+        if (!Files.getFileStore(target).supportsFileAttributeView(PosixFileAttributeView.class)) return null;
+
+        Path probe = Files.createFile(target.resolve(".restore-" + UUID.randomUUID() + ".tmp"));
+        try {
+            return Files.getPosixFilePermissions(probe);
+        } finally {
+            Files.delete(probe);
+        }
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    // can be called from any thread, restore() then throws an InterruptedIOException
+    public void cancel() {
+        cancelled = true;
+    }
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public int getRestoredFiles() {
+        return restoredFiles.get();
+    }
+    public int getSkippedFiles() {
+        return skippedFiles.get();
+    }
+    public long getRestoredBytes() {
+        return restoredBytes.get();
+    }
+}
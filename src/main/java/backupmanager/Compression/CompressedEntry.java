@@ -0,0 +1,145 @@
+package backupmanager.Compression;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+
+// result of the compression of a single file, ready to be copied as it is inside the zip archive
+// (from its buffer, from the file itself for the entries stored without compression, or from another archive)
+public class CompressedEntry {
+    private final String name;
+    private final int method;
+    private final long crc;
+    private final long size;
+    private final long compressedSize;
+    private final long lastModified;
+    private final boolean directory;
+    private final ScatterBuffer data;
+    private final Path sourceFile;
+    private final FileChannel sourceArchive;
+    private final long sourceOffset;
+    private final long dictionaryId;
+
+    public CompressedEntry(String name, int method, long crc, long size, long compressedSize, long lastModified, ScatterBuffer data) {
+        this(name, method, crc, size, compressedSize, lastModified, data, CompressionDictionary.NO_DICTIONARY);
+    }
+
+    // an entry compressed against the dictionary of the archive with the given id
+    public CompressedEntry(String name, int method, long crc, long size, long compressedSize, long lastModified, ScatterBuffer data, long dictionaryId) {
+        this.name = name;
+        this.method = method;
+        this.crc = crc;
+        this.size = size;
+        this.compressedSize = compressedSize;
+        this.lastModified = lastModified;
+        this.directory = false;
+        this.data = data;
+        this.sourceFile = null;
+        this.sourceArchive = null;
+        this.sourceOffset = 0;
+        this.dictionaryId = dictionaryId;
+    }
+
+    private CompressedEntry(String name, long size, long lastModified, Path sourceFile) {
+        this.name = name;
+        this.method = ZipEntry.STORED;
+        this.crc = 0;
+        this.size = size;
+        this.compressedSize = size;
+        this.lastModified = lastModified;
+        this.directory = false;
+        this.data = null;
+        this.sourceFile = sourceFile;
+        this.sourceArchive = null;
+        this.sourceOffset = 0;
+        this.dictionaryId = CompressionDictionary.NO_DICTIONARY;
+    }
+
+    private CompressedEntry(String name, int method, long crc, long size, long compressedSize, long lastModified, long dictionaryId, FileChannel sourceArchive, long sourceOffset) {
+        this.name = name;
+        this.method = method;
+        this.crc = crc;
+        this.size = size;
+        this.compressedSize = compressedSize;
+        this.lastModified = lastModified;
+        this.directory = false;
+        this.data = null;
+        this.sourceFile = null;
+        this.sourceArchive = sourceArchive;
+        this.sourceOffset = sourceOffset;
+        this.dictionaryId = dictionaryId;
+    }
+
+    private CompressedEntry(String name, long lastModified) {
+        this.name = name;
+        this.method = ZipEntry.STORED;
+        this.crc = 0;
+        this.size = 0;
+        this.compressedSize = 0;
+        this.lastModified = lastModified;
+        this.directory = true;
+        this.data = null;
+        this.sourceFile = null;
+        this.sourceArchive = null;
+        this.sourceOffset = 0;
+        this.dictionaryId = CompressionDictionary.NO_DICTIONARY;
+    }
+
+    public static CompressedEntry directory(String name, long lastModified) {
+        return new CompressedEntry(name, lastModified);
+    }
+
+    // an entry stored without compression: its bytes are copied from the file when it is written in the archive,
+    // the crc is computed while they are copied and size is only the expected one
+    public static CompressedEntry stored(String name, long size, long lastModified, Path sourceFile) {
+        return new CompressedEntry(name, size, lastModified, sourceFile);
+    }
+
+    // an entry already compressed in another archive: its data is copied from sourceOffset when it is written in this one
+    public static CompressedEntry copied(String name, int method, long crc, long size, long compressedSize, long lastModified, long dictionaryId, FileChannel sourceArchive, long sourceOffset) {
+        return new CompressedEntry(name, method, crc, size, compressedSize, lastModified, dictionaryId, sourceArchive, sourceOffset);
+    }
+
+    public void release() {
+        if (data != null) {
+            data.release();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+    public int getMethod() {
+        return method;
+    }
+    public long getCrc() {
+        return crc;
+    }
+    public long getSize() {
+        return size;
+    }
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+    public long getLastModified() {
+        return lastModified;
+    }
+    public boolean isDirectory() {
+        return directory;
+    }
+    public ScatterBuffer getData() {
+        return data;
+    }
+    public Path getSourceFile() {
+        return sourceFile;
+    }
+    public FileChannel getSourceArchive() {
+        return sourceArchive;
+    }
+    public long getSourceOffset() {
+        return sourceOffset;
+    }
+    public long getDictionaryId() {
+        return dictionaryId;
+    }
+}
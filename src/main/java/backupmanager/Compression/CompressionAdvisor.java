@@ -0,0 +1,105 @@
+package backupmanager.Compression;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+import backupmanager.Enums.CompressionModeEnum;
+import backupmanager.Enums.ConfigKey;
+import backupmanager.Json.JSONConfigReader;
+
+/*
+ * Decides how every file is compressed, so the CPU is not spent deflating content that is already compressed.
+ * The extension is checked first (jpg, mp4, zip...: stored without reading them), then a sample from the start of the file:
+ * - the entropy of its bytes near 8 bits means random-looking data: stored
+ * - a low entropy means redundant data (text, sources, logs): compressed at the level chosen for the backup
+ * - in between the sample is deflated at the fastest level: what gains almost nothing is stored, what gains a little
+ *   is compressed at the fast level of the codec, which gets nearly the same ratio on that kind of data
+ */
+public class CompressionAdvisor {
+    private static final JSONConfigReader configReader = new JSONConfigReader(ConfigKey.CONFIG_FILE_STRING.getValue(), ConfigKey.CONFIG_DIRECTORY_STRING.getValue());
+    public static final int SAMPLE_SIZE = 64 * 1024;
+    private static final int MIN_SAMPLE_SIZE = 4 * 1024;
+    private static final double STORED_ENTROPY = 7.9;
+    private static final double STRONG_ENTROPY = 6.0;
+    static final double STORED_RATIO = 0.97;
+    private static final double FAST_RATIO = 0.85;
+    private static final ThreadLocal<Deflater> sampleDeflaters = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+    private static final ThreadLocal<byte[]> sampleBuffers = ThreadLocal.withInitial(() -> new byte[SAMPLE_SIZE]);
+    private static Set<String> storedExtensions;
+
+    private CompressionAdvisor() {}
+
+    // the decision that doesn't need to read the file, null if the file must be sampled
+    public static CompressionModeEnum adviseByName(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        if (dot < 0 || dot == fileName.length() - 1) return null;
+
+        String extension = fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+        return getStoredExtensions().contains(extension) ? CompressionModeEnum.Stored : null;
+    }
+
+    // the sample is read from the current position of the buffer, which is not moved
+    public static CompressionModeEnum adviseBySample(ByteBuffer sample) {
+        int length = Math.min(sample.remaining(), SAMPLE_SIZE);
+
+        // too small to tell, and cheap to deflate anyway
+        if (length < MIN_SAMPLE_SIZE) return CompressionModeEnum.Strong;
+
+        byte[] bytes = sampleBuffers.get();
+        sample.duplicate().get(bytes, 0, length);
+
+        double entropy = getEntropy(bytes, length);
+        if (entropy >= STORED_ENTROPY) return CompressionModeEnum.Stored;
+        if (entropy < STRONG_ENTROPY) return CompressionModeEnum.Strong;
+
+        double ratio = (double) getDeflatedSize(bytes, length) / length;
+        if (ratio >= STORED_RATIO) return CompressionModeEnum.Stored;
+        if (ratio >= FAST_RATIO) return CompressionModeEnum.Fast;
+        return CompressionModeEnum.Strong;
+    }
+
+    // Shannon entropy of the bytes, in bits per byte (0 - 8)
+    static double getEntropy(byte[] bytes, int length) {
+        int[] counts = new int[256];
+        for (int i = 0; i < length; i++) {
+            counts[bytes[i] & 0xFF]++;
+        }
+
+        double entropy = 0;
+        for (int count : counts) {
+            if (count == 0) continue;
+            double probability = (double) count / length;
+            entropy -= probability * (Math.log(probability) / Math.log(2));
+        }
+        return entropy;
+    }
+
+    private static long getDeflatedSize(byte[] bytes, int length) {
+        Deflater deflater = sampleDeflaters.get();
+        deflater.reset();
+        deflater.setInput(bytes, 0, length);
+        deflater.finish();
+
+        byte[] output = new byte[8192];
+        while (!deflater.finished()) {
+            deflater.deflate(output);
+        }
+        return deflater.getBytesWritten();
+    }
+
+    private static synchronized Set<String> getStoredExtensions() {
+        if (storedExtensions == null) {
+            Set<String> extensions = new HashSet<>();
+            for (String extension : configReader.getStoredExtensions().split(",")) {
+                String trimmed = extension.trim().toLowerCase(Locale.ROOT);
+                if (trimmed.startsWith(".")) trimmed = trimmed.substring(1);
+                if (!trimmed.isEmpty()) extensions.add(trimmed);
+            }
+            storedExtensions = extensions;
+        }
+        return storedExtensions;
+    }
+}
@@ -0,0 +1,80 @@
+package backupmanager.Compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/*
+ * Service interface of the codecs used to compress the entries of the archives.
+ * The codecs are found with the ServiceLoader (META-INF/services/backupmanager.Compression.CompressionCodec), so a codec
+ * packaged in another jar is available adding it to the classpath. Every codec writes the entries with its own zip method id,
+ * which is what the readers use to pick the codec for the restore.
+ */
+public interface CompressionCodec {
+
+    // the name saved in the backup settings, it must not change
+    String getName();
+
+    // the compression method written in the zip headers
+    int getZipMethod();
+
+    int getMinLevel();
+    int getMaxLevel();
+    int getDefaultLevel();
+
+    // the level used for the files that gain little from the compression
+    int getFastLevel();
+
+    // false if the codec can't be used on this system (for example a missing native library)
+    default boolean isAvailable() {
+        return true;
+    }
+
+    // a stream compressing the data written in it into out: close() completes the compressed data, but doesn't close out
+    OutputStream newOutputStream(OutputStream out, int level) throws IOException;
+
+    // the same for a large file, the codec can use the threads of the pool (or its own) to compress it
+    default OutputStream newParallelOutputStream(OutputStream out, int level, ExecutorService pool, int threads) throws IOException {
+        return newOutputStream(out, level);
+    }
+
+    InputStream newInputStream(InputStream in) throws IOException;
+
+    /*
+     * A dictionary of at most maxSize bytes for the small files like the samples, null if the codec doesn't
+     * support the dictionaries or the samples are not enough to train one.
+     */
+    default byte[] trainDictionary(List<byte[]> samples, int maxSize) {
+        return null;
+    }
+
+    // the same of newOutputStream, compressing against the dictionary (only for the codecs that trained it)
+    default OutputStream newOutputStream(OutputStream out, int level, CompressionDictionary dictionary) throws IOException {
+        if (dictionary == null) return newOutputStream(out, level);
+        throw new UnsupportedOperationException("Codec " + getName() + " doesn't support the dictionaries");
+    }
+
+    default InputStream newInputStream(InputStream in, CompressionDictionary dictionary) throws IOException {
+        if (dictionary == null) return newInputStream(in);
+        throw new UnsupportedOperationException("Codec " + getName() + " doesn't support the dictionaries");
+    }
+
+    // the extension of a file made of a single compressed stream (a solid archive), without the dot
+    default String getStreamExtension() {
+        return getName();
+    }
+
+    /*
+     * A compressed stream that is a file by itself, readable by the standard tool of the format (gzip, zstd...).
+     * It is used for the solid archives: all the files are compressed together, so it always uses the threads available.
+     */
+    default OutputStream newStreamOutputStream(OutputStream out, int level, ExecutorService pool, int threads) throws IOException {
+        return newParallelOutputStream(out, level, pool, threads);
+    }
+
+    default InputStream newStreamInputStream(InputStream in) throws IOException {
+        return newInputStream(in);
+    }
+}
@@ -0,0 +1,81 @@
+package backupmanager.Compression;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// the compression codecs available on this system, loaded once with the ServiceLoader
+public class CompressionCodecs {
+    private static final Logger logger = LoggerFactory.getLogger(CompressionCodecs.class);
+    public static final String DEFAULT_CODEC = DeflateCodec.NAME;
+    private static Map<String, CompressionCodec> codecs;
+
+    private CompressionCodecs() {}
+
+    public static synchronized List<CompressionCodec> getAvailableCodecs() {
+        return Collections.unmodifiableList(new ArrayList<>(getCodecs().values()));
+    }
+
+    // the codec with the given name, the default one if it is unknown or not available
+    public static CompressionCodec get(String name) {
+        CompressionCodec codec = name != null ? getCodecs().get(name) : null;
+        if (codec == null) {
+            if (name != null && !name.equals(DEFAULT_CODEC)) logger.warn("Compression codec \"" + name + "\" not available, using " + DEFAULT_CODEC);
+            return getCodecs().get(DEFAULT_CODEC);
+        }
+        return codec;
+    }
+
+    // the codec writing the given zip method, null if none of the available ones does
+    public static CompressionCodec getByZipMethod(int zipMethod) {
+        for (CompressionCodec codec : getCodecs().values()) {
+            if (codec.getZipMethod() == zipMethod) return codec;
+        }
+        return null;
+    }
+
+    // the level inside the range of the codec
+    public static int clampLevel(CompressionCodec codec, int level) {
+        return Math.max(codec.getMinLevel(), Math.min(codec.getMaxLevel(), level));
+    }
+
+    private static synchronized Map<String, CompressionCodec> getCodecs() {
+        if (codecs == null) {
+            Map<String, CompressionCodec> loaded = new LinkedHashMap<>();
+            loaded.put(DEFAULT_CODEC, new DeflateCodec());
+
+            // a codec that can't be loaded (for example its library is missing) is skipped, the others are still available
+            Iterator<CompressionCodec> providers = ServiceLoader.load(CompressionCodec.class).iterator();
+            while (true) {
+                CompressionCodec codec;
+                try {
+                    if (!providers.hasNext()) break;
+                    codec = providers.next();
+                } catch (ServiceConfigurationError e) {
+                    logger.warn("Unable to load a compression codec: " + e.getMessage());
+                    continue;
+                }
+
+                if (loaded.containsKey(codec.getName())) continue;
+
+                if (codec.isAvailable()) {
+                    loaded.put(codec.getName(), codec);
+                } else {
+                    logger.warn("Compression codec \"" + codec.getName() + "\" not available on this system");
+                }
+            }
+
+            logger.info("Compression codecs available: " + loaded.keySet());
+            codecs = loaded;
+        }
+        return codecs;
+    }
+}
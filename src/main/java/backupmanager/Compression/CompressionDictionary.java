@@ -0,0 +1,53 @@
+package backupmanager.Compression;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
+
+/*
+ * Dictionary trained on a sample of the files of the backup, shared by all the small entries of a zip archive.
+ * Every small file compressed by itself starts from an empty window and can't find the parts it shares with the other
+ * files (the same json keys, xml tags, license headers...): compressed against the dictionary they are found in it
+ * from the first byte, while every entry can still be read by itself.
+ * The dictionary is saved in the archive as a stored entry (ENTRY_NAME) and the entries compressed with it have the
+ * extra field ZIP_EXTRA_ID with its id: the other zip tools can't read them, the restore loads the dictionary first.
+ */
+public class CompressionDictionary {
+    public static final String ENTRY_NAME = ".backupmanager/dictionary";
+    public static final int ZIP_EXTRA_ID = 0x6264; // "bd"
+    public static final long NO_DICTIONARY = -1;
+
+    private final byte[] content;
+    private final long id;
+    private final Map<Integer, Object> prepared = new ConcurrentHashMap<>();
+
+    public CompressionDictionary(byte[] content) {
+        this.content = content;
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        this.id = crc.getValue();
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    // the crc of the content, written in the entries to check they are read with the same dictionary
+    public long getId() {
+        return id;
+    }
+
+    public int size() {
+        return content.length;
+    }
+
+    /*
+     * The dictionary already processed by the codec for a level (or for the decompression), created once
+     * and shared by all the workers: the codecs that can load it faster in this form cache it here.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getPrepared(int level, IntFunction<T> factory) {
+        return (T) prepared.computeIfAbsent(level, factory::apply);
+    }
+}
@@ -0,0 +1,45 @@
+package backupmanager.Compression;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import backupmanager.Enums.CompressionModeEnum;
+
+// how the files of a backup run have been compressed: files and bytes (before and after) for each mode
+public class CompressionStatistics {
+    private final Map<CompressionModeEnum, long[]> counters = new EnumMap<>(CompressionModeEnum.class);
+
+    public CompressionStatistics() {
+        for (CompressionModeEnum mode : CompressionModeEnum.values()) {
+            counters.put(mode, new long[3]);
+        }
+    }
+
+    public synchronized void record(CompressionModeEnum mode, long size, long compressedSize) {
+        long[] counter = counters.get(mode);
+        counter[0]++;
+        counter[1] += size;
+        counter[2] += compressedSize;
+    }
+
+    public synchronized long getFilesCount(CompressionModeEnum mode) {
+        return counters.get(mode)[0];
+    }
+    public synchronized long getSize(CompressionModeEnum mode) {
+        return counters.get(mode)[1];
+    }
+    public synchronized long getCompressedSize(CompressionModeEnum mode) {
+        return counters.get(mode)[2];
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (CompressionModeEnum mode : CompressionModeEnum.values()) {
+            long[] counter = counters.get(mode);
+            if (builder.length() > 0) builder.append(", ");
+            builder.append(mode).append(": ").append(counter[0]).append(" files (").append(counter[1]).append(" -> ").append(counter[2]).append(" bytes)");
+        }
+        return builder.toString();
+    }
+}
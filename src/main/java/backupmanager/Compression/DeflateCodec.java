@@ -0,0 +1,128 @@
+package backupmanager.Compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+// the standard zip compression (java.util.zip), level 0 stores the files without compressing them
+public class DeflateCodec implements CompressionCodec {
+    public static final String NAME = "deflate";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_DICTIONARY_SIZE = 32 * 1024; // the window of deflate, the rest of a dictionary is never used
+
+    // every worker thread reuses its own deflater
+    private static final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int getZipMethod() {
+        return ZipEntry.DEFLATED;
+    }
+
+    @Override
+    public int getMinLevel() {
+        return Deflater.NO_COMPRESSION;
+    }
+
+    @Override
+    public int getMaxLevel() {
+        return Deflater.BEST_COMPRESSION;
+    }
+
+    @Override
+    public int getDefaultLevel() {
+        return 6;
+    }
+
+    @Override
+    public int getFastLevel() {
+        return Deflater.BEST_SPEED;
+    }
+
+    @Override
+    public OutputStream newOutputStream(OutputStream out, int level) {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setLevel(level);
+        return new EntryDeflaterOutputStream(out, deflater);
+    }
+
+    // a preset dictionary: the raw content of the best parts of the samples
+    @Override
+    public byte[] trainDictionary(List<byte[]> samples, int maxSize) {
+        return DictionaryTrainer.train(samples, Math.min(maxSize, MAX_DICTIONARY_SIZE));
+    }
+
+    @Override
+    public OutputStream newOutputStream(OutputStream out, int level, CompressionDictionary dictionary) throws IOException {
+        if (dictionary == null) return newOutputStream(out, level);
+
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setLevel(level);
+        // the level is applied by the first deflate call: it must not be applied after the dictionary, it would discard it
+        deflater.deflate(new byte[0]);
+        deflater.setDictionary(dictionary.getContent());
+        return new EntryDeflaterOutputStream(out, deflater);
+    }
+
+    // the raw deflate streams don't ask for the dictionary, it is set before reading them
+    @Override
+    public InputStream newInputStream(InputStream in, CompressionDictionary dictionary) throws IOException {
+        if (dictionary == null) return newInputStream(in);
+
+        Inflater inflater = new Inflater(true);
+        inflater.setDictionary(dictionary.getContent());
+        return new InflaterInputStream(in, inflater, BUFFER_SIZE);
+    }
+
+    // pigz-style: the blocks of the file are deflated in parallel by the pool
+    @Override
+    public OutputStream newParallelOutputStream(OutputStream out, int level, ExecutorService pool, int threads) {
+        return new ParallelDeflaterOutputStream(out, pool, level, threads * 2);
+    }
+
+    @Override
+    public InputStream newInputStream(InputStream in) {
+        return new InflaterInputStream(in, new Inflater(true), BUFFER_SIZE);
+    }
+
+    @Override
+    public String getStreamExtension() {
+        return "gz";
+    }
+
+    @Override
+    public OutputStream newStreamOutputStream(OutputStream out, int level, ExecutorService pool, int threads) throws IOException {
+        return ParallelDeflaterOutputStream.gzip(out, pool, level, threads * 2);
+    }
+
+    @Override
+    public InputStream newStreamInputStream(InputStream in) throws IOException {
+        return new GZIPInputStream(in, BUFFER_SIZE);
+    }
+
+    private static class EntryDeflaterOutputStream extends DeflaterOutputStream {
+        EntryDeflaterOutputStream(OutputStream out, Deflater deflater) {
+            super(out, deflater, BUFFER_SIZE);
+        }
+
+        // the deflater is reused by the next entry, and out still receives other data
+        @Override
+        public void close() throws IOException {
+            finish();
+        }
+    }
+}
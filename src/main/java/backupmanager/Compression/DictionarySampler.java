@@ -0,0 +1,80 @@
+package backupmanager.Compression;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backupmanager.Enums.CompressionModeEnum;
+
+/*
+ * Picks the samples to train the dictionary of a backup: small files spread over the whole tree, not only the first
+ * directory visited. The paths are chosen with a reservoir while the tree is walked (at most MAX_VISITED_FILES files,
+ * so a huge tree doesn't delay the backup) and only the chosen files are read.
+ * The seed is fixed: the same tree gives the same samples, and then the same dictionary.
+ */
+public class DictionarySampler {
+    private static final Logger logger = LoggerFactory.getLogger(DictionarySampler.class);
+    private static final int MAX_SAMPLES = 4096;
+    private static final int MAX_VISITED_FILES = 200_000;
+    private static final long MAX_SAMPLES_BYTES = 16L * 1024 * 1024;
+    private static final long SEED = 0x6264;
+
+    private DictionarySampler() {}
+
+    // the content of the sampled files, the ones that can't be read are skipped
+    public static List<byte[]> sample(Path directory, long maxFileSize) throws IOException {
+        List<Path> reservoir = new ArrayList<>();
+        SplittableRandom random = new SplittableRandom(SEED);
+        int[] candidates = {0};
+        int[] visited = {0};
+
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (Thread.currentThread().isInterrupted()) return FileVisitResult.TERMINATE;
+
+                if (attrs.isRegularFile() && attrs.size() > 0 && attrs.size() <= maxFileSize
+                        && CompressionAdvisor.adviseByName(file.getFileName().toString()) != CompressionModeEnum.Stored) {
+                    candidates[0]++;
+                    if (reservoir.size() < MAX_SAMPLES) {
+                        reservoir.add(file);
+                    } else {
+                        int index = random.nextInt(candidates[0]);
+                        if (index < MAX_SAMPLES) reservoir.set(index, file);
+                    }
+                }
+                return ++visited[0] < MAX_VISITED_FILES ? FileVisitResult.CONTINUE : FileVisitResult.TERMINATE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        List<byte[]> samples = new ArrayList<>(reservoir.size());
+        long bytes = 0;
+        for (Path file : reservoir) {
+            if (bytes >= MAX_SAMPLES_BYTES || Thread.currentThread().isInterrupted()) break;
+            try {
+                byte[] content = Files.readAllBytes(file);
+                samples.add(content);
+                bytes += content.length;
+            } catch (IOException e) {
+                logger.debug("Unable to read the sample " + file + ": " + e.getMessage());
+            }
+        }
+
+        logger.info("Dictionary samples: " + samples.size() + " of " + candidates[0] + " small files (" + bytes + " bytes)");
+        return samples;
+    }
+}
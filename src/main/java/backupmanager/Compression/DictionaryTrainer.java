@@ -0,0 +1,114 @@
+package backupmanager.Compression;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/*
+ * Trainer of the raw dictionaries, for the codecs that don't have one of their own (the preset dictionary of deflate).
+ * It is a simplified version of the cover algorithm of zstd: the samples are split in segments, every segment is scored
+ * by the d-grams it has in common with the other samples, and the best segments are picked greedily until the dictionary
+ * is full. When a segment is picked its d-grams don't count anymore, so the dictionary doesn't repeat the same content.
+ * The best segments are placed at the end of the dictionary, where the matches are nearer and cheaper to encode.
+ */
+public class DictionaryTrainer {
+    private static final int DGRAM_SIZE = 8;
+    private static final int SEGMENT_SIZE = 256;
+    private static final int HASH_BITS = 20;
+
+    private DictionaryTrainer() {}
+
+    // null if the samples have nothing in common
+    public static byte[] train(List<byte[]> samples, int maxSize) {
+        if (samples.size() < 2 || maxSize <= 0) return null;
+
+        // in how many samples every d-gram appears (the collisions of the hash only make the scores approximate)
+        int[] frequencies = new int[1 << HASH_BITS];
+        int[] lastSample = new int[1 << HASH_BITS];
+        for (int s = 0; s < samples.size(); s++) {
+            byte[] sample = samples.get(s);
+            for (int i = 0; i + DGRAM_SIZE <= sample.length; i++) {
+                int hash = hash(sample, i);
+                if (lastSample[hash] != s + 1) {
+                    lastSample[hash] = s + 1;
+                    frequencies[hash]++;
+                }
+            }
+        }
+
+        PriorityQueue<Segment> queue = new PriorityQueue<>((a, b) -> Long.compare(b.score, a.score));
+        for (byte[] sample : samples) {
+            for (int start = 0; start + DGRAM_SIZE <= sample.length; start += SEGMENT_SIZE) {
+                Segment segment = new Segment(sample, start, Math.min(SEGMENT_SIZE, sample.length - start));
+                segment.score = score(segment, frequencies);
+                if (segment.score > 0) queue.add(segment);
+            }
+        }
+
+        // lazy greedy: the score of a segment can only decrease, it is computed again only when it reaches the top
+        List<Segment> picked = new ArrayList<>();
+        int size = 0;
+        while (!queue.isEmpty() && size < maxSize) {
+            Segment segment = queue.poll();
+            long score = score(segment, frequencies);
+            if (score <= 0) continue;
+            if (!queue.isEmpty() && score < queue.peek().score) {
+                segment.score = score;
+                queue.add(segment);
+                continue;
+            }
+
+            picked.add(segment);
+            size += segment.length;
+            for (int i = segment.start; i + DGRAM_SIZE <= segment.start + segment.length; i++) {
+                frequencies[hash(segment.sample, i)] = 0;
+            }
+        }
+        if (picked.isEmpty()) return null;
+
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream(Math.min(size, maxSize));
+        for (int i = picked.size() - 1; i >= 0; i--) {
+            Segment segment = picked.get(i);
+            dictionary.write(segment.sample, segment.start, segment.length);
+        }
+        byte[] content = dictionary.toByteArray();
+
+        // the first segments picked are the last ones, what goes over the size is cut from the beginning
+        if (content.length <= maxSize) return content;
+        byte[] cut = new byte[maxSize];
+        System.arraycopy(content, content.length - maxSize, cut, 0, maxSize);
+        return cut;
+    }
+
+    // the d-grams found only in this sample don't help the others
+    private static long score(Segment segment, int[] frequencies) {
+        long score = 0;
+        for (int i = segment.start; i + DGRAM_SIZE <= segment.start + segment.length; i++) {
+            int frequency = frequencies[hash(segment.sample, i)];
+            if (frequency > 1) score += frequency;
+        }
+        return score;
+    }
+
+    private static int hash(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < DGRAM_SIZE; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return (int) ((value * 0x9E3779B97F4A7C15L) >>> (64 - HASH_BITS));
+    }
+
+    private static class Segment {
+        private final byte[] sample;
+        private final int start;
+        private final int length;
+        private long score;
+
+        Segment(byte[] sample, int start, int length) {
+            this.sample = sample;
+            this.start = start;
+            this.length = length;
+        }
+    }
+}
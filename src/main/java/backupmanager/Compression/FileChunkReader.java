@@ -0,0 +1,74 @@
+package backupmanager.Compression;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Reads a file as a sequence of buffers for the compression.
+ * The large files are mapped in memory a window at a time, so reading them costs a few system calls per window
+ * instead of one every few kilobytes; the small ones, where mapping costs more than it saves, are read in the
+ * direct buffer of the worker.
+ * The mapped windows must be read only with the ByteBuffer methods: if the file is truncated while it is mapped they
+ * throw an InternalError, while native code reading the same memory (zlib, the crc) would crash the whole VM.
+ * The size is checked before mapping each window, a file that shrank is read with the channel from there on;
+ * the readers turn the error of a file truncated while a window is read into an IOException (see truncated).
+ * The returned buffers are valid until the next call.
+ */
+public class FileChunkReader implements Closeable {
+    public static final long MAP_THRESHOLD = 1024 * 1024;
+    public static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer readBuffer;
+    private long mappedSize;
+    private long position;
+
+    // readBuffer: used for the files smaller than MAP_THRESHOLD, a direct one avoids a copy inside the channel
+    public FileChunkReader(Path file, ByteBuffer readBuffer) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.readBuffer = readBuffer;
+
+        long size = channel.size();
+        this.mappedSize = size >= MAP_THRESHOLD ? size : 0;
+    }
+
+    // the next part of the file, null at the end
+    public ByteBuffer next() throws IOException {
+        if (mappedSize > 0) {
+            if (position >= mappedSize) return null;
+
+            long length = Math.min(MAP_WINDOW, mappedSize - position);
+            if (channel.size() >= position + length) {
+                ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                position += length;
+                return window;
+            }
+            // truncated since it was opened: a window past its end couldn't be read
+            mappedSize = 0;
+        }
+
+        readBuffer.clear();
+        int read = channel.read(readBuffer, position);
+        if (read < 0) return null;
+        position += read;
+        return readBuffer.flip();
+    }
+
+    // the error thrown reading a mapped window of a file truncated in the meantime, as an I/O error of that file
+    public static IOException truncated(Path file, InternalError error) {
+        return new IOException("File \"" + file + "\" was truncated while it was read", error);
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
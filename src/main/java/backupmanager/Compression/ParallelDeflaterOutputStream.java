@@ -0,0 +1,197 @@
+package backupmanager.Compression;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/*
+ * pigz-style deflater: the input is split in fixed-size blocks that are compressed in parallel by the pool.
+ * Every block is primed with the last 32 KB of the previous block as dictionary and, except the last one,
+ * is terminated with a sync flush so it ends on a byte boundary. Joining the blocks in order gives a single
+ * standard raw deflate stream, readable by any inflater.
+ * With gzip() the stream is framed as a gzip file (header before the first block, crc and size after the last one),
+ * which is what the solid tar archives are written in.
+ */
+public class ParallelDeflaterOutputStream extends OutputStream {
+    public static final int BLOCK_SIZE = 1024 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff}; // deflate, no flags, no time, unknown os
+    private static final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+
+    private final OutputStream out;
+    private final ExecutorService pool;
+    private final int level;
+    private final int maxBlocksInFlight;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int blockCount;
+    private byte[] previousBlock;
+    private long bytesRead;
+    private long bytesWritten;
+    private boolean finished;
+    private boolean gzip;
+
+    public ParallelDeflaterOutputStream(OutputStream out, ExecutorService pool, int level, int maxBlocksInFlight) {
+        this.out = out;
+        this.pool = pool;
+        this.level = level;
+        this.maxBlocksInFlight = Math.max(1, maxBlocksInFlight);
+    }
+
+    // a complete gzip stream: header, blocks and trailer
+    public static ParallelDeflaterOutputStream gzip(OutputStream out, ExecutorService pool, int level, int maxBlocksInFlight) throws IOException {
+        ParallelDeflaterOutputStream stream = new ParallelDeflaterOutputStream(out, pool, level, maxBlocksInFlight);
+        stream.gzip = true;
+        out.write(GZIP_HEADER);
+        stream.bytesWritten += GZIP_HEADER.length;
+        return stream;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (finished) throw new IOException("Stream already finished");
+
+        crc.update(bytes, offset, length);
+        bytesRead += length;
+
+        while (length > 0) {
+            int copy = Math.min(length, block.length - blockCount);
+            System.arraycopy(bytes, offset, block, blockCount, copy);
+            blockCount += copy;
+            offset += copy;
+            length -= copy;
+
+            if (blockCount == block.length) {
+                submitBlock(false);
+            }
+        }
+    }
+
+    // compresses the last block and writes all the pending blocks, the underlying stream is not closed
+    public void finish() throws IOException {
+        if (finished) return;
+        submitBlock(true);
+        finished = true;
+        writeCompletedBlocks(0);
+
+        if (gzip) {
+            byte[] trailer = new byte[8];
+            putIntLE(trailer, 0, crc.getValue());
+            putIntLE(trailer, 4, bytesRead); // the size modulo 2^32
+            out.write(trailer);
+            bytesWritten += trailer.length;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            cancel();
+        }
+    }
+
+    public void cancel() {
+        for (Future<byte[]> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+    }
+
+    public long getCrc() {
+        return crc.getValue();
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    private void submitBlock(boolean last) throws IOException {
+        byte[] input = block;
+        int inputLength = blockCount;
+        byte[] dictionary = previousBlock;
+        int compressionLevel = level;
+
+        pending.add(pool.submit(() -> deflateBlock(input, inputLength, dictionary, compressionLevel, last)));
+
+        previousBlock = input;
+        block = last ? null : new byte[BLOCK_SIZE];
+        blockCount = 0;
+
+        writeCompletedBlocks(maxBlocksInFlight);
+    }
+
+    private void writeCompletedBlocks(int maxPending) throws IOException {
+        while (!pending.isEmpty() && (pending.size() > maxPending || pending.peek().isDone())) {
+            byte[] compressed;
+            try {
+                compressed = pending.peek().get();
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Compression interrupted");
+            } catch (ExecutionException e) {
+                cancel();
+                throw new IOException("Error while compressing a block: " + e.getCause().getMessage(), e.getCause());
+            }
+            pending.poll();
+            out.write(compressed);
+            bytesWritten += compressed.length;
+        }
+    }
+
+    private static void putIntLE(byte[] bytes, int offset, long value) {
+        for (int i = 0; i < 4; i++) {
+            bytes[offset + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    private static byte[] deflateBlock(byte[] input, int length, byte[] dictionary, int level, boolean last) {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setLevel(level);
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary, dictionary.length - DICTIONARY_SIZE, DICTIONARY_SIZE);
+        }
+        deflater.setInput(input, 0, length);
+
+        byte[] output = new byte[length + (length >> 3) + 64];
+        int count = 0;
+
+        if (last) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (count == output.length) output = Arrays.copyOf(output, output.length * 2);
+                count += deflater.deflate(output, count, output.length - count);
+            }
+        } else {
+            // with SYNC_FLUSH the deflater has flushed everything only when it has consumed the input without filling the
+            // output buffer; a call after a level change only applies the new level and returns without compressing anything
+            do {
+                if (count == output.length) output = Arrays.copyOf(output, output.length * 2);
+                count += deflater.deflate(output, count, output.length - count, Deflater.SYNC_FLUSH);
+            } while (count == output.length || !deflater.needsInput());
+        }
+
+        return Arrays.copyOf(output, count);
+    }
+}
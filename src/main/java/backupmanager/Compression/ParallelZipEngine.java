@@ -0,0 +1,1017 @@
+package backupmanager.Compression;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backupmanager.BackupOperations;
+import backupmanager.Deduplication.BlockSignature;
+import backupmanager.Deduplication.DeltaEncoder;
+import backupmanager.Deduplication.SignatureStore;
+import backupmanager.Entities.Backup;
+import backupmanager.Entities.BackupManifest;
+import backupmanager.Entities.BackupProgress;
+import backupmanager.Entities.ZippingContext;
+import backupmanager.Enums.CompressionModeEnum;
+import backupmanager.Enums.ConfigKey;
+import backupmanager.Json.JSONConfigReader;
+
+/*
+ * Compression engine used by the ZippingThread.
+ * Every file is deflated by a worker of a bounded pool into its own ScatterBuffer, while the zipping thread
+ * walks the tree and merges the completed entries in the archive in the same order they have been visited.
+ * In this way the archive layout and the progress callbacks are the same of a sequential zip,
+ * but all the cores are used to compress.
+ * The files are read with a FileChunkReader (mapped windows for the large ones) and compressed with the codec and the level
+ * chosen for the backup. The CompressionAdvisor decides for every file if it is stored or compressed at the fast or at the
+ * chosen level; a stored file (or one that doesn't get smaller when compressed) is copied from the file to the archive
+ * in a single pass by the zipping thread, which computes its crc while it is written.
+ * With a dictionary (useDictionary) the small files are compressed against it, so they get almost the ratio of a solid
+ * archive while every entry can still be read by itself.
+ * With the block signatures (useDeltas) an incremental backup saves a changed large file as a delta of its previous
+ * version: only the changed blocks are compressed and written.
+ * With the previous archive (recycleFrom) a full backup copies the compressed data of the unchanged files from it,
+ * so only the changed files are compressed again.
+ */
+public class ParallelZipEngine implements ArchiveEngine {
+    private static final Logger logger = LoggerFactory.getLogger(ParallelZipEngine.class);
+    private static final JSONConfigReader configReader = new JSONConfigReader(ConfigKey.CONFIG_FILE_STRING.getValue(), ConfigKey.CONFIG_DIRECTORY_STRING.getValue());
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int READ_BUFFER_SIZE = 256 * 1024;
+    private static final int MEMORY_LIMIT_PER_ENTRY = 1024 * 1024;
+    private static final int GAIN_CHECK_SIZE = 4 * 1024 * 1024;
+    private static final int CODEC_BUFFERED_BYTES = 128 * 1024; // what a codec can keep before writing its first blocks
+    private static final double THROUGHPUT_SMOOTHING = 0.3;
+    private static final long CHECKPOINT_INTERVAL_MILLIS = 5000;
+    private static final ThreadLocal<WorkerState> workerState = ThreadLocal.withInitial(WorkerState::new);
+    private static ExecutorService compressionPool;
+    private static int compressionThreads;
+    private static long largeFileThreshold;
+
+    private final ZipArchiveWriter writer;
+    private final ZipCheckpoint checkpoint;
+    private final Path targetZip;
+    private final Path tempDirectory;
+    private final String sourcePath;
+    private final String targetPath;
+    private final ZippingContext context;
+    private final CompressionCodec codec;
+    private final int level;
+    private volatile int totalFilesCount;
+    private volatile long totalBytes;
+    private final int window;
+    private final Deque<PendingEntry> pending = new ArrayDeque<>();
+    private final Set<ScatterBuffer> buffers = ConcurrentHashMap.newKeySet();
+    private final ThroughputMeter throughput = new ThroughputMeter(THROUGHPUT_SMOOTHING);
+    private final CompressionStatistics statistics = new CompressionStatistics();
+    private final AtomicInteger dictionaryEntries = new AtomicInteger();
+    private CompressionDictionary dictionary;
+    private long dictionaryMaxFileSize;
+    private SignatureStore signatures;
+    private BackupManifest previousManifest;
+    private long deltaMinFileSize;
+    private int deltaBlockSize;
+    private int deltaFiles;
+    private long deltaUnchangedBytes;
+    private ZipArchiveReader previousArchive;
+    private final AtomicInteger recycledEntries = new AtomicInteger();
+    private final AtomicLong recycledBytes = new AtomicLong();
+    private int filesWritten;
+    private long bytesRead;
+    private String lastFileWritten;
+    private boolean interrupted;
+    private volatile boolean cancelled;
+    private boolean completed;
+    private long lastCheckpointMillis = System.currentTimeMillis();
+
+    /*
+     * totalFilesCount and totalBytes are only estimates used for the progress (-1 if unknown): the tree is zipped while it is still
+     * being counted, so they can be refined later with setTotals and the exact ones are known only at the end.
+     * checkpoint: where the progress of the archive is recorded, if it already contains entries the archive is continued from them
+     * and the files already written are not compressed again. It can be null.
+     */
+    public ParallelZipEngine(Path targetZip, String sourcePath, String targetPath, int totalFilesCount, long totalBytes, ZippingContext context, ZipCheckpoint checkpoint) throws IOException {
+        this.checkpoint = checkpoint;
+        this.writer = openWriter(targetZip, checkpoint);
+        this.targetZip = targetZip;
+        this.tempDirectory = targetZip.toAbsolutePath().getParent();
+        this.sourcePath = sourcePath;
+        this.targetPath = targetPath;
+        this.totalFilesCount = totalFilesCount;
+        this.totalBytes = totalBytes;
+        this.context = context;
+        this.window = getCompressionThreads() * 4;
+
+        Backup backup = context != null ? context.backup : null;
+        this.codec = CompressionCodecs.get(backup != null ? backup.getCompressionCodec() : null);
+        int configuredLevel = backup != null ? backup.getCompressionLevel() : Backup.DEFAULT_COMPRESSION_LEVEL;
+        this.level = configuredLevel == Backup.DEFAULT_COMPRESSION_LEVEL ? codec.getDefaultLevel() : CompressionCodecs.clampLevel(codec, configuredLevel);
+        logger.info("Compression codec: " + codec.getName() + ", level " + level);
+    }
+
+    private static ZipArchiveWriter openWriter(Path targetZip, ZipCheckpoint checkpoint) throws IOException {
+        if (checkpoint != null && checkpoint.getOffset() > 0 && Files.exists(targetZip)) {
+            try {
+                ZipArchiveWriter writer = new ZipArchiveWriter(targetZip, checkpoint);
+                logger.info("Resuming the backup from its checkpoint: " + checkpoint.getEntries().size() + " entries already written");
+                return writer;
+            } catch (IOException e) {
+                logger.warn("Unable to resume the backup, starting it again: " + e.getMessage());
+            }
+        }
+        if (checkpoint != null) checkpoint.reset();
+        return new ZipArchiveWriter(targetZip);
+    }
+
+    /*
+     * Trains the dictionary of the small files on a sample of the source directory and writes it in the archive, it must be
+     * called before the first entry. A resumed archive keeps the dictionary it already contains, its entries need it.
+     * Without a dictionary (the codec doesn't support it or the samples have too little in common) the files are
+     * compressed by themselves as usual.
+     */
+    public void useDictionary(Path sourceDirectory) throws IOException {
+        dictionaryMaxFileSize = configReader.getDictionaryMaxFileSizeKB() * 1024L;
+        if (level == 0) return;
+
+        if (checkpoint != null) {
+            for (ZipCheckpoint.Entry entry : checkpoint.getEntries()) {
+                if (entry.name.equals(CompressionDictionary.ENTRY_NAME)) {
+                    dictionary = new CompressionDictionary(readStoredEntry(entry));
+                    logger.info("Dictionary of the resumed archive loaded (" + dictionary.size() + " bytes)");
+                    return;
+                }
+            }
+        }
+
+        List<byte[]> samples;
+        try {
+            samples = DictionarySampler.sample(sourceDirectory, dictionaryMaxFileSize);
+        } catch (IOException e) {
+            logger.warn("Unable to sample the files for the dictionary, they are compressed without it: " + e.getMessage());
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        byte[] content = codec.trainDictionary(samples, configReader.getDictionarySizeKB() * 1024);
+        if (content == null || content.length == 0) {
+            logger.info("No dictionary trained for codec " + codec.getName() + ", the small files are compressed without it");
+            return;
+        }
+        dictionary = new CompressionDictionary(content);
+        logger.info("Dictionary trained in " + (System.currentTimeMillis() - start) + " ms (" + content.length + " bytes)");
+
+        ScatterBuffer data = new ScatterBuffer(tempDirectory, MEMORY_LIMIT_PER_ENTRY);
+        data.write(content);
+        CompressedEntry entry = new CompressedEntry(CompressionDictionary.ENTRY_NAME, ZipEntry.STORED, dictionary.getId(), content.length, content.length, System.currentTimeMillis(), data);
+        try {
+            writer.writeEntry(entry);
+        } finally {
+            entry.release();
+        }
+    }
+
+    /*
+     * The large files are saved with their block signatures, and as a delta of the previous version when the
+     * previous backup has its signature. previousManifest: null for the full backup that starts a chain.
+     */
+    public void useDeltas(SignatureStore signatures, BackupManifest previousManifest) {
+        this.signatures = signatures;
+        this.previousManifest = previousManifest;
+        this.deltaMinFileSize = configReader.getDeltaMinFileSizeMB() * 1024L * 1024L;
+        this.deltaBlockSize = configReader.getDeltaBlockSizeKB() * 1024;
+    }
+
+    /*
+     * The unchanged files are copied from the previous archive of the backup with their compressed data, as they are.
+     * If the archive can't be read the files are compressed as usual.
+     */
+    public void recycleFrom(Path archive) {
+        try {
+            previousArchive = ZipArchiveReader.open(archive);
+            logger.info("The unchanged files are copied from the previous archive: " + archive.getFileName() + " (" + previousArchive.getEntries().size() + " entries)");
+        } catch (IOException e) {
+            logger.warn("Unable to read the previous archive " + archive + ", all the files are compressed: " + e.getMessage());
+        }
+    }
+
+    // true if the archive continues the one of an interrupted run
+    public boolean isResumed() {
+        return checkpoint != null && !checkpoint.getEntries().isEmpty();
+    }
+
+    // the content of a stored entry already written in the archive, checked with its crc
+    private byte[] readStoredEntry(ZipCheckpoint.Entry entry) throws IOException {
+        if (entry.method != ZipEntry.STORED || entry.size > Integer.MAX_VALUE) {
+            throw new IOException("Entry \"" + entry.name + "\" is not a stored entry");
+        }
+
+        try (FileChannel channel = FileChannel.open(targetZip, StandardOpenOption.READ)) {
+            ByteBuffer header = ZipArchiveWriter.allocate(ZipArchiveWriter.LOCAL_HEADER_SIZE);
+            readFully(channel, header, entry.offset);
+            if (header.getInt(0) != ZipArchiveWriter.LOCAL_HEADER_SIGNATURE) {
+                throw new IOException("Local header of entry \"" + entry.name + "\" not found at offset " + entry.offset);
+            }
+            long dataOffset = entry.offset + ZipArchiveWriter.LOCAL_HEADER_SIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+
+            ByteBuffer content = ByteBuffer.allocate((int) entry.size);
+            readFully(channel, content, dataOffset);
+            CRC32 crc = new CRC32();
+            crc.update(content.array());
+            if (crc.getValue() != entry.crc) {
+                throw new IOException("Entry \"" + entry.name + "\" is corrupted: crc mismatch");
+            }
+            return content.array();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new IOException("Unexpected end of the archive");
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    // shared with the SolidTarEngine and the RepositoryEngine
+    public static synchronized ExecutorService getCompressionPool() {
+        if (compressionPool == null || compressionPool.isShutdown()) {
+            int threads = getCompressionThreads();
+            AtomicInteger counter = new AtomicInteger(0);
+            compressionPool = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "zip-worker-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            logger.info("Compression pool created with " + threads + " threads");
+        }
+        return compressionPool;
+    }
+
+    private static synchronized long getLargeFileThreshold() {
+        if (largeFileThreshold == 0) {
+            largeFileThreshold = configReader.getParallelDeflateThresholdMB() * 1024L * 1024L;
+        }
+        return largeFileThreshold;
+    }
+
+    public static synchronized int getCompressionThreads() {
+        if (compressionThreads == 0) {
+            int configured = configReader.getCompressionThreads();
+            compressionThreads = configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
+        }
+        return compressionThreads;
+    }
+
+    @Override
+    public void addDirectory(String zipEntryName, BasicFileAttributes attrs) throws IOException {
+        if (isInterrupted() || isAlreadyWritten(zipEntryName)) return;
+
+        pending.add(new PendingEntry(zipEntryName, false, 0, CompletableFuture.completedFuture(CompressedEntry.directory(zipEntryName, attrs.lastModifiedTime().toMillis()))));
+        mergeCompletedEntries(false);
+    }
+
+    @Override
+    public void skipFile(String zipEntryName, long size) throws IOException {
+        if (isInterrupted()) return;
+
+        pending.add(new PendingEntry(zipEntryName, true, size, CompletableFuture.completedFuture(null)));
+        mergeCompletedEntries(false);
+    }
+
+    @Override
+    public void addContent(String zipEntryName, byte[] content, long lastModified) throws IOException {
+        if (isInterrupted() || isAlreadyWritten(zipEntryName)) return;
+
+        // at level 0 the content is stored from a buffer, there is no file to copy it from
+        if (level == 0) {
+            pending.add(new PendingEntry(zipEntryName, false, 0, CompletableFuture.completedFuture(storeContent(zipEntryName, content, lastModified))));
+            mergeCompletedEntries(false);
+            return;
+        }
+
+        Future<CompressedEntry> future = getCompressionPool().submit(() -> {
+            EntryCompressor compressor = new EntryCompressor(null);
+            try {
+                compressor.setMode(CompressionModeEnum.Strong);
+                compressor.update(ByteBuffer.wrap(content));
+                return compressor.finish(zipEntryName, lastModified);
+            } catch (IOException | RuntimeException e) {
+                compressor.discard();
+                throw e;
+            }
+        });
+        pending.add(new PendingEntry(zipEntryName, false, 0, future));
+        mergeCompletedEntries(false);
+    }
+
+    private CompressedEntry storeContent(String zipEntryName, byte[] content, long lastModified) throws IOException {
+        ScatterBuffer buffer = new ScatterBuffer(tempDirectory, MEMORY_LIMIT_PER_ENTRY);
+        buffers.add(buffer);
+        try {
+            buffer.write(content, 0, content.length);
+        } catch (IOException e) {
+            buffer.release();
+            buffers.remove(buffer);
+            throw e;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return new CompressedEntry(zipEntryName, ZipEntry.STORED, crc.getValue(), content.length, content.length, lastModified, buffer);
+    }
+
+    @Override
+    public void addFile(Path file, String zipEntryName, BasicFileAttributes attrs) throws IOException {
+        if (isInterrupted()) return;
+
+        // written before the backup was interrupted
+        if (isAlreadyWritten(zipEntryName, attrs)) {
+            skipFile(zipEntryName, attrs.size());
+            return;
+        }
+
+        long lastModified = attrs.lastModifiedTime().toMillis();
+
+        if (signatures != null && attrs.size() >= deltaMinFileSize) {
+            mergeCompletedEntries(true);
+            if (isInterrupted()) return;
+            saveLargeFileWithSignature(file, zipEntryName, lastModified, attrs.size());
+            return;
+        }
+
+        ZipArchiveReader.Entry recyclable = findRecyclable(zipEntryName, attrs);
+
+        if (attrs.size() >= getLargeFileThreshold()) {
+            // the previous entries must be in the archive before streaming this one
+            mergeCompletedEntries(true);
+            if (isInterrupted()) return;
+            if (recyclable != null && recycleLargeFile(file, zipEntryName, lastModified, recyclable)) return;
+            compressLargeFile(file, zipEntryName, lastModified, attrs.size(), null);
+            return;
+        }
+
+        CompressionDictionary entryDictionary = attrs.size() <= dictionaryMaxFileSize ? dictionary : null;
+        Future<CompressedEntry> future = getCompressionPool().submit(() -> recyclable != null
+            ? recycleFile(file, zipEntryName, lastModified, recyclable, entryDictionary)
+            : compressFile(file, zipEntryName, lastModified, attrs.size(), entryDictionary));
+        pending.add(new PendingEntry(zipEntryName, true, attrs.size(), future));
+        mergeCompletedEntries(false);
+    }
+
+    @Override
+    public void setTotals(int totalFilesCount, long totalBytes) {
+        this.totalFilesCount = totalFilesCount;
+        this.totalBytes = totalBytes;
+    }
+
+    // waits for all the submitted entries and writes them in the archive, then the backup is reported as completed
+    @Override
+    public void finish() throws IOException {
+        mergeCompletedEntries(true);
+
+        if (!isInterrupted() && !Thread.currentThread().isInterrupted()) {
+            // the archive is complete, it won't be resumed anymore
+            completed = true;
+            if (checkpoint != null) {
+                checkpoint.close();
+                ZipCheckpoint.delete(targetZip);
+            }
+            if (signatures != null) {
+                signatures.commit();
+            }
+
+            throughput.update(bytesRead, System.currentTimeMillis());
+            BackupProgress progress = new BackupProgress(100, filesWritten, filesWritten, bytesRead, bytesRead, writer.getBytesWritten(), throughput.getBytesPerSecond());
+            BackupOperations.UpdateProgressPercentage(progress, sourcePath, targetPath, context, lastFileWritten);
+        }
+    }
+
+    // the entry being merged is completed, then the walk stops and the archive is closed with its checkpoint
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public boolean isInterrupted() {
+        return interrupted || cancelled;
+    }
+
+    public CompressionStatistics getStatistics() {
+        return statistics;
+    }
+
+    private boolean isAlreadyWritten(String zipEntryName) {
+        return checkpoint != null && checkpoint.contains(zipEntryName);
+    }
+
+    // a file is skipped only if it hasn't changed since it was written, otherwise its entry is replaced
+    private boolean isAlreadyWritten(String zipEntryName, BasicFileAttributes attrs) {
+        if (checkpoint == null) return false;
+
+        ZipCheckpoint.Entry entry = checkpoint.getEntry(zipEntryName);
+        ZipCheckpoint.Entry delta = checkpoint.getEntry(DeltaEncoder.ENTRY_PREFIX + zipEntryName);
+        if (entry == null && delta == null) return false;
+
+        // the size of a delta is the one of its delta stream, not of the file
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        boolean unchanged = entry != null ? entry.size == attrs.size() && entry.lastModified == lastModified : delta.lastModified == lastModified;
+        if (unchanged) return true;
+
+        logger.info("File \"" + zipEntryName + "\" changed since it was written, it is written again");
+        writer.discardEntry(zipEntryName);
+        writer.discardEntry(DeltaEncoder.ENTRY_PREFIX + zipEntryName);
+        return false;
+    }
+
+    private void checkpointIfNeeded() throws IOException {
+        if (checkpoint == null) return;
+
+        long now = System.currentTimeMillis();
+        if (now - lastCheckpointMillis < CHECKPOINT_INTERVAL_MILLIS) return;
+        if (writer.checkpoint(checkpoint)) lastCheckpointMillis = now;
+    }
+
+    private void mergeCompletedEntries(boolean waitAll) throws IOException {
+        while (!pending.isEmpty() && !isInterrupted()) {
+            PendingEntry head = pending.peek();
+
+            // the window is not full: don't block the walk for an entry that is still compressing
+            if (!waitAll && pending.size() < window && !head.future.isDone()) {
+                return;
+            }
+
+            CompressedEntry entry;
+            try {
+                entry = head.future.get();
+            } catch (InterruptedException e) {
+                logger.info("Zipping process manually interrupted");
+                Thread.currentThread().interrupt();
+                interrupted = true;
+                cancelPendingEntries();
+                return;
+            } catch (CancellationException e) {
+                interrupted = true;
+                cancelPendingEntries();
+                return;
+            } catch (ExecutionException e) {
+                cancelPendingEntries();
+                if (e.getCause() instanceof IOException ioException) throw ioException;
+                throw new IOException(e.getCause());
+            }
+
+            pending.poll();
+            if (entry != null) {
+                try {
+                    writer.writeEntry(entry);
+                } finally {
+                    entry.release();
+                    if (entry.getData() != null) buffers.remove(entry.getData());
+                }
+            }
+
+            if (head.isFile) {
+                bytesRead += head.size;
+                fileWritten(head.name);
+            }
+            checkpointIfNeeded();
+        }
+    }
+
+    private void fileWritten(String zipEntryName) {
+        filesWritten++;
+        lastFileWritten = zipEntryName;
+        throughput.update(bytesRead, System.currentTimeMillis());
+        reportProgress(zipEntryName);
+    }
+
+    // the totals are estimates until the walk ends: 100 is reported only by finish, when the archive is complete
+    private void reportProgress(String zipEntryName) {
+        int files = totalFilesCount;
+        long bytes = totalBytes;
+        int percentage = BackupProgress.computePercentage(filesWritten, files, bytesRead, bytes);
+
+        BackupProgress progress = new BackupProgress(percentage, filesWritten, files >= 0 ? Math.max(files, filesWritten) : -1, bytesRead, bytes, writer.getBytesWritten(), throughput.getBytesPerSecond());
+        BackupOperations.UpdateProgressPercentage(progress, sourcePath, targetPath, context, zipEntryName);
+    }
+
+    /*
+     * A single huge file would keep only one worker busy for hours, so its blocks are deflated in parallel
+     * by all the workers and streamed directly in the archive.
+     * signature: the builder of the block signature of the file, computed while it is read (null if not needed).
+     */
+    private void compressLargeFile(Path file, String zipEntryName, long lastModified, long size, BlockSignature.Builder signature) throws IOException {
+        CompressionModeEnum mode = adviseLargeFile(file);
+        if (mode == CompressionModeEnum.Stored) {
+            storeLargeFile(file, zipEntryName, lastModified, size, signature);
+            return;
+        }
+
+        logger.debug("Compressing large file in parallel: " + zipEntryName);
+
+        OutputStream entryOut = writer.beginEntry(zipEntryName, codec.getZipMethod(), lastModified, size);
+        long dataStart = writer.getBytesWritten();
+        OutputStream codecOut = codec.newParallelOutputStream(entryOut, getLevel(mode), getCompressionPool(), getCompressionThreads());
+
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long[] bytesCompressed = new long[1];
+        try {
+            readLargeFile(file, zipEntryName, chunk -> {
+                while (chunk.hasRemaining()) {
+                    int len = Math.min(chunk.remaining(), buffer.length);
+                    chunk.get(buffer, 0, len);
+                    crc.update(buffer, 0, len);
+                    if (signature != null) signature.update(buffer, 0, len);
+                    codecOut.write(buffer, 0, len);
+                    bytesCompressed[0] += len;
+                }
+            });
+            codecOut.close();
+        } catch (InterruptedIOException e) {
+            cancelStream(codecOut);
+            logger.info("Zipping process manually interrupted");
+            interrupted = true;
+            return;
+        } catch (IOException | RuntimeException e) {
+            cancelStream(codecOut);
+            throw e;
+        }
+
+        writer.endEntry(crc.getValue(), bytesCompressed[0]);
+        statistics.record(mode, bytesCompressed[0], writer.getBytesWritten() - dataStart);
+        saveSignature(zipEntryName, signature, lastModified);
+        fileWritten(zipEntryName);
+        checkpointIfNeeded();
+    }
+
+    // a large file not worth compressing: it is copied in the archive in a single pass, its crc is computed while it is written
+    private void storeLargeFile(Path file, String zipEntryName, long lastModified, long sizeHint, BlockSignature.Builder signature) throws IOException {
+        logger.debug("Storing large file without compression: " + zipEntryName);
+
+        OutputStream entryOut = writer.beginEntry(zipEntryName, ZipEntry.STORED, lastModified, sizeHint);
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long[] size = new long[1];
+        try {
+            readLargeFile(file, zipEntryName, chunk -> {
+                while (chunk.hasRemaining()) {
+                    int len = Math.min(chunk.remaining(), buffer.length);
+                    chunk.get(buffer, 0, len);
+                    crc.update(buffer, 0, len);
+                    if (signature != null) signature.update(buffer, 0, len);
+                    entryOut.write(buffer, 0, len);
+                    size[0] += len;
+                }
+            });
+        } catch (InterruptedIOException e) {
+            logger.info("Zipping process manually interrupted");
+            interrupted = true;
+            return;
+        }
+
+        writer.endEntry(crc.getValue(), size[0]);
+        statistics.record(CompressionModeEnum.Stored, size[0], size[0]);
+        saveSignature(zipEntryName, signature, lastModified);
+        fileWritten(zipEntryName);
+        checkpointIfNeeded();
+    }
+
+    /*
+     * A large file of an incremental backup: if the previous backup saved its signature (and the signature is of the version
+     * in the manifest) only a delta is written, otherwise the whole file. The signature of this version is saved in both cases.
+     */
+    private void saveLargeFileWithSignature(Path file, String zipEntryName, long lastModified, long size) throws IOException {
+        BlockSignature previous = signatures.load(zipEntryName);
+        if (previous != null && (previousManifest == null || !previousManifest.hasVersion(zipEntryName, previous.getFileSize(), previous.getLastModified()))) {
+            logger.info("Signature of \"" + zipEntryName + "\" not of the previous version, the whole file is saved");
+            previous = null;
+        }
+
+        if (previous == null) {
+            compressLargeFile(file, zipEntryName, lastModified, size, new BlockSignature.Builder(deltaBlockSize));
+        } else {
+            writeDelta(file, zipEntryName, lastModified, size, previous);
+        }
+    }
+
+    // the file is written as the entry DeltaEncoder.ENTRY_PREFIX + name, compressed as a large file
+    private void writeDelta(Path file, String zipEntryName, long lastModified, long size, BlockSignature previous) throws IOException {
+        logger.debug("Writing the delta of large file: " + zipEntryName);
+
+        CompressionModeEnum mode = adviseLargeFile(file);
+        OutputStream entryOut = writer.beginEntry(DeltaEncoder.ENTRY_PREFIX + zipEntryName, codec.getZipMethod(), lastModified, size);
+        long dataStart = writer.getBytesWritten();
+        OutputStream codecOut = codec.newParallelOutputStream(entryOut, getLevel(mode == CompressionModeEnum.Stored ? CompressionModeEnum.Fast : mode), getCompressionPool(), getCompressionThreads());
+        CheckedOutputStream deltaOut = new CheckedOutputStream(codecOut, new CRC32());
+
+        BlockSignature.Builder signature = new BlockSignature.Builder(previous.getBlockSize());
+        DeltaEncoder encoder;
+        try {
+            encoder = new DeltaEncoder(previous, deltaOut, signature);
+            readLargeFile(file, zipEntryName, encoder::write);
+            encoder.finish();
+            codecOut.close();
+        } catch (InterruptedIOException e) {
+            cancelStream(codecOut);
+            logger.info("Zipping process manually interrupted");
+            interrupted = true;
+            return;
+        } catch (IOException | RuntimeException e) {
+            cancelStream(codecOut);
+            throw e;
+        }
+
+        writer.endEntry(deltaOut.getChecksum().getValue(), encoder.getDeltaSize());
+        statistics.record(mode, encoder.getSize(), writer.getBytesWritten() - dataStart);
+        deltaFiles++;
+        deltaUnchangedBytes += encoder.getCopiedBytes();
+        logger.info("Delta of \"" + zipEntryName + "\": " + encoder.getLiteralBytes() + " bytes changed, " + encoder.getCopiedBytes() + " unchanged");
+
+        saveSignature(zipEntryName, signature, lastModified);
+        fileWritten(zipEntryName);
+        checkpointIfNeeded();
+    }
+
+    // without its signature the next backup saves the whole file again, the backup itself is still valid
+    private void saveSignature(String zipEntryName, BlockSignature.Builder signature, long lastModified) {
+        if (signature == null) return;
+        try {
+            signatures.save(zipEntryName, signature.finish(lastModified));
+        } catch (IOException e) {
+            logger.warn("Unable to save the block signature of \"" + zipEntryName + "\": " + e.getMessage());
+        }
+    }
+
+    // the blocks still compressing are not needed anymore
+    private static void cancelStream(OutputStream codecOut) {
+        if (codecOut instanceof ParallelDeflaterOutputStream parallelOut) parallelOut.cancel();
+    }
+
+    // the level for the files compressed in the given mode, the fast one is never slower than the chosen one
+    private int getLevel(CompressionModeEnum mode) {
+        return mode == CompressionModeEnum.Fast ? Math.min(codec.getFastLevel(), level) : level;
+    }
+
+    private CompressionModeEnum adviseLargeFile(Path file) throws IOException {
+        if (level == 0) return CompressionModeEnum.Stored;
+
+        CompressionModeEnum mode = CompressionAdvisor.adviseByName(file.getFileName().toString());
+        if (mode != null) return mode;
+
+        ByteBuffer sample = ByteBuffer.allocate(CompressionAdvisor.SAMPLE_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (sample.hasRemaining() && channel.read(sample) > 0) {}
+        }
+        return CompressionAdvisor.adviseBySample(sample.flip());
+    }
+
+    // passes the file to the consumer in blocks, moving the progress while it is read
+    private void readLargeFile(Path file, String zipEntryName, ChunkConsumer consumer) throws IOException {
+        try (FileChunkReader reader = new FileChunkReader(file, ByteBuffer.allocate(BUFFER_SIZE))) {
+            ByteBuffer chunk;
+            while ((chunk = reader.next()) != null) {
+                while (chunk.hasRemaining()) {
+                    if (cancelled) {
+                        throw new InterruptedIOException("Compression interrupted");
+                    }
+                    int len = Math.min(chunk.remaining(), ParallelDeflaterOutputStream.BLOCK_SIZE);
+                    consumer.accept(chunk.slice(chunk.position(), len));
+                    chunk.position(chunk.position() + len);
+
+                    // a huge file moves the progress while it is compressed, not only when it ends
+                    bytesRead += len;
+                    if (throughput.update(bytesRead, System.currentTimeMillis())) {
+                        reportProgress(zipEntryName);
+                    }
+                }
+            }
+        } catch (InternalError e) {
+            throw FileChunkReader.truncated(file, e);
+        }
+    }
+
+    /*
+     * The entry of the previous archive with the same size and modification time (the archive keeps it in seconds) of the file,
+     * null if there isn't any or it can't be copied in this archive: another codec, a dictionary this archive doesn't have,
+     * or a compressed entry when the files must be stored. Its crc is checked against the file before copying it.
+     */
+    private ZipArchiveReader.Entry findRecyclable(String zipEntryName, BasicFileAttributes attrs) {
+        if (previousArchive == null) return null;
+
+        ZipArchiveReader.Entry entry = previousArchive.getEntry(zipEntryName);
+        if (entry == null || entry.isDirectory() || entry.getSize() != attrs.size()) return null;
+        if (entry.getLastModified() / 1000 != attrs.lastModifiedTime().toMillis() / 1000) return null;
+
+        if (entry.getMethod() != ZipEntry.STORED && (level == 0 || entry.getMethod() != codec.getZipMethod())) return null;
+        if (entry.getDictionaryId() != CompressionDictionary.NO_DICTIONARY && (dictionary == null || dictionary.getId() != entry.getDictionaryId())) return null;
+        return entry;
+    }
+
+    // a file unchanged since the previous archive is copied from it, if its crc is different it is compressed as usual
+    private CompressedEntry recycleFile(Path file, String zipEntryName, long lastModified, ZipArchiveReader.Entry previous, CompressionDictionary dictionary) throws IOException {
+        WorkerState state = workerState.get();
+        CRC32 crc = new CRC32();
+        try (FileChunkReader reader = new FileChunkReader(file, state.readBuffer)) {
+            ByteBuffer chunk;
+            while ((chunk = reader.next()) != null) {
+                // a mapped window is copied in the heap before the crc reads it (see FileChunkReader)
+                while (chunk.hasRemaining()) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException("Compression interrupted");
+                    }
+                    int len = Math.min(chunk.remaining(), state.input.length);
+                    chunk.get(state.input, 0, len);
+                    crc.update(state.input, 0, len);
+                }
+            }
+        } catch (InternalError e) {
+            throw FileChunkReader.truncated(file, e);
+        }
+
+        if (crc.getValue() != previous.getCrc()) {
+            return compressFile(file, zipEntryName, lastModified, previous.getSize(), dictionary);
+        }
+        recycledEntries.incrementAndGet();
+        recycledBytes.addAndGet(previous.getSize());
+        return previousArchive.copyEntry(previous, lastModified);
+    }
+
+    /*
+     * The large file version of recycleFile, on the zipping thread so the progress moves while its crc is checked.
+     * Returns false if the file has changed and it must be compressed.
+     */
+    private boolean recycleLargeFile(Path file, String zipEntryName, long lastModified, ZipArchiveReader.Entry previous) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long bytesReadBefore = bytesRead;
+        try {
+            readLargeFile(file, zipEntryName, chunk -> {
+                while (chunk.hasRemaining()) {
+                    int len = Math.min(chunk.remaining(), buffer.length);
+                    chunk.get(buffer, 0, len);
+                    crc.update(buffer, 0, len);
+                }
+            });
+        } catch (InterruptedIOException e) {
+            logger.info("Zipping process manually interrupted");
+            interrupted = true;
+            return true;
+        }
+
+        if (crc.getValue() != previous.getCrc()) {
+            // it is read again by the compression
+            bytesRead = bytesReadBefore;
+            return false;
+        }
+
+        writer.writeEntry(previousArchive.copyEntry(previous, lastModified));
+        recycledEntries.incrementAndGet();
+        recycledBytes.addAndGet(previous.getSize());
+        fileWritten(zipEntryName);
+        checkpointIfNeeded();
+        return true;
+    }
+
+    /*
+     * dictionary: the one of the archive for a small file, otherwise null.
+     * A stored file is not read here: the zipping thread copies it in the archive and computes its crc at the same time.
+     * If the first GAIN_CHECK_SIZE bytes don't get smaller the file is stored too, without compressing the rest of it.
+     */
+    private CompressedEntry compressFile(Path file, String zipEntryName, long lastModified, long size, CompressionDictionary dictionary) throws IOException {
+        CompressionModeEnum mode = level == 0 ? CompressionModeEnum.Stored : CompressionAdvisor.adviseByName(file.getFileName().toString());
+        if (mode == CompressionModeEnum.Stored) {
+            statistics.record(CompressionModeEnum.Stored, size, size);
+            return CompressedEntry.stored(zipEntryName, size, lastModified, file);
+        }
+
+        EntryCompressor compressor = new EntryCompressor(dictionary);
+        if (mode != null) compressor.setMode(mode);
+        boolean gainChecked = false;
+
+        try (FileChunkReader reader = new FileChunkReader(file, compressor.state.readBuffer)) {
+            ByteBuffer chunk;
+            while ((chunk = reader.next()) != null) {
+                // the first part of the file is the sample
+                if (mode == null) {
+                    mode = CompressionAdvisor.adviseBySample(chunk);
+                    if (mode == CompressionModeEnum.Stored) {
+                        compressor.discard();
+                        statistics.record(CompressionModeEnum.Stored, size, size);
+                        return CompressedEntry.stored(zipEntryName, size, lastModified, file);
+                    }
+                    compressor.setMode(mode);
+                }
+
+                while (chunk.hasRemaining()) {
+                    int len = Math.min(chunk.remaining(), GAIN_CHECK_SIZE);
+                    compressor.update(chunk.slice(chunk.position(), len));
+                    chunk.position(chunk.position() + len);
+
+                    // the sample was wrong: the rest of the file is not compressed, it is stored as it is
+                    if (!gainChecked && compressor.size >= GAIN_CHECK_SIZE) {
+                        gainChecked = true;
+                        if (!compressor.hasGain()) {
+                            logger.debug("No gain compressing the first blocks of \"" + zipEntryName + "\", the file is stored");
+                            compressor.discard();
+                            statistics.record(CompressionModeEnum.Stored, size, size);
+                            return CompressedEntry.stored(zipEntryName, size, lastModified, file);
+                        }
+                    }
+                }
+            }
+
+            CompressedEntry entry = compressor.finish(zipEntryName, lastModified);
+
+            // the compressed data is bigger: the file is stored as it is
+            if (entry.getSize() > 0 && entry.getCompressedSize() >= entry.getSize()) {
+                compressor.discard();
+                statistics.record(CompressionModeEnum.Stored, compressor.size, compressor.size);
+                return CompressedEntry.stored(zipEntryName, compressor.size, lastModified, file);
+            }
+            statistics.record(mode != null ? mode : CompressionModeEnum.Strong, entry.getSize(), entry.getCompressedSize());
+            if (entry.getDictionaryId() != CompressionDictionary.NO_DICTIONARY) dictionaryEntries.incrementAndGet();
+            return entry;
+        } catch (IOException | RuntimeException e) {
+            compressor.discard();
+            throw e;
+        } catch (InternalError e) {
+            compressor.discard();
+            throw FileChunkReader.truncated(file, e);
+        }
+    }
+
+    private void saveFinalCheckpoint() {
+        try {
+            // an entry still being streamed can't be checkpointed, the last saved checkpoint stays valid
+            if (writer.checkpoint(checkpoint)) {
+                logger.info("Checkpoint saved: the backup can be resumed from " + writer.getEntriesCount() + " entries");
+            } else {
+                logger.warn("Checkpoint not saved while an entry is being written, the backup will be resumed from the previous one");
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to save the checkpoint, the backup will be resumed from the previous one: " + e.getMessage());
+        } finally {
+            try {
+                checkpoint.close();
+            } catch (IOException e) {
+                logger.debug("Unable to close the checkpoint: " + e.getMessage());
+            }
+        }
+    }
+
+    private void cancelPendingEntries() {
+        for (PendingEntry entry : pending) {
+            entry.future.cancel(true);
+        }
+        pending.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        cancelPendingEntries();
+
+        // the channels would be closed by the I/O operations of an interrupted thread
+        boolean wasInterrupted = Thread.interrupted();
+        try {
+            // an incomplete backup is continued from the entries written so far
+            if (checkpoint != null && !completed) {
+                saveFinalCheckpoint();
+            }
+            writer.close();
+        } finally {
+            // release also the buffers of the entries cancelled while they were compressing
+            for (ScatterBuffer buffer : buffers) {
+                buffer.release();
+            }
+            buffers.clear();
+            closePreviousArchive();
+            if (wasInterrupted) Thread.currentThread().interrupt();
+        }
+        logger.info("Zip archive written with " + writer.getEntriesCount() + " entries");
+        logger.info("Compression statistics - " + statistics);
+        if (dictionary != null) {
+            logger.info("Entries compressed with the dictionary: " + dictionaryEntries.get());
+        }
+        if (previousArchive != null) {
+            logger.info("Entries copied from the previous archive: " + recycledEntries.get() + " (" + recycledBytes.get() + " bytes not compressed again)");
+        }
+        if (deltaFiles > 0) {
+            logger.info("Large files saved as delta: " + deltaFiles + " (" + deltaUnchangedBytes + " unchanged bytes not written)");
+        }
+    }
+
+    private void closePreviousArchive() {
+        if (previousArchive == null) return;
+        try {
+            previousArchive.close();
+        } catch (IOException e) {
+            logger.debug("Unable to close the previous archive: " + e.getMessage());
+        }
+    }
+
+    private static class PendingEntry {
+        private final String name;
+        private final boolean isFile;
+        private final long size;
+        private final Future<CompressedEntry> future;
+
+        PendingEntry(String name, boolean isFile, long size, Future<CompressedEntry> future) {
+            this.name = name;
+            this.isFile = isFile;
+            this.size = size;
+            this.future = future;
+        }
+    }
+
+    // compresses a single entry in its own ScatterBuffer, with the codec of the backup and the buffers of the worker running it
+    private class EntryCompressor {
+        private final WorkerState state = workerState.get();
+        private final CRC32 crc = new CRC32();
+        private final ScatterBuffer out = new ScatterBuffer(tempDirectory, MEMORY_LIMIT_PER_ENTRY);
+        private final CompressionDictionary dictionary;
+        private OutputStream codecOut;
+        private long size;
+
+        EntryCompressor(CompressionDictionary dictionary) {
+            this.dictionary = dictionary;
+            buffers.add(out);
+        }
+
+        // must be called before the first update, with the fast or the strong mode
+        void setMode(CompressionModeEnum mode) throws IOException {
+            codecOut = codec.newOutputStream(out, getLevel(mode), dictionary);
+        }
+
+        // the input is copied in the heap buffer before deflating it, it can be a mapped file
+        void update(ByteBuffer input) throws IOException {
+            while (input.hasRemaining()) {
+                // the entries still compressing are cancelled by interrupting their workers
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Compression interrupted");
+                }
+                int len = Math.min(input.remaining(), state.input.length);
+                input.get(state.input, 0, len);
+                crc.update(state.input, 0, len);
+                size += len;
+                codecOut.write(state.input, 0, len);
+            }
+        }
+
+        CompressedEntry finish(String zipEntryName, long lastModified) throws IOException {
+            // an empty file, never sampled
+            if (codecOut == null) setMode(CompressionModeEnum.Strong);
+            codecOut.close();
+            if (dictionary == null) {
+                return new CompressedEntry(zipEntryName, codec.getZipMethod(), crc.getValue(), size, out.size(), lastModified, out);
+            }
+            return new CompressedEntry(zipEntryName, codec.getZipMethod(), crc.getValue(), size, out.size(), lastModified, out, dictionary.getId());
+        }
+
+        // true if the data compressed so far got smaller, the bytes the codec still keeps in its buffers are tolerated
+        boolean hasGain() {
+            return out.size() + CODEC_BUFFERED_BYTES < size * CompressionAdvisor.STORED_RATIO;
+        }
+
+        void discard() {
+            out.release();
+            buffers.remove(out);
+        }
+    }
+
+    private interface ChunkConsumer {
+        void accept(ByteBuffer chunk) throws IOException;
+    }
+
+    // every worker thread reuses its own buffers
+    private static class WorkerState {
+        private final byte[] input = new byte[BUFFER_SIZE];
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,113 @@
+package backupmanager.Compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Output buffer used by a compression worker.
+ * The compressed bytes are kept in memory while they are small, when they grow over the memory limit they are
+ * moved to a temporary file inside the destination directory, so big files don't fill the heap while they wait
+ * for their turn to be merged in the archive.
+ */
+public class ScatterBuffer extends OutputStream {
+    private static final Logger logger = LoggerFactory.getLogger(ScatterBuffer.class);
+
+    private final Path tempDirectory;
+    private final int memoryLimit;
+    private byte[] memory = new byte[8192];
+    private int memoryCount;
+    private Path spillFile;
+    private FileChannel spillChannel;
+    private long size;
+    private boolean released;
+
+    public ScatterBuffer(Path tempDirectory, int memoryLimit) {
+        this.tempDirectory = tempDirectory;
+        this.memoryLimit = memoryLimit;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+        if (released) throw new IOException("Buffer already released");
+
+        if (spillChannel == null && memoryCount + length > memoryLimit) {
+            spill();
+        }
+
+        if (spillChannel != null) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+            while (buffer.hasRemaining()) {
+                spillChannel.write(buffer);
+            }
+        } else {
+            if (memoryCount + length > memory.length) {
+                memory = Arrays.copyOf(memory, Math.min(memoryLimit, Math.max(memory.length * 2, memoryCount + length)));
+            }
+            System.arraycopy(bytes, offset, memory, memoryCount, length);
+            memoryCount += length;
+        }
+        size += length;
+    }
+
+    private void spill() throws IOException {
+        spillFile = Files.createTempFile(tempDirectory, ".backup-", ".tmp");
+        spillChannel = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer buffer = ByteBuffer.wrap(memory, 0, memoryCount);
+        while (buffer.hasRemaining()) {
+            spillChannel.write(buffer);
+        }
+        memory = null;
+        memoryCount = 0;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    // copies all the buffered bytes to the target channel, returns the number of bytes copied
+    public synchronized long transferTo(WritableByteChannel target) throws IOException {
+        if (spillChannel == null) {
+            ByteBuffer buffer = ByteBuffer.wrap(memory, 0, memoryCount);
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            return memoryCount;
+        }
+
+        long copied = 0;
+        while (copied < size) {
+            copied += spillChannel.transferTo(copied, size - copied, target);
+        }
+        return copied;
+    }
+
+    public synchronized void release() {
+        if (released) return;
+        released = true;
+        memory = null;
+
+        if (spillChannel != null) {
+            try {
+                spillChannel.close();
+                Files.deleteIfExists(spillFile);
+            } catch (IOException e) {
+                logger.warn("Unable to delete temporary file " + spillFile + ": " + e.getMessage());
+            }
+        }
+    }
+}
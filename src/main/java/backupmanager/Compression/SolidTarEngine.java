@@ -0,0 +1,275 @@
+package backupmanager.Compression;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backupmanager.BackupOperations;
+import backupmanager.Entities.Backup;
+import backupmanager.Entities.BackupProgress;
+import backupmanager.Entities.ZippingContext;
+
+/*
+ * Engine of the solid archives: a tar stream compressed as a whole by the codec of the backup (a .tar.gz or .tar.zst file).
+ * The zip compresses every file by itself, so thousands of small similar files (sources, logs) can't share anything;
+ * here the compressor sees all of them in sequence and its window spans across files.
+ * The archive is written in a single pass without going back, so the file can be read (or copied elsewhere) while it grows.
+ * The files are read on the walking thread and the stream is compressed in parallel by the codec (blocks deflated by the
+ * pool for gzip, the zstd workers for zstd).
+ * A solid archive can't be continued after an interruption: the partial archive is deleted and the next run starts again.
+ */
+public class SolidTarEngine implements ArchiveEngine {
+    private static final Logger logger = LoggerFactory.getLogger(SolidTarEngine.class);
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int OUTPUT_BUFFER_SIZE = 1024 * 1024;
+    private static final double THROUGHPUT_SMOOTHING = 0.3;
+
+    private final Path targetArchive;
+    private final String sourcePath;
+    private final String targetPath;
+    private final ZippingContext context;
+    private final CompressionCodec codec;
+    private final int level;
+    private final CountingOutputStream fileOut;
+    private final OutputStream codecOut;
+    private final TarArchiveWriter tar;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ThroughputMeter throughput = new ThroughputMeter(THROUGHPUT_SMOOTHING);
+    private volatile int totalFilesCount;
+    private volatile long totalBytes;
+    private int filesWritten;
+    private long bytesRead;
+    private String lastFileWritten;
+    private boolean interrupted;
+    private volatile boolean cancelled;
+    private boolean completed;
+
+    // totalFilesCount and totalBytes are only estimates used for the progress (-1 if unknown), as for the ParallelZipEngine
+    public SolidTarEngine(Path targetArchive, String sourcePath, String targetPath, int totalFilesCount, long totalBytes, ZippingContext context) throws IOException {
+        this.targetArchive = targetArchive;
+        this.sourcePath = sourcePath;
+        this.targetPath = targetPath;
+        this.totalFilesCount = totalFilesCount;
+        this.totalBytes = totalBytes;
+        this.context = context;
+
+        Backup backup = context != null ? context.backup : null;
+        this.codec = CompressionCodecs.get(backup != null ? backup.getCompressionCodec() : null);
+        int configuredLevel = backup != null ? backup.getCompressionLevel() : Backup.DEFAULT_COMPRESSION_LEVEL;
+        this.level = configuredLevel == Backup.DEFAULT_COMPRESSION_LEVEL ? codec.getDefaultLevel() : CompressionCodecs.clampLevel(codec, configuredLevel);
+        logger.info("Solid archive compressed with: " + codec.getName() + ", level " + level);
+
+        this.fileOut = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(targetArchive.toFile()), OUTPUT_BUFFER_SIZE));
+        try {
+            this.codecOut = codec.newStreamOutputStream(fileOut, level, ParallelZipEngine.getCompressionPool(), ParallelZipEngine.getCompressionThreads());
+        } catch (IOException | RuntimeException e) {
+            fileOut.close();
+            throw e;
+        }
+        this.tar = new TarArchiveWriter(codecOut);
+    }
+
+    @Override
+    public void addDirectory(String entryName, BasicFileAttributes attrs) throws IOException {
+        if (isInterrupted()) return;
+
+        try {
+            tar.writeDirectory(entryName, attrs.lastModifiedTime().toMillis());
+        } catch (InterruptedIOException e) {
+            setInterrupted();
+        }
+    }
+
+    @Override
+    public void addFile(Path file, String entryName, BasicFileAttributes attrs) throws IOException {
+        if (isInterrupted()) return;
+
+        // the size in the header is the one seen by the walk: a file that changes while it is read is cut or padded to it
+        long size = attrs.size();
+        try (FileChunkReader reader = new FileChunkReader(file, readBuffer)) {
+            tar.beginEntry(entryName, size, attrs.lastModifiedTime().toMillis());
+
+            ByteBuffer chunk;
+            while (tar.getEntryRemaining() > 0 && (chunk = reader.next()) != null) {
+                while (chunk.hasRemaining() && tar.getEntryRemaining() > 0) {
+                    if (cancelled) {
+                        throw new InterruptedIOException("Compression interrupted");
+                    }
+                    int len = (int) Math.min(Math.min(chunk.remaining(), buffer.length), tar.getEntryRemaining());
+                    chunk.get(buffer, 0, len);
+                    tar.write(buffer, 0, len);
+
+                    bytesRead += len;
+                    if (throughput.update(bytesRead, System.currentTimeMillis())) {
+                        reportProgress(entryName);
+                    }
+                }
+            }
+
+            if (tar.getEntryRemaining() > 0) {
+                logger.warn("File \"" + entryName + "\" shrank while it was archived, " + tar.getEntryRemaining() + " bytes filled with zeros");
+                fillEntry();
+            }
+            tar.endEntry();
+        } catch (InterruptedIOException e) {
+            setInterrupted();
+            return;
+        } catch (InternalError e) {
+            throw FileChunkReader.truncated(file, e);
+        }
+
+        fileWritten(entryName);
+    }
+
+    @Override
+    public void skipFile(String entryName, long size) throws IOException {
+        if (isInterrupted()) return;
+
+        bytesRead += size;
+        fileWritten(entryName);
+    }
+
+    @Override
+    public void addContent(String entryName, byte[] content, long lastModified) throws IOException {
+        if (isInterrupted()) return;
+
+        try {
+            tar.writeEntry(entryName, content, lastModified);
+        } catch (InterruptedIOException e) {
+            setInterrupted();
+        }
+    }
+
+    @Override
+    public void setTotals(int totalFilesCount, long totalBytes) {
+        this.totalFilesCount = totalFilesCount;
+        this.totalBytes = totalBytes;
+    }
+
+    // closes the tar and the compressed stream, then the backup is reported as completed
+    @Override
+    public void finish() throws IOException {
+        if (isInterrupted()) return;
+
+        try {
+            tar.finish();
+            codecOut.close();
+            fileOut.flush();
+        } catch (InterruptedIOException e) {
+            setInterrupted();
+            return;
+        }
+        completed = true;
+
+        throughput.update(bytesRead, System.currentTimeMillis());
+        BackupProgress progress = new BackupProgress(100, filesWritten, filesWritten, bytesRead, bytesRead, fileOut.getCount(), throughput.getBytesPerSecond());
+        BackupOperations.UpdateProgressPercentage(progress, sourcePath, targetPath, context, lastFileWritten);
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public boolean isInterrupted() {
+        return interrupted || cancelled;
+    }
+
+    private void setInterrupted() {
+        logger.info("Zipping process manually interrupted");
+        interrupted = true;
+    }
+
+    private void fillEntry() throws IOException {
+        Arrays.fill(buffer, (byte) 0);
+        while (tar.getEntryRemaining() > 0) {
+            tar.write(buffer, 0, (int) Math.min(buffer.length, tar.getEntryRemaining()));
+        }
+    }
+
+    private void fileWritten(String entryName) {
+        filesWritten++;
+        lastFileWritten = entryName;
+        throughput.update(bytesRead, System.currentTimeMillis());
+        reportProgress(entryName);
+    }
+
+    // the totals are estimates until the walk ends: 100 is reported only by finish, when the archive is complete
+    private void reportProgress(String entryName) {
+        int files = totalFilesCount;
+        long bytes = totalBytes;
+        int percentage = BackupProgress.computePercentage(filesWritten, files, bytesRead, bytes);
+
+        BackupProgress progress = new BackupProgress(percentage, filesWritten, files >= 0 ? Math.max(files, filesWritten) : -1, bytesRead, bytes, fileOut.getCount(), throughput.getBytesPerSecond());
+        BackupOperations.UpdateProgressPercentage(progress, sourcePath, targetPath, context, entryName);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!completed) releaseCodecStream();
+            fileOut.close();
+        } catch (IOException e) {
+            if (completed) throw e;
+            logger.debug("Unable to close the partial archive: " + e.getMessage());
+        }
+
+        if (completed) {
+            logger.info("Solid archive written with " + tar.getEntriesCount() + " entries (" + tar.getBytesWritten() + " -> " + fileOut.getCount() + " bytes)");
+        } else if (Files.deleteIfExists(targetArchive)) {
+            // the stream can't be continued, it is started again by the next run
+            logger.info("Partial solid archive deleted: " + targetArchive);
+        }
+    }
+
+    // the blocks still compressing are not needed anymore, the other codecs release their native resources when closed
+    private void releaseCodecStream() {
+        if (codecOut instanceof ParallelDeflaterOutputStream parallelOut) {
+            parallelOut.cancel();
+            return;
+        }
+        try {
+            codecOut.close();
+        } catch (IOException e) {
+            logger.debug("Unable to close the compressed stream: " + e.getMessage());
+        }
+    }
+
+    // counts the compressed bytes written in the archive
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package backupmanager.Compression;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * Minimal tar writer (POSIX ustar, with pax headers for what doesn't fit in it) over any output stream.
+ * The archive is written strictly in sequence, without ever going back, so it can be compressed as a single
+ * stream and read while it is still being written.
+ * The names and the sizes that don't fit in the ustar fields (names longer than 100 bytes or not ascii, files of
+ * 8 GB or more) are written in a pax extended header before the entry, as GNU tar and bsdtar do.
+ */
+public class TarArchiveWriter implements Closeable {
+    public static final int BLOCK_SIZE = 512;
+    private static final int NAME_LENGTH = 100;
+    private static final long MAX_USTAR_SIZE = 077777777777L;
+    private static final byte TYPE_FILE = '0';
+    private static final byte TYPE_DIRECTORY = '5';
+    private static final byte TYPE_PAX_HEADER = 'x';
+    private static final int FILE_MODE = 0644;
+    private static final int DIRECTORY_MODE = 0755;
+
+    private final OutputStream out;
+    private final byte[] zeros = new byte[BLOCK_SIZE];
+    private long position;
+    private long entryRemaining = -1;
+    private long entrySize;
+    private int entriesCount;
+
+    public TarArchiveWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    // the root of the backup ("/") has no entry, its files are extracted in the chosen folder
+    public void writeDirectory(String name, long lastModified) throws IOException {
+        String entryName = toTarName(name);
+        if (entryName.isEmpty()) return;
+        if (!entryName.endsWith("/")) entryName += "/";
+        writeHeader(entryName, 0, lastModified, TYPE_DIRECTORY, DIRECTORY_MODE);
+        entriesCount++;
+    }
+
+    public void writeEntry(String name, byte[] content, long lastModified) throws IOException {
+        beginEntry(name, content.length, lastModified);
+        write(content, 0, content.length);
+        endEntry();
+    }
+
+    // the size is written in the header before the data: exactly size bytes must be written before endEntry
+    public void beginEntry(String name, long size, long lastModified) throws IOException {
+        if (entryRemaining >= 0) throw new IllegalStateException("An entry is still being written");
+
+        writeHeader(toTarName(name), size, lastModified, TYPE_FILE, FILE_MODE);
+        entryRemaining = size;
+        entrySize = size;
+    }
+
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (length > entryRemaining) throw new IOException("Entry data bigger than its size (" + entrySize + " bytes)");
+
+        out.write(bytes, offset, length);
+        entryRemaining -= length;
+        position += length;
+    }
+
+    public long getEntryRemaining() {
+        return entryRemaining;
+    }
+
+    public void endEntry() throws IOException {
+        if (entryRemaining != 0) throw new IOException("Entry data shorter than its size: " + entryRemaining + " bytes missing");
+
+        pad();
+        entryRemaining = -1;
+        entriesCount++;
+    }
+
+    // the two empty blocks closing the archive, the stream is not closed
+    public void finish() throws IOException {
+        out.write(zeros);
+        out.write(zeros);
+        position += 2 * BLOCK_SIZE;
+    }
+
+    public long getBytesWritten() {
+        return position;
+    }
+
+    public int getEntriesCount() {
+        return entriesCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeHeader(String name, long size, long lastModified, byte type, int mode) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        boolean paxName = nameBytes.length > NAME_LENGTH || !isAscii(nameBytes);
+        boolean paxSize = size > MAX_USTAR_SIZE;
+
+        if (paxName || paxSize) {
+            StringBuilder records = new StringBuilder();
+            if (paxName) records.append(paxRecord("path", name));
+            if (paxSize) records.append(paxRecord("size", Long.toString(size)));
+
+            byte[] content = records.toString().getBytes(StandardCharsets.UTF_8);
+            out.write(header(truncate("PaxHeaders/" + name), content.length, lastModified, TYPE_PAX_HEADER, FILE_MODE));
+            position += BLOCK_SIZE;
+            out.write(content);
+            position += content.length;
+            pad();
+        }
+
+        out.write(header(paxName ? truncate(name) : nameBytes, paxSize ? 0 : size, lastModified, type, mode));
+        position += BLOCK_SIZE;
+    }
+
+    private static byte[] header(byte[] name, long size, long lastModified, byte type, int mode) {
+        byte[] header = new byte[BLOCK_SIZE];
+        System.arraycopy(name, 0, header, 0, name.length);
+        putOctal(header, 100, 8, mode);
+        putOctal(header, 108, 8, 0); // uid
+        putOctal(header, 116, 8, 0); // gid
+        putOctal(header, 124, 12, size);
+        putOctal(header, 136, 12, Math.max(0, lastModified / 1000));
+        header[156] = type;
+        System.arraycopy("ustar\0".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 6);
+        header[263] = '0';
+        header[264] = '0';
+
+        // the checksum is computed with its own field filled with spaces
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        putOctal(header, 148, 7, checksum);
+        return header;
+    }
+
+    // the value in octal, padded with zeros and terminated by a NUL
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        String octal = Long.toOctalString(value);
+        int digits = length - 1;
+        for (int i = 0; i < digits; i++) {
+            int index = octal.length() - digits + i;
+            header[offset + i] = (byte) (index >= 0 ? octal.charAt(index) : '0');
+        }
+        header[offset + digits] = 0;
+    }
+
+    // "<length> <key>=<value>\n", where the length counts also its own digits
+    private static String paxRecord(String key, String value) {
+        int length = key.length() + value.getBytes(StandardCharsets.UTF_8).length + 3;
+        int total = length + Integer.toString(length).length();
+        if (Integer.toString(total).length() > Integer.toString(length).length()) total++;
+        return total + " " + key + "=" + value + "\n";
+    }
+
+    // the ascii name used by the readers that don't know the pax headers
+    private static byte[] truncate(String name) {
+        byte[] bytes = name.replaceAll("[^\\x20-\\x7E]", "_").getBytes(StandardCharsets.US_ASCII);
+        return bytes.length > NAME_LENGTH ? Arrays.copyOf(bytes, NAME_LENGTH) : bytes;
+    }
+
+    private static boolean isAscii(byte[] bytes) {
+        for (byte b : bytes) {
+            if (b < 0x20) return false; // the non ascii utf-8 bytes are negative
+        }
+        return true;
+    }
+
+    // the names in a tar are relative and separated by '/'
+    private static String toTarName(String name) {
+        String tarName = File.separatorChar == '/' ? name : name.replace(File.separatorChar, '/');
+        int start = 0;
+        while (start < tarName.length() && tarName.charAt(start) == '/') start++;
+        return tarName.substring(start);
+    }
+
+    private void pad() throws IOException {
+        int padding = (int) ((BLOCK_SIZE - position % BLOCK_SIZE) % BLOCK_SIZE);
+        if (padding > 0) {
+            out.write(zeros, 0, padding);
+            position += padding;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package backupmanager.Compression;
+
+/*
+ * Throughput smoothed with an exponentially weighted moving average.
+ * A sample is taken at most every SAMPLE_INTERVAL_MILLIS, so the rate doesn't jump with every small file
+ * and the ETA computed from it stays stable.
+ */
+public class ThroughputMeter {
+    public static final long SAMPLE_INTERVAL_MILLIS = 500;
+
+    private final double alpha;
+    private long lastSampleTime = -1;
+    private long lastSampleBytes;
+    private double bytesPerSecond = -1;
+
+    // alpha is the weight of the last sample, between 0 (never changes) and 1 (no smoothing)
+    public ThroughputMeter(double alpha) {
+        if (alpha <= 0 || alpha > 1) throw new IllegalArgumentException("Alpha must be in (0, 1]");
+        this.alpha = alpha;
+    }
+
+    // returns true if a new sample has been taken
+    public boolean update(long bytes, long nowMillis) {
+        if (lastSampleTime < 0) {
+            lastSampleTime = nowMillis;
+            lastSampleBytes = bytes;
+            return false;
+        }
+
+        long elapsed = nowMillis - lastSampleTime;
+        if (elapsed < SAMPLE_INTERVAL_MILLIS) return false;
+
+        double rate = (bytes - lastSampleBytes) * 1000.0 / elapsed;
+        bytesPerSecond = bytesPerSecond < 0 ? rate : alpha * rate + (1 - alpha) * bytesPerSecond;
+        lastSampleTime = nowMillis;
+        lastSampleBytes = bytes;
+        return true;
+    }
+
+    // -1 until the first sample
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+}
@@ -0,0 +1,364 @@
+package backupmanager.Compression;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+
+/*
+ * Reads the central directory of a zip archive (written by the ZipArchiveWriter or by any other zip tool): name,
+ * method, crc, sizes and position of every entry, with the extra fields of the ZipArchiveWriter (zip64, timestamp
+ * and dictionary). The compressed data of an entry can then be copied as it is in another archive, without
+ * inflating and deflating it again, or read with the codec of its method (and the dictionary of the archive).
+ * The channel is shared by all the threads, it is read only at absolute positions.
+ */
+public class ZipArchiveReader implements Closeable {
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+    private static final int DIRECTORY_ATTRIBUTE = 0x10;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Entry> entriesByName = new HashMap<>();
+    private CompressionDictionary dictionary;
+
+    private ZipArchiveReader(Path path, FileChannel channel) {
+        this.path = path;
+        this.channel = channel;
+    }
+
+    public static ZipArchiveReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        ZipArchiveReader reader = new ZipArchiveReader(path, channel);
+        try {
+            reader.readCentralDirectory();
+            return reader;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    // in the order of the central directory
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    // null if the archive doesn't have the entry
+    public Entry getEntry(String name) {
+        return entriesByName.get(name);
+    }
+
+    // the position of the compressed data of the entry, after its local header
+    public long getDataOffset(Entry entry) throws IOException {
+        ByteBuffer header = read(entry.offset, ZipArchiveWriter.LOCAL_HEADER_SIZE);
+        if (header.getInt(0) != ZipArchiveWriter.LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("Local header of entry \"" + entry.name + "\" not found at offset " + entry.offset);
+        }
+        return entry.offset + ZipArchiveWriter.LOCAL_HEADER_SIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+    }
+
+    // the entry with its compressed data copied from this archive, lastModified: the one of the file it has been checked against
+    public CompressedEntry copyEntry(Entry entry, long lastModified) throws IOException {
+        return CompressedEntry.copied(entry.name, entry.method, entry.crc, entry.size, entry.compressedSize, lastModified, entry.dictionaryId, channel, getDataOffset(entry));
+    }
+
+    // the content of the entry, decompressed
+    public InputStream newInputStream(Entry entry) throws IOException {
+        InputStream raw = new BufferedInputStream(new RangeInputStream(channel, getDataOffset(entry), entry.compressedSize, false), 64 * 1024);
+        if (entry.method == ZipEntry.STORED) return raw;
+
+        CompressionCodec codec = CompressionCodecs.getByZipMethod(entry.method);
+        if (codec == null) throw new IOException("No codec available for the compression method " + entry.method + " of entry \"" + entry.name + "\"");
+
+        CompressionDictionary entryDictionary = null;
+        if (entry.dictionaryId != CompressionDictionary.NO_DICTIONARY) {
+            entryDictionary = getDictionary();
+            if (entryDictionary == null || entryDictionary.getId() != entry.dictionaryId) {
+                throw new IOException("The dictionary of entry \"" + entry.name + "\" is missing in the archive");
+            }
+        }
+        return codec.newInputStream(raw, entryDictionary);
+    }
+
+    /*
+     * The content of a single entry, read by seeking to its local header without reading the central directory.
+     * Used for the entries found in the ArchiveCatalog: they can't use the dictionary of the archive.
+     */
+    public static InputStream openEntry(Path archive, long headerOffset, int method, long compressedSize) throws IOException {
+        CompressionCodec codec = method == ZipEntry.STORED ? null : CompressionCodecs.getByZipMethod(method);
+        if (method != ZipEntry.STORED && codec == null) throw new IOException("No codec available for the compression method " + method);
+
+        FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ZipArchiveWriter.allocate(ZipArchiveWriter.LOCAL_HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header, headerOffset + header.position()) < 0) throw new IOException("Unexpected end of the archive " + archive);
+            }
+            if (header.getInt(0) != ZipArchiveWriter.LOCAL_HEADER_SIGNATURE) {
+                throw new IOException("Local header not found at offset " + headerOffset + " of " + archive);
+            }
+            long dataOffset = headerOffset + ZipArchiveWriter.LOCAL_HEADER_SIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+
+            InputStream raw = new BufferedInputStream(new RangeInputStream(channel, dataOffset, compressedSize, true), 64 * 1024);
+            return codec == null ? raw : codec.newInputStream(raw, null);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // the dictionary saved in the archive (see CompressionDictionary), null if it doesn't have one
+    public synchronized CompressionDictionary getDictionary() throws IOException {
+        if (dictionary != null) return dictionary;
+
+        Entry entry = entriesByName.get(CompressionDictionary.ENTRY_NAME);
+        if (entry == null) return null;
+        if (entry.method != ZipEntry.STORED || entry.size > Integer.MAX_VALUE) throw new IOException("Invalid dictionary entry");
+
+        ByteBuffer content = read(getDataOffset(entry), (int) entry.size);
+        dictionary = new CompressionDictionary(content.array());
+        if (dictionary.getId() != entry.crc) throw new IOException("The dictionary of the archive is corrupted");
+        return dictionary;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readCentralDirectory() throws IOException {
+        long archiveSize = channel.size();
+        long endOffset = findEndOfCentralDirectory(archiveSize);
+        ByteBuffer end = read(endOffset, END_OF_CENTRAL_DIRECTORY_SIZE);
+
+        long count = end.getShort(10) & 0xFFFF;
+        long directorySize = end.getInt(12) & ZipArchiveWriter.ZIP64_MAGIC;
+        long directoryOffset = end.getInt(16) & ZipArchiveWriter.ZIP64_MAGIC;
+
+        // the real values are in the zip64 end of central directory, found by the locator just before
+        if (count == 0xFFFF || directorySize == ZipArchiveWriter.ZIP64_MAGIC || directoryOffset == ZipArchiveWriter.ZIP64_MAGIC) {
+            if (endOffset < 20) throw new IOException("Zip64 locator not found");
+            ByteBuffer locator = read(endOffset - 20, 20);
+            if (locator.getInt(0) != ZipArchiveWriter.ZIP64_LOCATOR_SIGNATURE) throw new IOException("Zip64 locator not found");
+            ByteBuffer zip64End = read(locator.getLong(8), 56);
+            if (zip64End.getInt(0) != ZipArchiveWriter.ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                throw new IOException("Zip64 end of central directory not found");
+            }
+            count = zip64End.getLong(32);
+            directorySize = zip64End.getLong(40);
+            directoryOffset = zip64End.getLong(48);
+        }
+
+        if (directorySize > Integer.MAX_VALUE || directoryOffset + directorySize > archiveSize) {
+            throw new IOException("Invalid central directory (" + directorySize + " bytes at offset " + directoryOffset + ")");
+        }
+
+        ByteBuffer directory = read(directoryOffset, (int) directorySize);
+        for (long i = 0; i < count; i++) {
+            Entry entry = readCentralHeader(directory);
+            entries.add(entry);
+            entriesByName.put(entry.name, entry);
+        }
+    }
+
+    // the end of central directory is the last record, followed only by the comment of the archive
+    private long findEndOfCentralDirectory(long archiveSize) throws IOException {
+        if (archiveSize < END_OF_CENTRAL_DIRECTORY_SIZE) throw new IOException("Not a zip archive");
+
+        int tailSize = (int) Math.min(archiveSize, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_LENGTH);
+        long tailOffset = archiveSize - tailSize;
+        ByteBuffer tail = read(tailOffset, tailSize);
+        for (int i = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == ZipArchiveWriter.END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                return tailOffset + i;
+            }
+        }
+        throw new IOException("End of central directory not found, the archive is incomplete");
+    }
+
+    private static Entry readCentralHeader(ByteBuffer directory) throws IOException {
+        if (directory.remaining() < CENTRAL_HEADER_SIZE || directory.getInt(directory.position()) != ZipArchiveWriter.CENTRAL_HEADER_SIGNATURE) {
+            throw new IOException("Invalid central directory header at " + directory.position());
+        }
+
+        int start = directory.position();
+        int method = directory.getShort(start + 10) & 0xFFFF;
+        long dosTime = directory.getInt(start + 12) & ZipArchiveWriter.ZIP64_MAGIC;
+        long crc = directory.getInt(start + 16) & ZipArchiveWriter.ZIP64_MAGIC;
+        long compressedSize = directory.getInt(start + 20) & ZipArchiveWriter.ZIP64_MAGIC;
+        long size = directory.getInt(start + 24) & ZipArchiveWriter.ZIP64_MAGIC;
+        int nameLength = directory.getShort(start + 28) & 0xFFFF;
+        int extraLength = directory.getShort(start + 30) & 0xFFFF;
+        int commentLength = directory.getShort(start + 32) & 0xFFFF;
+        int externalAttributes = directory.getInt(start + 38);
+        long offset = directory.getInt(start + 42) & ZipArchiveWriter.ZIP64_MAGIC;
+
+        byte[] nameBytes = new byte[nameLength];
+        directory.position(start + CENTRAL_HEADER_SIZE);
+        directory.get(nameBytes);
+        String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+        long lastModified = fromDosTime(dosTime);
+        long dictionaryId = CompressionDictionary.NO_DICTIONARY;
+
+        int extraEnd = directory.position() + extraLength;
+        while (directory.position() + 4 <= extraEnd) {
+            int id = directory.getShort() & 0xFFFF;
+            int length = directory.getShort() & 0xFFFF;
+            int dataStart = directory.position();
+            switch (id) {
+                case ZipArchiveWriter.ZIP64_EXTRA_ID:
+                    // only the values that don't fit in the header, in this order
+                    if (size == ZipArchiveWriter.ZIP64_MAGIC) size = directory.getLong();
+                    if (compressedSize == ZipArchiveWriter.ZIP64_MAGIC) compressedSize = directory.getLong();
+                    if (offset == ZipArchiveWriter.ZIP64_MAGIC) offset = directory.getLong();
+                    break;
+                case ZipArchiveWriter.EXTENDED_TIMESTAMP_EXTRA_ID:
+                    if (length >= 5 && (directory.get() & 1) != 0) {
+                        lastModified = (directory.getInt() & ZipArchiveWriter.ZIP64_MAGIC) * 1000;
+                    }
+                    break;
+                case CompressionDictionary.ZIP_EXTRA_ID:
+                    if (length >= 4) dictionaryId = directory.getInt() & ZipArchiveWriter.ZIP64_MAGIC;
+                    break;
+                default:
+                    break;
+            }
+            directory.position(dataStart + length);
+        }
+        directory.position(extraEnd + commentLength);
+
+        boolean isDirectory = name.endsWith("/") || (externalAttributes & DIRECTORY_ATTRIBUTE) != 0;
+        return new Entry(name, method, crc, size, compressedSize, offset, lastModified, isDirectory, dictionaryId);
+    }
+
+    // the dos time of the header has a precision of two seconds, it is used only without the timestamp extra field
+    private static long fromDosTime(long dosTime) {
+        try {
+            LocalDateTime time = LocalDateTime.of((int) ((dosTime >> 25) & 0x7F) + 1980, (int) ((dosTime >> 21) & 0x0F), (int) ((dosTime >> 16) & 0x1F),
+                (int) ((dosTime >> 11) & 0x1F), (int) ((dosTime >> 5) & 0x3F), (int) ((dosTime << 1) & 0x3E));
+            return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ZipArchiveWriter.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) throw new IOException("Unexpected end of the archive " + path);
+        }
+        return buffer.flip();
+    }
+
+    // the compressed data of an entry, read from the shared channel (or from its own one, closed with the stream)
+    private static class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private final boolean ownChannel;
+        private long position;
+        private long remaining;
+
+        RangeInputStream(FileChannel channel, long position, long length, boolean ownChannel) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+            this.ownChannel = ownChannel;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (ownChannel) channel.close();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (remaining <= 0) return -1;
+            int read = channel.read(ByteBuffer.wrap(bytes, offset, (int) Math.min(length, remaining)), position);
+            if (read < 0) throw new IOException("Unexpected end of the archive");
+            position += read;
+            remaining -= read;
+            return read;
+        }
+    }
+
+    // an entry of the central directory
+    public static class Entry {
+        private final String name;
+        private final int method;
+        private final long crc;
+        private final long size;
+        private final long compressedSize;
+        private final long offset;
+        private final long lastModified;
+        private final boolean directory;
+        private final long dictionaryId;
+
+        Entry(String name, int method, long crc, long size, long compressedSize, long offset, long lastModified, boolean directory, long dictionaryId) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.compressedSize = compressedSize;
+            this.offset = offset;
+            this.lastModified = lastModified;
+            this.directory = directory;
+            this.dictionaryId = dictionaryId;
+        }
+
+        public String getName() {
+            return name;
+        }
+        public int getMethod() {
+            return method;
+        }
+        public long getCrc() {
+            return crc;
+        }
+        public long getSize() {
+            return size;
+        }
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+        // the offset of the local header
+        public long getOffset() {
+            return offset;
+        }
+        public long getLastModified() {
+            return lastModified;
+        }
+        public boolean isDirectory() {
+            return directory;
+        }
+        public long getDictionaryId() {
+            return dictionaryId;
+        }
+    }
+}
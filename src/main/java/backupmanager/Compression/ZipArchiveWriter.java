@@ -0,0 +1,521 @@
+package backupmanager.Compression;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Minimal zip writer that works on already compressed entries.
+ * ZipOutputStream can only deflate the data by itself on the calling thread, so to let many workers compress at
+ * the same time we write the zip structures (local headers, central directory, zip64 records) ourselves and
+ * copy the raw compressed bytes produced by the workers.
+ */
+public class ZipArchiveWriter implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ZipArchiveWriter.class);
+
+    static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+    static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    static final int LOCAL_HEADER_SIZE = 30;
+    static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    static final int ZIP64_EXTRA_ID = 0x0001;
+    static final int EXTENDED_TIMESTAMP_EXTRA_ID = 0x5455;
+    private static final int UTF8_FLAG = 0x0800;
+    private static final int VERSION_STORED = 10;
+    private static final int VERSION_DEFLATED = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int VERSION_OTHER_METHOD = 63; // zstd and the other methods added by the later versions of the format
+
+    // streamed entries bigger than this reserve the zip64 extra field, the deflate output can be slightly bigger than the input
+    private static final long ZIP64_RESERVE_THRESHOLD = 0xF0000000L;
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+
+    private final FileChannel channel;
+    private final List<CentralDirectoryRecord> centralDirectory = new ArrayList<>();
+    private long position;
+    private boolean closed;
+    private CentralDirectoryRecord streamingRecord;
+    private long streamingDataStart;
+    private int checkpointedEntries;
+    private byte[] copyBuffer;
+    private ByteBuffer readBuffer;
+
+    public ZipArchiveWriter(Path target) throws IOException {
+        this.channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.position = 0;
+    }
+
+    // continues the archive from the last commit of the checkpoint, what has been written after it is discarded
+    public ZipArchiveWriter(Path target, ZipCheckpoint checkpoint) throws IOException {
+        this.channel = FileChannel.open(target, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < checkpoint.getOffset()) {
+                throw new IOException("The archive is shorter than its checkpoint (" + channel.size() + " < " + checkpoint.getOffset() + " bytes)");
+            }
+            channel.truncate(checkpoint.getOffset());
+            channel.position(checkpoint.getOffset());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        this.position = checkpoint.getOffset();
+        for (ZipCheckpoint.Entry entry : checkpoint.getEntries()) {
+            centralDirectory.add(new CentralDirectoryRecord(entry));
+        }
+        this.checkpointedEntries = centralDirectory.size();
+    }
+
+    public void writeDirectory(String name, long lastModified) throws IOException {
+        writeEntry(CompressedEntry.directory(name, lastModified));
+    }
+
+    public void writeEntry(CompressedEntry entry) throws IOException {
+        if (streamingRecord != null) throw new IllegalStateException("An entry is still being streamed");
+
+        // the crc and the size of a stored file are the ones of the bytes actually copied
+        if (entry.getSourceFile() != null) {
+            writeFile(entry);
+            return;
+        }
+
+        CentralDirectoryRecord record = new CentralDirectoryRecord(entry, position);
+
+        ByteBuffer header = record.localHeader(false);
+        writeFully(header);
+
+        if (entry.getData() != null) {
+            long copied = entry.getData().transferTo(channel);
+            if (copied != entry.getCompressedSize()) {
+                throw new IOException("Compressed data size mismatch for entry \"" + entry.getName() + "\": expected " + entry.getCompressedSize() + " bytes, copied " + copied);
+            }
+            position += copied;
+        } else if (entry.getSourceArchive() != null) {
+            position += transferArchiveData(entry);
+        }
+
+        centralDirectory.add(record);
+    }
+
+    /*
+     * Copies the file of a stored entry in a single pass, computing its crc while it is written: the local header is patched
+     * by endEntry, so a file changed or truncated while it is copied gives an entry that is still consistent.
+     * The mapped windows are copied in the heap first, see FileChunkReader.
+     */
+    private void writeFile(CompressedEntry entry) throws IOException {
+        OutputStream out = beginEntry(entry.getName(), ZipEntry.STORED, entry.getLastModified(), entry.getSize());
+
+        if (copyBuffer == null) {
+            copyBuffer = new byte[COPY_BUFFER_SIZE];
+            readBuffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+        }
+        CRC32 crc = new CRC32();
+        long size = 0;
+        try (FileChunkReader reader = new FileChunkReader(entry.getSourceFile(), readBuffer)) {
+            ByteBuffer chunk;
+            while ((chunk = reader.next()) != null) {
+                while (chunk.hasRemaining()) {
+                    int len = Math.min(chunk.remaining(), copyBuffer.length);
+                    chunk.get(copyBuffer, 0, len);
+                    crc.update(copyBuffer, 0, len);
+                    out.write(copyBuffer, 0, len);
+                    size += len;
+                }
+            }
+        } catch (InternalError e) {
+            throw FileChunkReader.truncated(entry.getSourceFile(), e);
+        }
+
+        if (size != entry.getSize()) {
+            logger.warn("File \"" + entry.getSourceFile() + "\" changed while it was being zipped: expected " + entry.getSize() + " bytes, copied " + size);
+        }
+        endEntry(crc.getValue(), size);
+    }
+
+    // copies the compressed data of an entry of another archive, as it is
+    private long transferArchiveData(CompressedEntry entry) throws IOException {
+        long expected = entry.getCompressedSize();
+        long copied = 0;
+        while (copied < expected) {
+            long transferred = entry.getSourceArchive().transferTo(entry.getSourceOffset() + copied, expected - copied, channel);
+            if (transferred <= 0) break;
+            copied += transferred;
+        }
+        if (copied != expected) {
+            throw new IOException("Data of entry \"" + entry.getName() + "\" truncated in its source archive: expected " + expected + " bytes, copied " + copied);
+        }
+        return copied;
+    }
+
+    /**
+     * Starts an entry whose compressed data is not known yet, the data has to be written in the returned stream.
+     * CRC and sizes are patched in the local header by {@link #endEntry(long, long)}.
+     *
+     * @param sizeHint The expected uncompressed size, used to decide if the zip64 fields must be reserved
+     */
+    public OutputStream beginEntry(String name, int method, long lastModified, long sizeHint) throws IOException {
+        if (streamingRecord != null) throw new IllegalStateException("An entry is still being streamed");
+
+        streamingRecord = new CentralDirectoryRecord(name, method, lastModified, position, sizeHint >= ZIP64_RESERVE_THRESHOLD);
+        writeFully(streamingRecord.localHeader(streamingRecord.zip64Reserved));
+        streamingDataStart = position;
+
+        return new EntryOutputStream();
+    }
+
+    public void endEntry(long crc, long size) throws IOException {
+        if (streamingRecord == null) throw new IllegalStateException("No entry is being streamed");
+
+        CentralDirectoryRecord record = streamingRecord;
+        streamingRecord = null;
+        record.crc = crc;
+        record.size = size;
+        record.compressedSize = position - streamingDataStart;
+
+        if (!record.zip64Reserved && (record.size >= ZIP64_MAGIC || record.compressedSize >= ZIP64_MAGIC)) {
+            throw new IOException("Entry \"" + record.getName() + "\" is too big for the space reserved in its local header");
+        }
+
+        // patch the local header with the real values
+        ByteBuffer patch = allocate(12);
+        patch.putInt((int) crc);
+        patch.putInt((int) (record.zip64Reserved ? ZIP64_MAGIC : record.compressedSize));
+        patch.putInt((int) (record.zip64Reserved ? ZIP64_MAGIC : record.size));
+        writeAt(patch.flip(), record.offset + 14);
+
+        if (record.zip64Reserved) {
+            ByteBuffer zip64 = allocate(16);
+            zip64.putLong(record.size);
+            zip64.putLong(record.compressedSize);
+            writeAt(zip64.flip(), record.offset + LOCAL_HEADER_SIZE + record.name.length + 4);
+        }
+
+        centralDirectory.add(record);
+    }
+
+    /*
+     * Syncs the archive to the disk and commits in the checkpoint the entries written since the previous call.
+     * Returns false if an entry is being streamed: the archive is not at an entry boundary.
+     */
+    public boolean checkpoint(ZipCheckpoint checkpoint) throws IOException {
+        if (streamingRecord != null) return false;
+
+        channel.force(false);
+        List<ZipCheckpoint.Entry> entries = new ArrayList<>();
+        for (CentralDirectoryRecord record : centralDirectory.subList(checkpointedEntries, centralDirectory.size())) {
+            entries.add(record.toCheckpointEntry());
+        }
+        checkpoint.commit(position, entries);
+        checkpointedEntries = centralDirectory.size();
+        return true;
+    }
+
+    /*
+     * Removes an entry of the resumed archive from the central directory, the file is written again: its old data stays
+     * in the archive but it is not listed anymore. Returns false if the checkpoint doesn't have the entry.
+     */
+    public boolean discardEntry(String name) {
+        for (int i = 0; i < checkpointedEntries; i++) {
+            if (centralDirectory.get(i).getName().equals(name)) {
+                centralDirectory.remove(i);
+                checkpointedEntries--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getEntriesCount() {
+        return centralDirectory.size();
+    }
+
+    public long getBytesWritten() {
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+
+        try {
+            long centralDirectoryOffset = position;
+            for (CentralDirectoryRecord record : centralDirectory) {
+                writeFully(record.centralHeader());
+            }
+            long centralDirectorySize = position - centralDirectoryOffset;
+            writeEndOfCentralDirectory(centralDirectoryOffset, centralDirectorySize);
+            logger.debug("Zip archive closed with " + centralDirectory.size() + " entries (" + position + " bytes)");
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeEndOfCentralDirectory(long centralDirectoryOffset, long centralDirectorySize) throws IOException {
+        int count = centralDirectory.size();
+        boolean zip64 = count >= 0xFFFF || centralDirectoryOffset >= ZIP64_MAGIC || centralDirectorySize >= ZIP64_MAGIC;
+
+        if (zip64) {
+            long zip64EndOffset = position;
+
+            ByteBuffer end = allocate(56);
+            end.putInt(ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+            end.putLong(44); // size of the remaining record
+            end.putShort((short) VERSION_ZIP64);
+            end.putShort((short) VERSION_ZIP64);
+            end.putInt(0);
+            end.putInt(0);
+            end.putLong(count);
+            end.putLong(count);
+            end.putLong(centralDirectorySize);
+            end.putLong(centralDirectoryOffset);
+            writeFully(end.flip());
+
+            ByteBuffer locator = allocate(20);
+            locator.putInt(ZIP64_LOCATOR_SIGNATURE);
+            locator.putInt(0);
+            locator.putLong(zip64EndOffset);
+            locator.putInt(1);
+            writeFully(locator.flip());
+        }
+
+        ByteBuffer end = allocate(22);
+        end.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) Math.min(count, 0xFFFF));
+        end.putShort((short) Math.min(count, 0xFFFF));
+        end.putInt((int) Math.min(centralDirectorySize, ZIP64_MAGIC));
+        end.putInt((int) Math.min(centralDirectoryOffset, ZIP64_MAGIC));
+        end.putShort((short) 0); // comment length
+        writeFully(end.flip());
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer);
+        }
+    }
+
+    private void writeAt(ByteBuffer buffer, long at) throws IOException {
+        while (buffer.hasRemaining()) {
+            at += channel.write(buffer, at);
+        }
+    }
+
+    static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    static long toDosTime(long lastModified) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(lastModified), ZoneId.systemDefault());
+        if (time.getYear() < 1980) {
+            return (1 << 21) | (1 << 16); // 1980-01-01 00:00:00
+        }
+        return ((long) (time.getYear() - 1980) << 25)
+            | ((long) time.getMonthValue() << 21)
+            | ((long) time.getDayOfMonth() << 16)
+            | ((long) time.getHour() << 11)
+            | ((long) time.getMinute() << 5)
+            | ((long) time.getSecond() >> 1);
+    }
+
+    // the information needed to write the local header now and the central directory entry at the end
+    private static class CentralDirectoryRecord {
+        private final byte[] name;
+        private final int method;
+        private final long lastModified;
+        private final long dosTime;
+        private final long unixTime;
+        private final long offset;
+        private final boolean directory;
+        private final boolean zip64Reserved;
+        private final long dictionaryId;
+        private long crc;
+        private long compressedSize;
+        private long size;
+
+        CentralDirectoryRecord(CompressedEntry entry, long offset) {
+            this.name = entry.getName().getBytes(StandardCharsets.UTF_8);
+            this.method = entry.getMethod();
+            this.lastModified = entry.getLastModified();
+            this.dosTime = toDosTime(entry.getLastModified());
+            this.unixTime = entry.getLastModified() / 1000;
+            this.crc = entry.getCrc();
+            this.compressedSize = entry.getCompressedSize();
+            this.size = entry.getSize();
+            this.offset = offset;
+            this.directory = entry.isDirectory();
+            this.zip64Reserved = false;
+            this.dictionaryId = entry.getDictionaryId();
+        }
+
+        CentralDirectoryRecord(String name, int method, long lastModified, long offset, boolean zip64Reserved) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.method = method;
+            this.lastModified = lastModified;
+            this.dosTime = toDosTime(lastModified);
+            this.unixTime = lastModified / 1000;
+            this.offset = offset;
+            this.directory = false;
+            this.zip64Reserved = zip64Reserved;
+            this.dictionaryId = CompressionDictionary.NO_DICTIONARY;
+        }
+
+        // an entry already written by a previous run of the backup
+        CentralDirectoryRecord(ZipCheckpoint.Entry entry) {
+            this.name = entry.name.getBytes(StandardCharsets.UTF_8);
+            this.method = entry.method;
+            this.lastModified = entry.lastModified;
+            this.dosTime = toDosTime(entry.lastModified);
+            this.unixTime = entry.lastModified / 1000;
+            this.crc = entry.crc;
+            this.compressedSize = entry.compressedSize;
+            this.size = entry.size;
+            this.offset = entry.offset;
+            this.directory = entry.directory;
+            this.zip64Reserved = false;
+            this.dictionaryId = entry.dictionaryId;
+        }
+
+        ZipCheckpoint.Entry toCheckpointEntry() {
+            return new ZipCheckpoint.Entry(getName(), method, crc, size, compressedSize, offset, lastModified, directory, dictionaryId);
+        }
+
+        String getName() {
+            return new String(name, StandardCharsets.UTF_8);
+        }
+
+        private boolean hasTimestamp() {
+            return unixTime >= 0 && unixTime <= Integer.MAX_VALUE;
+        }
+
+        private boolean hasDictionary() {
+            return dictionaryId != CompressionDictionary.NO_DICTIONARY;
+        }
+
+        private int versionNeeded(boolean zip64) {
+            switch (method) {
+                case ZipEntry.STORED:
+                    return zip64 ? VERSION_ZIP64 : VERSION_STORED;
+                case ZipEntry.DEFLATED:
+                    return zip64 ? VERSION_ZIP64 : VERSION_DEFLATED;
+                default:
+                    return VERSION_OTHER_METHOD;
+            }
+        }
+
+        ByteBuffer localHeader(boolean forceZip64) {
+            boolean zip64 = forceZip64 || size >= ZIP64_MAGIC || compressedSize >= ZIP64_MAGIC;
+            int extraLength = (zip64 ? 20 : 0) + (hasTimestamp() ? 9 : 0) + (hasDictionary() ? 8 : 0);
+
+            ByteBuffer buffer = allocate(LOCAL_HEADER_SIZE + name.length + extraLength);
+            buffer.putInt(LOCAL_HEADER_SIGNATURE);
+            buffer.putShort((short) versionNeeded(zip64));
+            buffer.putShort((short) UTF8_FLAG);
+            buffer.putShort((short) method);
+            buffer.putInt((int) dosTime);
+            buffer.putInt((int) crc);
+            buffer.putInt((int) (zip64 ? ZIP64_MAGIC : compressedSize));
+            buffer.putInt((int) (zip64 ? ZIP64_MAGIC : size));
+            buffer.putShort((short) name.length);
+            buffer.putShort((short) extraLength);
+            buffer.put(name);
+            if (zip64) {
+                // must stay the first extra field, endEntry() patches it at a fixed offset
+                buffer.putShort((short) ZIP64_EXTRA_ID);
+                buffer.putShort((short) 16);
+                buffer.putLong(size);
+                buffer.putLong(compressedSize);
+            }
+            putTimestamp(buffer);
+            putDictionaryId(buffer);
+            return buffer.flip();
+        }
+
+        ByteBuffer centralHeader() {
+            boolean sizeOverflow = size >= ZIP64_MAGIC;
+            boolean compressedOverflow = compressedSize >= ZIP64_MAGIC;
+            boolean offsetOverflow = offset >= ZIP64_MAGIC;
+            int zip64Length = (sizeOverflow ? 8 : 0) + (compressedOverflow ? 8 : 0) + (offsetOverflow ? 8 : 0);
+            boolean zip64 = zip64Length > 0;
+            int extraLength = (zip64 ? 4 + zip64Length : 0) + (hasTimestamp() ? 9 : 0) + (hasDictionary() ? 8 : 0);
+
+            ByteBuffer buffer = allocate(46 + name.length + extraLength);
+            buffer.putInt(CENTRAL_HEADER_SIGNATURE);
+            buffer.putShort((short) VERSION_ZIP64); // version made by
+            buffer.putShort((short) versionNeeded(zip64));
+            buffer.putShort((short) UTF8_FLAG);
+            buffer.putShort((short) method);
+            buffer.putInt((int) dosTime);
+            buffer.putInt((int) crc);
+            buffer.putInt((int) (compressedOverflow ? ZIP64_MAGIC : compressedSize));
+            buffer.putInt((int) (sizeOverflow ? ZIP64_MAGIC : size));
+            buffer.putShort((short) name.length);
+            buffer.putShort((short) extraLength);
+            buffer.putShort((short) 0); // comment length
+            buffer.putShort((short) 0); // disk number
+            buffer.putShort((short) 0); // internal attributes
+            buffer.putInt(directory ? 0x10 : 0); // external attributes
+            buffer.putInt((int) (offsetOverflow ? ZIP64_MAGIC : offset));
+            buffer.put(name);
+            if (zip64) {
+                buffer.putShort((short) ZIP64_EXTRA_ID);
+                buffer.putShort((short) zip64Length);
+                if (sizeOverflow) buffer.putLong(size);
+                if (compressedOverflow) buffer.putLong(compressedSize);
+                if (offsetOverflow) buffer.putLong(offset);
+            }
+            putTimestamp(buffer);
+            putDictionaryId(buffer);
+            return buffer.flip();
+        }
+
+        private void putTimestamp(ByteBuffer buffer) {
+            if (!hasTimestamp()) return;
+            buffer.putShort((short) EXTENDED_TIMESTAMP_EXTRA_ID);
+            buffer.putShort((short) 5);
+            buffer.put((byte) 1); // only the modification time is present
+            buffer.putInt((int) unixTime);
+        }
+
+        // the dictionary the entry has been compressed with, see CompressionDictionary
+        private void putDictionaryId(ByteBuffer buffer) {
+            if (!hasDictionary()) return;
+            buffer.putShort((short) CompressionDictionary.ZIP_EXTRA_ID);
+            buffer.putShort((short) 4);
+            buffer.putInt((int) dictionaryId);
+        }
+    }
+
+    // writes the data of the entry opened by beginEntry() directly in the archive
+    private class EntryOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            writeFully(ByteBuffer.wrap(bytes, offset, length));
+        }
+    }
+}
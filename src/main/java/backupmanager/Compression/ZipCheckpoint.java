@@ -0,0 +1,247 @@
+package backupmanager.Compression;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/*
+ * Checkpoint of an archive being written, kept next to it ("<archive>.checkpoint") until the backup completes.
+ * It records the entries completely written in the archive and the offset where the last of them ends, so an interrupted
+ * backup (paused, or stopped by a crash or a reboot) can continue from there instead of starting again.
+ * The file is append-only, one json line each: the source path first, then the entries and a commit line with the offset.
+ * The archive is synced to the disk before the commit line is written, so the entries before the last commit are always
+ * in the archive; the lines after it (an incomplete commit) are discarded.
+ * A file changed since it was written is written again by the resumed run: the later entry with the same name replaces
+ * the previous one.
+ */
+public class ZipCheckpoint implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ZipCheckpoint.class);
+    private static final String CHECKPOINT_EXTENSION = ".checkpoint";
+
+    private final Path file;
+    private final String sourcePath;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private long offset;
+    private long headerLength;
+    private FileChannel channel;
+
+    // an entry of the archive, with the information needed to write it in the central directory when the backup completes
+    public static class Entry {
+        final String name;
+        final int method;
+        final long crc;
+        final long size;
+        final long compressedSize;
+        final long offset;
+        final long lastModified;
+        final boolean directory;
+        final long dictionaryId;
+
+        Entry(String name, int method, long crc, long size, long compressedSize, long offset, long lastModified, boolean directory, long dictionaryId) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.compressedSize = compressedSize;
+            this.offset = offset;
+            this.lastModified = lastModified;
+            this.directory = directory;
+            this.dictionaryId = dictionaryId;
+        }
+
+        private JsonObject toJson() {
+            JsonObject object = new JsonObject();
+            object.addProperty("name", name);
+            object.addProperty("method", method);
+            object.addProperty("crc", crc);
+            object.addProperty("size", size);
+            object.addProperty("compressed_size", compressedSize);
+            object.addProperty("offset", offset);
+            object.addProperty("last_modified", lastModified);
+            object.addProperty("directory", directory);
+            if (dictionaryId != CompressionDictionary.NO_DICTIONARY) object.addProperty("dictionary", dictionaryId);
+            return object;
+        }
+
+        private static Entry fromJson(JsonObject object) {
+            return new Entry(
+                object.get("name").getAsString(),
+                object.get("method").getAsInt(),
+                object.get("crc").getAsLong(),
+                object.get("size").getAsLong(),
+                object.get("compressed_size").getAsLong(),
+                object.get("offset").getAsLong(),
+                object.get("last_modified").getAsLong(),
+                object.get("directory").getAsBoolean(),
+                object.has("dictionary") ? object.get("dictionary").getAsLong() : CompressionDictionary.NO_DICTIONARY
+            );
+        }
+    }
+
+    private ZipCheckpoint(Path file, String sourcePath) {
+        this.file = file;
+        this.sourcePath = sourcePath;
+    }
+
+    public static Path getCheckpointPath(Path archive) {
+        return archive.resolveSibling(archive.getFileName().toString() + CHECKPOINT_EXTENSION);
+    }
+
+    public static boolean exists(Path archive) {
+        return Files.exists(getCheckpointPath(archive));
+    }
+
+    public static void delete(Path archive) {
+        try {
+            if (Files.deleteIfExists(getCheckpointPath(archive))) {
+                logger.debug("Checkpoint deleted: " + getCheckpointPath(archive));
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to delete the checkpoint of " + archive + ": " + e.getMessage());
+        }
+    }
+
+    // a new checkpoint, it replaces the previous one of the archive
+    public static ZipCheckpoint create(Path archive, String sourcePath) throws IOException {
+        ZipCheckpoint checkpoint = new ZipCheckpoint(getCheckpointPath(archive), sourcePath);
+        checkpoint.channel = FileChannel.open(checkpoint.file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+
+        JsonObject header = new JsonObject();
+        header.addProperty("source", sourcePath);
+        checkpoint.append(header.toString() + "\n");
+        checkpoint.headerLength = checkpoint.channel.size();
+        return checkpoint;
+    }
+
+    // the committed state of the checkpoint of the archive, null if it doesn't exist or it can't be read
+    public static ZipCheckpoint load(Path archive) {
+        Path file = getCheckpointPath(archive);
+        if (!Files.exists(file)) return null;
+
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            int lineEnd = indexOf(bytes, 0);
+            if (lineEnd < 0) return null;
+
+            String source = JsonParser.parseString(new String(bytes, 0, lineEnd, StandardCharsets.UTF_8)).getAsJsonObject().get("source").getAsString();
+            ZipCheckpoint checkpoint = new ZipCheckpoint(file, source);
+            checkpoint.headerLength = lineEnd + 1;
+            long committedLength = checkpoint.headerLength;
+
+            List<Entry> uncommitted = new ArrayList<>();
+            int start = lineEnd + 1;
+            while ((lineEnd = indexOf(bytes, start)) >= 0) {
+                JsonObject line;
+                try {
+                    line = JsonParser.parseString(new String(bytes, start, lineEnd - start, StandardCharsets.UTF_8)).getAsJsonObject();
+                } catch (JsonParseException | IllegalStateException e) {
+                    break;
+                }
+
+                if (line.has("commit")) {
+                    checkpoint.addEntries(uncommitted);
+                    checkpoint.offset = line.get("commit").getAsLong();
+                    uncommitted.clear();
+                    committedLength = lineEnd + 1;
+                } else {
+                    uncommitted.add(Entry.fromJson(line));
+                }
+                start = lineEnd + 1;
+            }
+
+            // the next commits continue after the last complete one
+            checkpoint.channel = FileChannel.open(file, StandardOpenOption.WRITE);
+            checkpoint.channel.truncate(committedLength);
+            checkpoint.channel.position(committedLength);
+            return checkpoint;
+        } catch (IOException | JsonParseException | IllegalStateException | NullPointerException | UnsupportedOperationException e) {
+            logger.warn("Unable to read the checkpoint " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // the entries written in the archive up to the offset, the archive must have been synced to the disk
+    public void commit(long archiveOffset, List<Entry> newEntries) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (Entry entry : newEntries) {
+            lines.append(entry.toJson().toString()).append('\n');
+        }
+        JsonObject commit = new JsonObject();
+        commit.addProperty("commit", archiveOffset);
+        lines.append(commit.toString()).append('\n');
+
+        append(lines.toString());
+        addEntries(newEntries);
+        offset = archiveOffset;
+    }
+
+    // forgets the committed entries, used when the archive doesn't match the checkpoint anymore
+    public void reset() throws IOException {
+        channel.truncate(headerLength);
+        channel.position(headerLength);
+        channel.force(false);
+        entries.clear();
+        offset = 0;
+    }
+
+    public String getSourcePath() {
+        return sourcePath;
+    }
+    public long getOffset() {
+        return offset;
+    }
+    public List<Entry> getEntries() {
+        return List.copyOf(entries.values());
+    }
+    public boolean contains(String entryName) {
+        return entries.containsKey(entryName);
+    }
+    // null if the entry has not been written
+    public Entry getEntry(String entryName) {
+        return entries.get(entryName);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) channel.close();
+    }
+
+    private void addEntries(List<Entry> newEntries) {
+        for (Entry entry : newEntries) {
+            // a file written again is moved after the entries written in the meantime, as it is in the archive
+            entries.remove(entry.name);
+            entries.put(entry.name, entry);
+        }
+    }
+
+    private void append(String lines) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    private static int indexOf(byte[] bytes, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == '\n') return i;
+        }
+        return -1;
+    }
+}
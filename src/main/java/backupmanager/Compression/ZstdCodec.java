@@ -0,0 +1,228 @@
+package backupmanager.Compression;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.luben.zstd.EndDirective;
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.github.luben.zstd.ZstdException;
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import com.github.luben.zstd.util.Native;
+
+/*
+ * Zstandard (zstd-jni): at the low levels it is several times faster than deflate with a better ratio, at the high ones
+ * it makes much smaller archives. The entries use the zip method 93, read by 7-Zip and the other recent tools but not by
+ * the zip support of Java and of the older tools.
+ */
+public class ZstdCodec implements CompressionCodec {
+    private static final Logger logger = LoggerFactory.getLogger(ZstdCodec.class);
+    public static final String NAME = "zstd";
+    public static final int ZIP_METHOD = 93;
+    private static final int DECOMPRESSION_KEY = Integer.MIN_VALUE; // the key of the dictionary prepared for the decompression
+    private static final int BUFFER_SIZE = 128 * 1024;
+
+    // every worker thread reuses its own context: a new zstd stream for every small file costs more than compressing it
+    private static final ThreadLocal<EntryContext> contexts = ThreadLocal.withInitial(EntryContext::new);
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int getZipMethod() {
+        return ZIP_METHOD;
+    }
+
+    @Override
+    public int getMinLevel() {
+        return 1;
+    }
+
+    @Override
+    public int getMaxLevel() {
+        return 19;
+    }
+
+    @Override
+    public int getDefaultLevel() {
+        return 3;
+    }
+
+    @Override
+    public int getFastLevel() {
+        return 1;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        try {
+            Native.load();
+            return Native.isLoaded();
+        } catch (UnsatisfiedLinkError | RuntimeException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public OutputStream newOutputStream(OutputStream out, int level) throws IOException {
+        return new EntryZstdOutputStream(out, level, null);
+    }
+
+    // zstd splits the file in jobs compressed by its own threads
+    @Override
+    public OutputStream newParallelOutputStream(OutputStream out, int level, ExecutorService pool, int threads) throws IOException {
+        return new ZstdOutputStream(new UnclosableOutputStream(out), level).setWorkers(threads);
+    }
+
+    @Override
+    public InputStream newInputStream(InputStream in) throws IOException {
+        return new ZstdInputStream(in);
+    }
+
+    // the trainer of zstd (fastcover), the samples must be at least a few dozens
+    @Override
+    public byte[] trainDictionary(List<byte[]> samples, int maxSize) {
+        long samplesSize = 0;
+        for (byte[] sample : samples) {
+            samplesSize += sample.length;
+        }
+        if (samples.size() < 2 || samplesSize > Integer.MAX_VALUE) return null;
+
+        ZstdDictTrainer trainer = new ZstdDictTrainer((int) samplesSize, maxSize);
+        for (byte[] sample : samples) {
+            trainer.addSample(sample);
+        }
+        try {
+            return trainer.trainSamples();
+        } catch (ZstdException e) {
+            logger.info("Unable to train the zstd dictionary: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // the dictionary is digested once for every level and referenced by the streams, not copied in each of them
+    @Override
+    public OutputStream newOutputStream(OutputStream out, int level, CompressionDictionary dictionary) throws IOException {
+        if (dictionary == null) return newOutputStream(out, level);
+
+        ZstdDictCompress prepared = dictionary.getPrepared(level, preparedLevel -> new ZstdDictCompress(dictionary.getContent(), preparedLevel));
+        return new EntryZstdOutputStream(out, level, prepared);
+    }
+
+    @Override
+    public InputStream newInputStream(InputStream in, CompressionDictionary dictionary) throws IOException {
+        if (dictionary == null) return newInputStream(in);
+
+        ZstdDictDecompress prepared = dictionary.getPrepared(DECOMPRESSION_KEY, key -> new ZstdDictDecompress(dictionary.getContent()));
+        return new ZstdInputStream(in).setDict(prepared);
+    }
+
+    @Override
+    public String getStreamExtension() {
+        return "zst";
+    }
+
+    private static class EntryContext {
+        private final ZstdCompressCtx context = new ZstdCompressCtx();
+        private final ByteBuffer input = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final ByteBuffer output = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final byte[] transfer = new byte[BUFFER_SIZE];
+    }
+
+    // a zstd frame compressed with the context of the thread, close() ends the frame but doesn't close out
+    private static class EntryZstdOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final EntryContext entryContext;
+        private boolean closed;
+
+        EntryZstdOutputStream(OutputStream out, int level, ZstdDictCompress dictionary) throws IOException {
+            this.out = out;
+            this.entryContext = contexts.get();
+            try {
+                entryContext.context.reset();
+                entryContext.context.setLevel(level);
+                if (dictionary != null) entryContext.context.loadDict(dictionary);
+            } catch (ZstdException e) {
+                throw new IOException("Unable to initialize the zstd context: " + e.getMessage(), e);
+            }
+            entryContext.input.clear();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (closed) throw new IOException("Stream closed");
+
+            while (length > 0) {
+                int len = Math.min(length, entryContext.input.remaining());
+                entryContext.input.put(bytes, offset, len);
+                offset += len;
+                length -= len;
+                if (!entryContext.input.hasRemaining()) compress(EndDirective.CONTINUE);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            compress(EndDirective.END);
+        }
+
+        // compresses the buffered input, with END until the frame is complete
+        private void compress(EndDirective directive) throws IOException {
+            ByteBuffer input = entryContext.input.flip();
+            ByteBuffer output = entryContext.output;
+            boolean done;
+            try {
+                do {
+                    output.clear();
+                    done = entryContext.context.compressDirectByteBufferStream(output, input, directive);
+                    output.flip();
+                    while (output.hasRemaining()) {
+                        int len = Math.min(output.remaining(), entryContext.transfer.length);
+                        output.get(entryContext.transfer, 0, len);
+                        out.write(entryContext.transfer, 0, len);
+                    }
+                } while (input.hasRemaining() || (directive == EndDirective.END && !done));
+            } catch (ZstdException e) {
+                throw new IOException("zstd compression failed: " + e.getMessage(), e);
+            }
+            input.clear();
+        }
+    }
+
+    // out still receives the other entries of the archive after the compressed stream is closed
+    private static class UnclosableOutputStream extends FilterOutputStream {
+        UnclosableOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package backupmanager.Deduplication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Signature of a version of a large file, as in rsync: for every block of blockSize bytes a weak checksum that can be
+ * rolled one byte at a time and a strong hash (the first 16 bytes of its SHA-256) to confirm the matches.
+ * The next backup finds the blocks of this version in the new one wherever they have moved, without reading it.
+ * The signature knows size and last modified time of the version it describes: it is used only if the manifest
+ * of the previous backup has the same ones.
+ */
+public class BlockSignature {
+    private static final Logger logger = LoggerFactory.getLogger(BlockSignature.class);
+    private static final int MAGIC = 0x424B5347; // "BKSG"
+    private static final int VERSION = 1;
+
+    private final int blockSize;
+    private final long fileSize;
+    private final long lastModified;
+    private final int count;
+    private final int[] weak;
+    private final long[] strong;
+    private int[] table;
+    private int[] next;
+
+    private BlockSignature(int blockSize, long fileSize, long lastModified, int count, int[] weak, long[] strong) {
+        this.blockSize = blockSize;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.count = count;
+        this.weak = weak;
+        this.strong = strong;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+    public long getFileSize() {
+        return fileSize;
+    }
+    public long getLastModified() {
+        return lastModified;
+    }
+    public int getBlocksCount() {
+        return count;
+    }
+
+    /*
+     * The weak checksum of rsync: a is the sum of the bytes, b the sum of the prefix sums, both modulo 2^16.
+     * Moving the window by one byte only needs the byte leaving and the one entering (see roll).
+     */
+    public static int weakChecksum(byte[] data, int offset, int length) {
+        int a = 0;
+        int b = 0;
+        for (int i = offset; i < offset + length; i++) {
+            a += data[i] & 0xFF;
+            b += a;
+        }
+        return (a & 0xFFFF) | (b << 16);
+    }
+
+    // the checksum of the window moved forward by one byte, length is the size of the window
+    public static int roll(int checksum, int length, byte out, byte in) {
+        int a = checksum & 0xFFFF;
+        int b = checksum >>> 16;
+        a = (a - (out & 0xFF) + (in & 0xFF)) & 0xFFFF;
+        b = (b - length * (out & 0xFF) + a) & 0xFFFF;
+        return a | (b << 16);
+    }
+
+    /*
+     * The full block of this signature with the same content of data[offset, offset + blockSize), -1 if there isn't any.
+     * expected is tried first: after a match the next block is usually the following one.
+     */
+    int find(int checksum, byte[] data, int offset, int expected, MessageDigest digest) {
+        if (count == 0) return -1;
+        long[] hash = null;
+
+        if (expected >= 0 && expected < count && weak[expected] == checksum && isFullBlock(expected)) {
+            hash = strongHash(digest, data, offset, blockSize);
+            if (strong[expected * 2] == hash[0] && strong[expected * 2 + 1] == hash[1]) return expected;
+        }
+
+        if (table == null) buildTable();
+        for (int block = table[slot(checksum)] - 1; block >= 0; block = next[block] - 1) {
+            if (weak[block] != checksum) continue;
+            if (hash == null) hash = strongHash(digest, data, offset, blockSize);
+            if (strong[block * 2] == hash[0] && strong[block * 2 + 1] == hash[1]) return block;
+        }
+        return -1;
+    }
+
+    // the last block can be shorter, it is not matched
+    private boolean isFullBlock(int block) {
+        return (long) (block + 1) * blockSize <= fileSize;
+    }
+
+    // chains of the full blocks by weak checksum, the first block of a chain is the first one of the file
+    private void buildTable() {
+        int size = Integer.highestOneBit(Math.max(count, 1) * 2 - 1) << 1;
+        table = new int[size];
+        next = new int[count];
+        for (int block = count - 1; block >= 0; block--) {
+            if (!isFullBlock(block)) continue;
+            int slot = slot(weak[block]);
+            next[block] = table[slot];
+            table[slot] = block + 1;
+        }
+    }
+
+    private int slot(int checksum) {
+        return (checksum * 0x9E3779B1) >>> (32 - Integer.numberOfTrailingZeros(table.length));
+    }
+
+    static long[] strongHash(MessageDigest digest, byte[] data, int offset, int length) {
+        digest.update(data, offset, length);
+        byte[] hash = digest.digest();
+        long first = 0;
+        long second = 0;
+        for (int i = 0; i < 8; i++) {
+            first = (first << 8) | (hash[i] & 0xFF);
+            second = (second << 8) | (hash[i + 8] & 0xFF);
+        }
+        return new long[] {first, second};
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public static BlockSignature load(Path file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.warn("Unknown signature format: " + file);
+                return null;
+            }
+
+            int blockSize = in.readInt();
+            long fileSize = in.readLong();
+            long lastModified = in.readLong();
+            int count = in.readInt();
+            int[] weak = new int[count];
+            long[] strong = new long[count * 2];
+            for (int i = 0; i < count; i++) {
+                weak[i] = in.readInt();
+                strong[i * 2] = in.readLong();
+                strong[i * 2 + 1] = in.readLong();
+            }
+            return new BlockSignature(blockSize, fileSize, lastModified, count, weak, strong);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (EOFException e) {
+            logger.warn("Signature truncated, it will be ignored: " + file);
+            return null;
+        } catch (IOException e) {
+            logger.error("Error reading the signature " + file + ": " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    public void save(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(blockSize);
+            out.writeLong(fileSize);
+            out.writeLong(lastModified);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                out.writeInt(weak[i]);
+                out.writeLong(strong[i * 2]);
+                out.writeLong(strong[i * 2 + 1]);
+            }
+        }
+    }
+
+    /*
+     * Computes the signature of a file while it is written in the archive. The bytes are passed in order;
+     * a block already known (copied from the previous version at a block boundary) is added without hashing it again.
+     */
+    public static class Builder {
+        private final int blockSize;
+        private final MessageDigest digest = newDigest();
+        private int[] weak = new int[1024];
+        private long[] strong = new long[2048];
+        private int count;
+        private long size;
+        private int partial;
+        private int a;
+        private int b;
+
+        public Builder(int blockSize) {
+            this.blockSize = blockSize;
+        }
+
+        public int getBlockSize() {
+            return blockSize;
+        }
+
+        public void update(byte[] data, int offset, int length) {
+            while (length > 0) {
+                int len = Math.min(length, blockSize - partial);
+                for (int i = offset; i < offset + len; i++) {
+                    a += data[i] & 0xFF;
+                    b += a;
+                }
+                digest.update(data, offset, len);
+                partial += len;
+                size += len;
+                offset += len;
+                length -= len;
+                if (partial == blockSize) endBlock();
+            }
+        }
+
+        // true if the next byte starts a new block
+        boolean isAtBlockBoundary() {
+            return partial == 0;
+        }
+
+        // the block of the previous version has the same content of the next block of this one
+        void addKnownBlock(BlockSignature previous, int block) {
+            if (partial != 0 || previous.blockSize != blockSize) throw new IllegalStateException("Not at a block boundary");
+            ensureCapacity();
+            weak[count] = previous.weak[block];
+            strong[count * 2] = previous.strong[block * 2];
+            strong[count * 2 + 1] = previous.strong[block * 2 + 1];
+            count++;
+            size += blockSize;
+        }
+
+        private void endBlock() {
+            ensureCapacity();
+            weak[count] = (a & 0xFFFF) | (b << 16);
+            byte[] hash = digest.digest();
+            long first = 0;
+            long second = 0;
+            for (int i = 0; i < 8; i++) {
+                first = (first << 8) | (hash[i] & 0xFF);
+                second = (second << 8) | (hash[i + 8] & 0xFF);
+            }
+            strong[count * 2] = first;
+            strong[count * 2 + 1] = second;
+            count++;
+            partial = 0;
+            a = 0;
+            b = 0;
+        }
+
+        private void ensureCapacity() {
+            if (count < weak.length) return;
+            weak = Arrays.copyOf(weak, weak.length * 2);
+            strong = Arrays.copyOf(strong, strong.length * 2);
+        }
+
+        public BlockSignature finish(long lastModified) {
+            if (partial > 0) endBlock();
+            return new BlockSignature(blockSize, size, lastModified, count, Arrays.copyOf(weak, count), Arrays.copyOf(strong, count * 2));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package backupmanager.Deduplication;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Bloom filter of the chunks in the index, in a memory mapped file next to it.
+ * Most of the chunks of a new file are not in the repository: the filter answers "surely not" from a few bits,
+ * without reading the slots of the index, which with hundreds of millions of chunks are mostly on the disk.
+ * The positions of the bits come from the id itself (double hashing on its first 16 bytes, it is already a hash).
+ * Nothing can be removed: the filter is created again when the index grows.
+ */
+class BloomFilter implements AutoCloseable {
+    private static final int MAGIC = 0x424B424C; // "BKBL"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int HASHES = 7;
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final MappedRegion header;
+    private final MappedRegion bits;
+    private final long bitsMask;
+
+    private BloomFilter(FileChannel channel, int log2Bits) throws IOException {
+        this.channel = channel;
+        long bytes = Math.max(8, (1L << log2Bits) / 8);
+        this.header = new MappedRegion(channel, 0, HEADER_SIZE, HEADER_SIZE);
+        this.bits = new MappedRegion(channel, HEADER_SIZE, bytes, SEGMENT_SIZE);
+        this.bitsMask = bytes * 8 - 1;
+    }
+
+    // an empty filter, the file is replaced
+    static BloomFilter create(Path file, int log2Bits) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            BloomFilter filter = new BloomFilter(channel, log2Bits);
+            filter.header.putInt(4, VERSION);
+            filter.header.putInt(8, log2Bits);
+            filter.header.putInt(0, MAGIC);
+            return filter;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // the filter saved with the given size, null if it is missing or different
+    static BloomFilter open(Path file, int log2Bits) throws IOException {
+        if (!file.toFile().isFile()) return null;
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == HEADER_SIZE + Math.max(8, (1L << log2Bits) / 8)) {
+                BloomFilter filter = new BloomFilter(channel, log2Bits);
+                if (filter.header.getInt(0) == MAGIC && filter.header.getInt(4) == VERSION && filter.header.getInt(8) == log2Bits) {
+                    return filter;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        channel.close();
+        return null;
+    }
+
+    void add(ChunkId id) {
+        long hash = id.prefix();
+        long step = id.suffix() | 1;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = hash & bitsMask;
+            long position = (bit >>> 6) * 8;
+            bits.putLong(position, bits.getLong(position) | (1L << (bit & 63)));
+            hash += step;
+        }
+    }
+
+    // false only if the chunk is surely not in the index
+    boolean mightContain(ChunkId id) {
+        long hash = id.prefix();
+        long step = id.suffix() | 1;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = hash & bitsMask;
+            if ((bits.getLong((bit >>> 6) * 8) & (1L << (bit & 63))) == 0) return false;
+            hash += step;
+        }
+        return true;
+    }
+
+    void force() {
+        bits.force();
+        header.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,79 @@
+package backupmanager.Deduplication;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+// the SHA-256 of the content of a chunk: two chunks with the same id are stored only once
+public final class ChunkId {
+    public static final int LENGTH = 32;
+    private static final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    });
+
+    private final byte[] bytes;
+
+    private ChunkId(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    public static ChunkId of(byte[] data, int offset, int length) {
+        MessageDigest digest = digests.get();
+        digest.update(data, offset, length);
+        return new ChunkId(digest.digest());
+    }
+
+    public static ChunkId fromBytes(byte[] bytes) {
+        if (bytes.length != LENGTH) throw new IllegalArgumentException("A chunk id is " + LENGTH + " bytes, not " + bytes.length);
+        return new ChunkId(bytes.clone());
+    }
+
+    public byte[] toBytes() {
+        return bytes.clone();
+    }
+
+    // the first 8 bytes, already uniformly distributed: used as the hash of the index and of the bloom filter
+    long prefix() {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+    // the second 8 bytes, the other hash of the bloom filter
+    long suffix() {
+        long value = 0;
+        for (int i = 8; i < 16; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+    byte[] rawBytes() {
+        return bytes;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof ChunkId id && Arrays.equals(bytes, id.bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) prefix();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder hex = new StringBuilder(LENGTH * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
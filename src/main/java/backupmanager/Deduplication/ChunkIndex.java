@@ -0,0 +1,307 @@
+package backupmanager.Deduplication;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Index from the id of every chunk of the repository to its location in the packs.
+ * It is an open addressing hash table (linear probing) in a memory mapped file: with hundreds of millions of chunks
+ * it doesn't fit in the heap, here only the pages of the slots actually probed are loaded by the operating system.
+ * A bloom filter in front of it avoids the probes for the chunks that are not in the repository.
+ * When the table is 70% full it is copied in a new file of double size: the files are named by the capacity
+ * (chunks.<log2 capacity>.idx), so the old one doesn't need to be renamed while it is still mapped (which Windows refuses)
+ * and it is deleted when possible.
+ * The header is marked clean only after the packs and the slots are on the disk: an index opened not clean may
+ * miss some chunks of the packs, and it is rebuilt from them.
+ * It is not thread safe: it is used by the thread walking the tree.
+ *
+ * Header: 0 magic, 4 version, 8 log2 capacity, 12 clean, 16 count
+ * Slot: 0 id (32 bytes), 32 pack (0 if the slot is empty), 36 offset, 40 stored length, 44 raw length
+ */
+public class ChunkIndex implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ChunkIndex.class);
+    private static final int MAGIC = 0x424B4349; // "BKCI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 48;
+    private static final long SEGMENT_SIZE = (long) SLOT_SIZE << 22;
+    private static final int INITIAL_LOG2_CAPACITY = 16;
+    private static final double MAX_LOAD = 0.7;
+    private static final String FILE_PREFIX = "chunks.";
+
+    private final Path directory;
+    private final int log2Capacity;
+    private final long capacity;
+    private final FileChannel channel;
+    private final MappedRegion header;
+    private final MappedRegion slots;
+    private final BloomFilter bloom;
+    private final byte[] idBuffer = new byte[ChunkId.LENGTH];
+    private long count;
+    private boolean dirty;
+
+    private ChunkIndex(Path directory, int log2Capacity, FileChannel channel, BloomFilter bloom, long count) throws IOException {
+        this.directory = directory;
+        this.log2Capacity = log2Capacity;
+        this.capacity = 1L << log2Capacity;
+        this.channel = channel;
+        this.header = new MappedRegion(channel, 0, HEADER_SIZE, HEADER_SIZE);
+        this.slots = new MappedRegion(channel, HEADER_SIZE, capacity * SLOT_SIZE, SEGMENT_SIZE);
+        this.bloom = bloom;
+        this.count = count;
+    }
+
+    // an empty index, the index files already in the directory are replaced
+    public static ChunkIndex create(Path directory) throws IOException {
+        deleteIndexFiles(directory, -1);
+        return create(directory, INITIAL_LOG2_CAPACITY);
+    }
+
+    private static ChunkIndex create(Path directory, int log2Capacity) throws IOException {
+        FileChannel channel = FileChannel.open(getIndexFile(directory, log2Capacity), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        BloomFilter bloom = null;
+        try {
+            bloom = BloomFilter.create(getBloomFile(directory, log2Capacity), log2Capacity + 3);
+            ChunkIndex index = new ChunkIndex(directory, log2Capacity, channel, bloom, 0);
+            index.header.putInt(4, VERSION);
+            index.header.putInt(8, log2Capacity);
+            index.header.putInt(0, MAGIC);
+            index.markDirty();
+            return index;
+        } catch (IOException | RuntimeException e) {
+            if (bloom != null) bloom.close();
+            channel.close();
+            throw e;
+        }
+    }
+
+    /*
+     * The index saved by the last run, null if there isn't any or it was not closed cleanly.
+     * The header is read before mapping the file, so an index that is discarded can be deleted also on Windows.
+     */
+    public static ChunkIndex open(Path directory) throws IOException {
+        int log2Capacity = findLatestCapacity(directory);
+        if (log2Capacity < 0) return null;
+
+        Path file = getIndexFile(directory, log2Capacity);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer headerBytes = ByteBuffer.allocate(HEADER_SIZE);
+            while (headerBytes.hasRemaining() && channel.read(headerBytes, headerBytes.position()) > 0) {}
+            headerBytes.flip();
+
+            boolean valid = headerBytes.remaining() == HEADER_SIZE
+                    && headerBytes.getInt(0) == MAGIC && headerBytes.getInt(4) == VERSION && headerBytes.getInt(8) == log2Capacity
+                    && channel.size() == HEADER_SIZE + ((long) SLOT_SIZE << log2Capacity);
+            if (!valid || headerBytes.getInt(12) != 1) {
+                logger.warn("Chunk index " + (valid ? "not closed cleanly" : "invalid") + ", it will be rebuilt: " + file);
+                channel.close();
+                return null;
+            }
+
+            long count = headerBytes.getLong(16);
+            BloomFilter bloom = BloomFilter.open(getBloomFile(directory, log2Capacity), log2Capacity + 3);
+            boolean rebuildBloom = bloom == null;
+            if (rebuildBloom) bloom = BloomFilter.create(getBloomFile(directory, log2Capacity), log2Capacity + 3);
+
+            ChunkIndex index = new ChunkIndex(directory, log2Capacity, channel, bloom, count);
+            if (rebuildBloom) {
+                logger.info("Bloom filter of the chunk index missing, rebuilding it");
+                index.rebuildBloom();
+            }
+
+            // the smaller files left by a grow that couldn't delete them
+            deleteIndexFiles(directory, log2Capacity);
+            logger.info("Chunk index opened with " + count + " chunks (capacity " + index.capacity + ")");
+            return index;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public long size() {
+        return count;
+    }
+
+    public boolean contains(ChunkId id) {
+        return get(id) != null;
+    }
+
+    // null if the chunk is not in the index
+    public ChunkLocation get(ChunkId id) {
+        if (!bloom.mightContain(id)) return null;
+
+        long slot = findSlot(id);
+        long position = slot * SLOT_SIZE;
+        if (slots.getInt(position + 32) == 0) return null;
+        return new ChunkLocation(slots.getInt(position + 32), slots.getInt(position + 36), slots.getInt(position + 40), slots.getInt(position + 44));
+    }
+
+    /*
+     * Adds the chunk, a chunk already in the index keeps its location.
+     * It can grow the index: the instance to use from now on is returned.
+     */
+    public ChunkIndex put(ChunkId id, ChunkLocation location) throws IOException {
+        if (count + 1 > capacity * MAX_LOAD) {
+            ChunkIndex grown = grow();
+            return grown.put(id, location);
+        }
+
+        long slot = findSlot(id);
+        long position = slot * SLOT_SIZE;
+        if (slots.getInt(position + 32) != 0) return this;
+
+        markDirty();
+        slots.put(position, id.rawBytes());
+        slots.putInt(position + 36, location.getOffset());
+        slots.putInt(position + 40, location.getStoredLength());
+        slots.putInt(position + 44, location.getRawLength());
+        slots.putInt(position + 32, location.getPack());
+        bloom.add(id);
+        count++;
+        return this;
+    }
+
+    // every chunk of the index, in the order of the slots
+    public void forEach(BiConsumer<ChunkId, ChunkLocation> action) {
+        byte[] id = new byte[ChunkId.LENGTH];
+        for (long slot = 0; slot < capacity; slot++) {
+            long position = slot * SLOT_SIZE;
+            int pack = slots.getInt(position + 32);
+            if (pack == 0) continue;
+            slots.get(position, id);
+            action.accept(ChunkId.fromBytes(id), new ChunkLocation(pack, slots.getInt(position + 36), slots.getInt(position + 40), slots.getInt(position + 44)));
+        }
+    }
+
+    // the slot with the id, or the empty slot where it has to be added
+    private long findSlot(ChunkId id) {
+        long prefix = id.prefix();
+        long mask = capacity - 1;
+        long slot = (prefix >>> (64 - log2Capacity)) & mask;
+
+        while (true) {
+            long position = slot * SLOT_SIZE;
+            if (slots.getInt(position + 32) == 0) return slot;
+            if (slots.getLong(position) == prefix) {
+                slots.get(position, idBuffer);
+                if (Arrays.equals(idBuffer, id.rawBytes())) return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    // copies the chunks in an index of double capacity, the old files are deleted if the system allows it
+    private ChunkIndex grow() throws IOException {
+        long start = System.currentTimeMillis();
+        ChunkIndex grown = create(directory, log2Capacity + 1);
+        try {
+            byte[] id = new byte[ChunkId.LENGTH];
+            for (long slot = 0; slot < capacity; slot++) {
+                long position = slot * SLOT_SIZE;
+                int pack = slots.getInt(position + 32);
+                if (pack == 0) continue;
+                slots.get(position, id);
+                grown.put(ChunkId.fromBytes(id), new ChunkLocation(pack, slots.getInt(position + 36), slots.getInt(position + 40), slots.getInt(position + 44)));
+            }
+        } catch (IOException | RuntimeException e) {
+            grown.close();
+            throw e;
+        }
+
+        close();
+        deleteIndexFiles(directory, grown.log2Capacity);
+        logger.info("Chunk index grown to " + grown.capacity + " slots in " + (System.currentTimeMillis() - start) + " ms");
+        return grown;
+    }
+
+    private void rebuildBloom() {
+        byte[] id = new byte[ChunkId.LENGTH];
+        for (long slot = 0; slot < capacity; slot++) {
+            long position = slot * SLOT_SIZE;
+            if (slots.getInt(position + 32) == 0) continue;
+            slots.get(position, id);
+            bloom.add(ChunkId.fromBytes(id));
+        }
+        bloom.force();
+    }
+
+    // from the first change the index on the disk is not clean, until commit
+    private void markDirty() {
+        if (dirty) return;
+        header.putInt(12, 0);
+        header.force();
+        dirty = true;
+    }
+
+    // to be called after the packs have been written to the disk: the chunks of the index are all readable
+    public void commit() {
+        slots.force();
+        bloom.force();
+        header.putLong(16, count);
+        header.putInt(12, 1);
+        header.force();
+        dirty = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            bloom.close();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static Path getIndexFile(Path directory, int log2Capacity) {
+        return directory.resolve(FILE_PREFIX + log2Capacity + ".idx");
+    }
+
+    private static Path getBloomFile(Path directory, int log2Capacity) {
+        return directory.resolve(FILE_PREFIX + log2Capacity + ".bloom");
+    }
+
+    // the capacity of the largest index file, -1 if there isn't any
+    private static int findLatestCapacity(Path directory) {
+        int latest = -1;
+        File[] files = directory.toFile().listFiles((dir, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(".idx"));
+        if (files == null) return latest;
+
+        for (File file : files) {
+            String name = file.getName();
+            try {
+                latest = Math.max(latest, Integer.parseInt(name.substring(FILE_PREFIX.length(), name.length() - ".idx".length())));
+            } catch (NumberFormatException e) {
+                // not an index file
+            }
+        }
+        return latest;
+    }
+
+    // the index files of the other capacities (all of them with -1), a file still mapped is left for the next time
+    private static void deleteIndexFiles(Path directory, int keepLog2Capacity) {
+        File[] files = directory.toFile().listFiles((dir, name) -> name.startsWith(FILE_PREFIX) && (name.endsWith(".idx") || name.endsWith(".bloom")));
+        if (files == null) return;
+
+        String keepPrefix = FILE_PREFIX + keepLog2Capacity + ".";
+        for (File file : files) {
+            if (file.getName().startsWith(keepPrefix)) continue;
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException e) {
+                logger.debug("Unable to delete the old index file " + file + ": " + e.getMessage());
+            }
+        }
+    }
+}
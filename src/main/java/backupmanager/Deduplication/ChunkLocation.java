@@ -0,0 +1,29 @@
+package backupmanager.Deduplication;
+
+// where a chunk is stored: the record at offset in the pack file, with the length of the data before and after the compression
+public final class ChunkLocation {
+    private final int pack;
+    private final int offset;
+    private final int storedLength;
+    private final int rawLength;
+
+    public ChunkLocation(int pack, int offset, int storedLength, int rawLength) {
+        this.pack = pack;
+        this.offset = offset;
+        this.storedLength = storedLength;
+        this.rawLength = rawLength;
+    }
+
+    public int getPack() {
+        return pack;
+    }
+    public int getOffset() {
+        return offset;
+    }
+    public int getStoredLength() {
+        return storedLength;
+    }
+    public int getRawLength() {
+        return rawLength;
+    }
+}
@@ -0,0 +1,340 @@
+package backupmanager.Deduplication;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backupmanager.Compression.CompressionCodec;
+import backupmanager.Compression.CompressionCodecs;
+
+/*
+ * Content addressed store of the chunks of a backup: every distinct chunk is saved once in the packs, whatever file
+ * and snapshot it comes from, and it is found by its id through the index.
+ * The repository is the directory "<destination>/<name>.repository", next to the snapshots referring to it:
+ *   packs/pack-NNNNNNNN.pack   the chunks
+ *   chunks.NN.idx / .bloom     the index and its bloom filter (see ChunkIndex)
+ *   last.snapshot              the last completed snapshot, the parent of the next one
+ *   repository.lock            held while a backup writes in it
+ * The chunks are only added by the backups, the ones no snapshot refers to anymore are removed by prune.
+ */
+public class ChunkRepository implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ChunkRepository.class);
+    public static final String DIRECTORY_SUFFIX = ".repository";
+    private static final String PACKS_DIRECTORY = "packs";
+    private static final String LOCK_FILE = "repository.lock";
+    private static final String PARENT_SNAPSHOT_FILE = "last.snapshot";
+    private static final double REWRITE_UNREFERENCED_RATIO = 0.25;
+
+    private final Path directory;
+    private final Path packsDirectory;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final PackWriter packWriter;
+    private final int firstPackOfRun;
+    private ChunkIndex index;
+
+    private ChunkRepository(Path directory, FileChannel lockChannel, FileLock lock) throws IOException {
+        this.directory = directory;
+        this.packsDirectory = directory.resolve(PACKS_DIRECTORY);
+        this.lockChannel = lockChannel;
+        this.lock = lock;
+
+        Files.createDirectories(packsDirectory);
+        ChunkIndex opened = ChunkIndex.open(directory);
+        this.index = opened != null ? opened : rebuildIndex();
+        this.firstPackOfRun = getLastPack() + 1;
+        this.packWriter = new PackWriter(packsDirectory, firstPackOfRun);
+    }
+
+    // the repository of the archives "<archiveBasePath> (...)"
+    public static Path getRepositoryDirectory(String archiveBasePath) {
+        return Path.of(archiveBasePath + DIRECTORY_SUFFIX);
+    }
+
+    // opens (or creates) the repository, only one backup at a time can write in it
+    public static ChunkRepository open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        FileChannel lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock = null;
+        try {
+            try {
+                lock = lockChannel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) throw new IOException("The repository is used by another backup: " + directory);
+
+            return new ChunkRepository(directory, lockChannel, lock);
+        } catch (IOException | RuntimeException e) {
+            if (lock != null) lock.release();
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public Path getParentSnapshotFile() {
+        return directory.resolve(PARENT_SNAPSHOT_FILE);
+    }
+
+    public long getChunksCount() {
+        return index.size();
+    }
+
+    public boolean contains(ChunkId id) {
+        return index.contains(id);
+    }
+
+    // adds a chunk compressed with zipMethod (0 if it is stored as it is), a chunk already in the repository is not written again
+    public void store(ChunkId id, int rawLength, int zipMethod, byte[] data, int length) throws IOException {
+        if (index.contains(id)) return;
+        ChunkLocation location = packWriter.append(id, rawLength, zipMethod, data, length);
+        index = index.put(id, location);
+    }
+
+    // the bytes written in the packs by this run
+    public long getBytesWritten() {
+        return packWriter.getBytesWritten();
+    }
+
+    // the size of the chunk decompressed, -1 if it is not in the repository
+    public int getRawLength(ChunkId id) {
+        ChunkLocation location = locate(id);
+        return location != null ? location.getRawLength() : -1;
+    }
+
+    // the content of the chunk, decompressed. It can be called by many threads at once, while nothing is stored
+    public byte[] read(ChunkId id) throws IOException {
+        ChunkLocation location = locate(id);
+        if (location == null) throw new IOException("Chunk " + id + " not found in the repository " + directory);
+
+        ByteBuffer record = readRecord(id, location);
+        int rawLength = record.getInt();
+        int storedLength = record.getInt();
+        int zipMethod = record.getShort() & 0xFFFF;
+
+        byte[] content;
+        if (zipMethod == 0) {
+            content = Arrays.copyOfRange(record.array(), PackWriter.RECORD_HEADER_SIZE, PackWriter.RECORD_HEADER_SIZE + storedLength);
+        } else {
+            CompressionCodec codec = CompressionCodecs.getByZipMethod(zipMethod);
+            if (codec == null) throw new IOException("No codec available for the compression method " + zipMethod + " of chunk " + id);
+            try (InputStream in = codec.newInputStream(new ByteArrayInputStream(record.array(), PackWriter.RECORD_HEADER_SIZE, storedLength))) {
+                content = in.readNBytes(rawLength);
+            }
+        }
+
+        if (content.length != rawLength || !ChunkId.of(content, 0, content.length).equals(id)) {
+            throw new IOException("Chunk " + id + " is corrupted");
+        }
+        return content;
+    }
+
+    // the index is not thread safe, also to read it
+    private synchronized ChunkLocation locate(ChunkId id) {
+        return index.get(id);
+    }
+
+    // the record of the chunk, positioned after its id
+    private ByteBuffer readRecord(ChunkId id, ChunkLocation location) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(PackWriter.RECORD_HEADER_SIZE + location.getStoredLength());
+        try (FileChannel channel = FileChannel.open(PackWriter.getPackFile(packsDirectory, location.getPack()), StandardOpenOption.READ)) {
+            long position = location.getOffset();
+            while (record.hasRemaining()) {
+                int read = channel.read(record, position);
+                if (read < 0) throw new IOException("Pack " + location.getPack() + " truncated, chunk " + id + " can't be read");
+                position += read;
+            }
+        }
+        record.flip();
+
+        byte[] recordId = new byte[ChunkId.LENGTH];
+        record.get(recordId);
+        if (!Arrays.equals(recordId, id.rawBytes())) throw new IOException("Chunk " + id + " not found at its location in pack " + location.getPack());
+        return record;
+    }
+
+    // the chunks written until now are on the disk and in the index: a crash after it doesn't lose them
+    public void commit() throws IOException {
+        packWriter.force();
+        index.commit();
+    }
+
+    /*
+     * Removes the chunks not in referenced, that must have the chunks of every snapshot kept. A pack without referenced
+     * chunks is deleted, a pack with more than REWRITE_UNREFERENCED_RATIO of its bytes not referenced is rewritten with
+     * only the referenced ones; the packs of this run are not touched. The chunks are copied and on the disk before the
+     * index is discarded and the old packs are deleted: a crash at any point leaves every referenced chunk in the packs,
+     * and the index is rebuilt from them when the repository is opened again.
+     * Returns the bytes freed.
+     */
+    public long prune(Set<ChunkId> referenced) throws IOException {
+        long start = System.currentTimeMillis();
+        Map<Integer, Long> referencedBytes = new HashMap<>();
+        index.forEach((id, location) -> {
+            if (referenced.contains(id)) referencedBytes.merge(location.getPack(), (long) PackWriter.RECORD_HEADER_SIZE + location.getStoredLength(), Long::sum);
+        });
+
+        // the duplicated records and the ones cut by a crash are not in the index: they are not referenced either
+        Set<Integer> packsToRemove = new TreeSet<>();
+        long freedBytes = 0;
+        for (int pack = 1; pack < firstPackOfRun; pack++) {
+            Path file = PackWriter.getPackFile(packsDirectory, pack);
+            if (!Files.exists(file)) continue;
+
+            long recordsBytes = Files.size(file) - PackWriter.PACK_HEADER_SIZE;
+            long unreferencedBytes = recordsBytes - referencedBytes.getOrDefault(pack, 0L);
+            if (unreferencedBytes > 0 && (unreferencedBytes == recordsBytes || unreferencedBytes > recordsBytes * REWRITE_UNREFERENCED_RATIO)) {
+                packsToRemove.add(pack);
+                freedBytes += recordsBytes + PackWriter.PACK_HEADER_SIZE;
+            }
+        }
+        if (packsToRemove.isEmpty()) {
+            logger.info("Nothing to prune in the repository " + directory);
+            return 0;
+        }
+
+        List<Map.Entry<ChunkId, ChunkLocation>> moved = new ArrayList<>();
+        index.forEach((id, location) -> {
+            if (packsToRemove.contains(location.getPack()) && referenced.contains(id)) moved.add(Map.entry(id, location));
+        });
+        moved.sort(Comparator.comparingInt((Map.Entry<ChunkId, ChunkLocation> chunk) -> chunk.getValue().getPack()).thenComparingInt(chunk -> chunk.getValue().getOffset()));
+        for (Map.Entry<ChunkId, ChunkLocation> chunk : moved) {
+            ChunkLocation location = chunk.getValue();
+            ByteBuffer record = readRecord(chunk.getKey(), location);
+            int rawLength = record.getInt();
+            int storedLength = record.getInt();
+            int zipMethod = record.getShort() & 0xFFFF;
+            packWriter.append(chunk.getKey(), rawLength, zipMethod, record.array(), PackWriter.RECORD_HEADER_SIZE, storedLength);
+            freedBytes -= PackWriter.RECORD_HEADER_SIZE + storedLength;
+        }
+        packWriter.force();
+
+        // an empty index not clean: until it is rebuilt the repository is opened rebuilding it
+        index.close();
+        index = ChunkIndex.create(directory);
+        for (int pack : packsToRemove) {
+            Files.delete(PackWriter.getPackFile(packsDirectory, pack));
+        }
+        index.close();
+        index = rebuildIndex();
+
+        logger.info("Repository " + directory + " pruned in " + (System.currentTimeMillis() - start) + " ms: " + packsToRemove.size() + " packs removed, "
+                + moved.size() + " chunks moved, " + freedBytes + " bytes freed");
+        return freedBytes;
+    }
+
+    /*
+     * The index is rebuilt reading the headers of the records of all the packs. A record cut by a crash
+     * (always at the end of the last pack written) is removed, a pack without a valid header is ignored.
+     */
+    private ChunkIndex rebuildIndex() throws IOException {
+        long start = System.currentTimeMillis();
+        ChunkIndex rebuilt = ChunkIndex.create(directory);
+        ByteBuffer header = ByteBuffer.allocate(PackWriter.RECORD_HEADER_SIZE);
+        byte[] id = new byte[ChunkId.LENGTH];
+
+        try {
+            for (int pack = 1; pack <= getLastPack(); pack++) {
+                Path file = PackWriter.getPackFile(packsDirectory, pack);
+                if (!Files.exists(file)) continue;
+
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    long size = channel.size();
+                    header.clear().limit(PackWriter.PACK_HEADER_SIZE);
+                    if (readFully(channel, header, 0) < PackWriter.PACK_HEADER_SIZE || header.getInt(0) != PackWriter.MAGIC || header.getInt(4) != PackWriter.VERSION) {
+                        logger.warn("Invalid pack ignored: " + file);
+                        continue;
+                    }
+
+                    long position = PackWriter.PACK_HEADER_SIZE;
+                    while (position < size) {
+                        header.clear();
+                        if (readFully(channel, header, position) < PackWriter.RECORD_HEADER_SIZE) break;
+                        header.get(0, id);
+                        int rawLength = header.getInt(32);
+                        int storedLength = header.getInt(36);
+                        if (storedLength < 0 || position + PackWriter.RECORD_HEADER_SIZE + storedLength > size) break;
+
+                        rebuilt = rebuilt.put(ChunkId.fromBytes(id), new ChunkLocation(pack, (int) position, storedLength, rawLength));
+                        position += PackWriter.RECORD_HEADER_SIZE + storedLength;
+                    }
+
+                    if (position < size) {
+                        logger.warn("Incomplete chunk removed from the end of pack " + file + " (" + (size - position) + " bytes)");
+                        channel.truncate(position);
+                        channel.force(false);
+                    }
+                }
+            }
+            rebuilt.commit();
+        } catch (IOException | RuntimeException e) {
+            rebuilt.close();
+            throw e;
+        }
+
+        logger.info("Chunk index rebuilt from the packs with " + rebuilt.size() + " chunks in " + (System.currentTimeMillis() - start) + " ms");
+        return rebuilt;
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) break;
+            total += read;
+        }
+        return total;
+    }
+
+    // the number of the last pack in the directory, 0 if there isn't any
+    private int getLastPack() {
+        int last = 0;
+        File[] packs = packsDirectory.toFile().listFiles((dir, name) -> name.matches("pack-\\d{8}\\.pack"));
+        if (packs == null) return last;
+
+        for (File pack : packs) {
+            last = Math.max(last, Integer.parseInt(pack.getName().substring(5, 13)));
+        }
+        return last;
+    }
+
+    // commits what has been written: the chunks of an interrupted backup are reused by the next run
+    @Override
+    public void close() throws IOException {
+        try {
+            packWriter.close();
+            index.commit();
+            index.close();
+        } finally {
+            try {
+                lock.release();
+            } finally {
+                lockChannel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package backupmanager.Deduplication;
+
+import java.util.SplittableRandom;
+
+/*
+ * Splits the data in chunks whose boundaries depend on the content (FastCDC, gear rolling hash with normalized chunking).
+ * With fixed size blocks a single byte inserted at the start of a file moves all the following blocks, so nothing would be
+ * found again in the repository; here a boundary is where the hash of the last bytes matches the mask, so after a change
+ * the chunker finds again the same boundaries of the previous version and only the chunks around the change are new.
+ * Before the average size a stricter mask is used and after it a looser one, so the sizes stay near the average.
+ */
+public class ContentDefinedChunker {
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // fixed: the same content must always be cut in the same chunks
+        SplittableRandom random = new SplittableRandom(0x4744454455504C4CL);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final int minSize;
+    private final int averageSize;
+    private final int maxSize;
+    private final long strictMask;
+    private final long looseMask;
+
+    // averageSize is rounded to a power of two, the chunks are between a quarter and 8 times of it
+    public ContentDefinedChunker(int averageSize) {
+        int bits = 31 - Integer.numberOfLeadingZeros(Math.max(averageSize, 64));
+        this.averageSize = 1 << bits;
+        this.minSize = this.averageSize / 4;
+        this.maxSize = this.averageSize * 8;
+        // the hash is shifted left at every byte: its high bits depend on the last 64 bytes, the low ones only on the last few
+        this.strictMask = -1L << (64 - (bits + 2));
+        this.looseMask = -1L << (64 - (bits - 2));
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+    public int getAverageSize() {
+        return averageSize;
+    }
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /*
+     * The length of the next chunk starting at offset. The caller must pass at least maxSize bytes, unless they are
+     * the last bytes of the data: then the whole length can be returned as the last chunk.
+     */
+    public int next(byte[] data, int offset, int length) {
+        if (length <= minSize) return length;
+
+        int end = Math.min(length, maxSize);
+        int normal = Math.min(averageSize, end);
+        long hash = 0;
+        int i = minSize;
+
+        for (; i < normal; i++) {
+            hash = (hash << 1) + GEAR[data[offset + i] & 0xFF];
+            if ((hash & strictMask) == 0) return i + 1;
+        }
+        for (; i < end; i++) {
+            hash = (hash << 1) + GEAR[data[offset + i] & 0xFF];
+            if ((hash & looseMask) == 0) return i + 1;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,109 @@
+package backupmanager.Deduplication;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+// rebuilds the new version of a file from the previous one and the delta written by the DeltaEncoder
+public class DeltaDecoder {
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private DeltaDecoder() {}
+
+    // writes the new version in target and returns its size, the previous version is read from previousVersion
+    public static long apply(InputStream delta, FileChannel previousVersion, OutputStream target) throws IOException {
+        DataInputStream in = new DataInputStream(delta);
+        if (in.readInt() != DeltaEncoder.MAGIC || in.readInt() != DeltaEncoder.VERSION) {
+            throw new IOException("Unknown delta format");
+        }
+        int blockSize = in.readInt();
+        long previousSize = in.readLong();
+        if (previousVersion.size() != previousSize) {
+            throw new IOException("The delta needs a previous version of " + previousSize + " bytes, found " + previousVersion.size());
+        }
+
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[Math.max(BUFFER_SIZE, blockSize)];
+        long size = 0;
+
+        while (true) {
+            int op = in.readUnsignedByte();
+            switch (op) {
+                case DeltaEncoder.OP_COPY: {
+                    long position = (long) in.readInt() * blockSize;
+                    long length = (long) in.readInt() * blockSize;
+                    if (position < 0 || position + length > previousSize) throw new IOException("Delta block outside of the previous version");
+                    while (length > 0) {
+                        ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, (int) Math.min(buffer.length, length));
+                        while (chunk.hasRemaining()) {
+                            int read = previousVersion.read(chunk, position + chunk.position());
+                            if (read < 0) throw new IOException("Unexpected end of the previous version");
+                        }
+                        target.write(buffer, 0, chunk.limit());
+                        crc.update(buffer, 0, chunk.limit());
+                        position += chunk.limit();
+                        length -= chunk.limit();
+                        size += chunk.limit();
+                    }
+                    break;
+                }
+                case DeltaEncoder.OP_DATA: {
+                    int length = in.readInt();
+                    while (length > 0) {
+                        int len = Math.min(buffer.length, length);
+                        in.readFully(buffer, 0, len);
+                        target.write(buffer, 0, len);
+                        crc.update(buffer, 0, len);
+                        length -= len;
+                        size += len;
+                    }
+                    break;
+                }
+                case DeltaEncoder.OP_END: {
+                    long expectedSize = in.readLong();
+                    int expectedCrc = in.readInt();
+                    if (expectedSize != size || expectedCrc != (int) crc.getValue()) {
+                        throw new IOException("The file rebuilt from the delta is corrupted");
+                    }
+                    return size;
+                }
+                default:
+                    throw new IOException("Unknown delta operation: " + op);
+            }
+        }
+    }
+
+    /*
+     * The size and the crc of the new version, read from the end of the delta without the previous version:
+     * the restore compares them with the file already in the target to skip it.
+     */
+    public static long[] readTargetSizeAndCrc(InputStream delta) throws IOException {
+        DataInputStream in = new DataInputStream(delta);
+        if (in.readInt() != DeltaEncoder.MAGIC || in.readInt() != DeltaEncoder.VERSION) {
+            throw new IOException("Unknown delta format");
+        }
+        in.readInt(); // block size
+        in.readLong(); // previous size
+
+        while (true) {
+            int op = in.readUnsignedByte();
+            switch (op) {
+                case DeltaEncoder.OP_COPY:
+                    in.readInt();
+                    in.readInt();
+                    break;
+                case DeltaEncoder.OP_DATA:
+                    in.skipNBytes(in.readInt());
+                    break;
+                case DeltaEncoder.OP_END:
+                    return new long[] {in.readLong(), in.readInt() & 0xFFFFFFFFL};
+                default:
+                    throw new IOException("Unknown delta operation: " + op);
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package backupmanager.Deduplication;
+
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.zip.CRC32;
+
+/*
+ * Writes a new version of a large file as a delta of the previous one, rsync style: the window of blockSize bytes is
+ * rolled over the new data one byte at a time and where its weak checksum (then its strong hash) matches a block of
+ * the signature of the previous version the block is referenced instead of written. So the blocks are found also if
+ * the data before them has grown or shrunk, only the changed bytes are written.
+ * The data is passed in chunks as it is read (write) and the signature of the new version is computed in the same pass.
+ *
+ * Delta: magic, version, block size, size of the previous version, then the operations:
+ *   COPY  first block, blocks count   the blocks of the previous version
+ *   DATA  length, bytes               new bytes
+ *   END   size and crc of the new version
+ */
+public class DeltaEncoder {
+    public static final String ENTRY_PREFIX = ".backupmanager/delta/";
+    static final int MAGIC = 0x424B444C; // "BKDL"
+    static final int VERSION = 1;
+    static final int OP_END = 0;
+    static final int OP_COPY = 1;
+    static final int OP_DATA = 2;
+    private static final int MAX_LITERAL = 1024 * 1024;
+
+    private final BlockSignature previous;
+    private final BlockSignature.Builder signature;
+    private final int blockSize;
+    private final CountingOutputStream counter;
+    private final DataOutputStream out;
+    private final MessageDigest digest = BlockSignature.newDigest();
+    private final CRC32 crc = new CRC32();
+    private final byte[] buffer;
+    private int limit;
+    private int position;
+    private int literalStart;
+    private int checksum;
+    private boolean checksumValid;
+    private boolean positionChecked;
+    private int expectedBlock = -1;
+    private int copyStart = -1;
+    private int copyCount;
+    private long size;
+    private long copiedBytes;
+    private long literalBytes;
+
+    // signature: the builder of the signature of the new version, with the same block size of the previous one
+    public DeltaEncoder(BlockSignature previous, OutputStream deltaOut, BlockSignature.Builder signature) throws IOException {
+        if (signature.getBlockSize() != previous.getBlockSize()) throw new IllegalArgumentException("Different block sizes");
+        this.previous = previous;
+        this.signature = signature;
+        this.blockSize = previous.getBlockSize();
+        this.buffer = new byte[Math.max(4 * 1024 * 1024, blockSize * 4)];
+        this.counter = new CountingOutputStream(deltaOut);
+        this.out = new DataOutputStream(counter);
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(blockSize);
+        out.writeLong(previous.getFileSize());
+    }
+
+    public void write(ByteBuffer chunk) throws IOException {
+        while (chunk.hasRemaining()) {
+            if (limit == buffer.length) compact();
+            int len = Math.min(chunk.remaining(), buffer.length - limit);
+            chunk.get(buffer, limit, len);
+            limit += len;
+            process();
+        }
+    }
+
+    // the bytes at the end, shorter than a block, are written as they are
+    public void finish() throws IOException {
+        position = limit;
+        flushLiteral();
+        flushCopies();
+        out.writeByte(OP_END);
+        out.writeLong(size);
+        out.writeInt((int) crc.getValue());
+        out.flush();
+    }
+
+    private void process() throws IOException {
+        while (true) {
+            if (!checksumValid) {
+                if (limit - position < blockSize) return;
+                checksum = BlockSignature.weakChecksum(buffer, position, blockSize);
+                checksumValid = true;
+                positionChecked = false;
+            }
+
+            if (!positionChecked) {
+                int block = previous.find(checksum, buffer, position, expectedBlock, digest);
+                positionChecked = true;
+                if (block >= 0) {
+                    copyBlock(block);
+                    continue;
+                }
+            }
+
+            // the byte entering the window is not read yet
+            if (position + blockSize >= limit) return;
+            checksum = BlockSignature.roll(checksum, blockSize, buffer[position], buffer[position + blockSize]);
+            position++;
+            positionChecked = false;
+            if (position - literalStart >= MAX_LITERAL) flushLiteral();
+        }
+    }
+
+    private void copyBlock(int block) throws IOException {
+        flushLiteral();
+        if (copyCount > 0 && block == copyStart + copyCount) {
+            copyCount++;
+        } else {
+            flushCopies();
+            copyStart = block;
+            copyCount = 1;
+        }
+
+        // the same block at a block boundary of the new version: its signature is already known
+        if (signature.isAtBlockBoundary()) {
+            signature.addKnownBlock(previous, block);
+        } else {
+            signature.update(buffer, position, blockSize);
+        }
+        crc.update(buffer, position, blockSize);
+        size += blockSize;
+        copiedBytes += blockSize;
+
+        position += blockSize;
+        literalStart = position;
+        expectedBlock = block + 1;
+        checksumValid = false;
+    }
+
+    private void flushLiteral() throws IOException {
+        int length = position - literalStart;
+        if (length == 0) return;
+
+        flushCopies();
+        out.writeByte(OP_DATA);
+        out.writeInt(length);
+        out.write(buffer, literalStart, length);
+        signature.update(buffer, literalStart, length);
+        crc.update(buffer, literalStart, length);
+        size += length;
+        literalBytes += length;
+        literalStart = position;
+    }
+
+    private void flushCopies() throws IOException {
+        if (copyCount == 0) return;
+        out.writeByte(OP_COPY);
+        out.writeInt(copyStart);
+        out.writeInt(copyCount);
+        copyCount = 0;
+    }
+
+    // the bytes before the window are written, the window is moved to the start of the buffer
+    private void compact() throws IOException {
+        flushLiteral();
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        limit -= position;
+        position = 0;
+        literalStart = 0;
+    }
+
+    public long getSize() {
+        return size;
+    }
+    public long getCopiedBytes() {
+        return copiedBytes;
+    }
+    public long getLiteralBytes() {
+        return literalBytes;
+    }
+    // the bytes of the delta written
+    public long getDeltaSize() {
+        return counter.count;
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package backupmanager.Deduplication;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * A region of a file mapped in memory, larger than the 2 GB of a single MappedByteBuffer: it is mapped in segments
+ * of segmentSize bytes. The values read and written must not cross two segments, so segmentSize must be a multiple
+ * of the size of the records of the region.
+ * The pages are loaded and written back by the operating system: the tables stay off the heap and only the pages
+ * actually used are in memory.
+ */
+class MappedRegion {
+    private final MappedByteBuffer[] segments;
+    private final long segmentSize;
+
+    MappedRegion(FileChannel channel, long position, long length, long segmentSize) throws IOException {
+        this.segmentSize = segmentSize;
+        int count = (int) ((length + segmentSize - 1) / segmentSize);
+        this.segments = new MappedByteBuffer[Math.max(count, 1)];
+        for (int i = 0; i < segments.length; i++) {
+            long start = i * segmentSize;
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, position + start, Math.min(segmentSize, length - start));
+        }
+    }
+
+    int getInt(long position) {
+        return segments[(int) (position / segmentSize)].getInt((int) (position % segmentSize));
+    }
+
+    void putInt(long position, int value) {
+        segments[(int) (position / segmentSize)].putInt((int) (position % segmentSize), value);
+    }
+
+    long getLong(long position) {
+        return segments[(int) (position / segmentSize)].getLong((int) (position % segmentSize));
+    }
+
+    void putLong(long position, long value) {
+        segments[(int) (position / segmentSize)].putLong((int) (position % segmentSize), value);
+    }
+
+    void get(long position, byte[] bytes) {
+        segments[(int) (position / segmentSize)].get((int) (position % segmentSize), bytes);
+    }
+
+    void put(long position, byte[] bytes) {
+        segments[(int) (position / segmentSize)].put((int) (position % segmentSize), bytes);
+    }
+
+    // writes the dirty pages to the disk
+    void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+}
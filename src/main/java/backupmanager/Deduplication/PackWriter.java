@@ -0,0 +1,98 @@
+package backupmanager.Deduplication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Appends the chunks to the pack files of the repository: every run starts a new pack and a pack is closed
+ * when it reaches MAX_PACK_SIZE, so the packs written by a completed run are never opened for writing again.
+ * Every record describes itself (id, lengths and compression method before the data), so the index can be
+ * rebuilt from the packs alone.
+ *
+ * Pack: 0 magic, 4 version, then the records
+ * Record: 0 id (32 bytes), 32 raw length, 36 stored length, 40 zip method (2 bytes), 42 data
+ */
+class PackWriter implements AutoCloseable {
+    static final int MAGIC = 0x424B504B; // "BKPK"
+    static final int VERSION = 1;
+    static final int PACK_HEADER_SIZE = 8;
+    static final int RECORD_HEADER_SIZE = 42;
+    static final long MAX_PACK_SIZE = 64L * 1024 * 1024;
+
+    private final Path packsDirectory;
+    private final ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+    private int nextPack;
+    private int pack;
+    private FileChannel channel;
+    private long position;
+    private long bytesWritten;
+
+    PackWriter(Path packsDirectory, int nextPack) {
+        this.packsDirectory = packsDirectory;
+        this.nextPack = nextPack;
+    }
+
+    static Path getPackFile(Path packsDirectory, int pack) {
+        return packsDirectory.resolve(String.format("pack-%08d.pack", pack));
+    }
+
+    // writes the record and returns where it is
+    ChunkLocation append(ChunkId id, int rawLength, int zipMethod, byte[] data, int length) throws IOException {
+        return append(id, rawLength, zipMethod, data, 0, length);
+    }
+
+    ChunkLocation append(ChunkId id, int rawLength, int zipMethod, byte[] data, int offset, int length) throws IOException {
+        if (channel == null || position + RECORD_HEADER_SIZE + length > MAX_PACK_SIZE) {
+            openNextPack();
+        }
+
+        recordHeader.clear();
+        recordHeader.put(id.rawBytes()).putInt(rawLength).putInt(length).putShort((short) zipMethod).flip();
+        ByteBuffer[] record = {recordHeader, ByteBuffer.wrap(data, offset, length)};
+        long recordPosition = position;
+        long remaining = RECORD_HEADER_SIZE + length;
+        while (remaining > 0) {
+            remaining -= channel.write(record);
+        }
+
+        position += RECORD_HEADER_SIZE + length;
+        bytesWritten += RECORD_HEADER_SIZE + length;
+        return new ChunkLocation(pack, (int) recordPosition, length, rawLength);
+    }
+
+    private void openNextPack() throws IOException {
+        force();
+        if (channel != null) channel.close();
+
+        pack = nextPack++;
+        channel = FileChannel.open(getPackFile(packsDirectory, pack), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(PACK_HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        position = PACK_HEADER_SIZE;
+    }
+
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    // the records written are on the disk, before the index referring them is committed
+    void force() throws IOException {
+        if (channel != null) channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel == null) return;
+        try {
+            force();
+        } finally {
+            channel.close();
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package backupmanager.Deduplication;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backupmanager.BackupOperations;
+import backupmanager.Compression.ArchiveEngine;
+import backupmanager.Compression.CompressionAdvisor;
+import backupmanager.Compression.CompressionCodec;
+import backupmanager.Compression.CompressionCodecs;
+import backupmanager.Compression.ParallelZipEngine;
+import backupmanager.Compression.ThroughputMeter;
+import backupmanager.Entities.Backup;
+import backupmanager.Entities.BackupProgress;
+import backupmanager.Entities.ZippingContext;
+import backupmanager.Enums.CompressionModeEnum;
+import backupmanager.Enums.ConfigKey;
+import backupmanager.Json.JSONConfigReader;
+
+/*
+ * Engine of the backups saved in a deduplicating repository: the files are split in content defined chunks and only
+ * the chunks not already in the repository are compressed and stored, the backup itself is a snapshot listing the
+ * chunks of every file. So every backup is a full backup, but it costs only the bytes changed since the previous ones.
+ * The unchanged files (same size and last modified time of the parent snapshot) are not even read.
+ * The chunks are found and hashed on the walking thread, the new ones are compressed by the pool and written in
+ * the packs in order, with at most MAX_PENDING_BYTES waiting.
+ * An interrupted backup doesn't write its snapshot, but the chunks already stored are kept and reused by the next run.
+ * A completed backup removes from the repository the chunks only the snapshots deleted by the retention referred to.
+ */
+public class RepositoryEngine implements ArchiveEngine {
+    private static final Logger logger = LoggerFactory.getLogger(RepositoryEngine.class);
+    private static final JSONConfigReader configReader = new JSONConfigReader(ConfigKey.CONFIG_FILE_STRING.getValue(), ConfigKey.CONFIG_DIRECTORY_STRING.getValue());
+    private static final long MAX_PENDING_BYTES = 64L * 1024 * 1024;
+    private static final int MAX_AVERAGE_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final double THROUGHPUT_SMOOTHING = 0.3;
+
+    private final Path targetSnapshot;
+    private final String sourcePath;
+    private final String targetPath;
+    private final ZippingContext context;
+    private final CompressionCodec codec;
+    private final int level;
+    private final ContentDefinedChunker chunker;
+    private final byte[] buffer;
+    private final ExecutorService pool;
+    private final ChunkRepository repository;
+    private final Snapshot parent;
+    private final Snapshot snapshot;
+    private final ArrayDeque<PendingChunk> pending = new ArrayDeque<>();
+    private final Set<ChunkId> pendingIds = new HashSet<>();
+    private final ThroughputMeter throughput = new ThroughputMeter(THROUGHPUT_SMOOTHING);
+    private volatile int totalFilesCount;
+    private volatile long totalBytes;
+    private long pendingBytes;
+    private int filesWritten;
+    private long bytesRead;
+    private long unchangedBytes;
+    private long duplicateBytes;
+    private long newBytes;
+    private int newChunks;
+    private String lastFileWritten;
+    private boolean interrupted;
+    private volatile boolean cancelled;
+    private boolean completed;
+
+    // totalFilesCount and totalBytes are only estimates used for the progress (-1 if unknown), as for the ParallelZipEngine
+    public RepositoryEngine(Path targetSnapshot, String sourcePath, String targetPath, int totalFilesCount, long totalBytes, ZippingContext context) throws IOException {
+        this.targetSnapshot = targetSnapshot;
+        this.sourcePath = sourcePath;
+        this.targetPath = targetPath;
+        this.totalFilesCount = totalFilesCount;
+        this.totalBytes = totalBytes;
+        this.context = context;
+
+        Backup backup = context != null ? context.backup : null;
+        this.codec = CompressionCodecs.get(backup != null ? backup.getCompressionCodec() : null);
+        int configuredLevel = backup != null ? backup.getCompressionLevel() : Backup.DEFAULT_COMPRESSION_LEVEL;
+        this.level = configuredLevel == Backup.DEFAULT_COMPRESSION_LEVEL ? codec.getDefaultLevel() : CompressionCodecs.clampLevel(codec, configuredLevel);
+
+        int averageSize = Math.min(Math.max(configReader.getChunkAverageSizeKB(), 1) * 1024, MAX_AVERAGE_CHUNK_SIZE);
+        this.chunker = new ContentDefinedChunker(averageSize);
+        this.buffer = new byte[chunker.getMaxSize() * 2];
+        this.pool = ParallelZipEngine.getCompressionPool();
+
+        this.repository = ChunkRepository.open(getRepositoryDirectory(targetSnapshot));
+        Snapshot lastSnapshot = Files.exists(repository.getParentSnapshotFile()) ? Snapshot.load(repository.getParentSnapshotFile()) : null;
+        this.parent = lastSnapshot != null && lastSnapshot.getSourcePath().equals(sourcePath) ? lastSnapshot : null;
+        this.snapshot = new Snapshot(sourcePath, System.currentTimeMillis());
+
+        logger.info("Repository " + repository.getDirectory() + " opened with " + repository.getChunksCount() + " chunks, "
+                + (parent != null ? "parent snapshot with " + parent.getEntries().size() + " entries" : "no parent snapshot")
+                + ", chunks of " + chunker.getAverageSize() + " bytes compressed with " + codec.getName() + " level " + level);
+    }
+
+    // "<dir>/<name> (Backup <date>).snapshot" is saved in the repository "<dir>/<name>.repository"
+    public static Path getRepositoryDirectory(Path targetSnapshot) {
+        return ChunkRepository.getRepositoryDirectory(getArchiveBasePath(targetSnapshot));
+    }
+
+    // "<dir>/<name>" of "<dir>/<name> (Backup <date>).snapshot"
+    private static String getArchiveBasePath(Path targetSnapshot) {
+        String fileName = targetSnapshot.getFileName().toString();
+        int dateStart = fileName.lastIndexOf(" (");
+        String baseName = dateStart > 0 ? fileName.substring(0, dateStart) : fileName.replace(Snapshot.EXTENSION, "");
+        Path directory = targetSnapshot.toAbsolutePath().getParent();
+        return directory.resolve(baseName).toString();
+    }
+
+    @Override
+    public void addDirectory(String entryName, BasicFileAttributes attrs) throws IOException {
+        if (isInterrupted()) return;
+        snapshot.addDirectory(entryName, attrs.lastModifiedTime().toMillis());
+    }
+
+    @Override
+    public void addFile(Path file, String entryName, BasicFileAttributes attrs) throws IOException {
+        if (isInterrupted()) return;
+
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        Snapshot.Entry previous = parent != null ? parent.getEntry(entryName) : null;
+        if (previous != null && isUnchanged(previous, attrs.size(), lastModified)) {
+            snapshot.add(previous);
+            unchangedBytes += previous.getSize();
+            bytesRead += previous.getSize();
+            fileWritten(entryName);
+            return;
+        }
+
+        boolean stored = CompressionAdvisor.adviseByName(file.getFileName().toString()) == CompressionModeEnum.Stored;
+        List<ChunkId> chunkIds = new ArrayList<>();
+        long size = 0;
+
+        try (InputStream in = Files.newInputStream(file)) {
+            int filled = 0;
+            boolean eof = false;
+            while (!eof) {
+                while (filled < buffer.length) {
+                    int read = in.read(buffer, filled, buffer.length - filled);
+                    if (read < 0) {
+                        eof = true;
+                        break;
+                    }
+                    filled += read;
+                }
+
+                // with less than a max chunk in the buffer the boundary could be in the bytes not read yet
+                int start = 0;
+                while (filled - start >= chunker.getMaxSize() || (eof && filled > start)) {
+                    if (cancelled) {
+                        throw new InterruptedIOException("Backup interrupted");
+                    }
+                    int length = chunker.next(buffer, start, filled - start);
+                    chunkIds.add(addChunk(buffer, start, length, stored));
+                    start += length;
+                    size += length;
+                    bytesRead += length;
+                }
+                System.arraycopy(buffer, start, buffer, 0, filled - start);
+                filled -= start;
+
+                if (throughput.update(bytesRead, System.currentTimeMillis())) {
+                    reportProgress(entryName);
+                }
+            }
+        } catch (InterruptedIOException e) {
+            setInterrupted();
+            return;
+        }
+
+        if (size != attrs.size()) {
+            logger.warn("File \"" + entryName + "\" changed while it was saved (" + attrs.size() + " -> " + size + " bytes)");
+        }
+        snapshot.addFile(entryName, size, lastModified, chunkIds);
+        fileWritten(entryName);
+    }
+
+    // the chunks of the parent can be referenced only if they are still in the repository
+    private boolean isUnchanged(Snapshot.Entry previous, long size, long lastModified) {
+        if (previous.isDirectory() || previous.getSize() != size || previous.getLastModified() != lastModified) return false;
+        for (int i = 0; i < previous.getChunksCount(); i++) {
+            ChunkId id = previous.getChunkId(i);
+            if (!pendingIds.contains(id) && !repository.contains(id)) return false;
+        }
+        return true;
+    }
+
+    // the id of the chunk, it is compressed and stored only if it is not in the repository yet
+    private ChunkId addChunk(byte[] data, int offset, int length, boolean stored) throws IOException {
+        ChunkId id = ChunkId.of(data, offset, length);
+        if (pendingIds.contains(id) || repository.contains(id)) {
+            duplicateBytes += length;
+            return id;
+        }
+
+        byte[] chunk = Arrays.copyOfRange(data, offset, offset + length);
+        CompletableFuture<CompressedChunk> future = CompletableFuture.supplyAsync(() -> compress(chunk, stored), pool);
+        pending.add(new PendingChunk(id, length, future));
+        pendingIds.add(id);
+        pendingBytes += length;
+        newBytes += length;
+        newChunks++;
+
+        writeCompletedChunks(MAX_PENDING_BYTES);
+        return id;
+    }
+
+    // compressed with the level advised for its content, stored as it is if it doesn't shrink
+    private CompressedChunk compress(byte[] chunk, boolean stored) {
+        CompressionModeEnum mode = stored ? CompressionModeEnum.Stored : CompressionAdvisor.adviseBySample(ByteBuffer.wrap(chunk));
+        if (mode == CompressionModeEnum.Stored) return new CompressedChunk(0, chunk, chunk.length);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(chunk.length / 2 + 64);
+        try (OutputStream out = codec.newOutputStream(compressed, mode == CompressionModeEnum.Fast ? codec.getFastLevel() : level)) {
+            out.write(chunk);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (compressed.size() >= chunk.length) return new CompressedChunk(0, chunk, chunk.length);
+        return new CompressedChunk(codec.getZipMethod(), compressed.toByteArray(), compressed.size());
+    }
+
+    // writes the chunks already compressed in order, waiting for them while more than maxPendingBytes are pending
+    private void writeCompletedChunks(long maxPendingBytes) throws IOException {
+        while (!pending.isEmpty()) {
+            PendingChunk head = pending.peek();
+            if (!head.future.isDone() && pendingBytes <= maxPendingBytes) return;
+
+            CompressedChunk compressed;
+            try {
+                compressed = head.future.get();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Backup interrupted");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() instanceof UncheckedIOException unchecked ? unchecked.getCause() : e.getCause();
+                throw new IOException("Unable to compress a chunk: " + cause.getMessage(), cause);
+            }
+
+            repository.store(head.id, head.rawLength, compressed.zipMethod, compressed.data, compressed.length);
+            pending.poll();
+            pendingIds.remove(head.id);
+            pendingBytes -= head.rawLength;
+        }
+    }
+
+    @Override
+    public void skipFile(String entryName, long size) throws IOException {
+        if (isInterrupted()) return;
+
+        bytesRead += size;
+        fileWritten(entryName);
+    }
+
+    @Override
+    public void addContent(String entryName, byte[] content, long lastModified) throws IOException {
+        if (isInterrupted()) return;
+
+        List<ChunkId> chunkIds = new ArrayList<>();
+        try {
+            for (int start = 0; start < content.length; ) {
+                int length = chunker.next(content, start, content.length - start);
+                chunkIds.add(addChunk(content, start, length, false));
+                start += length;
+            }
+        } catch (InterruptedIOException e) {
+            setInterrupted();
+            return;
+        }
+        snapshot.addFile(entryName, content.length, lastModified, chunkIds);
+    }
+
+    @Override
+    public void setTotals(int totalFilesCount, long totalBytes) {
+        this.totalFilesCount = totalFilesCount;
+        this.totalBytes = totalBytes;
+    }
+
+    // stores the last chunks, then the snapshot is saved: it refers only to chunks already on the disk
+    @Override
+    public void finish() throws IOException {
+        if (isInterrupted()) return;
+
+        try {
+            writeCompletedChunks(0);
+        } catch (InterruptedIOException e) {
+            setInterrupted();
+            return;
+        }
+        repository.commit();
+
+        snapshot.save(targetSnapshot);
+        snapshot.save(repository.getParentSnapshotFile());
+        completed = true;
+
+        throughput.update(bytesRead, System.currentTimeMillis());
+        BackupProgress progress = new BackupProgress(100, filesWritten, filesWritten, bytesRead, bytesRead, repository.getBytesWritten(), throughput.getBytesPerSecond());
+        BackupOperations.UpdateProgressPercentage(progress, sourcePath, targetPath, context, lastFileWritten);
+
+        // the completed backup has deleted the snapshots beyond the ones to keep
+        pruneRepository();
+    }
+
+    /*
+     * Removes from the repository the chunks of the snapshots deleted, the ones of all the snapshots left are kept.
+     * A snapshot that can't be read could refer to any chunk: then nothing is removed. The errors are only logged,
+     * the backup is already completed.
+     */
+    private void pruneRepository() {
+        Set<ChunkId> referenced = new HashSet<>();
+        addChunks(snapshot, referenced);
+        try {
+            for (Path snapshotFile : BackupOperations.getSnapshots(getArchiveBasePath(targetSnapshot))) {
+                if (Files.isSameFile(snapshotFile, targetSnapshot)) continue;
+                Snapshot kept = Snapshot.load(snapshotFile);
+                if (kept == null) {
+                    logger.warn("Repository not pruned, unable to read the snapshot " + snapshotFile);
+                    return;
+                }
+                addChunks(kept, referenced);
+            }
+
+            repository.prune(referenced);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Unable to prune the repository " + repository.getDirectory() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void addChunks(Snapshot snapshot, Set<ChunkId> chunkIds) {
+        for (Snapshot.Entry entry : snapshot.getEntries()) {
+            for (int i = 0; i < entry.getChunksCount(); i++) {
+                chunkIds.add(entry.getChunkId(i));
+            }
+        }
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public boolean isInterrupted() {
+        return interrupted || cancelled;
+    }
+
+    private void setInterrupted() {
+        logger.info("Zipping process manually interrupted");
+        interrupted = true;
+    }
+
+    private void fileWritten(String entryName) {
+        filesWritten++;
+        lastFileWritten = entryName;
+        throughput.update(bytesRead, System.currentTimeMillis());
+        reportProgress(entryName);
+    }
+
+    // the totals are estimates until the walk ends: 100 is reported only by finish, when the snapshot is saved
+    private void reportProgress(String entryName) {
+        int files = totalFilesCount;
+        long bytes = totalBytes;
+        int percentage = BackupProgress.computePercentage(filesWritten, files, bytesRead, bytes);
+
+        BackupProgress progress = new BackupProgress(percentage, filesWritten, files >= 0 ? Math.max(files, filesWritten) : -1, bytesRead, bytes, repository.getBytesWritten(), throughput.getBytesPerSecond());
+        BackupOperations.UpdateProgressPercentage(progress, sourcePath, targetPath, context, entryName);
+    }
+
+    // the chunks still compressing are dropped, the ones already stored stay in the repository
+    @Override
+    public void close() throws IOException {
+        for (PendingChunk chunk : pending) {
+            chunk.future.cancel(false);
+        }
+        pending.clear();
+        pendingIds.clear();
+
+        repository.close();
+
+        logger.info((completed ? "Snapshot written" : "Snapshot not completed") + ": " + filesWritten + " files, " + bytesRead + " bytes read ("
+                + unchangedBytes + " unchanged, " + duplicateBytes + " in chunks already stored, " + newBytes + " new in " + newChunks + " chunks), "
+                + repository.getBytesWritten() + " bytes added to the repository");
+    }
+
+    private static class PendingChunk {
+        private final ChunkId id;
+        private final int rawLength;
+        private final CompletableFuture<CompressedChunk> future;
+
+        PendingChunk(ChunkId id, int rawLength, CompletableFuture<CompressedChunk> future) {
+            this.id = id;
+            this.rawLength = rawLength;
+            this.future = future;
+        }
+    }
+
+    private static class CompressedChunk {
+        private final int zipMethod;
+        private final byte[] data;
+        private final int length;
+
+        CompressedChunk(int zipMethod, byte[] data, int length) {
+            this.zipMethod = zipMethod;
+            this.data = data;
+            this.length = length;
+        }
+    }
+}
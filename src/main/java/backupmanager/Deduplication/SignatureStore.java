@@ -0,0 +1,83 @@
+package backupmanager.Deduplication;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * The block signatures of the large files saved by the incremental backups, in "<dir>/.<name>.signatures" next to the manifest.
+ * The signatures of a running backup are written in the "pending" subdirectory and replace the saved ones only when
+ * the backup completes; a full backup starts a new chain, so it replaces all of them. An interrupted backup that
+ * will be resumed keeps its pending signatures.
+ */
+public class SignatureStore {
+    private static final Logger logger = LoggerFactory.getLogger(SignatureStore.class);
+    private static final String PENDING_DIRECTORY = "pending";
+    private static final String EXTENSION = ".sig";
+
+    private final Path directory;
+    private final Path pendingDirectory;
+    private final boolean newChain;
+
+    // newChain: the backup is a full one, resumed: the backup continues an interrupted one and its pending signatures are still valid
+    public SignatureStore(Path directory, boolean newChain, boolean resumed) throws IOException {
+        this.directory = directory;
+        this.pendingDirectory = directory.resolve(PENDING_DIRECTORY);
+        this.newChain = newChain;
+
+        if (!resumed) deleteSignatures(pendingDirectory);
+        Files.createDirectories(pendingDirectory);
+    }
+
+    // the signatures of the backups with the manifest "<dir>/.<name>.manifest" are in "<dir>/.<name>.signatures"
+    public static Path getStorePath(Path manifestFile) {
+        String name = manifestFile.getFileName().toString();
+        if (name.endsWith(".manifest")) name = name.substring(0, name.length() - ".manifest".length());
+        return manifestFile.resolveSibling(name + ".signatures");
+    }
+
+    // the signature of the file saved by the previous backups, null if there isn't any
+    public BlockSignature load(String entryName) {
+        if (newChain) return null;
+        return BlockSignature.load(directory.resolve(getFileName(entryName)));
+    }
+
+    public void save(String entryName, BlockSignature signature) throws IOException {
+        signature.save(pendingDirectory.resolve(getFileName(entryName)));
+    }
+
+    // the backup is completed: its signatures replace the saved ones
+    public void commit() throws IOException {
+        if (newChain) deleteSignatures(directory);
+
+        int count = 0;
+        File[] pending = pendingDirectory.toFile().listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (pending != null) {
+            for (File file : pending) {
+                Files.move(file.toPath(), directory.resolve(file.getName()), StandardCopyOption.REPLACE_EXISTING);
+                count++;
+            }
+        }
+        logger.info("Block signatures saved: " + count + " files");
+    }
+
+    // a name for every entry that is valid on every file system
+    private static String getFileName(String entryName) {
+        byte[] name = entryName.getBytes(StandardCharsets.UTF_8);
+        return ChunkId.of(name, 0, name.length) + EXTENSION;
+    }
+
+    private static void deleteSignatures(Path directory) throws IOException {
+        File[] files = directory.toFile().listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (files == null) return;
+        for (File file : files) {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package backupmanager.Deduplication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * A backup saved in a repository: the list of the entries of the tree, every file with the ids of its chunks in order.
+ * It is the small file "<name> (Backup <date>).snapshot" next to the repository, the content is in the repository:
+ * every snapshot is a full backup by itself, but it costs only the chunks that were not already stored.
+ * It is stored in binary format (compressed) and written in a temporary file moved over the final one.
+ */
+public class Snapshot {
+    private static final Logger logger = LoggerFactory.getLogger(Snapshot.class);
+    private static final int MAGIC = 0x424B534E; // "BKSN"
+    private static final int VERSION = 1;
+    public static final String EXTENSION = ".snapshot";
+
+    private final String sourcePath;
+    private final long created;
+    private final List<Entry> entries;
+    private Map<String, Entry> entriesByName;
+
+    public Snapshot(String sourcePath, long created) {
+        this(sourcePath, created, new ArrayList<>());
+    }
+
+    private Snapshot(String sourcePath, long created, List<Entry> entries) {
+        this.sourcePath = sourcePath;
+        this.created = created;
+        this.entries = entries;
+    }
+
+    public static Snapshot load(Path snapshotFile) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(snapshotFile), 64 * 1024), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.warn("Unknown snapshot format: " + snapshotFile);
+                return null;
+            }
+
+            String sourcePath = in.readUTF();
+            long created = in.readLong();
+            int count = in.readInt();
+
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                boolean directory = in.readBoolean();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                byte[] chunkIds = new byte[in.readInt() * ChunkId.LENGTH];
+                in.readFully(chunkIds);
+                entries.add(new Entry(name, directory, size, lastModified, chunkIds));
+            }
+
+            logger.info("Snapshot loaded with " + count + " entries: " + snapshotFile);
+            return new Snapshot(sourcePath, created, entries);
+        } catch (NoSuchFileException e) {
+            logger.info("Snapshot not found: " + snapshotFile);
+            return null;
+        } catch (EOFException e) {
+            logger.warn("Snapshot truncated, it will be ignored: " + snapshotFile);
+            return null;
+        } catch (IOException e) {
+            logger.error("Error reading the snapshot " + snapshotFile + ": " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    public void save(Path snapshotFile) throws IOException {
+        Path tempFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(tempFile), 64 * 1024), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(sourcePath);
+            out.writeLong(created);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeUTF(entry.name);
+                out.writeBoolean(entry.directory);
+                out.writeLong(entry.size);
+                out.writeLong(entry.lastModified);
+                out.writeInt(entry.chunkIds.length / ChunkId.LENGTH);
+                out.write(entry.chunkIds);
+            }
+        }
+
+        try {
+            Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        logger.info("Snapshot saved with " + entries.size() + " entries: " + snapshotFile);
+    }
+
+    public void addDirectory(String name, long lastModified) {
+        add(new Entry(name, true, 0, lastModified, new byte[0]));
+    }
+
+    public void addFile(String name, long size, long lastModified, List<ChunkId> chunkIds) {
+        byte[] ids = new byte[chunkIds.size() * ChunkId.LENGTH];
+        for (int i = 0; i < chunkIds.size(); i++) {
+            System.arraycopy(chunkIds.get(i).rawBytes(), 0, ids, i * ChunkId.LENGTH, ChunkId.LENGTH);
+        }
+        add(new Entry(name, false, size, lastModified, ids));
+    }
+
+    // an entry of the parent snapshot, for an unchanged file
+    public void add(Entry entry) {
+        entries.add(entry);
+        if (entriesByName != null) entriesByName.put(entry.name, entry);
+    }
+
+    // null if the snapshot doesn't have the entry
+    public Entry getEntry(String name) {
+        if (entriesByName == null) {
+            entriesByName = new HashMap<>(Math.max(16, (int) (entries.size() / 0.75f) + 1));
+            for (Entry entry : entries) {
+                entriesByName.put(entry.name, entry);
+            }
+        }
+        return entriesByName.get(name);
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+    public String getSourcePath() {
+        return sourcePath;
+    }
+    public long getCreated() {
+        return created;
+    }
+
+    public static class Entry {
+        private final String name;
+        private final boolean directory;
+        private final long size;
+        private final long lastModified;
+        private final byte[] chunkIds;
+
+        private Entry(String name, boolean directory, long size, long lastModified, byte[] chunkIds) {
+            this.name = name;
+            this.directory = directory;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.chunkIds = chunkIds;
+        }
+
+        public String getName() {
+            return name;
+        }
+        public boolean isDirectory() {
+            return directory;
+        }
+        public long getSize() {
+            return size;
+        }
+        public long getLastModified() {
+            return lastModified;
+        }
+        public int getChunksCount() {
+            return chunkIds.length / ChunkId.LENGTH;
+        }
+
+        public ChunkId getChunkId(int index) {
+            byte[] id = new byte[ChunkId.LENGTH];
+            System.arraycopy(chunkIds, index * ChunkId.LENGTH, id, 0, ChunkId.LENGTH);
+            return ChunkId.fromBytes(id);
+        }
+
+        public List<ChunkId> getChunkIds() {
+            List<ChunkId> ids = new ArrayList<>(getChunksCount());
+            for (int i = 0; i < getChunksCount(); i++) {
+                ids.add(getChunkId(i));
+            }
+            return ids;
+        }
+    }
+}
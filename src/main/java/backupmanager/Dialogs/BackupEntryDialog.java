@@ -3,7 +3,6 @@ package backupmanager.Dialogs;
 import static backupmanager.GUI.BackupManagerGUI.backupTable;
 
 import java.time.LocalDateTime;
-import java.util.List;
 
 import javax.swing.JOptionPane;
 
@@ -13,10 +12,15 @@ import org.slf4j.LoggerFactory;
 import com.formdev.flatlaf.FlatClientProperties;
 
 import backupmanager.BackupOperations;
+import backupmanager.Compression.CompressionCodec;
+import backupmanager.Compression.CompressionCodecs;
 import backupmanager.Entities.Backup;
 import backupmanager.Entities.RunningBackups;
 import backupmanager.Entities.TimeInterval;
 import backupmanager.Entities.ZippingContext;
+import backupmanager.Enums.ArchiveFormatEnum;
+import backupmanager.Enums.BackupStatusEnum;
+import backupmanager.Enums.BackupTypeEnum;
 import backupmanager.Enums.ConfigKey;
 import backupmanager.Enums.TranslationLoaderEnum.TranslationCategory;
 import backupmanager.Enums.TranslationLoaderEnum.TranslationKey;
@@ -66,6 +70,7 @@ public class BackupEntryDialog extends javax.swing.JDialog {
         initComponents();
 
         setCurrentBackupMaxBackupsToKeep(configReader.getMaxCountForSameBackup());
+        initializeCompressionCodecs();
 
         setSvgImages();
         setTranslations();
@@ -87,6 +92,10 @@ public class BackupEntryDialog extends javax.swing.JDialog {
         setAutoBackupPreference(backup.isAutoBackup());
         setCurrentBackupNotes(backup.getNotes());
         setCurrentBackupMaxBackupsToKeep(backup.getMaxBackupsToKeep());
+        setCurrentBackupType(backup.getBackupType());
+        setCurrentBackupCompression(backup.getCompressionCodec(), backup.getCompressionLevel());
+        setCurrentBackupArchiveFormat(backup.getArchiveFormat());
+        setCurrentBackupCompressionDictionary(backup.isCompressionDictionary());
         
         if (backup.getTimeIntervalBackup() != null) {
             setAutoBackupOn(backup);
@@ -124,6 +133,11 @@ public class BackupEntryDialog extends javax.swing.JDialog {
         String notes = backupNoteTextArea.getText();
         boolean autoBackup = toggleAutoBackup.isSelected();
         int maxBackupsToKeep = (int) maxBackupCountSpinner.getValue();
+        BackupTypeEnum backupType = BackupTypeEnum.values()[backupTypeComboBox.getSelectedIndex()];
+        String compressionCodec = (String) compressionCodecComboBox.getSelectedItem();
+        int compressionLevel = (int) compressionLevelSpinner.getValue();
+        ArchiveFormatEnum archiveFormat = ArchiveFormatEnum.values()[archiveFormatComboBox.getSelectedIndex()];
+        boolean compressionDictionary = compressionDictionaryCheckBox.isSelected();
 
         LocalDateTime nextDateBackup = null;
         if (timeInterval != null){
@@ -135,19 +149,26 @@ public class BackupEntryDialog extends javax.swing.JDialog {
             nextDateBackup = null;
         }
 
+        Backup backup;
         if (currentBackup == null) {
             LocalDateTime lastBackup = null;
             LocalDateTime creationDate = LocalDateTime.now();
             LocalDateTime lastUpdateDate = creationDate;
             int backupCount = 0;
-            return new Backup(name, initialPath, destinationPath, lastBackup, autoBackup, nextDateBackup, timeInterval, notes, creationDate, lastUpdateDate, backupCount, maxBackupsToKeep);
+            backup = new Backup(name, initialPath, destinationPath, lastBackup, autoBackup, nextDateBackup, timeInterval, notes, creationDate, lastUpdateDate, backupCount, maxBackupsToKeep);
         } else {
             LocalDateTime lastBackup = currentBackup.getLastBackup();
             LocalDateTime creationDate = currentBackup.getCreationDate();
             LocalDateTime lastUpdateDate = LocalDateTime.now();
             int backupCount = currentBackup.getBackupCount();
-            return new Backup(name, initialPath, destinationPath, lastBackup, autoBackup, nextDateBackup, timeInterval, notes, creationDate, lastUpdateDate, backupCount, maxBackupsToKeep);
+            backup = new Backup(name, initialPath, destinationPath, lastBackup, autoBackup, nextDateBackup, timeInterval, notes, creationDate, lastUpdateDate, backupCount, maxBackupsToKeep);
         }
+        backup.setBackupType(backupType);
+        backup.setCompressionCodec(compressionCodec);
+        backup.setCompressionLevel(compressionLevel);
+        backup.setArchiveFormat(archiveFormat);
+        backup.setCompressionDictionary(compressionDictionary);
+        return backup;
     }
 
     public void SetStartPathField(String text) {
@@ -164,6 +185,44 @@ public class BackupEntryDialog extends javax.swing.JDialog {
     public void setCurrentBackupMaxBackupsToKeep(int maxBackupsCount) {
         maxBackupCountSpinner.setValue(maxBackupsCount);
     }
+
+    private void setCurrentBackupType(BackupTypeEnum backupType) {
+        backupTypeComboBox.setSelectedIndex(backupType.ordinal());
+    }
+
+    private void setCurrentBackupArchiveFormat(ArchiveFormatEnum archiveFormat) {
+        archiveFormatComboBox.setSelectedIndex(archiveFormat.ordinal());
+        archiveFormatChange();
+    }
+
+    private void setCurrentBackupCompressionDictionary(boolean compressionDictionary) {
+        compressionDictionaryCheckBox.setSelected(compressionDictionary);
+    }
+
+    // the dictionary is used only by the zip archives, a solid archive already compresses the files together
+    private void archiveFormatChange() {
+        compressionDictionaryCheckBox.setEnabled(archiveFormatComboBox.getSelectedIndex() == ArchiveFormatEnum.Zip.ordinal());
+    }
+
+    private void initializeCompressionCodecs() {
+        String[] codecNames = CompressionCodecs.getAvailableCodecs().stream().map(CompressionCodec::getName).toArray(String[]::new);
+        compressionCodecComboBox.setModel(new javax.swing.DefaultComboBoxModel<>(codecNames));
+        setCurrentBackupCompression(CompressionCodecs.DEFAULT_CODEC, Backup.DEFAULT_COMPRESSION_LEVEL);
+    }
+
+    private void setCurrentBackupCompression(String codecName, int level) {
+        CompressionCodec codec = CompressionCodecs.get(codecName);
+        compressionCodecComboBox.setSelectedItem(codec.getName());
+
+        int currentLevel = level == Backup.DEFAULT_COMPRESSION_LEVEL ? codec.getDefaultLevel() : CompressionCodecs.clampLevel(codec, level);
+        compressionLevelSpinner.setModel(new javax.swing.SpinnerNumberModel(currentLevel, codec.getMinLevel(), codec.getMaxLevel(), 1));
+    }
+
+    // every codec has its own range of levels, the level goes back to the default of the selected codec
+    private void compressionCodecChange() {
+        CompressionCodec codec = CompressionCodecs.get((String) compressionCodecComboBox.getSelectedItem());
+        compressionLevelSpinner.setModel(new javax.swing.SpinnerNumberModel(codec.getDefaultLevel(), codec.getMinLevel(), codec.getMaxLevel(), 1));
+    }
     
     public void SingleBackup(String path1, String path2, BackupTable backupTable) {
         logger.info("Event --> single backup");
@@ -174,6 +233,11 @@ public class BackupEntryDialog extends javax.swing.JDialog {
 
         //------------------------------INPUT CONTROL ERRORS------------------------------
         if (!BackupOperations.CheckInputCorrect(currentBackup.getBackupName(), path1, path2, null)) return;
+        if (BackupOperations.isBackupRunning(currentBackup.getBackupName())) {
+            logger.warn("The backup \"" + currentBackup.getBackupName() + "\" is already running");
+            JOptionPane.showMessageDialog(null, TranslationCategory.DIALOGS.getTranslation(TranslationKey.WARNING_BACKUP_ALREADY_IN_PROGRESS_MESSAGE), TranslationCategory.DIALOGS.getTranslation(TranslationKey.WARNING_GENERIC_TITLE), JOptionPane.WARNING_MESSAGE);
+            return;
+        }
 
         //------------------------------TO GET THE CURRENT DATE------------------------------
         LocalDateTime dateNow = LocalDateTime.now();
@@ -191,7 +255,7 @@ public class BackupEntryDialog extends javax.swing.JDialog {
         }
 
         name1 = BackupOperations.removeExtension(name1);
-        path2 = path2 + "\\" + name1 + " (Backup " + date + ")";
+        String archiveBasePath = path2 + "\\" + name1;
 
         //------------------------------COPY THE FILE OR DIRECTORY------------------------------
         logger.info("date backup: " + date);
@@ -200,7 +264,8 @@ public class BackupEntryDialog extends javax.swing.JDialog {
         BackupManagerGUI.progressBar.setVisible(true);
 
         ZippingContext context = new ZippingContext(currentBackup, null, backupTable, BackupManagerGUI.progressBar, null, null);
-        ZippingThread.zipDirectory(path1, path2 + ".zip", context);
+        // the archive (full or incremental) is chosen by the job, reading the previous manifest
+        ZippingThread.zipBackup(path1, archiveBasePath, date, context);
 
         //if current_file_opened is null it means they are not in a backup but it is a backup with no associated json file
         if (currentBackup.getBackupName() != null && !currentBackup.getBackupName().isEmpty()) { 
@@ -325,6 +390,17 @@ public class BackupEntryDialog extends javax.swing.JDialog {
         btnTimePicker.setToolTipText(TranslationCategory.BACKUP_ENTRY.getTranslation(TranslationKey.TIME_PICKER_TOOLTIP));
         maxBackupCountSpinner.setToolTipText(TranslationCategory.BACKUP_ENTRY.getTranslation(TranslationKey.MAX_BACKUPS_TO_KEEP_TOOLTIP) + "\n" + TranslationCategory.TIME_PICKER_DIALOG.getTranslation(TranslationKey.SPINNER_TOOLTIP));
         jLabel4.setText(TranslationCategory.BACKUP_ENTRY.getTranslation(TranslationKey.MAX_BACKUPS_TO_KEEP));
+        backupTypeLabel.setText(TranslationCategory.BACKUP_ENTRY.getTranslation(TranslationKey.BACKUP_TYPE));
+        backupTypeComboBox.setToolTipText(TranslationCategory.BACKUP_ENTRY.getTranslation(TranslationKey.BACKUP_TYPE_TOOLTIP));
+        backupTypeComboBox.setModel(new javax.swing.DefaultComboBoxModel<>(new String[] { TranslationCategory.BACKUP_ENTRY.getTranslation(TranslationKey.BACKUP_TYPE_FULL), TranslationCategory.BACKUP_ENTRY.getTranslation(TranslationKey.BACKUP_TYPE_INCREMENTAL) }));
+        compressionLabel.setText(TranslationCategory.BACKUP_ENTRY.getTranslation(TranslationKey.COMPRESSION));
+        compressionCodecComboBox.setToolTipText(TranslationCategory.BACKUP_ENTRY.getTranslation(TranslationKey.COMPRESSION_CODEC_TOOLTIP));
+        compressionLevelSpinner.setToolTipText(TranslationCategory.BACKUP_ENTRY.getTranslation(TranslationKey.COMPRESSION_LEVEL_TOOLTIP));
+        archiveFormatLabel.setText(TranslationCategory.BACKUP_ENTRY.getTranslation(TranslationKey.ARCHIVE_FORMAT));
+        archiveFormatComboBox.setToolTipText(TranslationCategory.BACKUP_ENTRY.getTranslation(TranslationKey.ARCHIVE_FORMAT_TOOLTIP));
+        archiveFormatComboBox.setModel(new javax.swing.DefaultComboBoxModel<>(new String[] { TranslationCategory.BACKUP_ENTRY.getTranslation(TranslationKey.ARCHIVE_FORMAT_ZIP), TranslationCategory.BACKUP_ENTRY.getTranslation(TranslationKey.ARCHIVE_FORMAT_TAR), TranslationCategory.BACKUP_ENTRY.getTranslation(TranslationKey.ARCHIVE_FORMAT_REPOSITORY) }));
+        compressionDictionaryCheckBox.setText(TranslationCategory.BACKUP_ENTRY.getTranslation(TranslationKey.COMPRESSION_DICTIONARY));
+        compressionDictionaryCheckBox.setToolTipText(TranslationCategory.BACKUP_ENTRY.getTranslation(TranslationKey.COMPRESSION_DICTIONARY_TOOLTIP));
         closeButton.setText(TranslationCategory.GENERAL.getTranslation(TranslationKey.CLOSE_BUTTON));
         jLabel1.setText(TranslationCategory.BACKUP_ENTRY.getTranslation(TranslationKey.BACKUP_NAME));
         backupName.setToolTipText(TranslationCategory.BACKUP_ENTRY.getTranslation(TranslationKey.BACKUP_NAME_TOOLTIP));
@@ -352,6 +428,14 @@ public class BackupEntryDialog extends javax.swing.JDialog {
         btnTimePicker = new backupmanager.svg.SVGButton();
         maxBackupCountSpinner = new javax.swing.JSpinner();
         jLabel4 = new javax.swing.JLabel();
+        backupTypeLabel = new javax.swing.JLabel();
+        backupTypeComboBox = new javax.swing.JComboBox<>();
+        compressionLabel = new javax.swing.JLabel();
+        compressionCodecComboBox = new javax.swing.JComboBox<>();
+        compressionLevelSpinner = new javax.swing.JSpinner();
+        archiveFormatLabel = new javax.swing.JLabel();
+        archiveFormatComboBox = new javax.swing.JComboBox<>();
+        compressionDictionaryCheckBox = new javax.swing.JCheckBox();
         closeButton = new javax.swing.JButton();
         okButton = new javax.swing.JButton();
         backupName = new javax.swing.JTextField();
@@ -454,6 +538,39 @@ public class BackupEntryDialog extends javax.swing.JDialog {
         jLabel4.setHorizontalAlignment(javax.swing.SwingConstants.RIGHT);
         jLabel4.setText("Keep only last");
 
+        backupTypeLabel.setHorizontalAlignment(javax.swing.SwingConstants.RIGHT);
+        backupTypeLabel.setText("Backup type");
+
+        backupTypeComboBox.setModel(new javax.swing.DefaultComboBoxModel<>(new String[] { "Full", "Incremental" }));
+        backupTypeComboBox.setToolTipText("Full: every backup contains all the files. Incremental: only the files changed since the previous backup are saved.");
+
+        compressionLabel.setHorizontalAlignment(javax.swing.SwingConstants.RIGHT);
+        compressionLabel.setText("Compression");
+
+        compressionCodecComboBox.setModel(new javax.swing.DefaultComboBoxModel<>(new String[] { "deflate" }));
+        compressionCodecComboBox.setToolTipText("Compression algorithm used for the files of the backup.");
+        compressionCodecComboBox.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                compressionCodecComboBoxActionPerformed(evt);
+            }
+        });
+
+        compressionLevelSpinner.setToolTipText("Compression level: higher levels make smaller backups, but they take longer.");
+
+        archiveFormatLabel.setHorizontalAlignment(javax.swing.SwingConstants.RIGHT);
+        archiveFormatLabel.setText("Archive format");
+
+        archiveFormatComboBox.setModel(new javax.swing.DefaultComboBoxModel<>(new String[] { "Zip", "Solid tar", "Repository" }));
+        archiveFormatComboBox.setToolTipText("Zip: every file is compressed by itself and can be extracted alone. Solid tar: all the files are compressed together in a single stream, smaller and faster for many small files. Repository: the files are split in chunks stored only once, every backup is a full backup that costs only the changed data.");
+        archiveFormatComboBox.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                archiveFormatComboBoxActionPerformed(evt);
+            }
+        });
+
+        compressionDictionaryCheckBox.setText("Dictionary");
+        compressionDictionaryCheckBox.setToolTipText("Trains a dictionary on a sample of the small files and compresses each of them with it: many small similar files (json, xml, sources) get much smaller. Only zip archives, restored by this program.");
+
         closeButton.setText("Close");
         closeButton.addActionListener(new java.awt.event.ActionListener() {
             public void actionPerformed(java.awt.event.ActionEvent evt) {
@@ -514,7 +631,23 @@ public class BackupEntryDialog extends javax.swing.JDialog {
                                     .addGroup(layout.createSequentialGroup()
                                         .addComponent(jLabel4, javax.swing.GroupLayout.PREFERRED_SIZE, 244, javax.swing.GroupLayout.PREFERRED_SIZE)
                                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
-                                        .addComponent(maxBackupCountSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))))
+                                        .addComponent(maxBackupCountSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                                    .addGroup(layout.createSequentialGroup()
+                                        .addComponent(backupTypeLabel, javax.swing.GroupLayout.PREFERRED_SIZE, 244, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                                        .addComponent(backupTypeComboBox, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                                    .addGroup(layout.createSequentialGroup()
+                                        .addComponent(compressionLabel, javax.swing.GroupLayout.PREFERRED_SIZE, 244, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                                        .addComponent(compressionCodecComboBox, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                                        .addComponent(compressionLevelSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, 64, javax.swing.GroupLayout.PREFERRED_SIZE))
+                                    .addGroup(layout.createSequentialGroup()
+                                        .addComponent(archiveFormatLabel, javax.swing.GroupLayout.PREFERRED_SIZE, 244, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                                        .addComponent(archiveFormatComboBox, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                                        .addComponent(compressionDictionaryCheckBox))))
                             .addGroup(layout.createSequentialGroup()
                                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.TRAILING, false)
                                     .addComponent(startPathField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
@@ -558,6 +691,20 @@ public class BackupEntryDialog extends javax.swing.JDialog {
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(maxBackupCountSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, 31, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(jLabel4))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(backupTypeComboBox, javax.swing.GroupLayout.PREFERRED_SIZE, 31, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(backupTypeLabel))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(compressionCodecComboBox, javax.swing.GroupLayout.PREFERRED_SIZE, 31, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(compressionLevelSpinner, javax.swing.GroupLayout.PREFERRED_SIZE, 31, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(compressionLabel))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(archiveFormatComboBox, javax.swing.GroupLayout.PREFERRED_SIZE, 31, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(archiveFormatLabel)
+                    .addComponent(compressionDictionaryCheckBox))
                 .addGap(18, 18, 18)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(closeButton)
@@ -586,17 +733,18 @@ public class BackupEntryDialog extends javax.swing.JDialog {
     }//GEN-LAST:event_btnPathSearch2ActionPerformed
 
     private void SingleBackupActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_SingleBackupActionPerformed
-        List<RunningBackups> backups = RunningBackups.readBackupListFromJSON();
-        if (backups.size() > 0) {
-            JOptionPane.showMessageDialog(null, TranslationCategory.DIALOGS.getTranslation(TranslationKey.WARNING_BACKUP_ALREADY_IN_PROGRESS_MESSAGE), TranslationCategory.DIALOGS.getTranslation(TranslationKey.WARNING_GENERIC_TITLE), JOptionPane.WARNING_MESSAGE);
-            return;
-        }
-
         // update currentBackup
         if (currentBackup == null) {
             currentBackup = getBackup();
         } 
 
+        // the other backups can run at the same time, but not the same one twice
+        RunningBackups running = RunningBackups.readBackup(currentBackup.getBackupName());
+        if (running != null && running.status == BackupStatusEnum.Progress && !running.isStale()) {
+            JOptionPane.showMessageDialog(null, TranslationCategory.DIALOGS.getTranslation(TranslationKey.WARNING_BACKUP_ALREADY_IN_PROGRESS_MESSAGE), TranslationCategory.DIALOGS.getTranslation(TranslationKey.WARNING_GENERIC_TITLE), JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+
         SingleBackup(startPathField.getText(), destinationPathField.getText(), backupTable);
     }//GEN-LAST:event_SingleBackupActionPerformed
 
@@ -628,6 +776,14 @@ public class BackupEntryDialog extends javax.swing.JDialog {
         mouseWeel(evt);
     }//GEN-LAST:event_maxBackupCountSpinnerMouseWheelMoved
 
+    private void compressionCodecComboBoxActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_compressionCodecComboBoxActionPerformed
+        compressionCodecChange();
+    }//GEN-LAST:event_compressionCodecComboBoxActionPerformed
+
+    private void archiveFormatComboBoxActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_archiveFormatComboBoxActionPerformed
+        archiveFormatChange();
+    }//GEN-LAST:event_archiveFormatComboBoxActionPerformed
+
     private void closeButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_closeButtonActionPerformed
         this.dispose();
     }//GEN-LAST:event_closeButtonActionPerformed
@@ -658,12 +814,20 @@ public class BackupEntryDialog extends javax.swing.JDialog {
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JButton SingleBackup;
+    private javax.swing.JComboBox<String> archiveFormatComboBox;
+    private javax.swing.JLabel archiveFormatLabel;
     private javax.swing.JTextField backupName;
     private javax.swing.JTextArea backupNoteTextArea;
+    private javax.swing.JComboBox<String> backupTypeComboBox;
+    private javax.swing.JLabel backupTypeLabel;
     private backupmanager.svg.SVGButton btnPathSearch1;
     private backupmanager.svg.SVGButton btnPathSearch2;
     private backupmanager.svg.SVGButton btnTimePicker;
     private javax.swing.JButton closeButton;
+    private javax.swing.JComboBox<String> compressionCodecComboBox;
+    private javax.swing.JCheckBox compressionDictionaryCheckBox;
+    private javax.swing.JLabel compressionLabel;
+    private javax.swing.JSpinner compressionLevelSpinner;
     private javax.swing.JTextField destinationPathField;
     private javax.swing.JLabel jLabel1;
     private javax.swing.JLabel jLabel2;
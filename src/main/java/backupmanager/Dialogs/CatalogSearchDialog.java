@@ -0,0 +1,247 @@
+package backupmanager.Dialogs;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import javax.swing.table.DefaultTableModel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backupmanager.Catalog.ArchiveCatalog;
+import backupmanager.Catalog.CatalogEntry;
+import backupmanager.Entities.BackupProgress;
+import backupmanager.Enums.TranslationLoaderEnum.TranslationCategory;
+import backupmanager.Enums.TranslationLoaderEnum.TranslationKey;
+import backupmanager.GUI.BackupManagerGUI;
+
+/*
+ * Searches a file in all the backups through the ArchiveCatalog: every version found can be extracted
+ * alone, without restoring its backup.
+ */
+public class CatalogSearchDialog extends javax.swing.JDialog {
+    private static final Logger logger = LoggerFactory.getLogger(CatalogSearchDialog.class);
+    private static final int MAX_RESULTS = 1000;
+
+    private List<CatalogEntry> results = new ArrayList<>();
+
+    public CatalogSearchDialog(java.awt.Frame parent, boolean modal) {
+        super(parent, modal);
+        initComponents();
+
+        setTranslactions();
+    }
+
+    private void setTranslactions() {
+        setTitle(TranslationCategory.CATALOG_DIALOG.getTranslation(TranslationKey.CATALOG_TITLE));
+        searchLabel.setText(TranslationCategory.CATALOG_DIALOG.getTranslation(TranslationKey.CATALOG_SEARCH_LABEL));
+        searchBtn.setText(TranslationCategory.CATALOG_DIALOG.getTranslation(TranslationKey.CATALOG_SEARCH_BUTTON));
+        extractBtn.setText(TranslationCategory.CATALOG_DIALOG.getTranslation(TranslationKey.CATALOG_EXTRACT_BUTTON));
+        resultsTable.getColumnModel().getColumn(0).setHeaderValue(TranslationCategory.CATALOG_DIALOG.getTranslation(TranslationKey.CATALOG_FILE_COLUMN));
+        resultsTable.getColumnModel().getColumn(1).setHeaderValue(TranslationCategory.CATALOG_DIALOG.getTranslation(TranslationKey.CATALOG_BACKUP_COLUMN));
+        resultsTable.getColumnModel().getColumn(2).setHeaderValue(TranslationCategory.CATALOG_DIALOG.getTranslation(TranslationKey.CATALOG_LAST_MODIFIED_COLUMN));
+        resultsTable.getColumnModel().getColumn(3).setHeaderValue(TranslationCategory.CATALOG_DIALOG.getTranslation(TranslationKey.CATALOG_SIZE_COLUMN));
+    }
+
+    private void search() {
+        String query = searchTextField.getText();
+        if (query.isBlank()) return;
+
+        logger.info("Searching \"" + query + "\" in the catalog");
+        long start = System.currentTimeMillis();
+        results = ArchiveCatalog.getInstance().search(query, MAX_RESULTS);
+        long time = System.currentTimeMillis() - start;
+
+        DefaultTableModel model = (DefaultTableModel) resultsTable.getModel();
+        model.setRowCount(0);
+        for (CatalogEntry entry : results) {
+            LocalDateTime lastModified = LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.getLastModified()), ZoneId.systemDefault());
+            model.addRow(new Object[]{ entry.getPath(), entry.getArchive().getFileName().toString(), lastModified.format(BackupManagerGUI.formatter), BackupProgress.formatBytes(entry.getSize()) });
+        }
+
+        resultsLabel.setText(TranslationCategory.CATALOG_DIALOG.getTranslation(TranslationKey.CATALOG_RESULTS_MESSAGE)
+            .replace("[Count]", String.valueOf(results.size()))
+            .replace("[Time]", String.valueOf(time)));
+    }
+
+    private void extractSelectedVersion() {
+        int selectedRow = resultsTable.getSelectedRow();
+        if (selectedRow == -1) return;
+        CatalogEntry entry = results.get(resultsTable.convertRowIndexToModel(selectedRow));
+
+        JFileChooser targetChooser = new JFileChooser();
+        targetChooser.setSelectedFile(new File(entry.getFileName()));
+        if (targetChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File target = targetChooser.getSelectedFile();
+
+        if (target.exists()) {
+            int response = JOptionPane.showConfirmDialog(this, TranslationCategory.DIALOGS.getTranslation(TranslationKey.DUPLICATED_FILE_NAME_MESSAGE), TranslationCategory.DIALOGS.getTranslation(TranslationKey.CONFIRMATION_REQUIRED_TITLE), JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
+            if (response != JOptionPane.YES_OPTION) return;
+        }
+
+        // a delta is rebuilt from its whole chain: it can take a while
+        Thread thread = new Thread(() -> {
+            try {
+                ArchiveCatalog.getInstance().extract(entry, target.toPath());
+                String message = TranslationCategory.CATALOG_DIALOG.getTranslation(TranslationKey.CATALOG_EXTRACT_COMPLETED_MESSAGE).replace("[Path]", target.getPath());
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, message, TranslationCategory.DIALOGS.getTranslation(TranslationKey.SUCCESS_GENERIC_TITLE), JOptionPane.INFORMATION_MESSAGE));
+            } catch (IOException | RuntimeException e) {
+                logger.error("Error extracting \"" + entry.getPath() + "\" of " + entry.getArchive() + ": " + e.getMessage(), e);
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, TranslationCategory.CATALOG_DIALOG.getTranslation(TranslationKey.ERROR_MESSAGE_FOR_EXTRACT) + e.getMessage(), TranslationCategory.DIALOGS.getTranslation(TranslationKey.ERROR_GENERIC_TITLE), JOptionPane.ERROR_MESSAGE));
+            }
+        }, "extract");
+        thread.start();
+    }
+
+    /**
+     * This method is called from within the constructor to initialize the form.
+     * WARNING: Do NOT modify this code. The content of this method is always
+     * regenerated by the Form Editor.
+     */
+    @SuppressWarnings("unchecked")
+    // <editor-fold defaultstate="collapsed" desc="Generated Code">//GEN-BEGIN:initComponents
+    private void initComponents() {
+
+        searchLabel = new javax.swing.JLabel();
+        searchTextField = new javax.swing.JTextField();
+        searchBtn = new javax.swing.JButton();
+        jScrollPane1 = new javax.swing.JScrollPane();
+        resultsTable = new javax.swing.JTable();
+        resultsLabel = new javax.swing.JLabel();
+        extractBtn = new javax.swing.JButton();
+
+        setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
+        setTitle("Search in backups");
+
+        searchLabel.setText("File name or path");
+
+        searchTextField.addKeyListener(new java.awt.event.KeyAdapter() {
+            public void keyReleased(java.awt.event.KeyEvent evt) {
+                searchTextFieldKeyReleased(evt);
+            }
+        });
+
+        searchBtn.setText("Search");
+        searchBtn.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                searchBtnActionPerformed(evt);
+            }
+        });
+
+        resultsTable.setModel(new javax.swing.table.DefaultTableModel(
+            new Object [][] {
+
+            },
+            new String [] {
+                "File", "Backup", "Last modified", "Size"
+            }
+        ) {
+            Class[] types = new Class [] {
+                java.lang.String.class, java.lang.String.class, java.lang.String.class, java.lang.String.class
+            };
+            boolean[] canEdit = new boolean [] {
+                false, false, false, false
+            };
+
+            public Class getColumnClass(int columnIndex) {
+                return types [columnIndex];
+            }
+
+            public boolean isCellEditable(int rowIndex, int columnIndex) {
+                return canEdit [columnIndex];
+            }
+        });
+        resultsTable.setSelectionMode(javax.swing.ListSelectionModel.SINGLE_SELECTION);
+        resultsTable.addMouseListener(new java.awt.event.MouseAdapter() {
+            public void mouseClicked(java.awt.event.MouseEvent evt) {
+                resultsTableMouseClicked(evt);
+            }
+        });
+        jScrollPane1.setViewportView(resultsTable);
+
+        extractBtn.setText("Extract");
+        extractBtn.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                extractBtnActionPerformed(evt);
+            }
+        });
+
+        javax.swing.GroupLayout layout = new javax.swing.GroupLayout(getContentPane());
+        getContentPane().setLayout(layout);
+        layout.setHorizontalGroup(
+            layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(layout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                    .addComponent(jScrollPane1, javax.swing.GroupLayout.DEFAULT_SIZE, 760, Short.MAX_VALUE)
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(searchLabel)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(searchTextField)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(searchBtn))
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(resultsLabel, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(extractBtn)))
+                .addContainerGap())
+        );
+        layout.setVerticalGroup(
+            layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(layout.createSequentialGroup()
+                .addContainerGap()
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(searchLabel)
+                    .addComponent(searchTextField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(searchBtn))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(jScrollPane1, javax.swing.GroupLayout.DEFAULT_SIZE, 380, Short.MAX_VALUE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(resultsLabel)
+                    .addComponent(extractBtn))
+                .addContainerGap())
+        );
+
+        pack();
+        setLocationRelativeTo(null);
+    }// </editor-fold>//GEN-END:initComponents
+
+    private void searchBtnActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_searchBtnActionPerformed
+        search();
+    }//GEN-LAST:event_searchBtnActionPerformed
+
+    private void searchTextFieldKeyReleased(java.awt.event.KeyEvent evt) {//GEN-FIRST:event_searchTextFieldKeyReleased
+        if (evt.getKeyCode() == java.awt.event.KeyEvent.VK_ENTER) {
+            search();
+        }
+    }//GEN-LAST:event_searchTextFieldKeyReleased
+
+    private void extractBtnActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_extractBtnActionPerformed
+        extractSelectedVersion();
+    }//GEN-LAST:event_extractBtnActionPerformed
+
+    private void resultsTableMouseClicked(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_resultsTableMouseClicked
+        if (evt.getClickCount() == 2) {
+            extractSelectedVersion();
+        }
+    }//GEN-LAST:event_resultsTableMouseClicked
+
+    // Variables declaration - do not modify//GEN-BEGIN:variables
+    private javax.swing.JButton extractBtn;
+    private javax.swing.JScrollPane jScrollPane1;
+    private javax.swing.JLabel resultsLabel;
+    private javax.swing.JTable resultsTable;
+    private javax.swing.JButton searchBtn;
+    private javax.swing.JLabel searchLabel;
+    private javax.swing.JTextField searchTextField;
+    // End of variables declaration//GEN-END:variables
+}
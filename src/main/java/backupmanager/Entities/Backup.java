@@ -1,18 +1,18 @@
 package backupmanager.Entities;
 
-import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import backupmanager.Compression.CompressionCodecs;
+import backupmanager.Enums.ArchiveFormatEnum;
+import backupmanager.Enums.BackupTypeEnum;
 import backupmanager.Enums.ConfigKey;
-import backupmanager.Json.JSONBackup;
 import backupmanager.Json.JSONConfigReader;
-import backupmanager.Managers.ExceptionManager;
+import backupmanager.Services.BackupRepository;
 
 public class Backup {
     private static final Logger logger = LoggerFactory.getLogger(Backup.class);
@@ -24,11 +24,18 @@ public class Backup {
     private boolean _autoBackup;
     private LocalDateTime _nextDateBackup;
     private TimeInterval _timeIntervalBackup;
+    private CronExpression _cronExpression;
     private String _notes;
     private LocalDateTime _creationDate;
     private LocalDateTime _lastUpdateDate;
     private int _backupCount;
     private int _maxBackupsToKeep;
+    private BackupTypeEnum _backupType = BackupTypeEnum.Full;
+    private String _compressionCodec = CompressionCodecs.DEFAULT_CODEC;
+    private int _compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+    private ArchiveFormatEnum _archiveFormat = ArchiveFormatEnum.Zip;
+    private boolean _compressionDictionary;
+    public static final int DEFAULT_COMPRESSION_LEVEL = -1; // the default level of the codec
     
     public Backup() {
         _backupName = "";
@@ -73,16 +80,22 @@ public class Backup {
         this._autoBackup = backupUpdated.isAutoBackup();
         this._nextDateBackup = backupUpdated.getNextDateBackup();
         this._timeIntervalBackup = backupUpdated.getTimeIntervalBackup();
+        this._cronExpression = backupUpdated.getCronExpression();
         this._notes = backupUpdated.getNotes();
         this._creationDate = backupUpdated.getCreationDate();
         this._lastUpdateDate = backupUpdated.getLastUpdateDate();
         this._backupCount = backupUpdated.getBackupCount();
         this._maxBackupsToKeep = backupUpdated.getMaxBackupsToKeep();
+        this._backupType = backupUpdated.getBackupType();
+        this._compressionCodec = backupUpdated.getCompressionCodec();
+        this._compressionLevel = backupUpdated.getCompressionLevel();
+        this._archiveFormat = backupUpdated.getArchiveFormat();
+        this._compressionDictionary = backupUpdated.isCompressionDictionary();
     }
     
     @Override
     public String toString() {
-        return String.format("[Name: %s, InitialPath: %s, DestinationPath: %s, LastBackup: %s, IsAutoBackup: %s, NextDate: %s, Interval: %s, MaxBackupsToKeep: %d]",
+        return String.format("[Name: %s, InitialPath: %s, DestinationPath: %s, LastBackup: %s, IsAutoBackup: %s, NextDate: %s, Interval: %s, Cron: %s, MaxBackupsToKeep: %d, Type: %s, Compression: %s %d, Format: %s, Dictionary: %s]",
             _backupName,
             _initialPath,
             _destinationPath,
@@ -90,7 +103,13 @@ public class Backup {
             _autoBackup,
             _nextDateBackup,
             _timeIntervalBackup != null ? _timeIntervalBackup.toString() : "",
-            _maxBackupsToKeep
+            _cronExpression != null ? _cronExpression.toString() : "",
+            _maxBackupsToKeep,
+            _backupType,
+            _compressionCodec,
+            _compressionLevel,
+            _archiveFormat,
+            _compressionDictionary
         );
     }
 
@@ -117,20 +136,7 @@ public class Backup {
     }
 
     public static Backup getBackupByName(String backupName) {
-        List<Backup> backups;
-        try {
-            backups = new JSONBackup().readBackupListFromJSON(Preferences.getBackupList().getDirectory(), Preferences.getBackupList().getFile());
-            for (Backup backup : backups) {
-                if (backup.getBackupName().equals(backupName)) {
-                    return backup;
-                }
-            }
-        } catch (IOException ex) {
-            logger.error("An error occurred: " + ex.getMessage(), ex);
-            ExceptionManager.openExceptionMessage(ex.getMessage(), Arrays.toString(ex.getStackTrace()));
-        }
-
-        return null;
+        return BackupRepository.getInstance().getBackup(backupName);
     }
 
     public static String getCSVHeader() {
@@ -158,6 +164,14 @@ public class Backup {
     public TimeInterval getTimeIntervalBackup() {
         return _timeIntervalBackup;
     }
+    public CronExpression getCronExpression() {
+        return _cronExpression;
+    }
+    // the cron expression if the backup has one, otherwise the time interval
+    public String getScheduleString() {
+        if (_cronExpression != null) return _cronExpression.toString();
+        return _timeIntervalBackup != null ? _timeIntervalBackup.toString() : "";
+    }
     public String getNotes() {
         return _notes;
     }
@@ -173,6 +187,21 @@ public class Backup {
     public int getMaxBackupsToKeep() {
         return _maxBackupsToKeep;
     }
+    public BackupTypeEnum getBackupType() {
+        return _backupType;
+    }
+    public String getCompressionCodec() {
+        return _compressionCodec;
+    }
+    public int getCompressionLevel() {
+        return _compressionLevel;
+    }
+    public ArchiveFormatEnum getArchiveFormat() {
+        return _archiveFormat;
+    }
+    public boolean isCompressionDictionary() {
+        return _compressionDictionary;
+    }
     
     public void setBackupName(String backupName) {
         this._backupName = backupName;
@@ -195,9 +224,15 @@ public class Backup {
     public void setTimeIntervalBackup(TimeInterval timeIntervalBackup) {
         this._timeIntervalBackup = timeIntervalBackup;
     }
+    public void setCronExpression(CronExpression cronExpression) {
+        this._cronExpression = cronExpression;
+    }
     public void setNotes(String notes) {
         this._notes = notes;
     }
+    public void setCreationDate(LocalDateTime creationDate) {
+        this._creationDate = creationDate;
+    }
     public void setLastUpdateDate(LocalDateTime lastUpdateDate) {
         this._lastUpdateDate = lastUpdateDate;
     }
@@ -207,4 +242,19 @@ public class Backup {
     public void setMaxBackupsToKeep(int maxBackupsToKeep) {
         this._maxBackupsToKeep = maxBackupsToKeep;
     }
+    public void setBackupType(BackupTypeEnum backupType) {
+        this._backupType = backupType != null ? backupType : BackupTypeEnum.Full;
+    }
+    public void setCompressionCodec(String compressionCodec) {
+        this._compressionCodec = compressionCodec != null ? compressionCodec : CompressionCodecs.DEFAULT_CODEC;
+    }
+    public void setCompressionLevel(int compressionLevel) {
+        this._compressionLevel = compressionLevel;
+    }
+    public void setArchiveFormat(ArchiveFormatEnum archiveFormat) {
+        this._archiveFormat = archiveFormat != null ? archiveFormat : ArchiveFormatEnum.Zip;
+    }
+    public void setCompressionDictionary(boolean compressionDictionary) {
+        this._compressionDictionary = compressionDictionary;
+    }
 }
\ No newline at end of file
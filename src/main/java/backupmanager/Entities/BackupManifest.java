@@ -0,0 +1,193 @@
+package backupmanager.Entities;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Manifest of the files saved by an incremental backup.
+ * For every file of the source it keeps size, last modified time and file key, so the next incremental run
+ * saves only the files that are new or changed and the list of the deleted ones.
+ * It is stored in binary format next to the archives it describes and it is replaced only when a backup completes.
+ */
+public class BackupManifest {
+    private static final Logger logger = LoggerFactory.getLogger(BackupManifest.class);
+    private static final int MAGIC = 0x424B4D46; // "BKMF"
+    private static final int VERSION = 1;
+    public static final String DELETED_FILES_ENTRY = ".backupmanager/deleted.txt";
+
+    private final String sourcePath;
+    private final int incrementalCount;
+    private final Map<String, FileState> files;
+
+    public BackupManifest(String sourcePath, int incrementalCount) {
+        this(sourcePath, incrementalCount, new HashMap<>());
+    }
+
+    private BackupManifest(String sourcePath, int incrementalCount, Map<String, FileState> files) {
+        this.sourcePath = sourcePath;
+        this.incrementalCount = incrementalCount;
+        this.files = files;
+    }
+
+    // the manifest of "<dir>/<name>" archives is "<dir>/.<name>.manifest"
+    public static Path getManifestPath(String archiveBasePath) {
+        File archiveBase = new File(archiveBasePath);
+        File directory = archiveBase.getAbsoluteFile().getParentFile();
+        return new File(directory, "." + archiveBase.getName() + ".manifest").toPath();
+    }
+
+    public static BackupManifest load(Path manifestFile) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifestFile), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.warn("Unknown manifest format: " + manifestFile);
+                return null;
+            }
+
+            String sourcePath = in.readUTF();
+            int incrementalCount = in.readInt();
+            int count = in.readInt();
+
+            Map<String, FileState> files = new HashMap<>(Math.max(16, (int) (count / 0.75f) + 1));
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                String fileKey = in.readUTF();
+                files.put(path, new FileState(size, lastModified, fileKey));
+            }
+
+            logger.info("Manifest loaded with " + count + " files: " + manifestFile);
+            return new BackupManifest(sourcePath, incrementalCount, files);
+        } catch (NoSuchFileException e) {
+            logger.info("Manifest not found: " + manifestFile);
+            return null;
+        } catch (EOFException e) {
+            logger.warn("Manifest truncated, it will be ignored: " + manifestFile);
+            return null;
+        } catch (IOException e) {
+            logger.error("Error reading the manifest " + manifestFile + ": " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    // writes the manifest in a temporary file and moves it over the old one, so a crash never leaves it half written
+    public void save(Path manifestFile) throws IOException {
+        Path tempFile = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(sourcePath);
+            out.writeInt(incrementalCount);
+            out.writeInt(files.size());
+            for (Map.Entry<String, FileState> entry : files.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().size);
+                out.writeLong(entry.getValue().lastModified);
+                out.writeUTF(entry.getValue().fileKey);
+            }
+        }
+
+        try {
+            Files.move(tempFile, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, manifestFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        logger.info("Manifest saved with " + files.size() + " files: " + manifestFile);
+    }
+
+    public void add(String path, BasicFileAttributes attrs) {
+        files.put(path, new FileState(attrs));
+    }
+
+    // keeps the state of a file that could not be read in this run, so it is not reported as deleted
+    public void carryOver(BackupManifest previous, String path) {
+        FileState state = previous.files.get(path);
+        if (state != null) {
+            files.put(path, state);
+        }
+    }
+
+    // the same files as the first manifest of a new chain: a synthetic full backup has replaced the archives of this one
+    public BackupManifest restartChain() {
+        return new BackupManifest(sourcePath, 0, files);
+    }
+
+    // true if the manifest has the file with this size and last modified time
+    public boolean hasVersion(String path, long size, long lastModified) {
+        FileState state = files.get(path);
+        return state != null && state.size == size && state.lastModified == lastModified;
+    }
+
+    public boolean isUnchanged(String path, BasicFileAttributes attrs) {
+        FileState previous = files.get(path);
+        return previous != null && previous.equals(new FileState(attrs));
+    }
+
+    // the files of this manifest that are not anymore in the current one
+    public List<String> getDeletedFiles(BackupManifest current) {
+        List<String> deleted = new ArrayList<>();
+        for (String path : files.keySet()) {
+            if (!current.files.containsKey(path)) {
+                deleted.add(path);
+            }
+        }
+        return deleted;
+    }
+
+    public String getSourcePath() {
+        return sourcePath;
+    }
+    public int getIncrementalCount() {
+        return incrementalCount;
+    }
+    public int getFilesCount() {
+        return files.size();
+    }
+
+    private static class FileState {
+        private final long size;
+        private final long lastModified;
+        private final String fileKey;
+
+        FileState(long size, long lastModified, String fileKey) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+        }
+
+        FileState(BasicFileAttributes attrs) {
+            this(attrs.size(), attrs.lastModifiedTime().toMillis(), attrs.fileKey() != null ? attrs.fileKey().toString() : "");
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FileState other)) return false;
+            return size == other.size && lastModified == other.lastModified && fileKey.equals(other.fileKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(size) * 31 + Long.hashCode(lastModified);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package backupmanager.Entities;
+
+/*
+ * Snapshot of the progress of a running backup.
+ * The percentage is measured on the bytes read from the source, so a single huge file moves the bar
+ * as much as many small ones. The totals are -1 while the source is still being counted.
+ */
+public class BackupProgress {
+    private final int percentage;
+    private final int filesProcessed;
+    private final int totalFiles;
+    private final long bytesRead;
+    private final long totalBytes;
+    private final long bytesWritten;
+    private final double bytesPerSecond;
+
+    public BackupProgress(int percentage, int filesProcessed, int totalFiles, long bytesRead, long totalBytes, long bytesWritten, double bytesPerSecond) {
+        this.percentage = percentage;
+        this.filesProcessed = filesProcessed;
+        this.totalFiles = totalFiles;
+        this.bytesRead = bytesRead;
+        this.totalBytes = totalBytes;
+        this.bytesWritten = bytesWritten;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    // the totals are estimates until the end, so the backup reaches 100 only when it is completed
+    public static int computePercentage(int filesProcessed, int totalFiles, long bytesRead, long totalBytes) {
+        double ratio;
+        if (totalBytes > 0) {
+            ratio = (double) bytesRead / totalBytes;
+        } else if (totalFiles > 0) {
+            ratio = (double) filesProcessed / totalFiles;
+        } else {
+            return 0;
+        }
+        return Math.min(99, (int) (ratio * 100));
+    }
+
+    public int getPercentage() {
+        return percentage;
+    }
+    public int getFilesProcessed() {
+        return filesProcessed;
+    }
+    public int getTotalFiles() {
+        return totalFiles;
+    }
+    public long getBytesRead() {
+        return bytesRead;
+    }
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    // seconds to the end at the current throughput, -1 if it can't be estimated yet
+    public long getEtaSeconds() {
+        if (percentage == 100) return 0;
+        if (totalBytes < 0 || bytesPerSecond <= 0) return -1;
+        return (long) Math.ceil(Math.max(0, totalBytes - bytesRead) / bytesPerSecond);
+    }
+
+    // "1.2 GB / 2.6 GB - 85.3 MB/s"
+    public String getDetails() {
+        StringBuilder details = new StringBuilder(formatBytes(bytesRead));
+        if (totalBytes >= 0) {
+            details.append(" / ").append(formatBytes(Math.max(totalBytes, bytesRead)));
+        }
+        if (bytesPerSecond > 0) {
+            details.append(" - ").append(formatBytes((long) bytesPerSecond)).append("/s");
+        }
+        return details.toString();
+    }
+
+    public static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+
+        String[] units = {"KB", "MB", "GB", "TB", "PB"};
+        double value = bytes;
+        int unit = -1;
+        while (value >= 1024 && unit < units.length - 1) {
+            value /= 1024;
+            unit++;
+        }
+        return String.format("%.1f %s", value, units[unit]);
+    }
+
+    public static String formatDuration(long seconds) {
+        return String.format("%02d:%02d:%02d", seconds / 3600, (seconds % 3600) / 60, seconds % 60);
+    }
+
+    @Override
+    public String toString() {
+        return percentage + "% " + getDetails();
+    }
+}
@@ -0,0 +1,132 @@
+package backupmanager.Entities;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+
+/*
+ * Cron style schedule for the automatic backups, as an alternative to the TimeInterval.
+ * Five fields separated by spaces: minute (0-59), hour (0-23), day of month (1-31), month (1-12), day of week (0-7, 0 and 7 are Sunday).
+ * Every field can be "*", a value, a range "a-b", a step over the whole range ("*" followed by "/n") or over a range ("a-b/n"),
+ * or a list of them separated by commas (e.g. "0 2 * * 1-5").
+ * As in cron, if both the day of month and the day of week are restricted the date matches when either of them matches;
+ * a day field starting with "*" (also a step like "*" followed by "/2") is not restricted, and the date must match both.
+ */
+public class CronExpression {
+    private static final int MAX_YEARS_TO_SEARCH = 5;
+
+    private final String expression;
+    private final BitSet minutes;
+    private final BitSet hours;
+    private final BitSet daysOfMonth;
+    private final BitSet months;
+    private final BitSet daysOfWeek;
+    private final boolean anyDayOfMonth;
+    private final boolean anyDayOfWeek;
+
+    public CronExpression(String expression) {
+        if (expression == null) throw new IllegalArgumentException("Cron expression cannot be null");
+
+        String[] fields = expression.trim().split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Invalid cron expression. Expected format: minute hour day-of-month month day-of-week (e.g., 0 2 * * 1-5)");
+        }
+
+        this.expression = String.join(" ", fields);
+        this.minutes = parseField(fields[0], 0, 59);
+        this.hours = parseField(fields[1], 0, 23);
+        this.daysOfMonth = parseField(fields[2], 1, 31);
+        this.months = parseField(fields[3], 1, 12);
+        this.daysOfWeek = parseField(fields[4], 0, 7);
+        this.anyDayOfMonth = fields[2].startsWith("*");
+        this.anyDayOfWeek = fields[4].startsWith("*");
+
+        // 7 is another name for Sunday
+        if (daysOfWeek.get(7)) daysOfWeek.set(0);
+    }
+
+    public static CronExpression getCronExpressionFromString(String expression) {
+        if (expression == null || expression.isBlank()) return null;
+        return new CronExpression(expression);
+    }
+
+    // first time matching the expression strictly after the given one
+    public LocalDateTime next(LocalDateTime after) {
+        LocalDateTime time = after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        LocalDate limit = after.toLocalDate().plusYears(MAX_YEARS_TO_SEARCH);
+
+        while (!time.toLocalDate().isAfter(limit)) {
+            if (!months.get(time.getMonthValue())) {
+                time = time.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS).plusMonths(1);
+            } else if (!matchesDay(time.toLocalDate())) {
+                time = time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+            } else if (!hours.get(time.getHour())) {
+                time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            } else if (!minutes.get(time.getMinute())) {
+                time = time.plusMinutes(1);
+            } else {
+                return time;
+            }
+        }
+        throw new IllegalStateException("The cron expression \"" + expression + "\" never matches");
+    }
+
+    private boolean matchesDay(LocalDate date) {
+        boolean dayOfMonth = daysOfMonth.get(date.getDayOfMonth());
+        boolean dayOfWeek = daysOfWeek.get(date.getDayOfWeek().getValue() % 7);
+
+        if (anyDayOfMonth || anyDayOfWeek) return dayOfMonth && dayOfWeek;
+        return dayOfMonth || dayOfWeek;
+    }
+
+    private static BitSet parseField(String field, int min, int max) {
+        BitSet values = new BitSet(max + 1);
+
+        for (String part : field.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = parseValue(part.substring(slash + 1), 1, max);
+                part = part.substring(0, slash);
+            }
+
+            int start;
+            int end;
+            if (part.equals("*")) {
+                start = min;
+                end = max;
+            } else if (part.contains("-")) {
+                String[] range = part.split("-", 2);
+                start = parseValue(range[0], min, max);
+                end = parseValue(range[1], min, max);
+                if (start > end) throw new IllegalArgumentException("Invalid range in cron expression: " + part);
+            } else {
+                start = parseValue(part, min, max);
+                end = slash >= 0 ? max : start;
+            }
+
+            for (int value = start; value <= end; value += step) {
+                values.set(value);
+            }
+        }
+        return values;
+    }
+
+    private static int parseValue(String value, int min, int max) {
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed < min || parsed > max) {
+                throw new IllegalArgumentException("Value " + parsed + " of the cron expression must be between " + min + " and " + max);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value in cron expression: " + value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
@@ -0,0 +1,40 @@
+package backupmanager.Entities;
+
+// progress of a running backup, published by the zipping thread to the ProgressEventBus
+public class ProgressEvent {
+    private final ZippingContext context;
+    private final String sourcePath;
+    private final String targetPath;
+    private final String fileProcessed;
+    private final BackupProgress progress;
+
+    public ProgressEvent(ZippingContext context, String sourcePath, String targetPath, String fileProcessed, BackupProgress progress) {
+        this.context = context;
+        this.sourcePath = sourcePath;
+        this.targetPath = targetPath;
+        this.fileProcessed = fileProcessed;
+        this.progress = progress;
+    }
+
+    public String getBackupName() {
+        return context.backup.getBackupName();
+    }
+    public ZippingContext getContext() {
+        return context;
+    }
+    public String getSourcePath() {
+        return sourcePath;
+    }
+    public String getTargetPath() {
+        return targetPath;
+    }
+    public String getFileProcessed() {
+        return fileProcessed;
+    }
+    public BackupProgress getProgress() {
+        return progress;
+    }
+    public boolean isCompleted() {
+        return progress.getPercentage() == 100;
+    }
+}
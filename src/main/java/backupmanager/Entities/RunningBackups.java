@@ -1,40 +1,39 @@
 package backupmanager.Entities;
 
-import java.io.File;
-import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.file.Path;
 import java.util.List;
-import java.util.ListIterator;
-import java.util.Random;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 import backupmanager.BackupOperations;
+import backupmanager.Compression.ZipCheckpoint;
 import backupmanager.Enums.BackupStatusEnum;
-import backupmanager.Enums.ConfigKey;
 
 // this class contains only the RunningBackups entity
 // this entity is used to store the information of the backups that are currently running
 // i use this object to know wich backups are currently running across the instances
+// they are shared through the StatusBoard, a memory mapped file read without parsing or locks
 public class RunningBackups {
     private static final Logger logger = LoggerFactory.getLogger(RunningBackups.class);
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    // a backup in progress that has not been updated for so long belongs to a process that doesn't exist anymore
+    private static final long STALE_HEARTBEAT_MILLIS = 10 * 60 * 1000;
 
     public final String backupName;
     public final String path;
     public int progress;
     public BackupStatusEnum status;
 
-    public RunningBackups() {
-        this.backupName = null;
-        this.path = null;
-        this.progress = 0;
-        this.status = null;
-    }   
+    // details of the progress, -1 when unknown
+    public int filesProcessed;
+    public int totalFiles = -1;
+    public long bytesRead;
+    public long totalBytes = -1;
+    public long bytesWritten;
+    public double bytesPerSecond = -1;
+    public long etaSeconds = -1;
+    public long heartbeat;
 
     public RunningBackups(String backupName, String path, int progress, BackupStatusEnum status) {
         this.backupName = backupName;
@@ -43,161 +42,125 @@ public class RunningBackups {
         this.status = status;
     }
 
-    private static File getBackupFile() {
-        return new File(ConfigKey.CONFIG_DIRECTORY_STRING.getValue() + ConfigKey.RUNNING_BACKUPS_FILE_STRING.getValue());
+    public void updateProgress(BackupProgress backupProgress) {
+        this.progress = backupProgress.getPercentage();
+        this.filesProcessed = backupProgress.getFilesProcessed();
+        this.totalFiles = backupProgress.getTotalFiles();
+        this.bytesRead = backupProgress.getBytesRead();
+        this.totalBytes = backupProgress.getTotalBytes();
+        this.bytesWritten = backupProgress.getBytesWritten();
+        this.bytesPerSecond = backupProgress.getBytesPerSecond();
+        this.etaSeconds = backupProgress.getEtaSeconds();
     }
 
-    public static synchronized List<RunningBackups> readBackupListFromJSON() {
-        File file = getBackupFile();
-        int attempts = 5;
-        
-        for (int i = 0; i < attempts; i++) {
-            try {
-                if (!file.exists() || file.length() == 0) {
-                    logger.warn("The backup file does not exist or is empty. Attempt " + (i + 1) + "/" + attempts);
-                    Thread.sleep(new Random().nextInt(100, 150));
-                    continue;
-                }
-    
-                return objectMapper.readValue(file, new TypeReference<List<RunningBackups>>() {});
-            } catch (IOException e) {
-                logger.error("Error while reading the file: " + e.getMessage(), e);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-        }
-    
-        return new ArrayList<>();
+    public BackupProgress toBackupProgress() {
+        return new BackupProgress(progress, filesProcessed, totalFiles, bytesRead, totalBytes, bytesWritten, bytesPerSecond);
     }
 
-    public static RunningBackups readBackupFromJSON(String backupName) {
-        List<RunningBackups> backups = readBackupListFromJSON();
+    public boolean isStale() {
+        return status == BackupStatusEnum.Progress && System.currentTimeMillis() - heartbeat > STALE_HEARTBEAT_MILLIS;
+    }
 
-        if (backups == null || backups.isEmpty()) return null;
+    public static List<RunningBackups> readBackupList() {
+        return StatusBoard.getInstance().readAll();
+    }
 
-        for (RunningBackups backup : backups) {
-            if (backup.backupName.equals(backupName)) {
-                return backup;
-            }
-        }
-        return null; // Return null if no backup with the specified name is found
+    public static RunningBackups readBackup(String backupName) {
+        return StatusBoard.getInstance().read(backupName);
     }
     
     // the system is multi threading, it is possible that multiple threads call this method, so i need to use synchronized keyworl
-    public static synchronized void updateBackupToJSON(RunningBackups backup) {
-        List<RunningBackups> backups = readBackupListFromJSON();
-        boolean updated = false;
-        
-        // Iterate through existing backups to update
-        for (ListIterator<RunningBackups> iterator = backups.listIterator(); iterator.hasNext(); ) {
-            RunningBackups currentBackup = iterator.next();
-            if (currentBackup.backupName.equals(backup.backupName)) {
-                
-                if (backup.progress == 100) {
-                    backup.status = BackupStatusEnum.Finished;
-                } else if (backup.status != null && backup.status != BackupStatusEnum.Terminated) {
-                    backup.status =  BackupStatusEnum.Progress;
-                } else {
-                    backup.status =  BackupStatusEnum.Terminated;
-                }
-
-                logger.debug("Backup '{}' updated with the status: {}", backup.backupName, backup.status);
-                
-                iterator.set(backup);
-                updated = true;
-                break;
+    public static synchronized void updateBackup(RunningBackups backup) {
+        RunningBackups currentBackup = readBackup(backup.backupName);
+
+        if (currentBackup != null) {
+            if (backup.progress == 100) {
+                backup.status = BackupStatusEnum.Finished;
+            } else if (backup.status != null && backup.status != BackupStatusEnum.Terminated) {
+                backup.status =  BackupStatusEnum.Progress;
+            } else {
+                backup.status =  BackupStatusEnum.Terminated;
             }
-        }
 
-         // If the backup wasn't found in the list, add it
-        if (!updated && backup.progress != 100) {
+            logger.debug("Backup '{}' updated with the status: {}", backup.backupName, backup.status);
+            StatusBoard.getInstance().write(backup);
+        } else if (backup.progress != 100) {
+            // If the backup wasn't found in the list, add it
             backup.status = BackupStatusEnum.Progress;
-            backups.add(backup);
+            StatusBoard.getInstance().write(backup);
 
             logger.info("Backup '{}' created with the status: {}", backup.backupName, backup.status);
         }
-
-        updateBackupsToJSON(backups);
     }
 
     public static synchronized void updateBackupStatusAfterCompletition(String backupName) {
-        List<RunningBackups> backups = readBackupListFromJSON();
-        boolean updated = false;
-        BackupStatusEnum status = BackupStatusEnum.Finished;
-    
-        for (RunningBackups backup : backups) {
-            if (backup.backupName.equals(backupName)) {
-                if (backup.progress == 100) {
-                    backup.status = status;
-                } else {
-                    status = BackupStatusEnum.Terminated;
-                    backup.status = status;
-                    cleanRunningBackupsFromJSON(backupName); // delete partial backup
-                }
-
-                updated = true;
-                break;
-            }
+        RunningBackups backup = readBackup(backupName);
+        if (backup == null) {
+            logger.warn("Backup '{}' didn't find. No status update", backupName);
+            return;
         }
-    
-        if (updated) {
-            updateBackupsToJSON(backups);
-            logger.info("Backup '{}' updated with the status: {}", backupName, status);
+
+        if (backup.progress == 100) {
+            backup.status = BackupStatusEnum.Finished;
+            StatusBoard.getInstance().write(backup);
         } else {
-            logger.warn("Backup '{}' didn't find. No status update", backupName);
+            backup.status = BackupStatusEnum.Terminated;
+            cleanRunningBackups(backupName); // delete partial backup
+            StatusBoard.getInstance().write(backup); // the observers still have to see it terminated
         }
+
+        logger.info("Backup '{}' updated with the status: {}", backupName, backup.status);
     }
-    
-    private static synchronized void updateBackupsToJSON(List<RunningBackups> backups) {
-        File file = getBackupFile();
-        int attempts = 5;
-        
-        for (int i = 0; i < attempts; i++) {
-            try {
-                objectMapper.writeValue(file, backups);
-                return;
-            } catch (IOException e) {
-                logger.warn("Attempt " + (i + 1) + " to write failed: " + e.getMessage());  
-                try {
-                    Thread.sleep(new Random().nextInt(100, 150));
-                } catch (InterruptedException ex) {
-                    Thread.currentThread().interrupt();
-                }
-            }
+
+    // the partial archive and its checkpoint are kept, the backup continues from them the next time it runs
+    public static synchronized void updateBackupStatusAfterPause(String backupName) {
+        RunningBackups backup = readBackup(backupName);
+        if (backup == null) {
+            logger.warn("Backup '{}' didn't find. No status update", backupName);
+            return;
         }
-    
-        logger.error("Error: unable to write to JSON after " + attempts + " attempts.");
-    }
 
-    public static synchronized void cleanRunningBackupsFromJSON(String backupName) {
-        List<RunningBackups> backups = readBackupListFromJSON();
-        backups.removeIf(runningBackup -> 
-            (runningBackup.progress != 100 && BackupOperations.deletePartialBackup(runningBackup.path)) ||
-            (runningBackup.progress == 100 && runningBackup.backupName.equals(backupName))
-        );
+        backup.status = BackupStatusEnum.Paused;
+        StatusBoard.getInstance().write(backup);
+        logger.info("Backup '{}' updated with the status: {}", backupName, backup.status);
+    }
 
-        updateBackupsToJSON(backups);
+    public static synchronized void cleanRunningBackups(String backupName) {
+        // only the entry of this backup: the other backups can still be running
+        List<RunningBackups> removed = StatusBoard.getInstance().removeIf(runningBackup -> runningBackup.backupName.equals(backupName));
+        for (RunningBackups runningBackup : removed) {
+            if (runningBackup.progress != 100) deletePartialBackup(runningBackup);
+        }
     }
 
     public static synchronized void deleteCompletedBackup(String backupName) {
-        List<RunningBackups> backups = readBackupListFromJSON();
-        backups.removeIf(backup -> backup.backupName.equals(backupName) && (backup.status == BackupStatusEnum.Finished || backup.status == BackupStatusEnum.Terminated));
-
-        updateBackupsToJSON(backups);
+        StatusBoard.getInstance().removeIf(backup -> backup.backupName.equals(backupName) && isEnded(backup));
     }
 
     public static synchronized void deleteCompletedBackups() {
-        List<RunningBackups> backups = readBackupListFromJSON();
-        backups.removeIf(backup -> backup.status == BackupStatusEnum.Finished || backup.status == BackupStatusEnum.Terminated);
+        StatusBoard.getInstance().removeIf(RunningBackups::isEnded);
+    }
 
-        updateBackupsToJSON(backups);
+    private static boolean isEnded(RunningBackups backup) {
+        return backup.status == BackupStatusEnum.Finished || backup.status == BackupStatusEnum.Terminated || backup.status == BackupStatusEnum.Paused;
     }
 
     // remove all backups. I don't care the status, we have to delete everything
-    public static synchronized void deletePartialBackupsStuckedJSONFile() {
-        List<RunningBackups> backups = readBackupListFromJSON();
-        backups.removeIf(backup -> BackupOperations.deletePartialBackup(backup.path));
+    // except the partial archives with a checkpoint: they are resumed when their backup runs again
+    public static synchronized void deletePartialBackupsStucked() {
+        List<RunningBackups> removed = StatusBoard.getInstance().removeIf(backup -> true);
+        for (RunningBackups backup : removed) {
+            if (backup.path == null || !ZipCheckpoint.exists(Path.of(backup.path))) deletePartialBackup(backup);
+        }
+    }
 
-        updateBackupsToJSON(backups);
+    /*
+     * Called after the backup has been removed from the board, never with the board locked: the deletion waits for the job
+     * writing the archive. If the archive can't be deleted the backup is written back, so the deletion is retried later.
+     */
+    private static void deletePartialBackup(RunningBackups backup) {
+        if (!BackupOperations.deletePartialBackup(backup.path)) {
+            StatusBoard.getInstance().write(backup);
+        }
     }
-}   
+}
@@ -0,0 +1,311 @@
+package backupmanager.Entities;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backupmanager.Enums.ConfigKey;
+
+/*
+ * Metadata of the initial path of a backup, saved by the last completed backup:
+ * for every directory its last modified time, its children (with size and last modified time of the files)
+ * and the number of files and bytes of the whole subtree.
+ * A directory with the same last modified time still has the same children, so the next scan doesn't need to list it again.
+ * It also keeps the archive written by that backup and the settings it was written with (see BackupOperations.isBackupNeeded).
+ */
+public class ScanCache {
+    private static final Logger logger = LoggerFactory.getLogger(ScanCache.class);
+    private static final int MAGIC = 0x424B5343; // "BKSC"
+    private static final int VERSION = 3;
+
+    // a directory modified just before the scan could have changed again in the same timestamp unit, so it is not trusted
+    private static final long RACY_INTERVAL_MILLIS = 2000;
+
+    private final String sourcePath;
+    private final long scanTime;
+    private final Map<String, DirectoryState> directories;
+    private String archivePath = "";
+    private String archiveSettings = "";
+
+    public ScanCache(String sourcePath, long scanTime) {
+        this(sourcePath, scanTime, new HashMap<>());
+    }
+
+    private ScanCache(String sourcePath, long scanTime, Map<String, DirectoryState> directories) {
+        this.sourcePath = sourcePath;
+        this.scanTime = scanTime;
+        this.directories = directories;
+    }
+
+    public static Path getCacheFile(String backupName) {
+        // the backup name can contain characters not allowed in a file name
+        String fileName = backupName.replaceAll("[^A-Za-z0-9._-]", "_") + "_" + Integer.toHexString(backupName.hashCode()) + ".scan";
+        return Path.of(ConfigKey.CACHE_DIRECTORY_STRING.getValue(), fileName);
+    }
+
+    // returns the cache of the last completed backup, or null if it doesn't exist or it refers to another initial path
+    public static ScanCache load(String backupName, String sourcePath) {
+        Path cacheFile = getCacheFile(backupName);
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.warn("Unknown scan cache format: " + cacheFile);
+                return null;
+            }
+
+            String cachedSourcePath = in.readUTF();
+            if (!cachedSourcePath.equals(sourcePath)) {
+                logger.info("Scan cache of a different initial path, it will be ignored: " + cacheFile);
+                return null;
+            }
+
+            long scanTime = in.readLong();
+            String archivePath = in.readUTF();
+            String archiveSettings = in.readUTF();
+            int count = in.readInt();
+            Map<String, DirectoryState> directories = new HashMap<>(Math.max(16, (int) (count / 0.75f) + 1));
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                directories.put(path, DirectoryState.read(in));
+            }
+
+            logger.info("Scan cache loaded with " + count + " directories: " + cacheFile);
+            ScanCache cache = new ScanCache(cachedSourcePath, scanTime, directories);
+            cache.setArchive(archivePath, archiveSettings);
+            return cache;
+        } catch (NoSuchFileException e) {
+            logger.info("Scan cache not found: " + cacheFile);
+            return null;
+        } catch (EOFException e) {
+            logger.warn("Scan cache truncated, it will be ignored: " + cacheFile);
+            return null;
+        } catch (IOException e) {
+            logger.error("Error reading the scan cache " + cacheFile + ": " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    public void save(String backupName) throws IOException {
+        Path cacheFile = getCacheFile(backupName);
+        Files.createDirectories(cacheFile.getParent());
+        Path tempFile = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(sourcePath);
+            out.writeLong(scanTime);
+            out.writeUTF(archivePath);
+            out.writeUTF(archiveSettings);
+            out.writeInt(directories.size());
+            for (Map.Entry<String, DirectoryState> entry : directories.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().write(out);
+            }
+        }
+
+        try {
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        logger.info("Scan cache saved with " + directories.size() + " directories: " + cacheFile);
+    }
+
+    public static void delete(String backupName) {
+        try {
+            Files.deleteIfExists(getCacheFile(backupName));
+        } catch (IOException e) {
+            logger.warn("Unable to delete the scan cache of " + backupName + ": " + e.getMessage());
+        }
+    }
+
+    // the cached children of the directory, or null if the directory must be listed again
+    public DirectoryState getReliableDirectory(String path, long lastModified) {
+        DirectoryState directory = directories.get(path);
+        if (directory == null || directory.lastModified != lastModified || lastModified >= scanTime - RACY_INTERVAL_MILLIS) {
+            return null;
+        }
+        return directory;
+    }
+
+    public DirectoryState getDirectory(String path) {
+        return directories.get(path);
+    }
+
+    public void putDirectory(String path, DirectoryState directory) {
+        directories.put(path, directory);
+    }
+
+    // the archive completed by the backup that scanned the tree, with the settings of the backup that wrote it
+    public void setArchive(String archivePath, String archiveSettings) {
+        this.archivePath = archivePath;
+        this.archiveSettings = archiveSettings;
+    }
+
+    public String getSourcePath() {
+        return sourcePath;
+    }
+    public String getArchivePath() {
+        return archivePath;
+    }
+    public String getArchiveSettings() {
+        return archiveSettings;
+    }
+    public long getScanTime() {
+        return scanTime;
+    }
+
+    // number of files of the whole initial path, -1 if it has not been scanned
+    public int getFilesCount() {
+        DirectoryState root = directories.get("");
+        return root != null ? root.filesCount : -1;
+    }
+
+    // size of all the files of the initial path, -1 if it has not been scanned
+    public long getTotalBytes() {
+        DirectoryState root = directories.get("");
+        return root != null ? root.totalBytes : -1;
+    }
+
+    public static class DirectoryState {
+        private final long lastModified;
+        private final int filesCount;
+        private final long totalBytes;
+        private final String[] names;
+        private final boolean[] isDirectory;
+        private final long[] sizes;
+        private final long[] modifiedTimes;
+        private Map<String, Integer> indexes;
+
+        private DirectoryState(long lastModified, int filesCount, long totalBytes, String[] names, boolean[] isDirectory, long[] sizes, long[] modifiedTimes) {
+            this.lastModified = lastModified;
+            this.filesCount = filesCount;
+            this.totalBytes = totalBytes;
+            this.names = names;
+            this.isDirectory = isDirectory;
+            this.sizes = sizes;
+            this.modifiedTimes = modifiedTimes;
+        }
+
+        private static DirectoryState read(DataInputStream in) throws IOException {
+            long lastModified = in.readLong();
+            int filesCount = in.readInt();
+            long totalBytes = in.readLong();
+            int count = in.readInt();
+            String[] names = new String[count];
+            boolean[] isDirectory = new boolean[count];
+            long[] sizes = new long[count];
+            long[] modifiedTimes = new long[count];
+            for (int i = 0; i < count; i++) {
+                names[i] = in.readUTF();
+                isDirectory[i] = in.readBoolean();
+                sizes[i] = in.readLong();
+                modifiedTimes[i] = in.readLong();
+            }
+            return new DirectoryState(lastModified, filesCount, totalBytes, names, isDirectory, sizes, modifiedTimes);
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeLong(lastModified);
+            out.writeInt(filesCount);
+            out.writeLong(totalBytes);
+            out.writeInt(names.length);
+            for (int i = 0; i < names.length; i++) {
+                out.writeUTF(names[i]);
+                out.writeBoolean(isDirectory[i]);
+                out.writeLong(sizes[i]);
+                out.writeLong(modifiedTimes[i]);
+            }
+        }
+
+        public List<String> getNames() {
+            return Arrays.asList(names);
+        }
+        public int getChildrenCount() {
+            return names.length;
+        }
+        public int getFilesCount() {
+            return filesCount;
+        }
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        // true if the directory contained the same file, with the same size and last modified time
+        public boolean containsFile(String name, long size, long lastModified) {
+            if (indexes == null) {
+                indexes = new HashMap<>(Math.max(16, (int) (names.length / 0.75f) + 1));
+                for (int i = 0; i < names.length; i++) {
+                    indexes.put(names[i], i);
+                }
+            }
+
+            Integer index = indexes.get(name);
+            return index != null && !isDirectory[index] && sizes[index] == size && modifiedTimes[index] == lastModified;
+        }
+    }
+
+    public static class DirectoryBuilder {
+        private final long lastModified;
+        private final List<String> names = new ArrayList<>();
+        private final List<Boolean> isDirectory = new ArrayList<>();
+        private final List<Long> sizes = new ArrayList<>();
+        private final List<Long> modifiedTimes = new ArrayList<>();
+        private int filesCount;
+        private long totalBytes;
+
+        public DirectoryBuilder(long lastModified) {
+            this.lastModified = lastModified;
+        }
+
+        public void addFile(String name, long size, long lastModified) {
+            add(name, false, size, lastModified);
+            filesCount++;
+            totalBytes += size;
+        }
+
+        public void addDirectory(String name, long lastModified, int subtreeFilesCount, long subtreeBytes) {
+            add(name, true, 0, lastModified);
+            filesCount += subtreeFilesCount;
+            totalBytes += subtreeBytes;
+        }
+
+        private void add(String name, boolean directory, long size, long lastModified) {
+            names.add(name);
+            isDirectory.add(directory);
+            sizes.add(size);
+            modifiedTimes.add(lastModified);
+        }
+
+        public DirectoryState build() {
+            int count = names.size();
+            boolean[] directoryFlags = new boolean[count];
+            long[] sizeValues = new long[count];
+            long[] modifiedValues = new long[count];
+            for (int i = 0; i < count; i++) {
+                directoryFlags[i] = isDirectory.get(i);
+                sizeValues[i] = sizes.get(i);
+                modifiedValues[i] = modifiedTimes.get(i);
+            }
+            return new DirectoryState(lastModified, filesCount, totalBytes, names.toArray(String[]::new), directoryFlags, sizeValues, modifiedValues);
+        }
+    }
+}
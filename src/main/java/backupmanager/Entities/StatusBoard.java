@@ -0,0 +1,334 @@
+package backupmanager.Entities;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backupmanager.Enums.BackupStatusEnum;
+import backupmanager.Enums.ConfigKey;
+
+/*
+ * Memory mapped file shared by the application and the background service, with a fixed size slot for every running backup.
+ * Every slot is protected by a sequence number (seqlock): the writer makes it odd while it writes and even when it has finished,
+ * so a reader copies the slot without locks and retries only if the sequence changed in the meantime.
+ * The writers of the different processes are serialized with a lock on the header of the file: a slot left odd while
+ * the lock is held has been torn by a writer that died, it is freed when the board is opened or cleaned up.
+ * A reader waits for a slot that stays odd spinning, then sleeping; after a deadline it treats the slot as torn and frees it
+ * as well, if no writer holds the lock.
+ *
+ * Slot layout:
+ * 0 sequence, 8 used, 12 status, 16 progress, 20 files processed, 24 total files,
+ * 32 bytes read, 40 total bytes, 48 bytes written, 56 eta seconds, 64 bytes per second, 72 heartbeat,
+ * 80 name (length + UTF-8 bytes), 1084 path (length + UTF-8 bytes)
+ */
+public class StatusBoard {
+    private static final Logger logger = LoggerFactory.getLogger(StatusBoard.class);
+    private static final VarHandle LONG_VIEW = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final int MAGIC = 0x424B5342; // "BKSB"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 4096;
+    private static final int SLOTS_COUNT = 64;
+    private static final int MAX_NAME_BYTES = 1000;
+    private static final int MAX_PATH_BYTES = 3000;
+    private static final int NAME_OFFSET = 80;
+    private static final int PATH_OFFSET = NAME_OFFSET + 2 + MAX_NAME_BYTES + 2;
+    private static final long STALE_SLOT_NANOS = 1_000_000_000L;
+    private static final int SPIN_ATTEMPTS = 100;
+    private static final long BACKOFF_NANOS = 100_000L;
+    private static StatusBoard instance;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    public StatusBoard(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long size = HEADER_SIZE + (long) SLOTS_COUNT * SLOT_SIZE;
+        FileLock lock = channel.lock(0, HEADER_SIZE, false);
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != SLOTS_COUNT) {
+                logger.info("Initializing the status board: " + file);
+                for (int i = 0; i < size; i += 8) {
+                    buffer.putLong(i, 0);
+                }
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, SLOTS_COUNT);
+                buffer.putInt(0, MAGIC);
+                buffer.force();
+            }
+            repairTornSlots();
+        } finally {
+            lock.release();
+        }
+    }
+
+    public static synchronized StatusBoard getInstance() {
+        if (instance == null) {
+            Path file = Path.of(ConfigKey.CONFIG_DIRECTORY_STRING.getValue(), ConfigKey.RUNNING_BACKUPS_FILE_STRING.getValue());
+            try {
+                instance = new StatusBoard(file);
+            } catch (IOException e) {
+                logger.error("Unable to open the status board " + file + ": " + e.getMessage(), e);
+                throw new IllegalStateException("Unable to open the status board", e);
+            }
+        }
+        return instance;
+    }
+
+    public List<RunningBackups> readAll() {
+        List<RunningBackups> backups = new ArrayList<>();
+        for (int slot = 0; slot < SLOTS_COUNT; slot++) {
+            RunningBackups backup = readSlot(slot);
+            if (backup != null) {
+                backups.add(backup);
+            }
+        }
+        return backups;
+    }
+
+    public RunningBackups read(String backupName) {
+        for (int slot = 0; slot < SLOTS_COUNT; slot++) {
+            RunningBackups backup = readSlot(slot);
+            if (backup != null && backup.backupName.equals(backupName)) {
+                return backup;
+            }
+        }
+        return null;
+    }
+
+    // writes the backup in its slot, or in a free one if it is not on the board
+    public synchronized void write(RunningBackups backup) {
+        byte[] name = encode(backup.backupName, MAX_NAME_BYTES);
+        byte[] path = encode(backup.path, MAX_PATH_BYTES);
+
+        try {
+            FileLock lock = channel.lock(0, HEADER_SIZE, false);
+            try {
+                writeLocked(backup, name, path);
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            logger.error("Unable to lock the status board: " + e.getMessage(), e);
+        }
+    }
+
+    // returns the backups removed, the filter runs with the board locked so it must be quick
+    public synchronized List<RunningBackups> removeIf(Predicate<RunningBackups> filter) {
+        List<RunningBackups> removed = new ArrayList<>();
+        try {
+            FileLock lock = channel.lock(0, HEADER_SIZE, false);
+            try {
+                removeLocked(filter, removed);
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            logger.error("Unable to lock the status board: " + e.getMessage(), e);
+        }
+        return removed;
+    }
+
+    private void writeLocked(RunningBackups backup, byte[] name, byte[] path) {
+        int freeSlot = -1;
+        for (int slot = 0; slot < SLOTS_COUNT; slot++) {
+            int base = slotOffset(slot);
+            if (buffer.getInt(base + 8) == 0) {
+                if (freeSlot < 0) freeSlot = slot;
+            } else if (hasName(base, name)) {
+                writeSlot(base, backup, name, path);
+                return;
+            }
+        }
+
+        if (freeSlot < 0) {
+            logger.error("Status board full, the backup " + backup.backupName + " is not tracked");
+            return;
+        }
+        writeSlot(slotOffset(freeSlot), backup, name, path);
+    }
+
+    private void removeLocked(Predicate<RunningBackups> filter, List<RunningBackups> removed) {
+        repairTornSlots();
+        for (int slot = 0; slot < SLOTS_COUNT; slot++) {
+            RunningBackups backup = readSlot(slot);
+            if (backup != null && filter.test(backup)) {
+                int base = slotOffset(slot);
+                long sequence = beginWrite(base);
+                buffer.putInt(base + 8, 0);
+                endWrite(base, sequence);
+                removed.add(backup);
+            }
+        }
+    }
+
+    // must be called with the lock: no writer is running, an odd sequence is left by one that died in the middle of the slot
+    private void repairTornSlots() {
+        for (int slot = 0; slot < SLOTS_COUNT; slot++) {
+            int base = slotOffset(slot);
+            if (((long) LONG_VIEW.getVolatile(buffer, base) & 1) == 0) continue;
+
+            logger.warn("Slot " + slot + " of the status board left incomplete by a writer, it is freed");
+            long sequence = beginWrite(base);
+            buffer.putInt(base + 8, 0);
+            endWrite(base, sequence);
+        }
+    }
+
+    // a slot left odd for longer than a write can take: if no writer holds the lock, the one that made it odd died
+    private synchronized void repairStaleSlots() {
+        try {
+            FileLock lock = channel.tryLock(0, HEADER_SIZE, false);
+            if (lock == null) return; // a writer is running, the slot is only skipped
+            try {
+                repairTornSlots();
+            } finally {
+                lock.release();
+            }
+        } catch (IOException | OverlappingFileLockException e) {
+            logger.warn("Unable to lock the status board to free a stale slot: " + e.getMessage());
+        }
+    }
+
+    // null if the slot is free, or stale: it can't be read for longer than a write can take
+    private RunningBackups readSlot(int slot) {
+        int base = slotOffset(slot);
+        long deadline = 0;
+
+        for (int attempt = 0; ; attempt++) {
+            // the clock is read only by the retries
+            if (attempt == 1) {
+                deadline = System.nanoTime() + STALE_SLOT_NANOS;
+            } else if (attempt > 1 && System.nanoTime() - deadline > 0) {
+                break;
+            }
+
+            long sequence = (long) LONG_VIEW.getAcquire(buffer, base);
+            if ((sequence & 1) != 0) {
+                // a write takes microseconds: spin for a while, then leave the cpu to a writer that is not running
+                if (attempt < SPIN_ATTEMPTS) Thread.onSpinWait();
+                else LockSupport.parkNanos(BACKOFF_NANOS);
+                continue;
+            }
+
+            if (buffer.getInt(base + 8) == 0) {
+                VarHandle.loadLoadFence();
+                if ((long) LONG_VIEW.getVolatile(buffer, base) == sequence) return null;
+                continue;
+            }
+
+            int statusOrdinal = buffer.getInt(base + 12);
+            int progress = buffer.getInt(base + 16);
+            int filesProcessed = buffer.getInt(base + 20);
+            int totalFiles = buffer.getInt(base + 24);
+            long bytesRead = buffer.getLong(base + 32);
+            long totalBytes = buffer.getLong(base + 40);
+            long bytesWritten = buffer.getLong(base + 48);
+            long etaSeconds = buffer.getLong(base + 56);
+            double bytesPerSecond = buffer.getDouble(base + 64);
+            long heartbeat = buffer.getLong(base + 72);
+            String name = decode(base + NAME_OFFSET, MAX_NAME_BYTES);
+            String path = decode(base + PATH_OFFSET, MAX_PATH_BYTES);
+
+            // the slot has been modified while it was read: read it again
+            VarHandle.loadLoadFence();
+            if ((long) LONG_VIEW.getVolatile(buffer, base) != sequence || name == null || path == null) continue;
+
+            BackupStatusEnum[] statuses = BackupStatusEnum.values();
+            RunningBackups backup = new RunningBackups(name, path, progress, statusOrdinal >= 0 && statusOrdinal < statuses.length ? statuses[statusOrdinal] : null);
+            backup.filesProcessed = filesProcessed;
+            backup.totalFiles = totalFiles;
+            backup.bytesRead = bytesRead;
+            backup.totalBytes = totalBytes;
+            backup.bytesWritten = bytesWritten;
+            backup.etaSeconds = etaSeconds;
+            backup.bytesPerSecond = bytesPerSecond;
+            backup.heartbeat = heartbeat;
+            return backup;
+        }
+
+        logger.debug("Slot " + slot + " of the status board is still being written, it is treated as stale");
+        repairStaleSlots();
+        return null;
+    }
+
+    private void writeSlot(int base, RunningBackups backup, byte[] name, byte[] path) {
+        long sequence = beginWrite(base);
+
+        buffer.putInt(base + 8, 1);
+        buffer.putInt(base + 12, backup.status != null ? backup.status.ordinal() : -1);
+        buffer.putInt(base + 16, backup.progress);
+        buffer.putInt(base + 20, backup.filesProcessed);
+        buffer.putInt(base + 24, backup.totalFiles);
+        buffer.putLong(base + 32, backup.bytesRead);
+        buffer.putLong(base + 40, backup.totalBytes);
+        buffer.putLong(base + 48, backup.bytesWritten);
+        buffer.putLong(base + 56, backup.etaSeconds);
+        buffer.putDouble(base + 64, backup.bytesPerSecond);
+        buffer.putLong(base + 72, System.currentTimeMillis());
+        buffer.putShort(base + NAME_OFFSET, (short) name.length);
+        buffer.put(base + NAME_OFFSET + 2, name);
+        buffer.putShort(base + PATH_OFFSET, (short) path.length);
+        buffer.put(base + PATH_OFFSET + 2, path);
+
+        endWrite(base, sequence);
+    }
+
+    // the sequence is made odd also if a writer that died left it odd, the next even one is published by endWrite
+    private long beginWrite(int base) {
+        long sequence = (long) LONG_VIEW.getVolatile(buffer, base) | 1;
+        LONG_VIEW.setVolatile(buffer, base, sequence);
+        VarHandle.storeStoreFence();
+        return sequence;
+    }
+
+    private void endWrite(int base, long sequence) {
+        LONG_VIEW.setRelease(buffer, base, sequence + 1);
+    }
+
+    private boolean hasName(int base, byte[] name) {
+        if (buffer.getShort(base + NAME_OFFSET) != name.length) return false;
+        for (int i = 0; i < name.length; i++) {
+            if (buffer.get(base + NAME_OFFSET + 2 + i) != name[i]) return false;
+        }
+        return true;
+    }
+
+    private String decode(int offset, int maxBytes) {
+        int length = buffer.getShort(offset);
+        if (length < 0 || length > maxBytes) return null; // torn read, the sequence check will retry
+        byte[] bytes = new byte[length];
+        buffer.get(offset + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encode(String value, int maxBytes) {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maxBytes) throw new IllegalArgumentException("Value too long for the status board: " + value);
+        return bytes;
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+}
@@ -4,5 +4,6 @@ public enum BackupStatusEnum {
     Progress,
     Queue,
     Finished,
-    Terminated
+    Terminated,
+    Paused
 }
\ No newline at end of file
@@ -0,0 +1,6 @@
+package backupmanager.Enums;
+
+public enum BackupTypeEnum {
+    Full,
+    Incremental
+}
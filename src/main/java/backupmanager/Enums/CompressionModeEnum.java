@@ -0,0 +1,7 @@
+package backupmanager.Enums;
+
+public enum CompressionModeEnum {
+    Stored,
+    Fast,
+    Strong
+}
@@ -17,6 +17,8 @@ public enum ConfigKey {
     BACKUP_FILE_STRING,
     CONFIG_FILE_STRING,
     RUNNING_BACKUPS_FILE_STRING,
+    CONTROL_ENDPOINT_FILE_STRING,
+    CONTROL_SOCKET_FILE_STRING,
     PREFERENCES_FILE_STRING,
     USER_FILE_STRING,
     PROPERTIES_FILE_STRING,
@@ -24,6 +26,7 @@ public enum ConfigKey {
     RES_DIRECTORY_STRING,
     LANGUAGES_DIRECTORY_STRING,
     CONFIG_DIRECTORY_STRING,
+    CACHE_DIRECTORY_STRING,
     DONATE,
     DONATE_PAYPAL_LINK,
     DONATE_BUYMEACOFFE_LINK,
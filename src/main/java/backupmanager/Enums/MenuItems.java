@@ -8,6 +8,7 @@ public enum MenuItems {
     PaypalDonate,
     BuymeacoffeeDonate,
     History,
+    SearchInBackups,
     InfoPage,
     New,
     Quit,
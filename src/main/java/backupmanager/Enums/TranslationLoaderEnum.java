@@ -25,6 +25,7 @@ public class TranslationLoaderEnum {
         TIME_PICKER_DIALOG("TimePickerDialog"),
         PREFERENCES_DIALOG("PreferencesDialog"),
         USER_DIALOG("UserDialog"),
+        CATALOG_DIALOG("CatalogDialog"),
         PROGRESS_BACKUP_FRAME("ProgressBackupFrame"),
         TRAY_ICON("TrayIcon"),
         DIALOGS("Dialogs");
@@ -60,6 +61,7 @@ public class TranslationLoaderEnum {
         CLOSE_BUTTON("CloseButton", "Close"),
         OK_BUTTON("OkButton", "Ok"),
         CANCEL_BUTTON("CancelButton", "Cancel"),
+        PAUSE_BUTTON("PauseButton", "Pause"),
         APPLY_BUTTON("ApplyButton", "Apply"),
         SAVE_BUTTON("SaveButton", "Save"),
         CREATE_BUTTON("CreateButton", "Create"),
@@ -73,6 +75,7 @@ public class TranslationLoaderEnum {
         CLEAR("Clear", "Clear"),
         DONATE("Donate", "Donate"),
         HISTORY("History", "History"),
+        SEARCH_IN_BACKUPS("SearchInBackups", "Search in backups"),
         INFO_PAGE("InfoPage", "Info"),
         NEW("New", "New"),
         QUIT("Quit", "Quit"),
@@ -112,6 +115,20 @@ public class TranslationLoaderEnum {
         TIME_PICKER_TOOLTIP("TimePickerTooltip", "Time picker"),
         MAX_BACKUPS_TO_KEEP("MaxBackupsToKeep", "Max backups to keep"),
         MAX_BACKUPS_TO_KEEP_TOOLTIP("MaxBackupsToKeepTooltip", "Maximum number of backups before removing the oldest."),
+        BACKUP_TYPE("BackupType", "Backup type"),
+        BACKUP_TYPE_TOOLTIP("BackupTypeTooltip", "Full: every backup contains all the files. Incremental: only the files changed since the previous backup are saved."),
+        BACKUP_TYPE_FULL("BackupTypeFull", "Full"),
+        BACKUP_TYPE_INCREMENTAL("BackupTypeIncremental", "Incremental"),
+        COMPRESSION("Compression", "Compression"),
+        COMPRESSION_CODEC_TOOLTIP("CompressionCodecTooltip", "Compression algorithm used for the files of the backup."),
+        COMPRESSION_LEVEL_TOOLTIP("CompressionLevelTooltip", "Compression level: higher levels make smaller backups, but they take longer."),
+        ARCHIVE_FORMAT("ArchiveFormat", "Archive format"),
+        ARCHIVE_FORMAT_TOOLTIP("ArchiveFormatTooltip", "Zip: every file is compressed by itself and can be extracted alone. Solid tar: all the files are compressed together in a single stream, smaller and faster for many small files. Repository: the files are split in chunks stored only once, every backup is a full backup that costs only the changed data."),
+        ARCHIVE_FORMAT_ZIP("ArchiveFormatZip", "Zip"),
+        ARCHIVE_FORMAT_TAR("ArchiveFormatTar", "Solid tar"),
+        ARCHIVE_FORMAT_REPOSITORY("ArchiveFormatRepository", "Repository"),
+        COMPRESSION_DICTIONARY("CompressionDictionary", "Dictionary"),
+        COMPRESSION_DICTIONARY_TOOLTIP("CompressionDictionaryTooltip", "Trains a dictionary on a sample of the small files and compresses each of them with it: many small similar files (json, xml, sources) get much smaller. Only zip archives, restored by this program."),
 
         // BackupList
         BACKUP_NAME_COLUMN("BackupNameColumn", "Backup Name"),
@@ -148,6 +165,7 @@ public class TranslationLoaderEnum {
         BACKUP_POPUP("BackupPopup", "Backup"),
         SINGLE_BACKUP_POPUP("SingleBackupPopup", "Run single backup"),
         AUTO_BACKUP_POPUP("AutoBackupPopup", "Auto backup"),
+        RESTORE_BACKUP_POPUP("RestoreBackupPopup", "Restore backup"),
         COPY_TEXT_POPUP("CopyTextPopup", "Copy text"),
         COPY_BACKUP_NAME_POPUP("CopyBackupNamePopup", "Copy backup name"),
         COPY_INITIAL_PATH_POPUP("CopyInitialPathPopup", "Copy initial path"),
@@ -175,11 +193,25 @@ public class TranslationLoaderEnum {
         ERROR_MESSAGE_FOR_WRONG_EMAIL("ErrorMessageForWrongEmail", "The provided email address is invalid. Please provide a correct one."),
         EMAIL_CONFIRMATION_SUBJECT("EmailConfirmationSubject", "Thank you for choosing Backup Manager!"),
         EMAIL_CONFIRMATION_BODY("EmailConfirmationBody", "Hi [UserName],\n\nThank you for downloading and registering **Backup Manager**, your new tool for secure and efficient backup management!\n\nThis is an automated email sent to confirm your registration. We will contact you by email only to inform you about new releases or important updates of the application.\n\nIn the meantime, if you have any questions, need assistance, or have suggestions, we are always here for you. You can reach us at **[SupportEmail]**.\n\nThank you again for choosing Backup Manager, and enjoy managing your backups!\n\nBest regards,\nThe Backup Manager Team"),
+
+        // Catalog dialog
+        CATALOG_TITLE("CatalogTitle", "Search in backups"),
+        CATALOG_SEARCH_LABEL("CatalogSearchLabel", "File name or path"),
+        CATALOG_SEARCH_BUTTON("CatalogSearchButton", "Search"),
+        CATALOG_EXTRACT_BUTTON("CatalogExtractButton", "Extract"),
+        CATALOG_FILE_COLUMN("CatalogFileColumn", "File"),
+        CATALOG_BACKUP_COLUMN("CatalogBackupColumn", "Backup"),
+        CATALOG_LAST_MODIFIED_COLUMN("CatalogLastModifiedColumn", "Last modified"),
+        CATALOG_SIZE_COLUMN("CatalogSizeColumn", "Size"),
+        CATALOG_RESULTS_MESSAGE("CatalogResultsMessage", "[Count] versions found in [Time] ms"),
+        CATALOG_EXTRACT_COMPLETED_MESSAGE("CatalogExtractCompletedMessage", "File extracted: [Path]"),
+        ERROR_MESSAGE_FOR_EXTRACT("ErrorMessageForExtract", "Error extracting the file: "),
     
         // ProgressBackupFrame
         PROGRESS_BACKUP_TITLE("ProgressBackupTitle", "Backup in progress"),
         STATUS_COMPLETED("StatusCompleted", "Backup completed!"),
         STATUS_LOADING("StatusLoading", "Loading..."), 
+        STATUS_REMAINING("StatusRemaining", "remaining"),
 
         // TrayIcon
         TRAY_TOOLTIP("TrayTooltip", "Backup Service"),
@@ -191,7 +223,7 @@ public class TranslationLoaderEnum {
         // Dialogs
         ERROR_GENERIC_TITLE("ErrorGenericTitle", "Error"),
         WARNING_GENERIC_TITLE("WarningGenericTitle", "Warning"),
-        WARNING_BACKUP_ALREADY_IN_PROGRESS_MESSAGE("WarningBackupAlreadyInProgressMessage", "There is already a backup in progress. It is not possible to perform parallel backups"),
+        WARNING_BACKUP_ALREADY_IN_PROGRESS_MESSAGE("WarningBackupAlreadyInProgressMessage", "This backup is already in progress"),
         WARNING_SHORT_TIME_INTERVAL_MESSAGE("WarningShortTimeIntervalMessage", "The selected time interval is very short. For optimal performance, we recommend setting it to at least one hour. Do you still want to proceed?"),
 
         ERROR_MESSAGE_FOR_FOLDER_NOT_EXISTING("ErrorMessageForFolderNotExisting", "The folder does not exist or is invalid"),
@@ -255,6 +287,15 @@ public class TranslationLoaderEnum {
         ERROR_MESSAGE_INVALID_FILENAME("ErrorMessageInvalidFilename", "Invalid file name. Use only alphanumeric characters, dashes, and underscores."),
         CONFIRMATION_DELETION_TITLE("ConfirmationDeletionTitle", "Confirm Deletion"),
         CONFIRMATION_DELETION_MESSAGE("ConfirmationDeletionMessage", "Are you sure you want to delete the selected rows?"),
+        RESTORE_SELECT_ARCHIVE_TITLE("RestoreSelectArchiveTitle", "Select the backup to restore"),
+        RESTORE_SELECT_TARGET_TITLE("RestoreSelectTargetTitle", "Select the folder where the backup is restored"),
+        RESTORE_SKIP_UNCHANGED_MESSAGE("RestoreSkipUnchangedMessage", "Skip the files of the folder that are identical to the ones of the backup?"),
+        RESTORE_COMPLETED_MESSAGE("RestoreCompletedMessage", "Restore completed! Files restored: [Restored], unchanged files skipped: [Skipped]"),
+        ERROR_MESSAGE_FOR_RESTORE("ErrorMessageForRestore", "Error restoring the backup: "),
+        ERROR_MESSAGE_FOR_MISSING_FULL_BACKUP("ErrorMessageForMissingFullBackup", "The full backup needed to restore this archive is missing."),
+        ERROR_MESSAGE_FOR_UNSUPPORTED_RESTORE_FORMAT("ErrorMessageForUnsupportedRestoreFormat", "The [Format] backups can't be restored from here yet, only the Zip ones."),
+        RESTORE_PROGRESS_MESSAGE("RestoreProgressMessage", "Restoring the backup: [Processed] of [Total] files"),
+        RESTORE_CANCELLED_MESSAGE("RestoreCancelledMessage", "Restore cancelled. Files restored: [Restored]"),
 
         // InfoPage
         INFO_PAGE_DESCRIPTION("InfoPageDescription", "Backup automatic system for files with the option to schedule and make backups regularly."),
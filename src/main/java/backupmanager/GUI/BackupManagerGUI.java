@@ -42,13 +42,13 @@ import backupmanager.Enums.MenuItems;
 import backupmanager.Enums.TranslationLoaderEnum;
 import backupmanager.Enums.TranslationLoaderEnum.TranslationCategory;
 import backupmanager.Enums.TranslationLoaderEnum.TranslationKey;
-import backupmanager.Json.JSONBackup;
 import backupmanager.Json.JSONConfigReader;
 import backupmanager.Json.JsonUser;
 import backupmanager.Managers.BackupManager;
 import backupmanager.Managers.ExceptionManager;
 import backupmanager.Managers.ThemeManager;
 import backupmanager.Services.BackupObserver;
+import backupmanager.Services.BackupRepository;
 import backupmanager.Table.BackupTable;
 import backupmanager.Table.BackupTableModel;
 import backupmanager.Table.CheckboxCellRenderer;
@@ -229,7 +229,7 @@ public final class BackupManagerGUI extends javax.swing.JFrame {
                 backup.getLastBackup() != null ? backup.getLastBackup().format(formatter) : "",
                 backup.isAutoBackup(),
                 backup.getNextDateBackup() != null ? backup.getNextDateBackup().format(formatter) : "",
-                backup.getTimeIntervalBackup() != null ? backup.getTimeIntervalBackup().toString() : ""
+                backup.getScheduleString()
             });
         }
     
@@ -315,7 +315,7 @@ public final class BackupManagerGUI extends javax.swing.JFrame {
                     backup.getDestinationPath().contains(research) || 
                     (backup.getLastBackup() != null && backup.getLastBackup().toString().contains(research)) ||
                     (backup.getNextDateBackup() != null && backup.getNextDateBackup().toString().contains(research)) ||
-                    (backup.getTimeIntervalBackup() != null && backup.getTimeIntervalBackup().toString().contains(research))) {
+                    backup.getScheduleString().contains(research)) {
                 tempBackups.add(backup);
             }
         }
@@ -346,6 +346,7 @@ public final class BackupManagerGUI extends javax.swing.JFrame {
         Backup = new javax.swing.JMenu();
         RunBackupPopupItem = new javax.swing.JMenuItem();
         AutoBackupMenuItem = new javax.swing.JCheckBoxMenuItem();
+        RestoreBackupPopupItem = new javax.swing.JMenuItem();
         jSeparator2 = new javax.swing.JPopupMenu.Separator();
         jMenu4 = new javax.swing.JMenu();
         CopyBackupNamePopupItem = new javax.swing.JMenuItem();
@@ -372,6 +373,7 @@ public final class BackupManagerGUI extends javax.swing.JFrame {
         jSeparator5 = new javax.swing.JPopupMenu.Separator();
         MenuClear = new backupmanager.svg.SVGMenuItem();
         MenuHistory = new backupmanager.svg.SVGMenuItem();
+        MenuSearchInBackups = new backupmanager.svg.SVGMenuItem();
         jMenu2 = new javax.swing.JMenu();
         MenuPreferences = new backupmanager.svg.SVGMenuItem();
         MenuQuit = new backupmanager.svg.SVGMenuItem();
@@ -465,6 +467,14 @@ public final class BackupManagerGUI extends javax.swing.JFrame {
         });
         Backup.add(AutoBackupMenuItem);
 
+        RestoreBackupPopupItem.setText("Restore backup");
+        RestoreBackupPopupItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                RestoreBackupPopupItemActionPerformed(evt);
+            }
+        });
+        Backup.add(RestoreBackupPopupItem);
+
         TablePopup.add(Backup);
         TablePopup.add(jSeparator2);
 
@@ -642,6 +652,14 @@ public final class BackupManagerGUI extends javax.swing.JFrame {
         });
         jMenu1.add(MenuHistory);
 
+        MenuSearchInBackups.setText("Search in backups");
+        MenuSearchInBackups.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                MenuSearchInBackupsActionPerformed(evt);
+            }
+        });
+        jMenu1.add(MenuSearchInBackups);
+
         jMenuBar1.add(jMenu1);
 
         jMenu2.setText("Options");
@@ -795,6 +813,10 @@ public final class BackupManagerGUI extends javax.swing.JFrame {
         backupManager.menuItemHistory();
     }//GEN-LAST:event_MenuHistoryActionPerformed
 
+    private void MenuSearchInBackupsActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_MenuSearchInBackupsActionPerformed
+        backupManager.menuItemSearchInBackups();
+    }//GEN-LAST:event_MenuSearchInBackupsActionPerformed
+
     private void MenuClearActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_MenuClearActionPerformed
     }//GEN-LAST:event_MenuClearActionPerformed
 
@@ -841,7 +863,7 @@ public final class BackupManagerGUI extends javax.swing.JFrame {
                 TablePopup.show(evt.getComponent(), evt.getX(), evt.getY()); // show popup
 
                 // check if the backup is running
-                if (RunningBackups.readBackupFromJSON(backupName) == null) {
+                if (RunningBackups.readBackup(backupName) == null) {
                     DeletePopupItem.setEnabled(true);
                     interruptBackupPopupItem.setEnabled(false);
                 } else {
@@ -876,7 +898,7 @@ public final class BackupManagerGUI extends javax.swing.JFrame {
                     "<b>" + destinationPathStr + ":</b> " + backup.getDestinationPath() + ", " +
                     "<b>" + lastBackupStr + ":</b> " + (backup.getLastBackup() != null ? backup.getLastBackup().format(formatter) : "") + ", " +
                     "<b>" + nextBackupStr + ":</b> " + (backup.getNextDateBackup() != null ? backup.getNextDateBackup().format(formatter) : "_") + ", " +
-                    "<b>" + timeIntervalBackupStr + ":</b> " + (backup.getTimeIntervalBackup() != null ? backup.getTimeIntervalBackup().toString() : "_") + ", " +
+                    "<b>" + timeIntervalBackupStr + ":</b> " + (!backup.getScheduleString().isEmpty() ? backup.getScheduleString() : "_") + ", " +
                     "<b>" + creationDateStr + ":</b> " + (backup.getCreationDate() != null ? backup.getCreationDate().format(formatter) : "_") + ", " +
                     "<b>" + lastUpdateDateStr + ":</b> " + (backup.getLastUpdateDate() != null ? backup.getLastUpdateDate().format(formatter) : "_") + ", " +
                     "<b>" + backupCountStr + ":</b> " + (backup.getBackupCount()) + ", " +
@@ -912,6 +934,10 @@ public final class BackupManagerGUI extends javax.swing.JFrame {
         backupManager.popupItemAutoBackup(selectedRow, backupTable, backups, AutoBackupMenuItem);
     }//GEN-LAST:event_AutoBackupMenuItemActionPerformed
 
+    private void RestoreBackupPopupItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_RestoreBackupPopupItemActionPerformed
+        backupManager.popupItemRestoreBackup(selectedRow, backupTable, backups);
+    }//GEN-LAST:event_RestoreBackupPopupItemActionPerformed
+
     private void OpenInitialFolderItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_OpenInitialFolderItemActionPerformed
         backupManager.popupItemOpenInitialPath(selectedRow, backupTable, backups);
     }//GEN-LAST:event_OpenInitialFolderItemActionPerformed
@@ -999,6 +1025,7 @@ public final class BackupManagerGUI extends javax.swing.JFrame {
         MenuClear.setText(TranslationCategory.MENU.getTranslation(TranslationKey.CLEAR));
         MenuDonate.setText(TranslationCategory.MENU.getTranslation(TranslationKey.DONATE));
         MenuHistory.setText(TranslationCategory.MENU.getTranslation(TranslationKey.HISTORY));
+        MenuSearchInBackups.setText(TranslationCategory.MENU.getTranslation(TranslationKey.SEARCH_IN_BACKUPS));
         MenuInfoPage.setText(TranslationCategory.MENU.getTranslation(TranslationKey.INFO_PAGE));
         MenuNew.setText(TranslationCategory.MENU.getTranslation(TranslationKey.NEW));
         MenuQuit.setText(TranslationCategory.MENU.getTranslation(TranslationKey.QUIT));
@@ -1033,6 +1060,7 @@ public final class BackupManagerGUI extends javax.swing.JFrame {
         renamePopupItem.setText(TranslationCategory.BACKUP_LIST.getTranslation(TranslationKey.RENAME_BACKUP_POPUP));
         jMenu4.setText(TranslationCategory.BACKUP_LIST.getTranslation(TranslationKey.COPY_TEXT_POPUP));
         AutoBackupMenuItem.setText(TranslationCategory.BACKUP_LIST.getTranslation(TranslationKey.AUTO_BACKUP_POPUP));
+        RestoreBackupPopupItem.setText(TranslationCategory.BACKUP_LIST.getTranslation(TranslationKey.RESTORE_BACKUP_POPUP));
         Backup.setText(TranslationCategory.BACKUP_LIST.getTranslation(TranslationKey.BACKUP_POPUP));
     }
 
@@ -1050,14 +1078,14 @@ public final class BackupManagerGUI extends javax.swing.JFrame {
     }
 
     private void initializeTable() {
-        try {
-            backups = JSONBackup.readBackupListFromJSON(Preferences.getBackupList().getDirectory(), Preferences.getBackupList().getFile());
-            displayBackupList();
-        } catch (IOException ex) {
-            backups = null;
-            logger.error("An error occurred: " + ex.getMessage(), ex);
-            ExceptionManager.openExceptionMessage(ex.getMessage(), Arrays.toString(ex.getStackTrace()));
-        }
+        backups = BackupRepository.getInstance().getBackups();
+        displayBackupList();
+
+        // the background service updates the backups after running them
+        BackupRepository.getInstance().addReloadListener(() -> {
+            backups = BackupRepository.getInstance().getBackups();
+            TableDataManager.updateTableWithNewBackupList(backups, formatter);
+        });
     }
     
     private void setSvgImages() {
@@ -1072,6 +1100,7 @@ public final class BackupManagerGUI extends javax.swing.JFrame {
         MenuBugReport.setSvgImage("res/img/bug.svg", 16, 16);
         MenuClear.setSvgImage("res/img/clear.svg", 16, 16);
         MenuHistory.setSvgImage("res/img/history.svg", 16, 16);
+        MenuSearchInBackups.setSvgImage("res/img/search.svg", 16, 16);
         MenuDonate.setSvgImage("res/img/donate.svg", 16, 16);
         MenuPaypalDonate.setSvgImage("res/img/paypal.svg", 16, 16);
         MenuBuyMeACoffeDonate.setSvgImage("res/img/buymeacoffee.svg", 16, 16);
@@ -1092,6 +1121,7 @@ public final class BackupManagerGUI extends javax.swing.JFrame {
         MenuPaypalDonate.setVisible(config.isMenuItemEnabled(MenuItems.PaypalDonate.name()));
         MenuBuyMeACoffeDonate.setVisible(config.isMenuItemEnabled(MenuItems.BuymeacoffeeDonate.name()));
         MenuHistory.setVisible(config.isMenuItemEnabled(MenuItems.History.name()));
+        MenuSearchInBackups.setVisible(config.isMenuItemEnabled(MenuItems.SearchInBackups.name()));
         MenuInfoPage.setVisible(config.isMenuItemEnabled(MenuItems.InfoPage.name()));
         MenuNew.setVisible(config.isMenuItemEnabled(MenuItems.New.name()));
         MenuQuit.setVisible(config.isMenuItemEnabled(MenuItems.Quit.name()));
@@ -1128,11 +1158,13 @@ public final class BackupManagerGUI extends javax.swing.JFrame {
     private backupmanager.svg.SVGMenuItem MenuQuit;
     private backupmanager.svg.SVGMenuItem MenuSave;
     private backupmanager.svg.SVGMenuItem MenuSaveWithName;
+    private backupmanager.svg.SVGMenuItem MenuSearchInBackups;
     private backupmanager.svg.SVGMenuItem MenuShare;
     private backupmanager.svg.SVGMenuItem MenuSupport;
     private backupmanager.svg.SVGMenuItem MenuWebsite;
     private javax.swing.JMenuItem OpenInitialDestinationItem;
     private javax.swing.JMenuItem OpenInitialFolderItem;
+    private javax.swing.JMenuItem RestoreBackupPopupItem;
     private javax.swing.JMenuItem RunBackupPopupItem;
     private javax.swing.JPopupMenu TablePopup;
     private backupmanager.svg.SVGButton addBackupEntryButton;
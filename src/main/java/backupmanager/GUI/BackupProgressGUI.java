@@ -5,6 +5,7 @@ import javax.swing.JOptionPane;
 import java.awt.Image;
 import javax.swing.ImageIcon;
 
+import backupmanager.Entities.BackupProgress;
 import backupmanager.Enums.ConfigKey;
 import backupmanager.Enums.TranslationLoaderEnum.TranslationCategory;
 import backupmanager.Enums.TranslationLoaderEnum.TranslationKey;
@@ -27,7 +28,7 @@ public class BackupProgressGUI extends javax.swing.JDialog {
         setTranslations();
    }
     
-    public void updateProgressBar(int value, String fileProcessed, int filesCopiedSoFar, int totalFilesCount) {
+    public void updateProgressBar(int value, String fileProcessed, BackupProgress progress) {
         // editing the percentage
         progressBar.setValue(value);
         percentageLabel.setText(value + " %");
@@ -35,13 +36,20 @@ public class BackupProgressGUI extends javax.swing.JDialog {
         // editing the current file zipped
         fileZippedLabel.setText(fileProcessed);
 
-        // edit the title with counts
-        setTitle(TranslationCategory.PROGRESS_BACKUP_FRAME.getTranslation(TranslationKey.PROGRESS_BACKUP_TITLE) + " - " + filesCopiedSoFar + "/" + totalFilesCount);
+        // bytes, throughput and time remaining
+        long eta = progress.getEtaSeconds();
+        loadingMessageLabel.setText(progress.getDetails() + (eta >= 0 ? " - " + BackupProgress.formatDuration(eta) + " " + TranslationCategory.PROGRESS_BACKUP_FRAME.getTranslation(TranslationKey.STATUS_REMAINING) : ""));
+
+        // edit the title with counts (the total is not known while the files are still being counted)
+        int totalFilesCount = progress.getTotalFiles();
+        String counts = totalFilesCount >= 0 ? progress.getFilesProcessed() + "/" + totalFilesCount : String.valueOf(progress.getFilesProcessed());
+        setTitle(TranslationCategory.PROGRESS_BACKUP_FRAME.getTranslation(TranslationKey.PROGRESS_BACKUP_TITLE) + " - " + counts);
         
         if (value == 100) {
             loadingMessageLabel.setText(TranslationCategory.PROGRESS_BACKUP_FRAME.getTranslation(TranslationKey.STATUS_COMPLETED));
             closeButton.setEnabled(true);
             CancelButton.setEnabled(false);
+            pauseButton.setEnabled(false);
             fileZippedLabel.setText("");
             this.setAlwaysOnTop(true);
         } 
@@ -57,6 +65,7 @@ public class BackupProgressGUI extends javax.swing.JDialog {
         loadingMessageLabel = new javax.swing.JLabel();
         percentageLabel = new javax.swing.JLabel();
         CancelButton = new javax.swing.JButton();
+        pauseButton = new javax.swing.JButton();
         initialPathLabel = new javax.swing.JLabel();
         destinationPathLabel = new javax.swing.JLabel();
         fileZippedLabel = new javax.swing.JLabel();
@@ -87,6 +96,13 @@ public class BackupProgressGUI extends javax.swing.JDialog {
             }
         });
 
+        pauseButton.setText("Pause");
+        pauseButton.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                pauseButtonActionPerformed(evt);
+            }
+        });
+
         initialPathLabel.setText("path1");
         initialPathLabel.setMaximumSize(new java.awt.Dimension(415, 16));
         initialPathLabel.setMinimumSize(new java.awt.Dimension(415, 16));
@@ -105,7 +121,9 @@ public class BackupProgressGUI extends javax.swing.JDialog {
                 .addContainerGap()
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addGroup(layout.createSequentialGroup()
-                        .addGap(0, 260, Short.MAX_VALUE)
+                        .addGap(0, 185, Short.MAX_VALUE)
+                        .addComponent(pauseButton)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                         .addComponent(CancelButton)
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                         .addComponent(closeButton))
@@ -141,6 +159,7 @@ public class BackupProgressGUI extends javax.swing.JDialog {
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addComponent(closeButton)
+                    .addComponent(pauseButton)
                     .addComponent(CancelButton))
                 .addContainerGap())
         );
@@ -155,15 +174,22 @@ public class BackupProgressGUI extends javax.swing.JDialog {
     private void CancelButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_CancelButtonActionPerformed
         int response = JOptionPane.showConfirmDialog(null, TranslationCategory.DIALOGS.getTranslation(TranslationKey.INTERRUPT_BACKUP_PROCESS_MESSAGE), TranslationCategory.DIALOGS.getTranslation(TranslationKey.CONFIRMATION_REQUIRED_TITLE), JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
         if (response == JOptionPane.YES_OPTION) {
-            ZippingThread.stopExecutorService(1);
+            ZippingThread.interruptBackups(job -> job.getContext().progressBar == this, 1);
             this.dispose();
         }
     }//GEN-LAST:event_CancelButtonActionPerformed
 
+    private void pauseButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_pauseButtonActionPerformed
+        // the partial backup is kept and continued the next time the backup runs
+        ZippingThread.pauseBackups(job -> job.getContext().progressBar == this, 1);
+        this.dispose();
+    }//GEN-LAST:event_pauseButtonActionPerformed
+
     private void setTranslations() {
         setTitle(TranslationCategory.PROGRESS_BACKUP_FRAME.getTranslation(TranslationKey.PROGRESS_BACKUP_TITLE));
         CancelButton.setText(TranslationCategory.GENERAL.getTranslation(TranslationKey.CANCEL_BUTTON));
         closeButton.setText(TranslationCategory.GENERAL.getTranslation(TranslationKey.CLOSE_BUTTON));
+        pauseButton.setText(TranslationCategory.GENERAL.getTranslation(TranslationKey.PAUSE_BUTTON));
         loadingMessageLabel.setText(TranslationCategory.PROGRESS_BACKUP_FRAME.getTranslation(TranslationKey.STATUS_LOADING));
     }
 
@@ -175,6 +201,7 @@ public class BackupProgressGUI extends javax.swing.JDialog {
     private javax.swing.JLabel initialPathLabel;
     private javax.swing.JLabel jLabel4;
     private javax.swing.JLabel loadingMessageLabel;
+    private javax.swing.JButton pauseButton;
     private javax.swing.JLabel percentageLabel;
     private javax.swing.JProgressBar progressBar;
     // End of variables declaration//GEN-END:variables
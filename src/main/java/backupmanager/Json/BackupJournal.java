@@ -0,0 +1,245 @@
+package backupmanager.Json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import backupmanager.Entities.Backup;
+
+/*
+ * Append-only journal of the changes to the backup list, kept next to the list file ("<list>.journal").
+ * Every change is a json line: {"put": {backup}} adds or replaces a backup, {"remove": "name"} removes it. Saving a backup
+ * appends a single line instead of rewriting the whole list, and the list is the json file with the journal applied.
+ * When the journal grows it is compacted: the full list is written to the json file (atomically) and the journal is emptied,
+ * so the json file alone stays a valid backup list that can be exported.
+ * A line cut by a crash is ignored when the journal is read and removed before the next change is appended, a complete line
+ * that can't be parsed is skipped. The journal is locked while using it, because the GUI and the background service can use it at the same time.
+ */
+public class BackupJournal {
+    private static final Logger logger = LoggerFactory.getLogger(BackupJournal.class);
+    private static final String JOURNAL_EXTENSION = ".journal";
+
+    private final String directoryPath;
+    private final String filename;
+    private final Path listFile;
+    private final Path journalFile;
+
+    public static class Entry {
+        private final String backupName;
+        private final Backup backup;
+
+        private Entry(String backupName, Backup backup) {
+            this.backupName = backupName;
+            this.backup = backup;
+        }
+
+        public static Entry put(Backup backup) {
+            return new Entry(backup.getBackupName(), new Backup(backup));
+        }
+        public static Entry remove(String backupName) {
+            return new Entry(backupName, null);
+        }
+        public String getBackupName() {
+            return backupName;
+        }
+
+        private String toJsonLine() {
+            JsonObject line = new JsonObject();
+            if (backup != null) {
+                line.add("put", JSONBackup.getJsonObjectFromBackup(backup));
+            } else {
+                line.addProperty("remove", backupName);
+            }
+            return line.toString() + "\n";
+        }
+
+        private void applyTo(Map<String, Backup> backups) {
+            if (backup != null) {
+                backups.put(backupName, backup);
+            } else {
+                backups.remove(backupName);
+            }
+        }
+    }
+
+    public BackupJournal(String directoryPath, String filename) {
+        this.directoryPath = directoryPath;
+        this.filename = filename;
+        this.listFile = Paths.get(directoryPath + filename);
+        this.journalFile = Paths.get(directoryPath + getJournalFileName(filename));
+    }
+
+    public static String getJournalFileName(String filename) {
+        return filename + JOURNAL_EXTENSION;
+    }
+
+    // the backup list file with the changes of the journal applied
+    public List<Backup> load() throws IOException {
+        if (!Files.exists(journalFile)) return new ArrayList<>(readList().values());
+
+        // the list is read with the journal locked, as compact does: a compaction can't replace it between the two reads
+        try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.READ)) {
+            FileLock lock = channel.lock(0, Long.MAX_VALUE, true);
+            try {
+                Map<String, Backup> backups = readList();
+                replay(channel, backups);
+                return new ArrayList<>(backups.values());
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    public void append(Collection<Entry> entries) throws IOException {
+        if (entries.isEmpty()) return;
+
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        for (Entry entry : entries) {
+            lines.write(entry.toJsonLine().getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                appendLocked(channel, lines.toByteArray());
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    private static void appendLocked(FileChannel channel, byte[] lines) throws IOException {
+        // the new lines would be joined to a line cut by a crash
+        long end = getCompleteLength(channel);
+        if (end < channel.size()) {
+            logger.warn("Discarding " + (channel.size() - end) + " bytes of an incomplete change in the backup list journal");
+            channel.truncate(end);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(lines);
+        while (buffer.hasRemaining()) {
+            end += channel.write(buffer, end);
+        }
+        channel.force(false);
+    }
+
+    /*
+     * Writes the list with the journal applied to the json file and empties the journal.
+     * The list is read from the disk, so the changes appended by another process are kept. If the process stops after
+     * the list has been replaced but before the journal has been emptied, the journal is applied again to a list that already
+     * contains its changes, which gives the same result.
+     */
+    public List<Backup> compact() throws IOException {
+        try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                return compactLocked(channel);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    private List<Backup> compactLocked(FileChannel channel) throws IOException {
+        Map<String, Backup> backups = readList();
+        replay(channel, backups);
+
+        List<Backup> compacted = new ArrayList<>(backups.values());
+        JSONBackup.writeBackupListAtomically(listFile, compacted);
+        channel.truncate(0);
+        channel.force(true);
+
+        logger.debug("Backup list journal compacted into " + filename);
+        return compacted;
+    }
+
+    public long getJournalSize() {
+        try {
+            return Files.exists(journalFile) ? Files.size(journalFile) : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private Map<String, Backup> readList() throws IOException {
+        Map<String, Backup> backups = new LinkedHashMap<>();
+        for (Backup backup : JSONBackup.readBackupListFromJSON(directoryPath, filename)) {
+            backups.put(backup.getBackupName(), backup);
+        }
+        return backups;
+    }
+
+    // applies the complete lines of the journal to the backups, the channel must be locked
+    private void replay(FileChannel channel, Map<String, Backup> backups) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {}
+        byte[] bytes = buffer.array();
+
+        int start = 0;
+        int entries = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') continue;
+
+            String line = new String(bytes, start, i - start, StandardCharsets.UTF_8);
+            start = i + 1;
+            try {
+                if (!line.isBlank()) {
+                    parseLine(line).applyTo(backups);
+                    entries++;
+                }
+            } catch (JsonParseException | IllegalStateException | IllegalArgumentException | NullPointerException e) {
+                logger.warn("Skipping an invalid line in the backup list journal: " + e.getMessage());
+            }
+        }
+
+        // the process was stopped while writing the last line, it is removed by the next append
+        if (start < bytes.length) {
+            logger.warn("Ignoring " + (bytes.length - start) + " bytes of an incomplete change in the backup list journal");
+        }
+        if (entries > 0) logger.debug("Applied " + entries + " changes from the backup list journal");
+    }
+
+    // the size of the journal without the last line if it has not been completed
+    private static long getCompleteLength(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long end = channel.size();
+        while (end > 0) {
+            long start = Math.max(0, end - buffer.capacity());
+            buffer.clear().limit((int) (end - start));
+            while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) >= 0) {}
+            for (int i = buffer.position() - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') return start + i + 1;
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    private static Entry parseLine(String line) {
+        JsonObject object = JsonParser.parseString(line).getAsJsonObject();
+        if (object.has("put")) {
+            Backup backup = JSONBackup.getBackupFromJsonObject(object.getAsJsonObject("put"));
+            return new Entry(backup.getBackupName(), backup);
+        }
+        return Entry.remove(object.get("remove").getAsString());
+    }
+}
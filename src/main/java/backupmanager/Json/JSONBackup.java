@@ -1,12 +1,19 @@
 package backupmanager.Json;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
-import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -22,11 +29,13 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonSyntaxException;
-import com.google.gson.reflect.TypeToken;
 
 import backupmanager.Entities.Backup;
+import backupmanager.Entities.CronExpression;
 import backupmanager.Entities.Preferences;
 import backupmanager.Entities.TimeInterval;
+import backupmanager.Enums.ArchiveFormatEnum;
+import backupmanager.Enums.BackupTypeEnum;
 import backupmanager.Managers.ExceptionManager;
 
 public class JSONBackup {
@@ -67,86 +76,105 @@ public class JSONBackup {
             JsonArray backupArray = JsonParser.parseReader(reader).getAsJsonArray();
     
             for (JsonElement element : backupArray) {
-                JsonObject backupObj = element.getAsJsonObject();
-    
-                String backupNameValue = getStringOrNull(backupObj, "backup_name");
-                String startPathValue = getStringOrNull(backupObj, "start_path");
-                String destinationPathValue = getStringOrNull(backupObj, "destination_path");
-                String lastBackupStr = getStringOrNull(backupObj, "last_backup");
-                String notesValue = getStringOrNull(backupObj, "notes");
-                String creationDateStr = getStringOrNull(backupObj, "creation_date");
-                String lastUpdateDateStr = getStringOrNull(backupObj, "last_update_date");
-                int backupCountValue = backupObj.has("backup_count") ? backupObj.get("backup_count").getAsInt() : 0;
-                int maxBackupsToKeepValue = backupObj.has("max_backups_to_keep") ? backupObj.get("max_backups_to_keep").getAsInt() : 0;
-    
-                Boolean automaticBackupValue = backupObj.has("automatic_backup") && !backupObj.get("automatic_backup").isJsonNull() 
-                    ? backupObj.get("automatic_backup").getAsBoolean() 
-                    : null;
-    
-                String nextDateBackupStr = getStringOrNull(backupObj, "next_date_backup");
-                String daysIntervalBackupStr = getStringOrNull(backupObj, "time_interval_backup");
-    
-                LocalDateTime lastBackupValue = lastBackupStr != null ? LocalDateTime.parse(lastBackupStr) : null;
-                LocalDateTime nextDateBackupValue = nextDateBackupStr != null ? LocalDateTime.parse(nextDateBackupStr) : null;
-                LocalDateTime creationDateValue = creationDateStr != null ? LocalDateTime.parse(creationDateStr) : null;
-                LocalDateTime lastUpdateDateValue = lastUpdateDateStr != null ? LocalDateTime.parse(lastUpdateDateStr) : null;
-    
-                backupList.add(new Backup(
-                    backupNameValue,
-                    startPathValue,
-                    destinationPathValue,
-                    lastBackupValue,
-                    automaticBackupValue,
-                    nextDateBackupValue,
-                    TimeInterval.getTimeIntervalFromString(daysIntervalBackupStr),
-                    notesValue,
-                    creationDateValue,
-                    lastUpdateDateValue,
-                    backupCountValue,
-                    maxBackupsToKeepValue
-                ));
+                backupList.add(getBackupFromJsonObject(element.getAsJsonObject()));
             }
     
-        } catch (IOException | JsonSyntaxException | NullPointerException ex) {
+        } catch (IOException | JsonSyntaxException | NullPointerException | IllegalArgumentException ex) {
             logger.error("An error occurred: " + ex.getMessage(), ex);
             ExceptionManager.openExceptionMessage(ex.getMessage(), Arrays.toString(ex.getStackTrace()));
         }
         return backupList;
     }
     
+    public static Backup getBackupFromJsonObject(JsonObject backupObj) {
+        String backupNameValue = getStringOrNull(backupObj, "backup_name");
+        String startPathValue = getStringOrNull(backupObj, "start_path");
+        String destinationPathValue = getStringOrNull(backupObj, "destination_path");
+        String lastBackupStr = getStringOrNull(backupObj, "last_backup");
+        String notesValue = getStringOrNull(backupObj, "notes");
+        String creationDateStr = getStringOrNull(backupObj, "creation_date");
+        String lastUpdateDateStr = getStringOrNull(backupObj, "last_update_date");
+        int backupCountValue = backupObj.has("backup_count") ? backupObj.get("backup_count").getAsInt() : 0;
+        int maxBackupsToKeepValue = backupObj.has("max_backups_to_keep") ? backupObj.get("max_backups_to_keep").getAsInt() : 0;
+
+        Boolean automaticBackupValue = backupObj.has("automatic_backup") && !backupObj.get("automatic_backup").isJsonNull() 
+            ? backupObj.get("automatic_backup").getAsBoolean() 
+            : null;
+
+        String nextDateBackupStr = getStringOrNull(backupObj, "next_date_backup");
+        String daysIntervalBackupStr = getStringOrNull(backupObj, "time_interval_backup");
+        String cronExpressionStr = getStringOrNull(backupObj, "cron_expression");
+        String backupTypeStr = getStringOrNull(backupObj, "backup_type");
+        String compressionCodecStr = getStringOrNull(backupObj, "compression_codec");
+        String archiveFormatStr = getStringOrNull(backupObj, "archive_format");
+        boolean compressionDictionaryValue = backupObj.has("compression_dictionary") && !backupObj.get("compression_dictionary").isJsonNull() && backupObj.get("compression_dictionary").getAsBoolean();
+        int compressionLevelValue = backupObj.has("compression_level") && !backupObj.get("compression_level").isJsonNull() ? backupObj.get("compression_level").getAsInt() : Backup.DEFAULT_COMPRESSION_LEVEL;
+
+        LocalDateTime lastBackupValue = lastBackupStr != null ? LocalDateTime.parse(lastBackupStr) : null;
+        LocalDateTime nextDateBackupValue = nextDateBackupStr != null ? LocalDateTime.parse(nextDateBackupStr) : null;
+        LocalDateTime creationDateValue = creationDateStr != null ? LocalDateTime.parse(creationDateStr) : null;
+        LocalDateTime lastUpdateDateValue = lastUpdateDateStr != null ? LocalDateTime.parse(lastUpdateDateStr) : null;
+
+        Backup backup = new Backup(
+            backupNameValue,
+            startPathValue,
+            destinationPathValue,
+            lastBackupValue,
+            automaticBackupValue,
+            nextDateBackupValue,
+            TimeInterval.getTimeIntervalFromString(daysIntervalBackupStr),
+            notesValue,
+            creationDateValue,
+            lastUpdateDateValue,
+            backupCountValue,
+            maxBackupsToKeepValue
+        );
+        backup.setBackupType(backupTypeStr != null ? BackupTypeEnum.valueOf(backupTypeStr) : BackupTypeEnum.Full);
+        backup.setCronExpression(CronExpression.getCronExpressionFromString(cronExpressionStr));
+        backup.setCompressionCodec(compressionCodecStr);
+        backup.setCompressionLevel(compressionLevelValue);
+        backup.setArchiveFormat(archiveFormatStr != null ? ArchiveFormatEnum.valueOf(archiveFormatStr) : ArchiveFormatEnum.Zip);
+        backup.setCompressionDictionary(compressionDictionaryValue);
+        return backup;
+    }
+
     // Helper method to safely retrieve a string or null
     private static String getStringOrNull(JsonObject obj, String property) {
         return obj.has(property) && !obj.get(property).isJsonNull() ? obj.get(property).getAsString() : null;
     }
     
+    public static JsonObject getJsonObjectFromBackup(Backup backup) {
+        JsonObject backupObject = new JsonObject();
+        backupObject.addProperty("backup_name", backup.getBackupName());
+        setBackupProperties(backupObject, backup);
+        return backupObject;
+    }
+
+    private static void setBackupProperties(JsonObject backupObject, Backup backup) {
+        backupObject.addProperty("start_path", backup.getInitialPath());
+        backupObject.addProperty("destination_path", backup.getDestinationPath());
+        backupObject.addProperty("last_backup", backup.getLastBackup() != null ? backup.getLastBackup().toString() : null);
+        backupObject.addProperty("automatic_backup", backup.isAutoBackup());
+        backupObject.addProperty("next_date_backup", backup.getNextDateBackup() != null ? backup.getNextDateBackup().toString() : null);
+        backupObject.addProperty("time_interval_backup", backup.getTimeIntervalBackup() != null ? backup.getTimeIntervalBackup().toString() : null);
+        backupObject.addProperty("cron_expression", backup.getCronExpression() != null ? backup.getCronExpression().toString() : null);
+        backupObject.addProperty("notes", backup.getNotes());
+        backupObject.addProperty("creation_date", backup.getCreationDate() != null ? backup.getCreationDate().toString() : null);
+        backupObject.addProperty("last_update_date", backup.getLastUpdateDate() != null ? backup.getLastUpdateDate().toString() : null);
+        backupObject.addProperty("backup_count", backup.getBackupCount());
+        backupObject.addProperty("max_backups_to_keep", backup.getMaxBackupsToKeep());
+        backupObject.addProperty("backup_type", backup.getBackupType().name());
+        backupObject.addProperty("compression_codec", backup.getCompressionCodec());
+        backupObject.addProperty("compression_level", backup.getCompressionLevel());
+        backupObject.addProperty("archive_format", backup.getArchiveFormat().name());
+        backupObject.addProperty("compression_dictionary", backup.isCompressionDictionary());
+    }
+
     public static void updateBackupListJSON(String directoryPath, String filename, List<Backup> backups) {
         String filePath = directoryPath + filename;
 
-        try (Writer writer = new FileWriter(filePath)) {
-            // Use Gson to convert the list of backups into a JSON array
-            Gson gson = new GsonBuilder().setPrettyPrinting().create();
-            JsonArray updatedBackupArray = new JsonArray();
-
-            for (Backup backup : backups) {
-                JsonObject backupObject = new JsonObject();
-                backupObject.addProperty("backup_name", backup.getBackupName());
-                backupObject.addProperty("start_path", backup.getInitialPath());
-                backupObject.addProperty("destination_path", backup.getDestinationPath());
-                backupObject.addProperty("last_backup", backup.getLastBackup() != null ? backup.getLastBackup().toString() : null);
-                backupObject.addProperty("automatic_backup", backup.isAutoBackup());
-                backupObject.addProperty("next_date_backup", backup.getNextDateBackup() != null ? backup.getNextDateBackup().toString() : null);
-                backupObject.addProperty("time_interval_backup", backup.getTimeIntervalBackup() != null ? backup.getTimeIntervalBackup().toString() : null);
-                backupObject.addProperty("notes", backup.getNotes());
-                backupObject.addProperty("creation_date", backup.getCreationDate() != null ? backup.getCreationDate().toString() : null);
-                backupObject.addProperty("last_update_date", backup.getLastUpdateDate() != null ? backup.getLastUpdateDate().toString() : null);
-                backupObject.addProperty("backup_count", backup.getBackupCount());
-                backupObject.addProperty("max_backups_to_keep", backup.getMaxBackupsToKeep());
-
-                updatedBackupArray.add(backupObject);
-            }
-
-            // Write the JSON array to the file
-            gson.toJson(updatedBackupArray, writer);
+        try {
+            writeBackupListAtomically(Paths.get(filePath), backups);
         } catch (IOException ex) {
             logger.error("An error occurred: " + ex.getMessage(), ex);
             ExceptionManager.openExceptionMessage(ex.getMessage(), Arrays.toString(ex.getStackTrace()));
@@ -156,45 +184,66 @@ public class JSONBackup {
     public static void updateSingleBackupInJSON(String directoryPath, String filename, Backup updatedBackup) {
         String filePath = directoryPath + filename;
 
-        try (Reader reader = new FileReader(filePath)) {
+        try {
             // Parse JSON file into a list of Backup objects using Gson
-            Gson gson = new GsonBuilder().setPrettyPrinting().create();
-            Type listType = new TypeToken<List<JsonObject>>() {}.getType();
-            List<JsonObject> backupList = gson.fromJson(reader, listType);
+            JsonArray backupList;
+            try (Reader reader = new FileReader(filePath)) {
+                backupList = JsonParser.parseReader(reader).getAsJsonArray();
+            }
 
             // Find and update the specific backup
-            for (JsonObject backupObject : backupList) {
+            for (JsonElement element : backupList) {
+                JsonObject backupObject = element.getAsJsonObject();
                 String backupName = backupObject.get("backup_name").getAsString();
                 if (backupName.equals(updatedBackup.getBackupName())) {
-                    backupObject.addProperty("start_path", updatedBackup.getInitialPath());
-                    backupObject.addProperty("destination_path", updatedBackup.getDestinationPath());
-                    backupObject.addProperty("last_backup", updatedBackup.getLastBackup() != null ? updatedBackup.getLastBackup().toString() : null);
-                    backupObject.addProperty("automatic_backup", updatedBackup.isAutoBackup());
-                    backupObject.addProperty("next_date_backup", updatedBackup.getNextDateBackup() != null ? updatedBackup.getNextDateBackup().toString() : null);
-                    backupObject.addProperty("time_interval_backup", updatedBackup.getTimeIntervalBackup() != null ? updatedBackup.getTimeIntervalBackup().toString() : null);
-                    backupObject.addProperty("notes", updatedBackup.getNotes());
-                    backupObject.addProperty("creation_date", updatedBackup.getCreationDate() != null ? updatedBackup.getCreationDate().toString() : null);
-                    backupObject.addProperty("last_update_date", updatedBackup.getLastUpdateDate() != null ? updatedBackup.getLastUpdateDate().toString() : null);
-                    backupObject.addProperty("backup_count", updatedBackup.getBackupCount());
-                    backupObject.addProperty("max_backups_to_keep", updatedBackup.getMaxBackupsToKeep());
+                    setBackupProperties(backupObject, updatedBackup);
                     break;
                 }
             }
 
             // Write updated list back to the JSON file
-            try (Writer writer = new FileWriter(filePath)) {
-                gson.toJson(backupList, writer);
-            } catch (IOException ex) {
-                logger.error("An error occurred: " + ex.getMessage(),  ex);
-                ExceptionManager.openExceptionMessage(ex.getMessage(), Arrays.toString(ex.getStackTrace()));
-            }
-
+            writeJsonAtomically(Paths.get(filePath), backupList);
         } catch (IOException ex) {
             logger.error("An error occurred: " + ex.getMessage(), ex);
             ExceptionManager.openExceptionMessage(ex.getMessage(), Arrays.toString(ex.getStackTrace()));
-        } catch (JsonSyntaxException ex) {
+        } catch (JsonSyntaxException | IllegalStateException ex) {
             logger.error("Invalid JSON format: " + ex.getMessage(), ex);
             ExceptionManager.openExceptionMessage(ex.getMessage(), Arrays.toString(ex.getStackTrace()));
         }
     }
+
+    static void writeBackupListAtomically(Path file, List<Backup> backups) throws IOException {
+        JsonArray backupArray = new JsonArray();
+        for (Backup backup : backups) {
+            backupArray.add(getJsonObjectFromBackup(backup));
+        }
+        writeJsonAtomically(file, backupArray);
+    }
+
+    /*
+     * The file is never truncated in place: the json is written to a temporary file in the same directory, synced to the disk
+     * and then renamed over the old one, so after a crash the file contains either the old list or the new one.
+     */
+    private static void writeJsonAtomically(Path file, JsonElement json) throws IOException {
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        Path directory = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+
+        try {
+            try (FileOutputStream output = new FileOutputStream(temp.toFile());
+                 Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
+                gson.toJson(json, writer);
+                writer.flush();
+                output.getFD().sync();
+            }
+
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
 }
\ No newline at end of file
@@ -41,6 +41,62 @@ public class JSONConfigReader {
         return getConfigValue("MaxCountForSameBackup", 1); // Default to 1
     }
 
+    public int getCompressionThreads() {
+        return getSectionValue("CompressionThreads", 0); // Default to 0 (one thread for each available core)
+    }
+
+    public int getParallelDeflateThresholdMB() {
+        return getSectionValue("ParallelDeflateThresholdMB", 64); // Default to 64 MB
+    }
+
+    public String getStoredExtensions() {
+        return getSectionString("StoredExtensions", ""); // Default to no extension, every file is sampled
+    }
+
+    public int getDictionaryMaxFileSizeKB() {
+        return getSectionValue("DictionaryMaxFileSizeKB", 64); // Default to 64 KB
+    }
+
+    public int getDictionarySizeKB() {
+        return getSectionValue("DictionarySizeKB", 112); // Default to 112 KB, as the dictionaries of zstd
+    }
+
+    public int getChunkAverageSizeKB() {
+        return getSectionValue("ChunkAverageSizeKB", 1024); // Default to 1 MB
+    }
+
+    public int getDeltaMinFileSizeMB() {
+        return getSectionValue("DeltaMinFileSizeMB", 256); // Default to 256 MB
+    }
+
+    public int getDeltaBlockSizeKB() {
+        return getSectionValue("DeltaBlockSizeKB", 64); // Default to 64 KB
+    }
+
+    public int getMaxIncrementalBackups() {
+        return getSectionValue("MaxIncrementalBackups", 6); // Default to 6 incremental backups for each full backup
+    }
+
+    public int getSyntheticFullAfterIncrementals() {
+        return getSectionValue("SyntheticFullAfterIncrementals", 6); // Default to 6 incremental backups, 0 to disable the synthetic full backups
+    }
+
+    public int getRestoreThreads() {
+        return getSectionValue("RestoreThreads", 0); // Default to 0 (one thread for each available core)
+    }
+
+    public int getRestoreBufferSizeKB() {
+        return getSectionValue("RestoreBufferSizeKB", 1024); // Default to 1 MB
+    }
+
+    public int getMaxConcurrentBackups() {
+        return getSectionValue("MaxConcurrentBackups", 4); // Default to 4 backups at the same time
+    }
+
+    public int getMaxBackupsPerDevice() {
+        return getSectionValue("MaxBackupsPerDevice", 1); // Default to 1 backup for each disk
+    }
+
     public int readCheckForBackupTimeInterval() throws IOException {
         try {
             JsonObject backupService = getBackupServiceConfig();
@@ -69,6 +125,36 @@ public class JSONConfigReader {
         }
     }
 
+    private int getSectionValue(String section, int defaultValue) {
+        if (config == null) {
+            logger.warn("Configuration not loaded. Using default value for " + section);
+            return defaultValue;
+        }
+
+        JsonObject sectionObject = config.getAsJsonObject(section);
+        if (sectionObject == null) {
+            return defaultValue;
+        }
+
+        JsonElement value = sectionObject.get("value");
+        return (value != null && value.isJsonPrimitive()) ? value.getAsInt() : defaultValue;
+    }
+
+    private String getSectionString(String section, String defaultValue) {
+        if (config == null) {
+            logger.warn("Configuration not loaded. Using default value for " + section);
+            return defaultValue;
+        }
+
+        JsonObject sectionObject = config.getAsJsonObject(section);
+        if (sectionObject == null) {
+            return defaultValue;
+        }
+
+        JsonElement value = sectionObject.get("value");
+        return (value != null && value.isJsonPrimitive()) ? value.getAsString() : defaultValue;
+    }
+
     private void loadConfig() {
         String filePath = directoryPath + filename;
         try (FileReader reader = new FileReader(filePath)) {
@@ -6,35 +6,51 @@ import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.StringSelection;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 
 import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JFileChooser;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import backupmanager.BackupOperations;
+import backupmanager.Compression.ArchiveRestorer;
 import backupmanager.Dialogs.BackupEntryDialog;
+import backupmanager.Dialogs.CatalogSearchDialog;
 import backupmanager.Dialogs.PreferencesDialog;
 import backupmanager.Dialogs.TimePicker;
 import backupmanager.Entities.Backup;
-import backupmanager.Entities.Preferences;
+import backupmanager.Entities.ScanCache;
 import backupmanager.Entities.TimeInterval;
 import backupmanager.Entities.ZippingContext;
+import backupmanager.Enums.ArchiveFormatEnum;
 import backupmanager.Enums.ConfigKey;
+import backupmanager.Json.JSONConfigReader;
 import backupmanager.Enums.TranslationLoaderEnum.TranslationCategory;
 import backupmanager.Enums.TranslationLoaderEnum.TranslationKey;
 import backupmanager.GUI.BackupManagerGUI;
 import backupmanager.GUI.BackupProgressGUI;
-import backupmanager.Json.JSONBackup;
 import backupmanager.Services.BackupObserver;
+import backupmanager.Services.BackupRepository;
+import backupmanager.Services.ControlClient;
+import backupmanager.Services.ControlServer;
 import backupmanager.Table.BackupTable;
 import backupmanager.Table.TableDataManager;
 
@@ -132,6 +148,7 @@ public final class BackupManager {
         for (Backup back : backups) {
             if (backup.getBackupName().equals(back.getBackupName())) {
                 backups.remove(back);
+                ScanCache.delete(back.getBackupName());
                 logger.info("Backup removed successfully: " + back.toString());
                 break;
             }
@@ -146,7 +163,8 @@ public final class BackupManager {
         logger.info("Updating backup list");
         
         // update
-        JSONBackup.updateBackupListJSON(Preferences.getBackupList().getDirectory(), Preferences.getBackupList().getFile(), backups);
+        BackupRepository.getInstance().saveAll(backups);
+        reloadBackgroundService();
         
         // get the new backup updated
         backups = getBackupList();
@@ -160,7 +178,8 @@ public final class BackupManager {
 
         logger.info("Updating backup: " + updatedBackup.getBackupName());
         
-        JSONBackup.updateSingleBackupInJSON(Preferences.getBackupList().getDirectory(), Preferences.getBackupList().getFile(), updatedBackup);
+        BackupRepository.getInstance().save(updatedBackup);
+        reloadBackgroundService();
         List<Backup> backups = getBackupList();
 
         if (BackupManagerGUI.model != null) {
@@ -229,11 +248,61 @@ public final class BackupManager {
         }
     }
 
+    // the background service, if it is running, has to know the backups modified by the GUI
+    private static void reloadBackgroundService() {
+        if (ControlServer.isRunningInThisProcess()) return;
+
+        // off the EDT, the service could be slow to answer
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() {
+                ControlClient client = new ControlClient();
+                if (!client.isServiceRunning()) return null;
+
+                // the service reads the backup list from the file
+                BackupRepository.getInstance().flush();
+                if (client.sendCommand("RELOAD") != null) {
+                    logger.debug("Background service reloaded");
+                }
+                return null;
+            }
+        }.execute();
+    }
+
+    // sends the command from a worker thread, then passes the reply (null if the service is not reachable) to the callback in the EDT
+    private static void sendToBackgroundService(String command, Consumer<String> onReply) {
+        new SwingWorker<String, Void>() {
+            @Override
+            protected String doInBackground() {
+                return new ControlClient().sendCommand(command);
+            }
+
+            @Override
+            protected void done() {
+                String reply = null;
+                try {
+                    reply = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    logger.error("Unable to send the command to the background service: " + e.getMessage(), e);
+                }
+                onReply.accept(reply);
+            }
+        }.execute();
+    }
+
     public void openBackupEntryDialog() {
         BackupEntryDialog dialog = new BackupEntryDialog(main, false);
         dialog.setVisible(true);
     }
     
+    // the cron expression of the backup has the precedence over its time interval
+    public static LocalDateTime getNexDateBackup(Backup backup) {
+        if (backup.getCronExpression() != null) {
+            return backup.getCronExpression().next(LocalDateTime.now());
+        }
+        return getNexDateBackup(backup.getTimeIntervalBackup());
+    }
+
     public static LocalDateTime getNexDateBackup(TimeInterval timeInterval) {
         return LocalDateTime.now()
             .plusDays(timeInterval.getDays())
@@ -242,18 +311,9 @@ public final class BackupManager {
     }
 
     public static List<Backup> getBackupList() {
-        try {
-            List<Backup> backups = JSONBackup.readBackupListFromJSON(Preferences.getBackupList().getDirectory(), Preferences.getBackupList().getFile());
-            BackupManagerGUI.backups = backups; // i have to keep update also the backup list in the main panel
-            return backups;
-        } catch (IOException e) {
-            logger.error("An error occurred while trying to get the backup list from json file: " + e.getMessage(), e);
-            ExceptionManager.openExceptionMessage(e.getMessage(), Arrays.toString(e.getStackTrace()));
-        } catch (Exception e) {
-            logger.error("An error occurred: " + e.getMessage(), e);
-        }
-
-        return null;
+        List<Backup> backups = BackupRepository.getInstance().getBackups();
+        BackupManagerGUI.backups = backups; // i have to keep update also the backup list in the main panel
+        return backups;
     }
     
     // ################################################# Menu Items
@@ -331,6 +391,12 @@ public final class BackupManager {
         }
     }
 
+    public void menuItemSearchInBackups() {
+        logger.info("Event --> search in backups");
+        CatalogSearchDialog searchDialog = new CatalogSearchDialog(main, false);
+        searchDialog.setVisible(true);
+    }
+
     public void menuItemQuit(BackupObserver observer) {
         logger.info("Event --> exit");
         observer.stop();
@@ -349,6 +415,7 @@ public final class BackupManager {
 
             backup.setAutoBackup(false);
             backup.setTimeIntervalBackup(null);
+            backup.setCronExpression(null);
             backup.setNextDateBackup(null);
             backup.setLastUpdateDate(LocalDateTime.now());
 
@@ -373,6 +440,7 @@ public final class BackupManager {
 
             backup.setAutoBackup(true);
             backup.setTimeIntervalBackup(timeInterval);
+            backup.setCronExpression(null);
             backup.setNextDateBackup(nextDateBackup);
             backup.setLastUpdateDate(LocalDateTime.now());
 
@@ -414,8 +482,17 @@ public final class BackupManager {
             // get correct backup
             String backupName = (String) backupTable.getValueAt(selectedRow, 0);
             backupmanager.Entities.Backup backup = backupmanager.Entities.Backup.getBackupByName(backups, backupName);
-            ZippingContext context = new ZippingContext(backup, null, backupTable, BackupManagerGUI.progressBar, interruptBackupPopupItem, RunBackupPopupItem);
-            BackupOperations.interruptBackupProcess(context);
+
+            // the backup could be running in the background service
+            sendToBackgroundService("INTERRUPT " + backupName, reply -> {
+                if ("OK".equals(reply)) {
+                    logger.info("Backup \"" + backupName + "\" interrupted in the background service");
+                    return;
+                }
+
+                ZippingContext context = new ZippingContext(backup, null, backupTable, BackupManagerGUI.progressBar, interruptBackupPopupItem, RunBackupPopupItem);
+                BackupOperations.interruptBackupProcess(context);
+            });
         }
     }
 
@@ -499,11 +576,24 @@ public final class BackupManager {
             // get correct backup
             String backupName = (String) backupTable.getValueAt(selectedRow, 0);
             Backup backup = backupmanager.Entities.Backup.getBackupByName(backups, backupName);
-            
-            BackupManagerGUI.progressBar = new BackupProgressGUI(backup.getInitialPath(), backup.getDestinationPath());
 
-            ZippingContext context = new ZippingContext(backup, null, backupTable, BackupManagerGUI.progressBar, interruptBackupPopupItem, RunBackupPopupItem);
-            BackupOperations.SingleBackup(context);
+            // if the background service is running the backup is done by it, the GUI only shows its progress
+            sendToBackgroundService("RUN " + backupName, reply -> {
+                if ("OK".equals(reply)) {
+                    logger.info("Backup \"" + backupName + "\" started by the background service");
+                    return;
+                }
+                if (reply != null && reply.equals("ERROR " + ControlServer.BACKUP_ALREADY_RUNNING)) {
+                    logger.warn("The background service can't run the backup \"" + backupName + "\": " + reply);
+                    JOptionPane.showMessageDialog(null, TranslationCategory.DIALOGS.getTranslation(TranslationKey.WARNING_BACKUP_ALREADY_IN_PROGRESS_MESSAGE), TranslationCategory.DIALOGS.getTranslation(TranslationKey.WARNING_GENERIC_TITLE), JOptionPane.WARNING_MESSAGE);
+                    return;
+                }
+
+                BackupManagerGUI.progressBar = new BackupProgressGUI(backup.getInitialPath(), backup.getDestinationPath());
+
+                ZippingContext context = new ZippingContext(backup, null, backupTable, BackupManagerGUI.progressBar, interruptBackupPopupItem, RunBackupPopupItem);
+                BackupOperations.SingleBackup(context);
+            });
         }
     }
 
@@ -526,27 +616,112 @@ public final class BackupManager {
             String backupName = (String) backupTable.getValueAt(selectedRow, 0);
             Backup backup = backupmanager.Entities.Backup.getBackupByName(backups, backupName);
 
+            // every setting is copied (type, schedule, codec, format...), only the name and the history are new
             LocalDateTime dateNow = LocalDateTime.now();
-            Backup newBackup = new Backup(
-                    backup.getBackupName() + "_copy",
-                    backup.getInitialPath(),
-                    backup.getDestinationPath(),
-                    null,
-                    backup.isAutoBackup(),
-                    backup.getNextDateBackup(),
-                    backup.getTimeIntervalBackup(),
-                    backup.getNotes(),
-                    dateNow,
-                    dateNow,
-                    0,
-                    backup.getMaxBackupsToKeep()
-            );
+            Backup newBackup = new Backup(backup);
+            newBackup.setBackupName(backup.getBackupName() + "_copy");
+            newBackup.setLastBackup(null);
+            newBackup.setCreationDate(dateNow);
+            newBackup.setLastUpdateDate(dateNow);
+            newBackup.setBackupCount(0);
             
             backups.add(newBackup); 
             updateBackupList(backups);
         }
     }
 
+    // the archive is chosen among the ones of the destination path, its chain is restored in a thread of its own.
+    // only the zip backups and the snapshots of a repository can be restored: there is no reader for the tar archives
+    public void popupItemRestoreBackup(int selectedRow, BackupTable backupTable, List<Backup> backups) {
+        logger.info("Event --> restoring backup");
+
+        if (selectedRow != -1) {
+            // get correct backup
+            String backupName = (String) backupTable.getValueAt(selectedRow, 0);
+            Backup backup = backupmanager.Entities.Backup.getBackupByName(backups, backupName);
+
+            boolean snapshot = backup.getArchiveFormat() == ArchiveFormatEnum.Repository;
+            if (backup.getArchiveFormat() != ArchiveFormatEnum.Zip && !snapshot) {
+                logger.warn("Restore not supported for the format " + backup.getArchiveFormat() + " of the backup " + backupName);
+                JOptionPane.showMessageDialog(main, TranslationCategory.DIALOGS.getTranslation(TranslationKey.ERROR_MESSAGE_FOR_UNSUPPORTED_RESTORE_FORMAT).replace("[Format]", backup.getArchiveFormat().name()), TranslationCategory.DIALOGS.getTranslation(TranslationKey.ERROR_GENERIC_TITLE), JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+
+            JFileChooser archiveChooser = new JFileChooser(backup.getDestinationPath());
+            archiveChooser.setDialogTitle(TranslationCategory.DIALOGS.getTranslation(TranslationKey.RESTORE_SELECT_ARCHIVE_TITLE));
+            archiveChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+            archiveChooser.setFileFilter(snapshot ? new FileNameExtensionFilter("Snapshot Files (*.snapshot)", "snapshot") : new FileNameExtensionFilter("Zip Files (*.zip)", "zip"));
+            if (archiveChooser.showOpenDialog(main) != JFileChooser.APPROVE_OPTION) return;
+
+            // every snapshot is a full backup
+            Path archive = archiveChooser.getSelectedFile().toPath();
+            List<Path> chain = snapshot ? List.of(archive) : BackupOperations.getRestoreChain(archive);
+            if (chain.isEmpty()) {
+                logger.warn("No full backup found to restore " + archive);
+                JOptionPane.showMessageDialog(main, TranslationCategory.DIALOGS.getTranslation(TranslationKey.ERROR_MESSAGE_FOR_MISSING_FULL_BACKUP), TranslationCategory.DIALOGS.getTranslation(TranslationKey.ERROR_GENERIC_TITLE), JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+
+            JFileChooser targetChooser = new JFileChooser(backup.getInitialPath());
+            targetChooser.setDialogTitle(TranslationCategory.DIALOGS.getTranslation(TranslationKey.RESTORE_SELECT_TARGET_TITLE));
+            targetChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+            if (targetChooser.showOpenDialog(main) != JFileChooser.APPROVE_OPTION) return;
+            Path target = targetChooser.getSelectedFile().toPath();
+
+            int response = JOptionPane.showConfirmDialog(main, TranslationCategory.DIALOGS.getTranslation(TranslationKey.RESTORE_SKIP_UNCHANGED_MESSAGE), TranslationCategory.DIALOGS.getTranslation(TranslationKey.CONFIRMATION_REQUIRED_TITLE), JOptionPane.YES_NO_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE);
+            if (response != JOptionPane.YES_OPTION && response != JOptionPane.NO_OPTION) return;
+
+            restoreBackup(chain, snapshot, target, response == JOptionPane.YES_OPTION);
+        }
+    }
+
+    private void restoreBackup(List<Path> chain, boolean snapshot, Path target, boolean skipUnchanged) {
+        JSONConfigReader configReader = new JSONConfigReader(ConfigKey.CONFIG_FILE_STRING.getValue(), ConfigKey.CONFIG_DIRECTORY_STRING.getValue());
+        ArchiveRestorer restorer = new ArchiveRestorer(configReader.getRestoreThreads(), configReader.getRestoreBufferSizeKB() * 1024, skipUnchanged);
+
+        // the monitor is updated on the EDT, its cancel button is polled since the files can take long to extract
+        ProgressMonitor monitor = new ProgressMonitor(main, TranslationCategory.BACKUP_LIST.getTranslation(TranslationKey.RESTORE_BACKUP_POPUP), null, 0, 1);
+        restorer.setProgressListener((processed, total) -> SwingUtilities.invokeLater(() -> {
+            monitor.setMaximum(total);
+            monitor.setNote(TranslationCategory.DIALOGS.getTranslation(TranslationKey.RESTORE_PROGRESS_MESSAGE)
+                .replace("[Processed]", String.valueOf(processed))
+                .replace("[Total]", String.valueOf(total)));
+            monitor.setProgress(processed);
+        }));
+        Timer cancelTimer = new Timer(200, e -> {
+            if (monitor.isCanceled() && !restorer.isCancelled()) {
+                logger.info("Restore cancelled by the user");
+                restorer.cancel();
+            }
+        });
+        cancelTimer.start();
+
+        Thread thread = new Thread(() -> {
+            try {
+                if (snapshot) restorer.restoreSnapshot(chain.get(0), target);
+                else restorer.restore(chain, target);
+                String message = TranslationCategory.DIALOGS.getTranslation(TranslationKey.RESTORE_COMPLETED_MESSAGE)
+                    .replace("[Restored]", String.valueOf(restorer.getRestoredFiles()))
+                    .replace("[Skipped]", String.valueOf(restorer.getSkippedFiles()));
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(main, message, TranslationCategory.DIALOGS.getTranslation(TranslationKey.SUCCESS_GENERIC_TITLE), JOptionPane.INFORMATION_MESSAGE));
+            } catch (InterruptedIOException e) {
+                logger.warn("Restore in " + target + " stopped: " + e.getMessage());
+                String message = TranslationCategory.DIALOGS.getTranslation(TranslationKey.RESTORE_CANCELLED_MESSAGE)
+                    .replace("[Restored]", String.valueOf(restorer.getRestoredFiles()));
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(main, message, TranslationCategory.DIALOGS.getTranslation(TranslationKey.WARNING_GENERIC_TITLE), JOptionPane.WARNING_MESSAGE));
+            } catch (IOException | RuntimeException e) {
+                logger.error("Error restoring the backup in " + target + ": " + e.getMessage(), e);
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(main, TranslationCategory.DIALOGS.getTranslation(TranslationKey.ERROR_MESSAGE_FOR_RESTORE) + e.getMessage(), TranslationCategory.DIALOGS.getTranslation(TranslationKey.ERROR_GENERIC_TITLE), JOptionPane.ERROR_MESSAGE));
+            } finally {
+                SwingUtilities.invokeLater(() -> {
+                    cancelTimer.stop();
+                    monitor.close();
+                });
+            }
+        }, "restore");
+        thread.start();
+    }
+
     public void popupItemDelete(int selectedRow, List<Backup> backups, BackupTable backupTable) {
         deleteBackup(selectedRow, backups, backupTable);
     }
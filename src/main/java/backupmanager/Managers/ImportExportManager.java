@@ -34,7 +34,7 @@ import backupmanager.Enums.ConfigKey;
 import backupmanager.Enums.TranslationLoaderEnum.TranslationCategory;
 import backupmanager.Enums.TranslationLoaderEnum.TranslationKey;
 import backupmanager.GUI.BackupManagerGUI;
-import backupmanager.Json.JSONBackup;
+import backupmanager.Services.BackupRepository;
 import backupmanager.Table.TableDataManager;
 
 public class ImportExportManager {
@@ -58,14 +58,11 @@ public class ImportExportManager {
                 Preferences.setBackupList(new BackupList(selectedFile.getParent()+File.separator, selectedFile.getName()));
                 Preferences.updatePreferencesToJSON();
 
-                try {
-                    List<Backup> backups = JSONBackup.readBackupListFromJSON(Preferences.getBackupList().getDirectory(), Preferences.getBackupList().getFile());
-                    TableDataManager.updateTableWithNewBackupList(backups, formatter);
-                    JOptionPane.showMessageDialog(main, TranslationCategory.DIALOGS.getTranslation(TranslationKey.BACKUP_LIST_CORRECTLY_IMPORTED_MESSAGE), TranslationCategory.DIALOGS.getTranslation(TranslationKey.BACKUP_LIST_CORRECTLY_IMPORTED_TITLE), JOptionPane.INFORMATION_MESSAGE);
-                    return backups;
-                } catch (IOException ex) {
-                    logger.error("An error occurred: " + ex.getMessage(), ex);
-                }
+                // the repository reads the new list as soon as it sees the changed preferences
+                List<Backup> backups = BackupRepository.getInstance().getBackups();
+                TableDataManager.updateTableWithNewBackupList(backups, formatter);
+                JOptionPane.showMessageDialog(main, TranslationCategory.DIALOGS.getTranslation(TranslationKey.BACKUP_LIST_CORRECTLY_IMPORTED_MESSAGE), TranslationCategory.DIALOGS.getTranslation(TranslationKey.BACKUP_LIST_CORRECTLY_IMPORTED_TITLE), JOptionPane.INFORMATION_MESSAGE);
+                return backups;
             } else {
                 JOptionPane.showMessageDialog(main, TranslationCategory.DIALOGS.getTranslation(TranslationKey.ERROR_MESSAGE_FOR_WRONG_FILE_EXTENSION_MESSAGE), TranslationCategory.DIALOGS.getTranslation(TranslationKey.ERROR_MESSAGE_FOR_WRONG_FILE_EXTENSION_TITLE), JOptionPane.ERROR_MESSAGE);
             }
@@ -78,6 +75,9 @@ public class ImportExportManager {
         Path desktopPath = Paths.get(System.getProperty("user.home"), "Desktop", Preferences.getBackupList().getFile());
         Path sourcePath = Paths.get(Preferences.getBackupList().getDirectory() + Preferences.getBackupList().getFile());
 
+        // the changes still in the journal are written to the list file first
+        BackupRepository.getInstance().compact();
+
         try {
             Files.copy(sourcePath, desktopPath, StandardCopyOption.REPLACE_EXISTING);
             JOptionPane.showMessageDialog(null, TranslationCategory.DIALOGS.getTranslation(TranslationKey.BACKUP_LIST_CORRECTLY_EXPORTED_MESSAGE), TranslationCategory.DIALOGS.getTranslation(TranslationKey.BACKUP_LIST_CORRECTLY_EXPORTED_TITLE), JOptionPane.INFORMATION_MESSAGE);
@@ -13,12 +13,9 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.IOException;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.swing.JFrame;
 
@@ -27,50 +24,139 @@ import org.slf4j.LoggerFactory;
  
 import backupmanager.BackupOperations;
 import backupmanager.Entities.Backup;
-import backupmanager.Entities.Preferences;
+import backupmanager.Entities.ProgressEvent;
 import backupmanager.Entities.RunningBackups;
 import backupmanager.Entities.ZippingContext;
 import backupmanager.Enums.ConfigKey;
 import backupmanager.GUI.BackupManagerGUI;
-import backupmanager.Json.JSONBackup;
 import backupmanager.Json.JSONConfigReader;
+import backupmanager.Managers.BackupManager;
 
 public class BackugrundService {
     private static final Logger logger = LoggerFactory.getLogger(BackugrundService.class);
+    private static final long CONTROL_PROGRESS_INTERVAL_MILLIS = 250;
 
-    private ScheduledExecutorService scheduler;
+    private volatile BackupScheduler scheduler;
+    private long retryIntervalMinutes;
+    private ControlServer controlServer;
     private final JSONConfigReader jsonConfig = new JSONConfigReader(ConfigKey.CONFIG_FILE_STRING.getValue(), ConfigKey.CONFIG_DIRECTORY_STRING.getValue());
     private TrayIcon trayIcon = null;
     private BackupManagerGUI guiInstance = null;
-    private final AtomicBoolean isBackupping = new AtomicBoolean(false);
+    private final Set<String> startingBackups = ConcurrentHashMap.newKeySet();
 
     public void startService() throws IOException {
         if (trayIcon == null) {
             createHiddenIcon();
         }
         
-        // clear running backups json file (if last execution stopped brutally we have to delete the partial backups)
-        RunningBackups.deletePartialBackupsStuckedJSONFile();
+        // clear running backups json file (if last execution stopped brutally we have to delete the partial backups, except the resumable ones)
+        RunningBackups.deletePartialBackupsStucked();
         
-        scheduler = Executors.newSingleThreadScheduledExecutor();
-        long interval = jsonConfig.readCheckForBackupTimeInterval();
-        scheduler.scheduleAtFixedRate(new BackupTask(), 0, interval, TimeUnit.MINUTES);
+        // the backups are started at their next date, the check interval is only used to retry the ones that couldn't start
+        retryIntervalMinutes = jsonConfig.readCheckForBackupTimeInterval();
+        scheduler = new BackupScheduler(this::runScheduledBackup);
+        scheduler.start();
+        reloadSchedule();
+
+        startControlServer();
 
         Runtime.getRuntime().addShutdownHook(new Thread(this::stopService));
     }
 
     public void stopService() {
         logger.debug("Stopping background service");
-        if (scheduler != null && !scheduler.isShutdown()) {
-            scheduler.shutdownNow();
+        if (scheduler != null) {
+            scheduler.stop();
+            scheduler = null;
             logger.info("Background service stopped");
         }
+        if (controlServer != null) {
+            controlServer.close();
+            controlServer = null;
+        }
         if (trayIcon != null) {
             SystemTray.getSystemTray().remove(trayIcon);
             trayIcon = null;
         }
     }
 
+    // the GUI attaches to the service through the control channel, without it the GUI still works by itself
+    private void startControlServer() {
+        try {
+            controlServer = ControlServer.start(this::handleCommand);
+            ProgressEventBus.getInstance().subscribe("control", CONTROL_PROGRESS_INTERVAL_MILLIS, this::pushProgress);
+        } catch (IOException e) {
+            logger.error("Unable to start the control channel: " + e.getMessage(), e);
+        }
+    }
+
+    private void pushProgress(ProgressEvent event) {
+        ControlServer server = controlServer;
+        if (server == null) return;
+
+        if (event.isCompleted()) {
+            server.broadcastCompleted(event.getBackupName());
+        } else {
+            server.broadcastProgress(event.getBackupName(), event.getProgress());
+        }
+    }
+
+    private String handleCommand(String command, String backupName) {
+        switch (command) {
+            case "RUN":
+                Backup backup = findBackup(backupName);
+                if (backup == null) return "backup not found";
+                if (!startBackup(backup)) return ControlServer.BACKUP_ALREADY_RUNNING;
+
+                logger.info("Backup \"" + backupName + "\" requested by the GUI");
+                return null;
+            case "INTERRUPT":
+                if (!ZippingThread.isBackupRunning(backupName)) return "backup not running";
+
+                Backup running = findBackup(backupName);
+                if (running == null) return "backup not found";
+                BackupOperations.interruptBackupProcess(new ZippingContext(running, trayIcon, null, null, null, null));
+                return null;
+            case "RELOAD":
+                // the backup list has been modified by the GUI
+                BackupRepository.getInstance().reload();
+                reloadSchedule();
+                return null;
+            default:
+                return "unknown command " + command;
+        }
+    }
+
+    private Backup findBackup(String backupName) {
+        return BackupRepository.getInstance().getBackup(backupName);
+    }
+
+    // returns false if the backup is already running, the other backups can run at the same time
+    private boolean startBackup(Backup backup) {
+        String backupName = backup.getBackupName();
+        if (BackupOperations.isBackupRunning(backupName) || !startingBackups.add(backupName)) {
+            return false;
+        }
+
+        javax.swing.SwingUtilities.invokeLater(() -> {
+            try {
+                ZippingContext context = new ZippingContext(backup, trayIcon, null, null, null, null);
+                BackupOperations.SingleBackup(context);
+
+                // the completed backup has a new next date, a long incremental chain is merged in a synthetic full backup
+                ZippingThread.runAfterBackup(backupName, () -> {
+                    if (SyntheticFullBackup.startIfNeeded(context)) {
+                        logger.info("Synthetic full backup of \"" + backupName + "\" started");
+                    }
+                    reloadSchedule();
+                });
+            } finally {
+                startingBackups.remove(backupName);
+            }
+        });
+        return true;
+    }
+
     private void createHiddenIcon() {
         if (!SystemTray.isSupported()) {
             logger.warn("System tray is not supported!");
@@ -130,77 +216,44 @@ public class BackugrundService {
         }
     }
 
-    class BackupTask implements Runnable {
-        @Override
-        public void run() {
-            if (!isBackupping.compareAndSet(false, true)) {
-                return;
-            }
-        
-            logger.debug("Checking for automatic backup...");
-        
-            try {
-                List<RunningBackups> runningBackups = RunningBackups.readBackupListFromJSON();
-                if (!runningBackups.isEmpty()) {
-                    logger.info("A backup is already running. Skipping this cycle.");
-                    isBackupping.set(false);
-                    return;
-                }
-        
-                List<Backup> backups = JSONBackup.readBackupListFromJSON(
-                    Preferences.getBackupList().getDirectory(),
-                    Preferences.getBackupList().getFile()
-                );
-        
-                List<Backup> needsBackup = getBackupsToDo(backups, 1);
-                if (!needsBackup.isEmpty()) {
-                    logger.info("Start backup process.");
-                    executeBackups(needsBackup);
-                } else {
-                    isBackupping.set(false);
-                    logger.debug("No backup needed at this time.");
-                }
-            } catch (IOException ex) {
-                isBackupping.set(false);
-                logger.error("An error occurred: " + ex.getMessage(), ex);
-            }
-        }
+    private void reloadSchedule() {
+        BackupScheduler currentScheduler = scheduler;
+        if (currentScheduler == null) return;
 
-        private List<Backup> getBackupsToDo(List<Backup> backups, int maxBackupsToAdd) {
-            List<Backup> backupsToDo = new ArrayList<>();
-            List<RunningBackups> runningBackups = RunningBackups.readBackupListFromJSON();
+        currentScheduler.reload(BackupRepository.getInstance().getBackups());
+        logger.debug("Next automatic backup at " + currentScheduler.getNextFireTime());
+    }
 
-            for (Backup backup : backups) {
+    // called by the scheduler when the next date of the backup has been reached, on a thread of its own: the check of the
+    // source can scan the whole tree
+    private void runScheduledBackup(Backup backup) {
+        // the service can be stopped while the job runs: stopService clears the field and stops the scheduler
+        BackupScheduler currentScheduler = scheduler;
+        if (currentScheduler == null || !currentScheduler.isRunning()) {
+            logger.info("Background service stopping, the backup \"" + backup.getBackupName() + "\" is not started");
+            return;
+        }
 
-                // i have to check that the backup is not running 
-                boolean found = false;
-                for (RunningBackups running : runningBackups) {
-                    if (backup.getBackupName().equals(running.backupName)){
-                        found = true;
-                        break;
-                    }
-                }
+        // if the backup doesn't complete (it can't start now, it fails or it is interrupted) it is tried again later,
+        // otherwise this entry is replaced by its new next date when the schedule is reloaded
+        currentScheduler.schedule(backup, LocalDateTime.now().plusMinutes(retryIntervalMinutes));
 
-                if (!found && maxBackupsToAdd > 0 && backup.isAutoBackup() && backup.getNextDateBackup() != null && backup.getNextDateBackup().isBefore(LocalDateTime.now())) {
-                    backupsToDo.add(backup);
-                    maxBackupsToAdd--;
-                }
-            }
-            return backupsToDo;
+        if (BackupOperations.isBackupRunning(backup.getBackupName())) {
+            logger.info("The backup \"" + backup.getBackupName() + "\" is already running");
+            return;
         }
 
-        private void executeBackups(List<Backup> backups) {
-            javax.swing.SwingUtilities.invokeLater(() -> {
-                try {
-                    for (Backup backup : backups) {
-                        ZippingContext context = new ZippingContext(backup, trayIcon, null, null, null, null);
-                        BackupOperations.SingleBackup(context);
-                    }
-                } finally {
-                    logger.info("All backups completed. Resetting isBackupping flag.");
-                    isBackupping.set(false);
-                }
-            });
+        // a backup of an initial path not modified since the last backup would be identical to it, so it is postponed to the next date
+        if (!BackupOperations.isBackupNeeded(backup)) {
+            logger.info("Nothing changed since the last backup of \"" + backup.getBackupName() + "\", backup skipped");
+            backup.setNextDateBackup(BackupManager.getNexDateBackup(backup));
+            BackupManager.updateBackup(backup);
+            if (currentScheduler.isRunning()) currentScheduler.schedule(backup, backup.getNextDateBackup());
+            return;
+        }
+
+        if (startBackup(backup)) {
+            logger.info("Start backup process.");
         }
     }
 }
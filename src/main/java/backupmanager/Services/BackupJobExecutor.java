@@ -0,0 +1,281 @@
+package backupmanager.Services;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backupmanager.Entities.ZippingContext;
+import backupmanager.Enums.ConfigKey;
+import backupmanager.Json.JSONConfigReader;
+
+/*
+ * Runs the backups concurrently, limiting how many of them use the same disk.
+ * Every job is bound to the devices (FileStore) of its source and of its destination: a job starts only when all its devices
+ * are below the limit, so backups on independent disks run in parallel while the ones on the same disk don't compete for it.
+ * The waiting jobs start in submission order, but a job whose devices are free doesn't wait for the ones blocked by a busy disk.
+ * A backup has at most one job, waiting or running: a second one would write the same partial archive and checkpoint.
+ */
+public class BackupJobExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(BackupJobExecutor.class);
+    private static BackupJobExecutor instance;
+
+    private final int maxConcurrentJobs;
+    private final int maxJobsPerDevice;
+    private final ExecutorService threads;
+    private final List<Job> pending = new ArrayList<>();
+    private final List<Job> running = new ArrayList<>();
+    private final Map<Object, Integer> devicesLoad = new HashMap<>();
+    private final Map<String, Job> jobsByBackup = new HashMap<>();
+
+    public static class Job {
+        private final ZippingContext context;
+        private volatile Path target;
+        private final Runnable task;
+        private final Set<Object> devices;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final List<Runnable> afterTasks = new ArrayList<>();
+        private volatile Thread thread;
+        private volatile boolean cancelled;
+        private volatile boolean paused;
+        private volatile Runnable cancelHandler;
+
+        private Job(ZippingContext context, Path target, Runnable task, Set<Object> devices) {
+            this.context = context;
+            this.target = target;
+            this.task = task;
+            this.devices = devices;
+        }
+
+        public ZippingContext getContext() {
+            return context;
+        }
+        public Path getTarget() {
+            return target;
+        }
+        // the archive is chosen by the task, the job is submitted with a path in the same destination (the same disk)
+        public void setTarget(Path target) {
+            this.target = target;
+        }
+        public String getBackupName() {
+            return context.backup.getBackupName();
+        }
+        // interrupted to be resumed later, not cancelled
+        public boolean isPaused() {
+            return paused;
+        }
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        // how the task stops when the job is interrupted, run now if it already has been
+        public void onCancel(Runnable handler) {
+            cancelHandler = handler;
+            if (cancelled) handler.run();
+        }
+    }
+
+    public BackupJobExecutor(int maxConcurrentJobs, int maxJobsPerDevice) {
+        this.maxConcurrentJobs = Math.max(1, maxConcurrentJobs);
+        this.maxJobsPerDevice = Math.max(1, maxJobsPerDevice);
+
+        AtomicInteger counter = new AtomicInteger();
+        this.threads = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "backup-job-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static synchronized BackupJobExecutor getInstance() {
+        if (instance == null) {
+            JSONConfigReader config = new JSONConfigReader(ConfigKey.CONFIG_FILE_STRING.getValue(), ConfigKey.CONFIG_DIRECTORY_STRING.getValue());
+            instance = new BackupJobExecutor(config.getMaxConcurrentBackups(), config.getMaxBackupsPerDevice());
+        }
+        return instance;
+    }
+
+    // returns null if the backup already has a job waiting or running, the task is not submitted
+    public synchronized Job submit(ZippingContext context, Path source, Path target, Runnable task) {
+        String backupName = context.backup.getBackupName();
+        if (jobsByBackup.containsKey(backupName)) {
+            logger.warn("Backup \"" + backupName + "\" already running, the new job is rejected");
+            return null;
+        }
+
+        Set<Object> devices = new LinkedHashSet<>();
+        devices.add(getDevice(source));
+        devices.add(getDevice(target));
+
+        Job job = new Job(context, target, task, devices);
+        jobsByBackup.put(backupName, job);
+        pending.add(job);
+        dispatch();
+
+        if (pending.contains(job)) {
+            logger.info("Backup \"" + job.getBackupName() + "\" waiting for a free disk");
+        }
+        return job;
+    }
+
+    public synchronized boolean isRunning(String backupName) {
+        return jobsByBackup.containsKey(backupName);
+    }
+
+    // runs the task when the jobs of the backup have finished (now if there are none), it can be discarded if they are interrupted
+    public void runAfter(String backupName, Runnable task) {
+        synchronized (this) {
+            Job job = jobsByBackup.get(backupName);
+            if (job != null) {
+                job.afterTasks.add(task);
+                return;
+            }
+        }
+        task.run();
+    }
+
+    /*
+     * Interrupts the running jobs accepted by the filter and removes the waiting ones, then waits for the running ones to stop.
+     * Returns false if no job has been accepted by the filter.
+     */
+    public boolean interrupt(Predicate<Job> filter, long timeoutSeconds) {
+        List<Job> interrupted = new ArrayList<>();
+        synchronized (this) {
+            for (Job job : new ArrayList<>(pending)) {
+                if (filter.test(job)) {
+                    pending.remove(job);
+                    jobsByBackup.remove(job.getBackupName(), job);
+                    job.done.countDown();
+                    interrupted.add(job);
+                }
+            }
+            for (Job job : running) {
+                // a job finalizing itself (e.g. deleting its partial archive) must not wait for itself
+                if (job.thread == Thread.currentThread()) continue;
+
+                if (filter.test(job)) {
+                    // the thread is not interrupted, it would close the channels of the archive being written:
+                    // the task stops by itself at the next entry (a job still starting checks the flag before running it)
+                    job.cancelled = true;
+                    Runnable handler = job.cancelHandler;
+                    if (handler != null) handler.run();
+                    interrupted.add(job);
+                }
+            }
+        }
+
+        for (Job job : interrupted) {
+            logger.info("Interrupting the backup \"" + job.getBackupName() + "\"");
+            try {
+                if (!job.done.await(timeoutSeconds, TimeUnit.SECONDS)) {
+                    logger.warn("The backup \"" + job.getBackupName() + "\" did not stop in the given time");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return !interrupted.isEmpty();
+    }
+
+    // as interrupt, but the jobs are marked as paused so their partial archives are kept
+    public boolean pause(Predicate<Job> filter, long timeoutSeconds) {
+        return interrupt(job -> {
+            if (!filter.test(job)) return false;
+            job.paused = true;
+            return true;
+        }, timeoutSeconds);
+    }
+
+    // the job running on the calling thread, null if the thread is not running a job
+    public synchronized Job getCurrentJob() {
+        return find(job -> job.thread == Thread.currentThread());
+    }
+
+    private Job find(Predicate<Job> filter) {
+        for (Job job : running) {
+            if (filter.test(job)) return job;
+        }
+        for (Job job : pending) {
+            if (filter.test(job)) return job;
+        }
+        return null;
+    }
+
+    // starts the waiting jobs whose devices are below the limit
+    private void dispatch() {
+        for (Job job : new ArrayList<>(pending)) {
+            if (running.size() >= maxConcurrentJobs) return;
+            if (!areDevicesFree(job)) continue;
+
+            pending.remove(job);
+            running.add(job);
+            for (Object device : job.devices) {
+                devicesLoad.merge(device, 1, Integer::sum);
+            }
+            threads.execute(() -> execute(job));
+        }
+    }
+
+    private boolean areDevicesFree(Job job) {
+        for (Object device : job.devices) {
+            if (devicesLoad.getOrDefault(device, 0) >= maxJobsPerDevice) return false;
+        }
+        return true;
+    }
+
+    private void execute(Job job) {
+        job.thread = Thread.currentThread();
+        try {
+            if (!job.cancelled) job.task.run();
+        } catch (RuntimeException e) {
+            logger.error("Backup \"" + job.getBackupName() + "\" failed: " + e.getMessage(), e);
+        } finally {
+            List<Runnable> afterTasks;
+            synchronized (this) {
+                running.remove(job);
+                jobsByBackup.remove(job.getBackupName(), job);
+                for (Object device : job.devices) {
+                    devicesLoad.computeIfPresent(device, (key, load) -> load > 1 ? load - 1 : null);
+                }
+                afterTasks = new ArrayList<>(job.afterTasks);
+                dispatch();
+            }
+            job.done.countDown();
+
+            for (Runnable task : afterTasks) {
+                task.run();
+            }
+        }
+    }
+
+    // the disk of the path: the nearest existing ancestor is used for the archives not created yet
+    private static Object getDevice(Path path) {
+        Path existing = path.toAbsolutePath();
+        while (existing != null && !Files.exists(existing)) {
+            existing = existing.getParent();
+        }
+        if (existing == null) return path.toAbsolutePath().getRoot();
+
+        try {
+            return Files.getFileStore(existing);
+        } catch (IOException e) {
+            logger.debug("Unable to get the disk of " + existing + ": " + e.getMessage());
+            return existing.getRoot();
+        }
+    }
+}
@@ -10,6 +10,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import backupmanager.Entities.Backup;
+import backupmanager.Entities.BackupProgress;
 import backupmanager.Entities.RunningBackups;
 import backupmanager.Enums.BackupStatusEnum;
 import backupmanager.Table.TableDataManager;
@@ -18,13 +19,18 @@ import backupmanager.Table.TableDataManager;
  * I need a task that constantly checks if there are something running and i can't use a simple method calls instead because
  * if a backup starts caused by the BackugroundService and we open the GUI, thre are 2 different instance of this program, 
  * so we need something like an observer that constantly checks if there are some backups in progress.
+ * If the background service is reachable the observer attaches to it and receives the progress pushed on the control channel,
+ * the running backups are then checked only rarely, to clean the backups interrupted or terminated.
  */
 public class BackupObserver {
     private static final Logger logger = LoggerFactory.getLogger(BackupObserver.class);
+    private static final long ATTACHED_CHECK_MILLISECONDS = 5000;
 
     private final ScheduledExecutorService scheduler;
     private final DateTimeFormatter formatter;
     private final long millisecondsToWait;
+    private final ControlClient controlClient = new ControlClient();
+    private volatile boolean attached = false;
 
     public BackupObserver(DateTimeFormatter formatter, int millisecondsToWait) {
         this.millisecondsToWait = millisecondsToWait;
@@ -37,31 +43,60 @@ public class BackupObserver {
 
         RunningBackups.deleteCompletedBackups();
 
-        scheduler.scheduleAtFixedRate(() -> {
-            try {
-                List<RunningBackups> runningBackups = RunningBackups.readBackupListFromJSON();
-                if (!runningBackups.isEmpty()) {
-                    logger.debug("Observer has found a running backup");
-
-                    for (RunningBackups backup : runningBackups) {
-                        Backup backupEntity = Backup.getBackupByName(backup.backupName);
-
-                        if (backup.progress < 100 && backup.status == BackupStatusEnum.Progress) {
-                            TableDataManager.updateProgressBarPercentage(backupEntity, backup.progress, formatter);
-                        } else {
-                            RunningBackups.deleteCompletedBackup(backup.backupName);
-                            TableDataManager.removeProgressInTheTableAndRestoreAsDefault(backupEntity, formatter);
-                        }
-                    }
-                }
-            } catch (Exception ex) {
-                logger.error("An error occurred: " + ex.getMessage(), ex);
-            }
-        }, 0, millisecondsToWait, TimeUnit.MILLISECONDS); // run now and periodically
+        scheduler.execute(this::check); // run now and then reschedule itself
     }
 
     public void stop() {
         logger.info("Observer for running backups stopped");
         scheduler.shutdownNow(); 
     }
+
+    private void check() {
+        try {
+            if (!attached) {
+                attach();
+            }
+
+            List<RunningBackups> runningBackups = RunningBackups.readBackupList();
+            if (!runningBackups.isEmpty()) {
+                logger.debug("Observer has found a running backup");
+
+                for (RunningBackups backup : runningBackups) {
+                    Backup backupEntity = Backup.getBackupByName(backup.backupName);
+
+                    if (backup.progress < 100 && backup.status == BackupStatusEnum.Progress) {
+                        if (!attached) TableDataManager.updateProgressBarPercentage(backupEntity, backup.toBackupProgress(), formatter);
+                    } else {
+                        RunningBackups.deleteCompletedBackup(backup.backupName);
+                        TableDataManager.removeProgressInTheTableAndRestoreAsDefault(backupEntity, formatter);
+                    }
+                }
+            }
+        } catch (Exception ex) {
+            logger.error("An error occurred: " + ex.getMessage(), ex);
+        } finally {
+            if (!scheduler.isShutdown()) {
+                scheduler.schedule(this::check, attached ? ATTACHED_CHECK_MILLISECONDS : millisecondsToWait, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void attach() {
+        attached = controlClient.subscribe(new ControlClient.ProgressListener() {
+            @Override
+            public void onProgress(String backupName, BackupProgress progress) {
+                TableDataManager.updateProgressBarPercentage(Backup.getBackupByName(backupName), progress, formatter);
+            }
+
+            @Override
+            public void onCompleted(String backupName) {
+                TableDataManager.removeProgressInTheTableAndRestoreAsDefault(Backup.getBackupByName(backupName), formatter);
+            }
+        }, () -> {
+            logger.info("Observer detached from the background service");
+            attached = false;
+        });
+
+        if (attached) logger.info("Observer attached to the background service");
+    }
 }
@@ -0,0 +1,379 @@
+package backupmanager.Services;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backupmanager.Entities.Backup;
+import backupmanager.Entities.BackupList;
+import backupmanager.Entities.Preferences;
+import backupmanager.Json.BackupJournal;
+import backupmanager.Json.JSONBackup;
+
+/*
+ * Process-wide copy of the backup list, so reading a backup doesn't parse the json file every time.
+ * The backups are kept in an immutable snapshot indexed by name and replaced as a whole on every change: the readers
+ * only read the current snapshot, without locks and without touching the disk, and get copies of the backups they can modify.
+ * The changes are appended to the journal of the list (BackupJournal) by a background thread shortly after they are made,
+ * so a burst of updates results in a single write. The file is read again when another process (the GUI or the background service) changes it.
+ */
+public class BackupRepository {
+    private static final Logger logger = LoggerFactory.getLogger(BackupRepository.class);
+    private static final long FLUSH_DELAY_MILLIS = 200;
+    private static final long COMPACT_JOURNAL_BYTES = 64 * 1024;
+    private static BackupRepository instance;
+
+    private final Supplier<BackupList> location;
+    private final long flushDelayMillis;
+    private final ScheduledExecutorService writer;
+    private final Object writeLock = new Object();
+    private final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+    private volatile Snapshot snapshot;
+    private final Map<String, BackupJournal.Entry> pendingEntries = new LinkedHashMap<>();
+    private boolean flushScheduled;
+    private String fileSignature;
+    private WatchService watchService;
+    private Path watchedDirectory;
+
+    private static class Snapshot {
+        private final BackupList source;
+        private final List<Backup> backups;
+        private final Map<String, Backup> backupsByName;
+
+        Snapshot(BackupList source, List<Backup> backups) {
+            Map<String, Backup> byName = new LinkedHashMap<>();
+            for (Backup backup : backups) {
+                byName.put(backup.getBackupName(), new Backup(backup));
+            }
+            this.source = source;
+            this.backups = Collections.unmodifiableList(new ArrayList<>(byName.values()));
+            this.backupsByName = Collections.unmodifiableMap(byName);
+        }
+
+        boolean isReadFrom(BackupList list) {
+            return source.getDirectory().equals(list.getDirectory()) && source.getFile().equals(list.getFile());
+        }
+    }
+
+    public BackupRepository(Supplier<BackupList> location, long flushDelayMillis) {
+        this.location = location;
+        this.flushDelayMillis = flushDelayMillis;
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "backup-repository-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static synchronized BackupRepository getInstance() {
+        if (instance == null) {
+            instance = new BackupRepository(Preferences::getBackupList, FLUSH_DELAY_MILLIS);
+            instance.startWatcher();
+            Runtime.getRuntime().addShutdownHook(new Thread(instance::compact, "backup-repository-compact"));
+        }
+        return instance;
+    }
+
+    public List<Backup> getBackups() {
+        List<Backup> backups = new ArrayList<>();
+        for (Backup backup : getSnapshot().backups) {
+            backups.add(new Backup(backup));
+        }
+        return backups;
+    }
+
+    public Backup getBackup(String backupName) {
+        Backup backup = getSnapshot().backupsByName.get(backupName);
+        return backup != null ? new Backup(backup) : null;
+    }
+
+    // adds the backup or replaces the one with the same name
+    public void save(Backup backup) {
+        getSnapshot();
+        synchronized (this) {
+            List<Backup> backups = new ArrayList<>(snapshot.backups);
+            boolean found = false;
+            for (int i = 0; i < backups.size(); i++) {
+                if (backups.get(i).getBackupName().equals(backup.getBackupName())) {
+                    backups.set(i, backup);
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) backups.add(backup);
+
+            addPendingEntry(BackupJournal.Entry.put(backup));
+            publish(backups);
+        }
+    }
+
+    public void saveAll(List<Backup> backups) {
+        getSnapshot();
+        synchronized (this) {
+            // only the differences with the current list are written
+            Map<String, Backup> previous = snapshot.backupsByName;
+            Set<String> names = new HashSet<>();
+            for (Backup backup : backups) {
+                names.add(backup.getBackupName());
+                Backup old = previous.get(backup.getBackupName());
+                if (old == null || !JSONBackup.getJsonObjectFromBackup(old).equals(JSONBackup.getJsonObjectFromBackup(backup))) {
+                    addPendingEntry(BackupJournal.Entry.put(backup));
+                }
+            }
+            for (String backupName : previous.keySet()) {
+                if (!names.contains(backupName)) addPendingEntry(BackupJournal.Entry.remove(backupName));
+            }
+
+            publish(backups);
+        }
+    }
+
+    // the listener is called when the backup list has been read again because another process has changed it
+    public void addReloadListener(Runnable listener) {
+        reloadListeners.add(listener);
+    }
+
+    // appends the pending changes to the journal now
+    public void flush() {
+        boolean compactionNeeded = false;
+        synchronized (writeLock) {
+            Snapshot current;
+            List<BackupJournal.Entry> entries;
+            synchronized (this) {
+                flushScheduled = false;
+                if (pendingEntries.isEmpty()) return;
+                current = snapshot;
+                entries = new ArrayList<>(pendingEntries.values());
+                pendingEntries.clear();
+            }
+
+            BackupJournal journal = getJournal(current.source);
+            try {
+                journal.append(entries);
+                logger.debug("Written " + entries.size() + " changes to the backup list journal");
+            } catch (IOException e) {
+                logger.error("An error occurred while writing the backup list journal: " + e.getMessage(), e);
+                // they are written with the next changes, unless a newer change of the same backup is already waiting
+                synchronized (this) {
+                    for (BackupJournal.Entry entry : entries) {
+                        pendingEntries.putIfAbsent(entry.getBackupName(), entry);
+                    }
+                }
+            }
+            fileSignature = getFileSignature(current.source);
+            compactionNeeded = journal.getJournalSize() > COMPACT_JOURNAL_BYTES;
+        }
+
+        if (compactionNeeded) compact();
+    }
+
+    // writes the whole list to the json file and empties the journal, the pending changes are written first
+    public void compact() {
+        flush();
+        synchronized (writeLock) {
+            Snapshot current = snapshot;
+            if (current == null) return;
+
+            try {
+                List<Backup> backups = getJournal(current.source).compact();
+                fileSignature = getFileSignature(current.source);
+
+                // the list read from the disk contains also the changes of the other processes
+                synchronized (this) {
+                    if (pendingEntries.isEmpty() && snapshot == current) snapshot = new Snapshot(current.source, backups);
+                }
+            } catch (IOException e) {
+                logger.error("An error occurred while compacting the backup list journal: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    // discards the snapshot and reads the backup list file again, the pending changes are written first
+    public void reload() {
+        flush();
+        synchronized (writeLock) {
+            try {
+                load(location.get());
+            } catch (IOException e) {
+                logger.error("An error occurred while reading the backup list: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current != null && current.isReadFrom(location.get())) return current;
+
+        // first access, or a different backup list has been selected
+        flush();
+        synchronized (writeLock) {
+            current = snapshot;
+            if (current == null || !current.isReadFrom(location.get())) {
+                try {
+                    current = load(location.get());
+                } catch (IOException e) {
+                    logger.error("An error occurred while reading the backup list: " + e.getMessage(), e);
+                    current = new Snapshot(location.get(), new ArrayList<>());
+                    snapshot = current;
+                }
+            }
+            return current;
+        }
+    }
+
+    private Snapshot load(BackupList source) throws IOException {
+        List<Backup> backups = getJournal(source).load();
+        // the file can be reset to the default one while reading it
+        source = location.get();
+
+        Snapshot loaded = new Snapshot(source, backups);
+        synchronized (this) {
+            snapshot = loaded;
+            pendingEntries.clear();
+        }
+        fileSignature = getFileSignature(source);
+        watch(source);
+
+        logger.debug("Backup list loaded: " + loaded.backups.size() + " backups");
+        return loaded;
+    }
+
+    // the entry replaces the pending change of the same backup, which then moves after the others
+    private void addPendingEntry(BackupJournal.Entry entry) {
+        pendingEntries.remove(entry.getBackupName());
+        pendingEntries.put(entry.getBackupName(), entry);
+    }
+
+    // must be called holding the lock of the repository, after the snapshot has been loaded
+    private void publish(List<Backup> backups) {
+        snapshot = new Snapshot(snapshot.source, backups);
+
+        if (!flushScheduled) {
+            flushScheduled = true;
+            writer.schedule(this::flush, flushDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // called when the file has been modified: it is read again only if the change has not been made by this repository
+    private void onFileChanged() {
+        synchronized (writeLock) {
+            Snapshot current = snapshot;
+            if (current == null) return;
+            synchronized (this) {
+                if (!pendingEntries.isEmpty()) return;
+            }
+
+            String signature = getFileSignature(current.source);
+            if (signature == null || signature.equals(fileSignature)) return;
+
+            logger.info("Backup list modified by another process, reloading it");
+            try {
+                load(current.source);
+            } catch (IOException | RuntimeException e) {
+                // the file can be still being written, it will be read at the next change
+                logger.warn("Unable to reload the backup list: " + e.getMessage());
+                return;
+            }
+        }
+
+        for (Runnable listener : reloadListeners) {
+            listener.run();
+        }
+    }
+
+    private static BackupJournal getJournal(BackupList source) {
+        return new BackupJournal(source.getDirectory(), source.getFile());
+    }
+
+    // the list file and its journal, the journal can be missing
+    private static String getFileSignature(BackupList source) {
+        Path file = Paths.get(source.getDirectory() + source.getFile());
+        Path journal = Paths.get(source.getDirectory() + BackupJournal.getJournalFileName(source.getFile()));
+        try {
+            String signature = Files.getLastModifiedTime(file).toMillis() + ":" + Files.size(file);
+            if (Files.exists(journal)) {
+                signature += "/" + Files.getLastModifiedTime(journal).toMillis() + ":" + Files.size(journal);
+            }
+            return signature;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void startWatcher() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            logger.warn("Unable to watch the backup list for changes: " + e.getMessage());
+            return;
+        }
+
+        Thread thread = new Thread(this::watchLoop, "backup-repository-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private synchronized void watch(BackupList source) {
+        if (watchService == null) return;
+
+        Path directory = Paths.get(source.getDirectory()).toAbsolutePath();
+        if (directory.equals(watchedDirectory)) return;
+
+        try {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+            watchedDirectory = directory;
+        } catch (IOException e) {
+            logger.warn("Unable to watch the directory " + directory + ": " + e.getMessage());
+        }
+    }
+
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            boolean changed = false;
+            Snapshot current = snapshot;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                Object context = event.context();
+                if (current != null && context != null
+                        && (context.toString().equals(current.source.getFile()) || context.toString().equals(BackupJournal.getJournalFileName(current.source.getFile())))) {
+                    changed = true;
+                }
+            }
+            if (!key.reset()) {
+                synchronized (this) {
+                    if (key.watchable().equals(watchedDirectory)) watchedDirectory = null;
+                }
+            }
+
+            if (changed) onFileChanged();
+        }
+    }
+}
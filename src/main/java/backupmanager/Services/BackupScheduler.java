@@ -0,0 +1,192 @@
+package backupmanager.Services;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backupmanager.Entities.Backup;
+
+/*
+ * Starts the automatic backups at their next date, without checking the backup list periodically.
+ * The backups are kept in a priority queue ordered by their next date and the scheduler thread sleeps until the first one is due,
+ * or until the queue changes. Every backup has at most one entry in the queue: scheduling it again replaces the previous date.
+ * The scheduler thread only takes the due backups: their jobs (that can scan the whole source before starting the backup)
+ * run on their own threads, so a slow one doesn't delay the others. A backup due again while its job is still running
+ * is postponed.
+ */
+public class BackupScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(BackupScheduler.class);
+    // the wait is measured by a clock that can stop while the computer is suspended, so the first date is checked again at least this often
+    private static final long MAX_SLEEP_MINUTES = 5;
+
+    private final BackupJob job;
+    private final PriorityQueue<ScheduledBackup> queue = new PriorityQueue<>((first, second) -> first.fireTime.compareTo(second.fireTime));
+    private final Map<String, ScheduledBackup> scheduled = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Set<String> runningJobs = ConcurrentHashMap.newKeySet();
+    private Thread thread;
+    private ExecutorService jobs;
+    private volatile boolean running;
+
+    public interface BackupJob {
+        void run(Backup backup);
+    }
+
+    public BackupScheduler(BackupJob job) {
+        this.job = job;
+    }
+
+    public void start() {
+        running = true;
+        AtomicInteger counter = new AtomicInteger(0);
+        jobs = Executors.newCachedThreadPool(runnable -> {
+            Thread jobThread = new Thread(runnable, "scheduled-backup-" + counter.incrementAndGet());
+            jobThread.setDaemon(true);
+            return jobThread;
+        });
+        thread = new Thread(this::loop, "backup-scheduler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (thread != null) thread.interrupt();
+        // the jobs already running check isRunning before starting their backup
+        if (jobs != null) jobs.shutdown();
+    }
+
+    // false once stopped, the jobs still running must not schedule anything anymore
+    public boolean isRunning() {
+        return running;
+    }
+
+    // replaces the whole queue with the automatic backups of the list
+    public void reload(List<Backup> backups) {
+        lock.lock();
+        try {
+            queue.clear();
+            scheduled.clear();
+            for (Backup backup : backups) {
+                if (backup.isAutoBackup() && backup.getNextDateBackup() != null) {
+                    add(backup, backup.getNextDateBackup());
+                }
+            }
+            logger.debug("Scheduled backups reloaded: " + queue.size());
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void schedule(Backup backup, LocalDateTime fireTime) {
+        lock.lock();
+        try {
+            add(backup, fireTime);
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public LocalDateTime getNextFireTime() {
+        lock.lock();
+        try {
+            return queue.isEmpty() ? null : queue.peek().fireTime;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void add(Backup backup, LocalDateTime fireTime) {
+        ScheduledBackup previous = scheduled.remove(backup.getBackupName());
+        if (previous != null) queue.remove(previous);
+
+        ScheduledBackup entry = new ScheduledBackup(backup, fireTime);
+        scheduled.put(backup.getBackupName(), entry);
+        queue.add(entry);
+    }
+
+    private void loop() {
+        while (running) {
+            Backup due;
+            lock.lock();
+            try {
+                due = takeDue();
+                if (runningJobs.contains(due.getBackupName())) {
+                    logger.info("Scheduled backup \"" + due.getBackupName() + "\" still being checked, postponed");
+                    add(due, LocalDateTime.now().plusMinutes(MAX_SLEEP_MINUTES));
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            logger.info("Scheduled backup due: " + due.getBackupName());
+            runningJobs.add(due.getBackupName());
+            try {
+                jobs.execute(() -> runJob(due));
+            } catch (RejectedExecutionException e) {
+                // stopped while the backup was being taken
+                runningJobs.remove(due.getBackupName());
+                return;
+            }
+        }
+    }
+
+    private void runJob(Backup backup) {
+        try {
+            job.run(backup);
+        } catch (RuntimeException e) {
+            logger.error("Scheduled backup \"" + backup.getBackupName() + "\" failed: " + e.getMessage(), e);
+        } finally {
+            runningJobs.remove(backup.getBackupName());
+        }
+    }
+
+    private Backup takeDue() throws InterruptedException {
+        while (true) {
+            ScheduledBackup first = queue.peek();
+            if (first == null) {
+                changed.await();
+                continue;
+            }
+
+            long millis = Duration.between(LocalDateTime.now(), first.fireTime).toMillis();
+            if (millis <= 0) {
+                queue.poll();
+                scheduled.remove(first.backup.getBackupName());
+                return first.backup;
+            }
+            changed.await(Math.min(millis, TimeUnit.MINUTES.toMillis(MAX_SLEEP_MINUTES)), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static class ScheduledBackup {
+        private final Backup backup;
+        private final LocalDateTime fireTime;
+
+        ScheduledBackup(Backup backup, LocalDateTime fireTime) {
+            this.backup = backup;
+            this.fireTime = fireTime;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package backupmanager.Services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backupmanager.Entities.BackupProgress;
+
+/*
+ * Client side of the ControlServer, used by the GUI to drive the background service and receive the progress of its backups.
+ */
+public class ControlClient {
+    private static final Logger logger = LoggerFactory.getLogger(ControlClient.class);
+
+    private static final int TIMEOUT_MILLIS = 5000;
+
+    private final Path endpointFile;
+
+    public interface ProgressListener {
+        void onProgress(String backupName, BackupProgress progress);
+        void onCompleted(String backupName);
+    }
+
+    public ControlClient() {
+        this(ControlServer.getEndpointFile());
+    }
+
+    public ControlClient(Path endpointFile) {
+        this.endpointFile = endpointFile;
+    }
+
+    public boolean isServiceRunning() {
+        return "PONG".equals(sendCommand("PING"));
+    }
+
+    // returns the reply of the service, or null if the service is not reachable
+    public String sendCommand(String command) {
+        if (ControlServer.isRunningInThisProcess()) return null;
+
+        try (Connection connection = connect()) {
+            if (connection == null) return null;
+            return connection.request(command);
+        } catch (IOException e) {
+            logger.debug("Background service not reachable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /*
+     * Attaches to the service and delivers the pushed progress on a daemon thread until the connection is closed,
+     * then calls onDisconnect. Returns false if the service is not reachable.
+     */
+    public boolean subscribe(ProgressListener listener, Runnable onDisconnect) {
+        if (ControlServer.isRunningInThisProcess()) return false;
+
+        Connection connection;
+        try {
+            connection = connect();
+            if (connection == null || !"OK".equals(connection.request("SUBSCRIBE"))) {
+                if (connection != null) connection.close();
+                return false;
+            }
+        } catch (IOException e) {
+            logger.debug("Background service not reachable: " + e.getMessage());
+            return false;
+        }
+
+        Thread thread = new Thread(() -> {
+            try (connection) {
+                String line;
+                while ((line = connection.readLine(0)) != null) {
+                    dispatch(line, listener);
+                }
+            } catch (IOException e) {
+                logger.debug("Detached from the background service: " + e.getMessage());
+            } finally {
+                onDisconnect.run();
+            }
+        }, "control-subscriber");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    private void dispatch(String line, ProgressListener listener) {
+        try {
+            if (line.startsWith("COMPLETED ")) {
+                listener.onCompleted(line.substring("COMPLETED ".length()));
+            } else if (line.startsWith("PROGRESS ")) {
+                String[] fields = line.split(" ", 9);
+                BackupProgress progress = new BackupProgress(Integer.parseInt(fields[1]), Integer.parseInt(fields[2]), Integer.parseInt(fields[3]),
+                    Long.parseLong(fields[4]), Long.parseLong(fields[5]), Long.parseLong(fields[6]), Double.parseDouble(fields[7]));
+                listener.onProgress(fields[8], progress);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Invalid message from the background service: " + line);
+        }
+    }
+
+    private Connection connect() throws IOException {
+        if (!Files.exists(endpointFile)) return null;
+
+        List<String> lines = Files.readAllLines(endpointFile, StandardCharsets.UTF_8);
+        if (lines.size() < 2) return null;
+        String endpoint = lines.get(0);
+
+        SocketAddress address;
+        SocketChannel channel;
+        if (endpoint.startsWith("unix:")) {
+            address = UnixDomainSocketAddress.of(endpoint.substring("unix:".length()));
+            channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        } else if (endpoint.startsWith("tcp:")) {
+            address = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(endpoint.substring("tcp:".length())));
+            channel = SocketChannel.open();
+        } else {
+            logger.warn("Invalid control endpoint: " + endpoint);
+            return null;
+        }
+
+        Connection connection = null;
+        try {
+            connection = new Connection(channel);
+            connection.connect(address, TIMEOUT_MILLIS);
+            connection.writeLine(lines.get(1), TIMEOUT_MILLIS);
+            return connection;
+        } catch (IOException e) {
+            if (connection != null) connection.close();
+            else channel.close();
+            throw e;
+        }
+    }
+
+    /*
+     * Non blocking connection waiting on a selector, so that a service that accepts but never replies
+     * (stuck, or another process listening on the endpoint) can't block the caller: every operation has a deadline.
+     */
+    private static class Connection implements AutoCloseable {
+        private final SocketChannel channel;
+        private final Selector selector;
+        private final SelectionKey key;
+        private final ByteBuffer buffer = ByteBuffer.allocate(8192).flip();
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        Connection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.selector = Selector.open();
+            channel.configureBlocking(false);
+            this.key = channel.register(selector, 0);
+        }
+
+        void connect(SocketAddress address, long timeoutMillis) throws IOException {
+            long deadline = deadline(timeoutMillis);
+            if (channel.connect(address)) return;
+            while (!channel.finishConnect()) {
+                await(SelectionKey.OP_CONNECT, deadline);
+            }
+        }
+
+        String request(String command) throws IOException {
+            writeLine(command, TIMEOUT_MILLIS);
+            return readLine(TIMEOUT_MILLIS);
+        }
+
+        void writeLine(String text, long timeoutMillis) throws IOException {
+            long deadline = deadline(timeoutMillis);
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(text + "\n");
+            while (bytes.hasRemaining()) {
+                if (channel.write(bytes) == 0) await(SelectionKey.OP_WRITE, deadline);
+            }
+        }
+
+        // returns null at the end of the stream, a timeout of 0 waits forever
+        String readLine(long timeoutMillis) throws IOException {
+            long deadline = deadline(timeoutMillis);
+            while (true) {
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    if (b == '\n') {
+                        String text = line.toString(StandardCharsets.UTF_8);
+                        line.reset();
+                        return text;
+                    }
+                    line.write(b);
+                }
+
+                buffer.clear();
+                int read = channel.read(buffer);
+                buffer.flip();
+                if (read < 0) return null;
+                if (read == 0) await(SelectionKey.OP_READ, deadline);
+            }
+        }
+
+        private static long deadline(long timeoutMillis) {
+            return timeoutMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+        }
+
+        private void await(int operation, long deadline) throws IOException {
+            long timeoutMillis = 0;
+            if (deadline != 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) throw new SocketTimeoutException("no answer from the background service");
+                timeoutMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+            }
+            key.interestOps(operation);
+            selector.select(timeoutMillis);
+            selector.selectedKeys().clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                selector.close();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package backupmanager.Services;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backupmanager.Entities.BackupProgress;
+import backupmanager.Enums.ConfigKey;
+
+/*
+ * Local channel used by the GUI to talk with the background service, so the GUI attaches to the running service instead of polling files.
+ * The service listens on a Unix domain socket, or on a localhost TCP port where they are not supported,
+ * and writes in the endpoint file where it listens and the token the clients have to send as their first line.
+ *
+ * The protocol is line based (UTF-8), every command receives one reply line ("OK", "PONG" or "ERROR <message>"):
+ * PING, RUN <backup name>, INTERRUPT <backup name>, RELOAD,
+ * SUBSCRIBE: the connection becomes a stream of PROGRESS and COMPLETED lines pushed by the service.
+ * Every subscriber has its own queue and writer thread, so a client that stops reading doesn't block the others:
+ * when its queue is full it is detached.
+ */
+public class ControlServer implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ControlServer.class);
+    public static final String BACKUP_ALREADY_RUNNING = "the backup is already running";
+    private static final int SUBSCRIBER_QUEUE_SIZE = 1024;
+    // a client that doesn't send its token in time is disconnected, so it can't keep a thread blocked
+    private static final long HANDSHAKE_TIMEOUT_MILLIS = 5000;
+    private static volatile ControlServer localInstance;
+
+    private final CommandHandler handler;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final String token;
+    private final Path endpointFile;
+    private final ScheduledExecutorService handshakeTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "control-handshake");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ServerSocketChannel serverChannel;
+    private Path socketFile;
+    private volatile boolean closed;
+
+    public interface CommandHandler {
+        // returns null if the command succeeded, otherwise the reason of the failure
+        String handle(String command, String argument);
+    }
+
+    public ControlServer(Path endpointFile, CommandHandler handler) {
+        this.endpointFile = endpointFile;
+        this.handler = handler;
+        byte[] random = new byte[16];
+        new SecureRandom().nextBytes(random);
+        this.token = HexFormat.of().formatHex(random);
+    }
+
+    public static ControlServer start(CommandHandler handler) throws IOException {
+        ControlServer server = new ControlServer(getEndpointFile(), handler);
+        server.listen(Path.of(ConfigKey.CONFIG_DIRECTORY_STRING.getValue(), ConfigKey.CONTROL_SOCKET_FILE_STRING.getValue()));
+        localInstance = server;
+        return server;
+    }
+
+    // true if the service is running in this same process, so there is nothing to attach to
+    public static boolean isRunningInThisProcess() {
+        return localInstance != null && !localInstance.closed;
+    }
+
+    public static Path getEndpointFile() {
+        return Path.of(ConfigKey.CONFIG_DIRECTORY_STRING.getValue(), ConfigKey.CONTROL_ENDPOINT_FILE_STRING.getValue());
+    }
+
+    public void listen(Path socketPath) throws IOException {
+        Files.createDirectories(endpointFile.toAbsolutePath().getParent());
+
+        // the endpoint and the socket of a service still answering are not taken over
+        if (new ControlClient(endpointFile).isServiceRunning()) {
+            throw new IOException("Another background service is already listening");
+        }
+
+        String endpoint;
+        try {
+            // a socket file left by a service stopped brutally would make the bind fail
+            Files.deleteIfExists(socketPath);
+            serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+            socketFile = socketPath;
+            endpoint = "unix:" + socketPath.toAbsolutePath();
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.warn("Unix domain sockets not available (" + e.getMessage() + "), using a localhost port");
+            if (serverChannel != null) serverChannel.close();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            endpoint = "tcp:" + ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        }
+
+        writeEndpointFile(endpoint);
+        logger.info("Control channel listening on " + endpoint);
+
+        Thread acceptor = new Thread(this::acceptLoop, "control-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    // pushes the progress of a backup to the attached clients
+    public void broadcastProgress(String backupName, BackupProgress progress) {
+        broadcast("PROGRESS " + progress.getPercentage() + " " + progress.getFilesProcessed() + " " + progress.getTotalFiles()
+            + " " + progress.getBytesRead() + " " + progress.getTotalBytes() + " " + progress.getBytesWritten()
+            + " " + Math.round(progress.getBytesPerSecond()) + " " + backupName);
+    }
+
+    public void broadcastCompleted(String backupName) {
+        broadcast("COMPLETED " + backupName);
+    }
+
+    private void broadcast(String line) {
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.lines.offer(line)) {
+                logger.warn("Control client detached: it is not reading the progress");
+                subscriber.close();
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                SocketChannel client = serverChannel.accept();
+                Thread thread = new Thread(() -> serve(client), "control-client");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!closed) logger.error("Control channel error: " + e.getMessage(), e);
+                return;
+            }
+        }
+    }
+
+    private void serve(SocketChannel client) {
+        boolean subscribed = false;
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(client), StandardCharsets.UTF_8));
+
+            // the connection is closed if the token doesn't arrive before the deadline: the read fails and the thread ends
+            ScheduledFuture<?> deadline = handshakeTimer.schedule(() -> {
+                logger.warn("Control client disconnected: no token received in " + HANDSHAKE_TIMEOUT_MILLIS + " ms");
+                closeClient(client);
+            }, HANDSHAKE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            String received;
+            try {
+                received = reader.readLine();
+            } finally {
+                deadline.cancel(false);
+            }
+
+            // constant time comparison, so the token can't be guessed from the time of the rejection
+            if (received == null || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), received.getBytes(StandardCharsets.UTF_8))) {
+                logger.warn("Control client rejected: invalid token");
+                writeLine(writer, "ERROR invalid token");
+                return;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                String command = space < 0 ? line : line.substring(0, space);
+                String argument = space < 0 ? "" : line.substring(space + 1);
+
+                if (command.equals("PING")) {
+                    writeLine(writer, "PONG");
+                } else if (command.equals("SUBSCRIBE")) {
+                    // from now on only the subscriber thread writes on this connection, the reply is its first line
+                    Subscriber subscriber = new Subscriber(client, writer);
+                    subscriber.lines.add("OK");
+                    subscribers.add(subscriber);
+                    subscriber.thread.start();
+                    subscribed = true;
+                    return;
+                } else {
+                    logger.info("Control command received: " + line);
+                    String error;
+                    try {
+                        error = handler.handle(command, argument);
+                    } catch (RuntimeException e) {
+                        logger.error("Control command " + command + " failed: " + e.getMessage(), e);
+                        error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+                    }
+                    writeLine(writer, error == null ? "OK" : "ERROR " + error);
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Control client disconnected: " + e.getMessage());
+        } finally {
+            if (!subscribed) closeClient(client);
+        }
+    }
+
+    private static void closeClient(SocketChannel client) {
+        try {
+            client.close();
+        } catch (IOException e) {
+            logger.debug("Unable to close the control client: " + e.getMessage());
+        }
+    }
+
+    private void writeEndpointFile(String endpoint) throws IOException {
+        Files.deleteIfExists(endpointFile);
+        try {
+            Files.createFile(endpointFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(endpointFile);
+        }
+        Files.writeString(endpointFile, endpoint + System.lineSeparator() + token + System.lineSeparator(), StandardCharsets.UTF_8);
+    }
+
+    // a client attached to the progress, its lines are written by its own thread
+    private class Subscriber {
+        private final SocketChannel client;
+        private final BufferedWriter writer;
+        private final BlockingQueue<String> lines = new ArrayBlockingQueue<>(SUBSCRIBER_QUEUE_SIZE);
+        private final Thread thread;
+
+        Subscriber(SocketChannel client, BufferedWriter writer) {
+            this.client = client;
+            this.writer = writer;
+            this.thread = new Thread(this::writeLines, "control-subscriber");
+            this.thread.setDaemon(true);
+        }
+
+        private void writeLines() {
+            try {
+                while (true) {
+                    writeLine(writer, lines.take());
+                }
+            } catch (IOException e) {
+                logger.debug("Control client detached: " + e.getMessage());
+            } catch (InterruptedException e) {
+                // closed
+            } finally {
+                close();
+            }
+        }
+
+        void close() {
+            subscribers.remove(this);
+            thread.interrupt();
+            closeClient(client);
+        }
+    }
+
+    private static void writeLine(BufferedWriter writer, String line) throws IOException {
+        writer.write(line);
+        writer.write('\n');
+        writer.flush();
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+
+        try {
+            serverChannel.close();
+            Files.deleteIfExists(endpointFile);
+            if (socketFile != null) Files.deleteIfExists(socketFile);
+        } catch (IOException e) {
+            logger.warn("Unable to clean the control channel: " + e.getMessage());
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+        handshakeTimer.shutdownNow();
+        logger.info("Control channel closed");
+    }
+}
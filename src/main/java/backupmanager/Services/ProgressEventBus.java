@@ -0,0 +1,124 @@
+package backupmanager.Services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backupmanager.Entities.ProgressEvent;
+
+/*
+ * Delivers the progress of the running backups to the observers (GUI, tray, running backups file, log).
+ * Publishing only stores the event as the last one of its backup, so the zipping thread doesn't pay for the observers.
+ * Every subscriber receives the events on its own thread, at most once for each interval:
+ * the events published in the meantime by the same backup are coalesced and only the last one is delivered.
+ */
+public class ProgressEventBus {
+    private static final Logger logger = LoggerFactory.getLogger(ProgressEventBus.class);
+    private static final long FLUSH_TIMEOUT_SECONDS = 30;
+    private static final ProgressEventBus instance = new ProgressEventBus();
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    public interface ProgressListener {
+        void onProgress(ProgressEvent event);
+    }
+
+    public static ProgressEventBus getInstance() {
+        return instance;
+    }
+
+    public void subscribe(String name, long intervalMillis, ProgressListener listener) {
+        subscriptions.add(new Subscription(name, intervalMillis, listener));
+        logger.debug("Progress subscriber added: " + name + " (every " + intervalMillis + " ms)");
+    }
+
+    public void publish(ProgressEvent event) {
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    /*
+     * Delivers now the events still pending and waits for the subscribers.
+     * Called before the state of a backup is finalized, so a late event can't overwrite it.
+     */
+    public void flush() {
+        List<Future<?>> deliveries = new ArrayList<>();
+        for (Subscription subscription : subscriptions) {
+            deliveries.add(subscription.flush());
+        }
+
+        for (Future<?> delivery : deliveries) {
+            try {
+                delivery.get(FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException | TimeoutException e) {
+                logger.warn("Progress events not delivered in time: " + e.getMessage());
+            }
+        }
+    }
+
+    private static class Subscription {
+        private final String name;
+        private final long intervalMillis;
+        private final ProgressListener listener;
+        private final ScheduledExecutorService executor;
+        private final ConcurrentHashMap<String, ProgressEvent> pending = new ConcurrentHashMap<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private volatile long lastDelivery;
+
+        Subscription(String name, long intervalMillis, ProgressListener listener) {
+            this.name = name;
+            this.intervalMillis = intervalMillis;
+            this.listener = listener;
+            this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "progress-" + name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        void offer(ProgressEvent event) {
+            pending.put(event.getBackupName(), event);
+
+            if (scheduled.compareAndSet(false, true)) {
+                long delay = Math.max(0, lastDelivery + intervalMillis - System.currentTimeMillis());
+                executor.schedule(this::deliver, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        Future<?> flush() {
+            return executor.submit(this::deliver);
+        }
+
+        private void deliver() {
+            // reset before delivering, so an event published meanwhile schedules the next delivery
+            scheduled.set(false);
+            lastDelivery = System.currentTimeMillis();
+
+            for (String backupName : pending.keySet()) {
+                ProgressEvent event = pending.remove(backupName);
+                if (event == null) continue;
+
+                try {
+                    listener.onProgress(event);
+                } catch (RuntimeException e) {
+                    logger.error("Progress subscriber " + name + " failed: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+}
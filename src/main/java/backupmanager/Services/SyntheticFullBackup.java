@@ -0,0 +1,104 @@
+package backupmanager.Services;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import backupmanager.BackupOperations;
+import backupmanager.Catalog.ArchiveCatalog;
+import backupmanager.Compression.ArchiveMerger;
+import backupmanager.Compression.CompressionCodec;
+import backupmanager.Compression.CompressionCodecs;
+import backupmanager.Entities.Backup;
+import backupmanager.Entities.BackupManifest;
+import backupmanager.Entities.ZippingContext;
+import backupmanager.Enums.ArchiveFormatEnum;
+import backupmanager.Enums.BackupTypeEnum;
+import backupmanager.Enums.ConfigKey;
+import backupmanager.GUI.BackupManagerGUI;
+import backupmanager.Json.JSONConfigReader;
+
+/*
+ * Consolidation job of the background service.
+ * When the incremental chain of a backup reaches SyntheticFullAfterIncrementals archives, the full backup and its
+ * incremental ones are merged at the destination into a synthetic full backup (see ArchiveMerger) and the manifest
+ * restarts the chain from it. The initial path is never read: the next backup is again an incremental one, so the
+ * load on the source stays the one of an incremental backup and the restore needs only a short chain.
+ */
+public class SyntheticFullBackup {
+    private static final Logger logger = LoggerFactory.getLogger(SyntheticFullBackup.class);
+    private static final JSONConfigReader configReader = new JSONConfigReader(ConfigKey.CONFIG_FILE_STRING.getValue(), ConfigKey.CONFIG_DIRECTORY_STRING.getValue());
+
+    private SyntheticFullBackup() {}
+
+    // submits the merge to the BackupJobExecutor if the chain of the backup is long enough, returns false otherwise
+    public static boolean startIfNeeded(ZippingContext context) {
+        Backup backup = context.backup;
+        List<Path> chain = getChainToMerge(backup);
+        if (chain == null) return false;
+
+        Path destination = Path.of(backup.getDestinationPath());
+        BackupJobExecutor.getInstance().submit(context, destination, destination, () -> {
+            try {
+                merge(backup, chain);
+            } catch (IOException e) {
+                logger.error("Unable to create the synthetic full backup of \"" + backup.getBackupName() + "\": " + e.getMessage(), e);
+            }
+        });
+        return true;
+    }
+
+    /*
+     * The full archive and its incremental ones, null if they must not be merged: the backup doesn't keep a zip chain,
+     * the chain is still short or its archives are not the ones described by the manifest.
+     */
+    static List<Path> getChainToMerge(Backup backup) {
+        if (backup.getBackupType() != BackupTypeEnum.Incremental || backup.getArchiveFormat() != ArchiveFormatEnum.Zip) return null;
+
+        int incrementalsToMerge = configReader.getSyntheticFullAfterIncrementals();
+        if (incrementalsToMerge <= 0) return null;
+
+        String archiveBasePath = BackupOperations.getArchiveBasePath(backup);
+        BackupManifest manifest = BackupManifest.load(BackupManifest.getManifestPath(archiveBasePath));
+        if (manifest == null || manifest.getIncrementalCount() < incrementalsToMerge) return null;
+
+        List<Path> chain = BackupOperations.getBackupChain(archiveBasePath);
+        if (chain.size() != manifest.getIncrementalCount() + 1) {
+            logger.warn("The archives of \"" + backup.getBackupName() + "\" are not the ones of its manifest (" + chain.size() + " found), the synthetic full backup is skipped");
+            return null;
+        }
+        for (Path archive : chain) {
+            if (!archive.getFileName().toString().endsWith(".zip")) return null;
+        }
+        return chain;
+    }
+
+    // writes the synthetic full backup with the current date, then the next incremental backup starts a new chain from it
+    static void merge(Backup backup, List<Path> chain) throws IOException {
+        String archiveBasePath = BackupOperations.getArchiveBasePath(backup);
+        String date = LocalDateTime.now().format(BackupManagerGUI.dateForfolderNameFormatter);
+        Path target = Path.of(BackupOperations.getBackupFilePath(archiveBasePath, date, false) + ".zip");
+
+        logger.info("Merging " + chain.size() + " archives of \"" + backup.getBackupName() + "\" into a synthetic full backup");
+        long start = System.currentTimeMillis();
+
+        CompressionCodec codec = CompressionCodecs.get(backup.getCompressionCodec());
+        int level = backup.getCompressionLevel() == Backup.DEFAULT_COMPRESSION_LEVEL ? codec.getDefaultLevel() : CompressionCodecs.clampLevel(codec, backup.getCompressionLevel());
+        ArchiveMerger merger = new ArchiveMerger(codec, level);
+        BackupJobExecutor.Job job = BackupJobExecutor.getInstance().getCurrentJob();
+        if (job != null) job.onCancel(merger::cancel);
+        merger.merge(chain, target);
+        ArchiveCatalog.catalogArchive(target);
+
+        Path manifestFile = BackupManifest.getManifestPath(archiveBasePath);
+        BackupManifest manifest = BackupManifest.load(manifestFile);
+        if (manifest != null) {
+            manifest.restartChain().save(manifestFile);
+        }
+        logger.info("Synthetic full backup of \"" + backup.getBackupName() + "\" completed in " + (System.currentTimeMillis() - start) + " ms");
+    }
+}
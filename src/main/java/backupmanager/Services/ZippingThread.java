@@ -1,161 +1,344 @@
 package backupmanager.Services;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import backupmanager.BackupOperations;
+import backupmanager.CachedFileWalker;
+import backupmanager.Catalog.ArchiveCatalog;
+import backupmanager.Compression.ArchiveEngine;
+import backupmanager.Compression.ParallelZipEngine;
+import backupmanager.Compression.SolidTarEngine;
+import backupmanager.Compression.ZipCheckpoint;
+import backupmanager.Deduplication.RepositoryEngine;
+import backupmanager.Deduplication.SignatureStore;
+import backupmanager.Entities.BackupManifest;
+import backupmanager.Entities.BackupProgress;
+import backupmanager.Entities.ScanCache;
 import backupmanager.Entities.ZippingContext;
+import backupmanager.Enums.ArchiveFormatEnum;
 import backupmanager.Enums.ErrorTypes;
 import backupmanager.ZipFileVisitor;
 
 public class ZippingThread {
 
     private static final Logger logger = LoggerFactory.getLogger(ZippingThread.class);
-    private static ExecutorService executorService = Executors.newSingleThreadExecutor();
 
     public static void zipDirectory(String sourceDirectoryPath, String targetZipPath, ZippingContext context) {
+        zip(sourceDirectoryPath, Path.of(targetZipPath.trim()), context, () -> new ArchiveTarget(targetZipPath, null, null));
+    }
+
+    /*
+     * Backs up the initial path in "<archiveBasePath> (<label> <date>)<extension>", an incremental backup if there is a
+     * manifest of the previous ones, or in the partial archive of the same type left by an interrupted run.
+     * The manifest is read by the job, as the scan cache: both can be large and the caller is usually the EDT.
+     */
+    public static void zipBackup(String sourceDirectoryPath, String archiveBasePath, String date, ZippingContext context) {
+        zip(sourceDirectoryPath, Path.of(archiveBasePath), context, () -> {
+            BackupManifest previousManifest = BackupOperations.getPreviousManifest(context.backup, sourceDirectoryPath, archiveBasePath);
+            String targetZipPath = BackupOperations.getTargetFilePath(context.backup, archiveBasePath, date, previousManifest != null);
+            return new ArchiveTarget(targetZipPath, previousManifest, BackupOperations.getManifestFile(context.backup, archiveBasePath));
+        });
+    }
+
+    // the job is submitted with a provisional target in the same directory (for its disk), the archive is chosen when it starts
+    private static void zip(String sourceDirectoryPath, Path provisionalTarget, ZippingContext context, Supplier<ArchiveTarget> archiveTarget) {
         logger.info("Starting zipping process");
     
         File sourceFile = new File(sourceDirectoryPath.trim());
-        File targetFile = new File(targetZipPath.trim());
         
         if (!sourceFile.exists()) {
             handleError("Source directory does not exist: " + sourceDirectoryPath, ErrorTypes.ZippingIOError, context);
+            finalizeProcess(context, false);
             return;
         }
         
-        int totalFilesCount = sourceFile.isDirectory() ? countFilesInDirectory(sourceFile) : 1;
-    
-        AtomicInteger copiedFilesCount = new AtomicInteger(0);
-    
-        // Ensure the executor is not shut down before submitting a task
-        if (executorService.isShutdown() || executorService.isTerminated()) {
-            logger.warn("ExecutorService is terminated. Re-creating the executor...");
-            executorService = Executors.newSingleThreadExecutor();  // Recreate the executor
-        }
-    
-        executorService.submit(() -> {
-            try (ZipOutputStream zipOut = new ZipOutputStream(new FileOutputStream(targetZipPath))) {
-                Path sourceDir = Paths.get(sourceDirectoryPath);
-                
-                if (sourceFile.isFile()) {
-                    addFileToZip(sourceDirectoryPath, targetZipPath, zipOut, sourceFile.toPath(), sourceFile.getName(), copiedFilesCount, totalFilesCount, context);
-                } else {
-                    Files.walkFileTree(sourceDir, new ZipFileVisitor(sourceDir, targetFile, zipOut, copiedFilesCount, totalFilesCount, context));
-                }
-                
+        Path sourceDir = Paths.get(sourceDirectoryPath);
+
+        // the backups run concurrently, limited by the disks they use
+        BackupJobExecutor.Job submitted = BackupJobExecutor.getInstance().submit(context, sourceDir, provisionalTarget, () -> {
+            BackupJobExecutor.Job job = BackupJobExecutor.getInstance().getCurrentJob();
+            boolean completed = false;
+            Path target = null;
+
+            try {
+                ArchiveTarget archive = archiveTarget.get();
+                target = Path.of(archive.path.trim());
+                if (job != null) job.setTarget(target);
+
+                // the tree is not counted before zipping: the progress starts from the count of the previous backup, if any,
+                // refined while the tree is walked
+                ScanCache previousScan = sourceFile.isDirectory() ? ScanCache.load(context.backup.getBackupName(), sourceDir.toString()) : null;
+                int estimatedFilesCount = sourceFile.isDirectory() ? (previousScan != null ? previousScan.getFilesCount() : -1) : 1;
+                long estimatedBytes = sourceFile.isDirectory() ? (previousScan != null ? previousScan.getTotalBytes() : -1) : sourceFile.length();
+
+                completed = zipSource(job, sourceFile, sourceDirectoryPath, target, archive.path, previousScan, estimatedFilesCount, estimatedBytes, context, archive.previousManifest, archive.manifestFile);
             } catch (IOException e) {
                 logger.error("I/O error occurred while zipping directory \"" + sourceDirectoryPath + "\"" + e.getMessage(), e);
                 handleError("I/O error occurred", ErrorTypes.ZippingIOError, context);
             } finally {
-                finalizeProcess(context);
+                // the central directory is written when the engine is closed
+                if (completed) ArchiveCatalog.catalogArchive(target);
+                finalizeProcess(context, job != null && job.isPaused());
             }
         });
+
+        // the state of the backup belongs to the job already running, only the progress window of this one is closed
+        if (submitted == null && context.progressBar != null) {
+            context.progressBar.dispose();
+        }
     }
 
+    // writes the archive, returns true if the backup has been completed (neither interrupted nor paused)
+    private static boolean zipSource(BackupJobExecutor.Job job, File sourceFile, String sourceDirectoryPath, Path target, String targetZipPath, ScanCache previousScan, int estimatedFilesCount, long estimatedBytes, ZippingContext context, BackupManifest previousManifest, Path manifestFile) throws IOException {
+        BackupManifest currentManifest = null;
+        if (manifestFile != null) {
+            currentManifest = new BackupManifest(sourceDirectoryPath, previousManifest != null ? previousManifest.getIncrementalCount() + 1 : 0);
+        }
+
+        Path sourceDir = Paths.get(sourceDirectoryPath);
+        CachedFileWalker walker = new CachedFileWalker(previousScan);
+        Thread counter = null;
+
+        try (ArchiveEngine engine = openEngine(target, sourceDirectoryPath, targetZipPath, estimatedFilesCount, estimatedBytes, context, previousManifest, manifestFile)) {
+            // paused or interrupted: the engine stops at the next entry and closes the archive
+            if (job != null) job.onCancel(engine::cancel);
+
+            if (sourceFile.isFile()) {
+                addFileToZip(engine, sourceFile.toPath(), sourceFile.getName(), previousManifest, currentManifest);
+            } else {
+                if (estimatedFilesCount < 0) {
+                    counter = startFilesCounter(sourceDir, engine);
+                }
+                walker.walk(sourceDir, new ZipFileVisitor(sourceDir, engine, previousManifest, currentManifest) {
+                    // the count of the previous backup is corrected with every directory walked
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                        if (previousScan != null) {
+                            engine.setTotals(walker.getEstimatedFilesCount(), walker.getEstimatedTotalBytes());
+                        }
+                        return super.postVisitDirectory(dir, exc);
+                    }
+                });
+            }
+
+            if (previousManifest != null) {
+                addDeletedFilesList(engine, previousManifest, currentManifest);
+            }
+
+            // wait for the entries still compressing and merge them in the archive
+            engine.finish();
+
+            // the manifest and the scan cache are replaced only by a completed backup
+            if (engine.isInterrupted() || Thread.currentThread().isInterrupted()) return false;
+
+            if (currentManifest != null) {
+                currentManifest.save(manifestFile);
+            }
+            if (sourceFile.isDirectory()) {
+                ScanCache scan = walker.getScanCache();
+                scan.setArchive(target.toAbsolutePath().toString(), BackupOperations.getArchiveSettings(context.backup));
+                scan.save(context.backup.getBackupName());
+            }
+            return true;
+        } finally {
+            if (counter != null) counter.interrupt();
+        }
+    }
+
+    /*
+     * A solid archive is written in a single stream and it can't be resumed, a zip continues from its checkpoint (and its dictionary),
+     * a snapshot reuses the chunks already stored in its repository, the zips of an incremental chain save the large files as deltas
+     * and a full zip copies the unchanged files from the previous one
+     */
+    private static ArchiveEngine openEngine(Path target, String sourceDirectoryPath, String targetPath, int estimatedFilesCount, long estimatedBytes, ZippingContext context, BackupManifest previousManifest, Path manifestFile) throws IOException {
+        if (context.backup != null && context.backup.getArchiveFormat() == ArchiveFormatEnum.Tar) {
+            return new SolidTarEngine(target, sourceDirectoryPath, targetPath, estimatedFilesCount, estimatedBytes, context);
+        }
+        if (context.backup != null && context.backup.getArchiveFormat() == ArchiveFormatEnum.Repository) {
+            return new RepositoryEngine(target, sourceDirectoryPath, targetPath, estimatedFilesCount, estimatedBytes, context);
+        }
+
+        ZipCheckpoint checkpoint = openCheckpoint(target, sourceDirectoryPath);
+        ParallelZipEngine engine = new ParallelZipEngine(target, sourceDirectoryPath, targetPath, estimatedFilesCount, estimatedBytes, context, checkpoint);
+
+        // the dictionary is trained on the tree before its files are compressed
+        Path sourceDir = Paths.get(sourceDirectoryPath);
+        if (context.backup != null && context.backup.isCompressionDictionary() && Files.isDirectory(sourceDir)) {
+            try {
+                engine.useDictionary(sourceDir);
+            } catch (IOException | RuntimeException e) {
+                engine.close();
+                throw e;
+            }
+        }
+
+        // a full backup copies the files that haven't changed from the previous one
+        if (previousManifest == null) {
+            Path previousBackup = BackupOperations.getPreviousFullBackup(target);
+            if (previousBackup != null) engine.recycleFrom(previousBackup);
+        }
+
+        if (manifestFile != null) {
+            try {
+                engine.useDeltas(new SignatureStore(SignatureStore.getStorePath(manifestFile), previousManifest == null, engine.isResumed()), previousManifest);
+            } catch (IOException | RuntimeException e) {
+                engine.close();
+                throw e;
+            }
+        }
+        return engine;
+    }
+
+    // the checkpoint left by an interrupted run of the same backup, or a new one
+    private static ZipCheckpoint openCheckpoint(Path targetZip, String sourceDirectoryPath) {
+        ZipCheckpoint checkpoint = ZipCheckpoint.load(targetZip);
+        if (checkpoint != null && checkpoint.getSourcePath().equals(sourceDirectoryPath)) {
+            return checkpoint;
+        }
+
+        try {
+            if (checkpoint != null) checkpoint.close();
+            return ZipCheckpoint.create(targetZip, sourceDirectoryPath);
+        } catch (IOException e) {
+            logger.warn("Unable to create the checkpoint, the backup won't be resumable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // only reports the error, the process is finalized by the caller
     private static void handleError(String message, ErrorTypes errorType, ZippingContext context) {
         logger.error(message);
         BackupOperations.setError(errorType, context.trayIcon, null);
-        BackupOperations.reEnableButtonsAndTable(context);
     }
 
-    private static void finalizeProcess(ZippingContext context) {
-        logger.info("Finalizing zipping process");
-        BackupOperations.reEnableButtonsAndTable(context);
+    private static void finalizeProcess(ZippingContext context, boolean paused) {
+        logger.info("Finalizing zipping process" + (paused ? " (paused)" : ""));
+        BackupOperations.reEnableButtonsAndTable(context, paused);
     }
 
-    private static void addFileToZip(String sourceDirectoryPath, String destinationDirectoryPath, ZipOutputStream zipOut, Path file, String zipEntryName, AtomicInteger copiedFilesCount, int totalFilesCount, ZippingContext context) throws IOException {        
+    private static void addFileToZip(ArchiveEngine engine, Path file, String zipEntryName, BackupManifest previousManifest, BackupManifest currentManifest) throws IOException {        
         if (zipEntryName == null || zipEntryName.isEmpty()) {
             zipEntryName = file.getFileName().toString();
         }    
-        zipOut.putNextEntry(new ZipEntry(zipEntryName));
-        try (InputStream in = Files.newInputStream(file)) {
-            byte[] buffer = new byte[1024];
-            int len;
-            while ((len = in.read(buffer)) > 0) {
-                zipOut.write(buffer, 0, len);
-            }
-        }
-        zipOut.closeEntry();
-        
-        int filesCopiedSoFar = copiedFilesCount.incrementAndGet();
-        int actualProgress = (int) (((double) filesCopiedSoFar / totalFilesCount) * 100);
-        BackupOperations.UpdateProgressPercentage(actualProgress, sourceDirectoryPath, destinationDirectoryPath, context, zipEntryName, filesCopiedSoFar, totalFilesCount);
-    }
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
 
-    private static int countFilesInDirectory(File directory) {
-        if (directory == null) {
-            logger.warn("Directory is null");
-            return -1;
-        }
-        if (!directory.canRead()) {
-            logger.warn("Unable to read directory: " + directory.getAbsolutePath());
-            return -1;
-        }
-        File[] files = directory.listFiles();
-        if (files == null) {
-            logger.warn("Unable to list files for directory: " + directory.getAbsolutePath());
-            return -1;
+        if (currentManifest != null) {
+            currentManifest.add(zipEntryName, attrs);
         }
-    	
-    	int count = 0;
-        for (File file : files) {
-            if (file.isFile()) {
-                count++;
-            } else if (file.isDirectory()) {
-                count += countFilesInDirectory(file); // Recursively count files in subdirectories.
-            }
+        if (previousManifest != null && previousManifest.isUnchanged(zipEntryName, attrs)) {
+            engine.skipFile(zipEntryName, attrs.size());
+            return;
         }
-        return count;
+
+        engine.addFile(file, zipEntryName, attrs);
     }
 
-    /**
-     * Attempts to gracefully stop the given ExecutorService.
-     *
-     * @param executor The ExecutorService to shut down.
-     * @param timeout  The maximum time to wait for termination, in seconds.
+    // the tombstones of an incremental backup: the files deleted since the previous backup, one for each line
+    private static void addDeletedFilesList(ArchiveEngine engine, BackupManifest previousManifest, BackupManifest currentManifest) throws IOException {
+        List<String> deletedFiles = previousManifest.getDeletedFiles(currentManifest);
+        if (deletedFiles.isEmpty()) return;
+
+        logger.info("Files deleted since the previous backup: " + deletedFiles.size());
+        String content = String.join("\n", deletedFiles) + "\n";
+        engine.addContent(BackupManifest.DELETED_FILES_ENTRY, content.getBytes(StandardCharsets.UTF_8), System.currentTimeMillis());
+    }
+
+    /*
+     * Without the count of a previous backup the files are counted by a second thread while the first entries are
+     * already compressing: when it finishes the progress switches from the written bytes to the percentage.
      */
-    public static void stopExecutorService(int timeout) {
-        logger.debug("Stopping zipping executor");
+    private static Thread startFilesCounter(Path directory, ArchiveEngine engine) {
+        Thread counter = new Thread(() -> {
+            int[] filesCount = {0};
+            long[] totalBytes = {0};
+            try {
+                Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        filesCount[0]++;
+                        totalBytes[0] += attrs.size();
+                        return Thread.currentThread().isInterrupted() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                    }
 
-        if (executorService == null || executorService.isShutdown()) {
-            logger.debug("executorService == null || executorService.isShutdown()");
-            return;
-        }
-    
-        executorService.shutdown(); // Reject new tasks
-        try {
-            // Wait for ongoing tasks to complete
-            if (!executorService.awaitTermination(timeout, TimeUnit.SECONDS)) {
-                logger.warn("executorService did not terminate in the given time. Forcing shutdown...");
-                executorService.shutdownNow(); // Forcefully stop remaining tasks
-                if (!executorService.awaitTermination(timeout, TimeUnit.SECONDS)) {
-                    logger.warn("executorService did not terminate after forced shutdown");
-                }
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                logger.warn("Unable to count the files of directory: " + directory + ". Error: " + e.getMessage());
+                return;
             }
-            logger.info("Zipping executor stopped");
-        } catch (InterruptedException e) {
-            logger.error("Shutdown process interrupted. Forcing shutdown... With message: " + e.getMessage(), e);
-            executorService.shutdownNow(); // Forcefully stop tasks on interruption
-            Thread.currentThread().interrupt(); // Preserve interrupted status
-        }
+
+            if (!Thread.currentThread().isInterrupted()) {
+                logger.info("Files counted while zipping: " + filesCount[0] + " (" + BackupProgress.formatBytes(totalBytes[0]) + ")");
+                engine.setTotals(filesCount[0], totalBytes[0]);
+            }
+        }, "files-counter");
+        counter.setDaemon(true);
+        counter.start();
+        return counter;
+    }
+
+    /*
+     * Interrupts the backups accepted by the filter and waits for them to stop, at most for the given seconds.
+     * Returns false if there wasn't any backup to interrupt.
+     */
+    public static boolean interruptBackups(Predicate<BackupJobExecutor.Job> filter, int timeout) {
+        logger.debug("Interrupting zipping jobs");
+        return BackupJobExecutor.getInstance().interrupt(filter, timeout);
+    }
+
+    public static boolean interruptBackup(String backupName, int timeout) {
+        return interruptBackups(job -> job.getBackupName().equals(backupName), timeout);
+    }
+
+    /*
+     * Stops the backups accepted by the filter keeping their partial archives and checkpoints:
+     * they continue from where they stopped the next time they run.
+     */
+    public static boolean pauseBackups(Predicate<BackupJobExecutor.Job> filter, int timeout) {
+        logger.debug("Pausing zipping jobs");
+        return BackupJobExecutor.getInstance().pause(filter, timeout);
+    }
+
+    // runs the task when the backup has finished, it can be discarded if the backup is interrupted
+    public static void runAfterBackup(String backupName, Runnable task) {
+        BackupJobExecutor.getInstance().runAfter(backupName, task);
     }
 
-    public static boolean isInterrupted() {
-        return executorService.isShutdown() || executorService.isTerminated();
+    public static boolean isBackupRunning(String backupName) {
+        return BackupJobExecutor.getInstance().isRunning(backupName);
+    }
+
+    /*
+     * path: the archive written by the job
+     * previousManifest: the files saved by the previous backups, if it is not null only the new and changed files are zipped
+     * manifestFile: where the manifest of this backup is saved when it completes, null if the backup doesn't keep a manifest
+     */
+    private static class ArchiveTarget {
+        private final String path;
+        private final BackupManifest previousManifest;
+        private final Path manifestFile;
+
+        ArchiveTarget(String path, BackupManifest previousManifest, Path manifestFile) {
+            this.path = path;
+            this.previousManifest = previousManifest;
+            this.manifestFile = manifestFile;
+        }
     }
 }
@@ -6,6 +6,8 @@ import javax.swing.JTable;
 import javax.swing.event.TableModelEvent;
 import javax.swing.table.TableModel;
 
+import backupmanager.Entities.BackupProgress;
+
 public class BackupTable extends JTable {
     public BackupTable(TableModel model) {
         super(model);
@@ -24,7 +26,7 @@ public class BackupTable extends JTable {
                 // Check if the value in the target column is 0, then set the StripedProgressBarRenderer
                 if (column == targetColumnIndex) {
                     Object value = getValueAt(row, column);
-                    if (value instanceof Integer && (Integer) value == 0) {
+                    if ((value instanceof Integer && (Integer) value == 0) || (value instanceof BackupProgress progress && progress.getPercentage() == 0)) {
                         getColumnModel().getColumn(targetColumnIndex).setCellRenderer(new ProgressBarRenderer());
                         revalidate();  // Revalidate the table layout
                         repaint();     // Repaint the table to reflect the changes
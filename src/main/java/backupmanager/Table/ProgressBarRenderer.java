@@ -6,6 +6,8 @@ import javax.swing.JProgressBar;
 import javax.swing.JTable;
 import javax.swing.table.DefaultTableCellRenderer;
 
+import backupmanager.Entities.BackupProgress;
+
 public class ProgressBarRenderer extends DefaultTableCellRenderer {
     private final StripedRowRenderer stripedRowRenderer = new StripedRowRenderer();
     private final JProgressBar progressBar = new JProgressBar(0, 100);
@@ -15,10 +17,17 @@ public class ProgressBarRenderer extends DefaultTableCellRenderer {
         // Delegate the striped row coloring logic to the StripedRowRenderer
         Component c = stripedRowRenderer.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
 
-        // If the value is an Integer (assuming progress data), show the progress bar
-        if (value instanceof Integer) {
-            progressBar.setValue((Integer) value);
-            progressBar.setString((Integer) value + "%");
+        // If the value is a progress (or an Integer percentage), show the progress bar
+        if (value instanceof Integer || value instanceof BackupProgress) {
+            if (value instanceof BackupProgress progress) {
+                progressBar.setValue(progress.getPercentage());
+                long eta = progress.getEtaSeconds();
+                progressBar.setString(progress.getPercentage() + "%" + (eta >= 0 ? " - " + BackupProgress.formatDuration(eta) : ""));
+                setToolTipText(progress.getDetails());
+            } else {
+                progressBar.setValue((Integer) value);
+                progressBar.setString((Integer) value + "%");
+            }
             progressBar.setStringPainted(true);
 
             // Set the progress bar background color based on the row (even/odd striped rows)
@@ -10,6 +10,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import backupmanager.Entities.Backup;
+import backupmanager.Entities.BackupProgress;
 import backupmanager.GUI.BackupManagerGUI;
 
 public class TableDataManager {
@@ -37,7 +38,14 @@ public class TableDataManager {
     }
 
     public static void updateProgressBarPercentage(Backup backup, int value, DateTimeFormatter formatter) {
+        updateProgressBarPercentage(backup, new BackupProgress(value, 0, -1, 0, -1, 0, -1), formatter);
+    }
+
+    // the cell holds the whole progress, so the renderer can show the time remaining next to the percentage
+    public static void updateProgressBarPercentage(Backup backup, BackupProgress progress, DateTimeFormatter formatter) {
         if (backup == null) throw new IllegalArgumentException("Backup cannot be null");
+        if (progress == null) throw new IllegalArgumentException("Progress cannot be null");
+        int value = progress.getPercentage();
         if (value < 0 || value > 100) throw new IllegalArgumentException("Value must be between 0 and 100");
         if (formatter == null) throw new IllegalArgumentException("Formatter cannot be null");
 
@@ -64,7 +72,7 @@ public class TableDataManager {
                     );
                 } else {                    
                     // Update the value of the progress in the table
-                    BackupManagerGUI.backupTable.getModel().setValueAt(value, rowIndex, targetColumnIndex);
+                    BackupManagerGUI.backupTable.getModel().setValueAt(progress, rowIndex, targetColumnIndex);
                 }
 
                 BackupManagerGUI.backupTable.repaint();
@@ -86,7 +94,7 @@ public class TableDataManager {
                     backup.getLastBackup() != null ? backup.getLastBackup().format(formatter) : "",
                     backup.isAutoBackup(),
                     backup.getNextDateBackup() != null ? backup.getNextDateBackup().format(formatter) : "",
-                    backup.getTimeIntervalBackup() != null ? backup.getTimeIntervalBackup().toString() : ""
+                    backup.getScheduleString()
                 });
             }
         });
@@ -1,45 +1,40 @@
 package backupmanager;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.FileVisitResult;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import backupmanager.Entities.RunningBackups;
-import backupmanager.Entities.ZippingContext;
+import backupmanager.Compression.ArchiveEngine;
+import backupmanager.Entities.BackupManifest;
 
 public class ZipFileVisitor extends SimpleFileVisitor<Path> {
     private static final Logger logger = LoggerFactory.getLogger(ZipFileVisitor.class);
     private final Path sourceDir;
-    private final File destinationDir;
-    private final ZipOutputStream zipOut;
-    private final AtomicInteger copiedFilesCount;
-    private final int totalFilesCount;
-    private final ZippingContext context;
+    private final ArchiveEngine engine;
+    private final BackupManifest previousManifest;
+    private final BackupManifest currentManifest;
 
-    public ZipFileVisitor(Path sourceDir, File destinationDIr, ZipOutputStream zipOut, AtomicInteger copiedFilesCount, int totalFilesCount, ZippingContext context) {
+    public ZipFileVisitor(Path sourceDir, ArchiveEngine engine) {
+        this(sourceDir, engine, null, null);
+    }
+
+    // with the manifests the files unchanged since the previous backup are skipped (incremental backup)
+    public ZipFileVisitor(Path sourceDir, ArchiveEngine engine, BackupManifest previousManifest, BackupManifest currentManifest) {
         this.sourceDir = sourceDir;
-        this.destinationDir = destinationDIr;
-        this.zipOut = zipOut;
-        this.copiedFilesCount = copiedFilesCount;
-        this.totalFilesCount = totalFilesCount;
-        this.context = context;
+        this.engine = engine;
+        this.previousManifest = previousManifest;
+        this.currentManifest = currentManifest;
     }
 
     @Override
     public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-        if (Thread.currentThread().isInterrupted()) {
-            RunningBackups.updateBackupStatusAfterCompletition(context.backup.getBackupName());
+        if (Thread.currentThread().isInterrupted() || engine.isInterrupted()) {
+            // the status is updated when the zipping process is finalized, the partial archive can still be resumed
             logger.info("Zipping process manually interrupted");
             return FileVisitResult.TERMINATE;
         }
@@ -47,38 +42,32 @@ public class ZipFileVisitor extends SimpleFileVisitor<Path> {
         String zipEntryName = sourceDir.relativize(dir).toString() + "/";
         logger.debug("Adding directory to zip: " + zipEntryName);
 
-        zipOut.putNextEntry(new ZipEntry(zipEntryName));
-        zipOut.closeEntry();
+        engine.addDirectory(zipEntryName, attrs);
 
         return FileVisitResult.CONTINUE;
     }
 
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-        if (Thread.currentThread().isInterrupted()) {
-            RunningBackups.updateBackupStatusAfterCompletition(context.backup.getBackupName());
+        if (Thread.currentThread().isInterrupted() || engine.isInterrupted()) {
             logger.info("Zipping process manually interrupted");
             return FileVisitResult.TERMINATE;
         }
 
         String zipEntryName = sourceDir.relativize(file).toString();
-        logger.debug("Adding file to zip: " + zipEntryName);
-
-        zipOut.putNextEntry(new ZipEntry(zipEntryName));
 
-        try (InputStream in = Files.newInputStream(file)) {
-            byte[] buffer = new byte[1024];
-            int len;
-            while ((len = in.read(buffer)) > 0) {
-                zipOut.write(buffer, 0, len);
-            }
+        if (currentManifest != null) {
+            currentManifest.add(zipEntryName, attrs);
+        }
+        if (previousManifest != null && previousManifest.isUnchanged(zipEntryName, attrs)) {
+            engine.skipFile(zipEntryName, attrs.size());
+            return FileVisitResult.CONTINUE;
         }
 
-        zipOut.closeEntry();
+        logger.debug("Adding file to zip: " + zipEntryName);
 
-        int filesCopiedSoFar = copiedFilesCount.incrementAndGet();
-        int actualProgress = (int) (((double) filesCopiedSoFar / totalFilesCount) * 100);
-        BackupOperations.UpdateProgressPercentage(actualProgress, sourceDir.toString(), destinationDir.toString(), context, zipEntryName, filesCopiedSoFar, totalFilesCount);
+        // the file is compressed by the engine workers, the progress is updated once it is merged in the archive
+        engine.addFile(file, zipEntryName, attrs);
 
         return FileVisitResult.CONTINUE;
     }
@@ -86,6 +75,10 @@ public class ZipFileVisitor extends SimpleFileVisitor<Path> {
     @Override
     public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
         logger.error("Failed to visit file: " + file + ". Error: " + exc.getMessage(), exc);
+
+        if (currentManifest != null && previousManifest != null) {
+            currentManifest.carryOver(previousManifest, sourceDir.relativize(file).toString());
+        }
         return FileVisitResult.CONTINUE;
     }
 }
@@ -0,0 +1,138 @@
+package test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import backupmanager.Catalog.ArchiveCatalog;
+import backupmanager.Catalog.CatalogEntry;
+import backupmanager.Compression.CompressedEntry;
+import backupmanager.Compression.CompressionCodec;
+import backupmanager.Compression.CompressionCodecs;
+import backupmanager.Compression.CompressionDictionary;
+import backupmanager.Compression.ZipArchiveWriter;
+import backupmanager.Deduplication.DeltaEncoder;
+
+public class TestArchiveCatalog {
+
+    private static final long LAST_MODIFIED = 1700000000000L;
+    private static Path temp_dir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        temp_dir = Files.createTempDirectory("archive_catalog_test");
+    }
+
+    @Test
+    void testFilesFoundByNameAndPath() throws IOException {
+        Path archive = temp_dir.resolve("t (Backup 01-01-2026 10.00.00).zip");
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(archive)) {
+            writer.writeDirectory("docs/", LAST_MODIFIED);
+            // more entries than a restart interval, so that the lookups use the binary search
+            for (int i = 0; i < 100; i++) {
+                TestData.store(writer, temp_dir, String.format("docs/file%03d.txt", i), TestData.text("content " + i), LAST_MODIFIED);
+            }
+            compress(writer, "docs/Report.PDF", TestData.text("report ".repeat(1000)));
+            TestData.store(writer, temp_dir, "other/report.txt", TestData.text("another report"), LAST_MODIFIED);
+        }
+
+        ArchiveCatalog catalog = new ArchiveCatalog(temp_dir.resolve("catalog"));
+        catalog.addArchive(archive);
+
+        List<CatalogEntry> byName = catalog.search("REPORT", 10);
+        assertEquals(2, byName.size());
+        assertEquals("docs/Report.PDF", byName.get(0).getPath());
+        assertEquals("other/report.txt", byName.get(1).getPath());
+
+        List<CatalogEntry> byPath = catalog.search("/docs/file05", 100);
+        assertEquals(10, byPath.size());
+        assertEquals("docs/file050.txt", byPath.get(0).getPath());
+        assertEquals(0, catalog.search("docs/file2", 10).size());
+
+        List<CatalogEntry> versions = catalog.findVersions("docs/file042.txt");
+        assertEquals(1, versions.size());
+        assertEquals(archive.toAbsolutePath(), versions.get(0).getArchive());
+        assertEquals(LAST_MODIFIED, versions.get(0).getLastModified());
+
+        // read from the local header, stored and compressed
+        Path extracted = temp_dir.resolve("out/file042.txt");
+        catalog.extract(versions.get(0), extracted);
+        assertArrayEquals(TestData.text("content 42"), Files.readAllBytes(extracted));
+        assertEquals(LAST_MODIFIED, Files.getLastModifiedTime(extracted).toMillis());
+
+        catalog.extract(byName.get(0), temp_dir.resolve("out/Report.PDF"));
+        assertArrayEquals(TestData.text("report ".repeat(1000)), Files.readAllBytes(temp_dir.resolve("out/Report.PDF")));
+        assertEquals(2, temp_dir.resolve("out").toFile().list().length);
+    }
+
+    @Test
+    void testVersionsOfAnIncrementalChain() throws IOException {
+        byte[] bigPrevious = TestData.randomBytes(300_000, 1);
+        byte[] big = bigPrevious.clone();
+        for (int i = 0; i < 100; i++) big[150_000 + i] ^= 0x5A;
+
+        Path full = temp_dir.resolve("t (Backup 01-01-2026 10.00.00).zip");
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(full)) {
+            TestData.store(writer, temp_dir, "big.bin", bigPrevious, LAST_MODIFIED);
+        }
+        Path incremental = temp_dir.resolve("t (Incremental 01-01-2026 11.00.00).zip");
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(incremental)) {
+            TestData.store(writer, temp_dir, DeltaEncoder.ENTRY_PREFIX + "big.bin", TestData.delta(bigPrevious, big), LAST_MODIFIED);
+        }
+
+        ArchiveCatalog catalog = new ArchiveCatalog(temp_dir.resolve("catalog"));
+        catalog.addArchive(full);
+        catalog.addArchive(incremental);
+
+        List<CatalogEntry> versions = catalog.findVersions("big.bin");
+        assertEquals(2, versions.size());
+        CatalogEntry deltaVersion = versions.get(0).isDelta() ? versions.get(0) : versions.get(1);
+        assertEquals(incremental.toAbsolutePath(), deltaVersion.getArchive());
+        assertEquals(big.length, deltaVersion.getSize());
+
+        Path extracted = temp_dir.resolve("out/big.bin");
+        catalog.extract(deltaVersion, extracted);
+        assertArrayEquals(big, Files.readAllBytes(extracted));
+
+        // a deleted or modified archive is no longer found
+        Files.delete(full);
+        Files.setLastModifiedTime(incremental, FileTime.fromMillis(LAST_MODIFIED));
+        assertTrue(catalog.findVersions("big.bin").isEmpty());
+        assertEquals(0, temp_dir.resolve("catalog").toFile().list().length);
+    }
+
+    private static void compress(ZipArchiveWriter writer, String name, byte[] content) throws IOException {
+        CompressionCodec codec = CompressionCodecs.get(CompressionCodecs.DEFAULT_CODEC);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (var out = codec.newOutputStream(compressed, codec.getDefaultLevel())) {
+            out.write(content);
+        }
+        Path file = Files.createTempFile(temp_dir, "entry", ".tmp");
+        Files.write(file, compressed.toByteArray());
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            writer.writeEntry(CompressedEntry.copied(name, codec.getZipMethod(), crc.getValue(), content.length, compressed.size(), LAST_MODIFIED,
+                CompressionDictionary.NO_DICTIONARY, channel, 0));
+        }
+        Files.delete(file);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        TestData.deleteDirectory(temp_dir);
+    }
+}
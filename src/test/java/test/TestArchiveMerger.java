@@ -0,0 +1,115 @@
+package test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import backupmanager.Compression.ArchiveMerger;
+import backupmanager.Compression.CompressionCodec;
+import backupmanager.Compression.CompressionCodecs;
+import backupmanager.Compression.ZipArchiveWriter;
+import backupmanager.Deduplication.DeltaEncoder;
+import backupmanager.Entities.BackupManifest;
+
+public class TestArchiveMerger {
+
+    private static final long LAST_MODIFIED = 1700000000000L;
+    private static Path temp_dir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        temp_dir = Files.createTempDirectory("archive_merger_test");
+    }
+
+    @Test
+    void testChainMergedIntoFullBackup() throws IOException {
+        byte[] bigPrevious = TestData.randomBytes(300_000, 1);
+        byte[] big = bigPrevious.clone();
+        for (int i = 0; i < 100; i++) big[150_000 + i] ^= 0x5A;
+
+        Path full = temp_dir.resolve("full.zip");
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(full)) {
+            writer.writeDirectory("folder/", LAST_MODIFIED);
+            TestData.store(writer, temp_dir, "folder/a.txt", TestData.text("first version"), LAST_MODIFIED);
+            TestData.store(writer, temp_dir, "b.txt", TestData.text("deleted later"), LAST_MODIFIED);
+            TestData.store(writer, temp_dir, "big.bin", bigPrevious, LAST_MODIFIED);
+        }
+
+        // a.txt modified, b.txt deleted, big.bin saved as delta
+        Path incremental1 = temp_dir.resolve("incremental1.zip");
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(incremental1)) {
+            TestData.store(writer, temp_dir, "folder/a.txt", TestData.text("second version"), LAST_MODIFIED);
+            TestData.store(writer, temp_dir, BackupManifest.DELETED_FILES_ENTRY, TestData.text("b.txt\n"), LAST_MODIFIED);
+            TestData.store(writer, temp_dir, DeltaEncoder.ENTRY_PREFIX + "big.bin", TestData.delta(bigPrevious, big), LAST_MODIFIED);
+        }
+
+        // c.txt added
+        Path incremental2 = temp_dir.resolve("incremental2.zip");
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(incremental2)) {
+            TestData.store(writer, temp_dir, "c.txt", TestData.text("new file"), LAST_MODIFIED);
+        }
+
+        CompressionCodec codec = CompressionCodecs.get(CompressionCodecs.DEFAULT_CODEC);
+        ArchiveMerger merger = new ArchiveMerger(codec, codec.getDefaultLevel());
+        Path target = temp_dir.resolve("synthetic.zip");
+        merger.merge(List.of(full, incremental1, incremental2), target);
+
+        try (ZipFile zipFile = new ZipFile(target.toFile())) {
+            assertEquals(4, zipFile.size());
+            assertNotNull(zipFile.getEntry("folder/"));
+            assertNull(zipFile.getEntry("b.txt"));
+            assertNull(zipFile.getEntry(BackupManifest.DELETED_FILES_ENTRY));
+            assertArrayEquals(TestData.text("second version"), read(zipFile, "folder/a.txt"));
+            assertArrayEquals(TestData.text("new file"), read(zipFile, "c.txt"));
+            assertArrayEquals(big, read(zipFile, "big.bin"));
+            assertEquals(LAST_MODIFIED, zipFile.getEntry("c.txt").getLastModifiedTime().toMillis());
+        }
+        assertEquals(1, merger.getRebuiltEntries());
+        assertEquals(2, merger.getCopiedEntries());
+
+        // no temporary or partial files left in the directory
+        assertEquals(4, temp_dir.toFile().list().length);
+    }
+
+    @Test
+    void testDeltaWithoutPreviousVersionRejected() throws IOException {
+        byte[] big = TestData.randomBytes(100_000, 2);
+        Path incremental = temp_dir.resolve("incremental.zip");
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(incremental)) {
+            TestData.store(writer, temp_dir, DeltaEncoder.ENTRY_PREFIX + "big.bin", TestData.delta(big, big), LAST_MODIFIED);
+        }
+
+        CompressionCodec codec = CompressionCodecs.get(CompressionCodecs.DEFAULT_CODEC);
+        Path target = temp_dir.resolve("synthetic.zip");
+        assertThrows(IOException.class, () -> new ArchiveMerger(codec, codec.getDefaultLevel()).merge(List.of(incremental), target));
+        assertFalse(Files.exists(target));
+        assertFalse(Files.exists(temp_dir.resolve("synthetic.zip.partial")));
+    }
+
+    private static byte[] read(ZipFile zipFile, String name) throws IOException {
+        ZipEntry entry = zipFile.getEntry(name);
+        assertNotNull(entry, name);
+        try (InputStream in = zipFile.getInputStream(entry)) {
+            return in.readAllBytes();
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        TestData.deleteDirectory(temp_dir);
+    }
+}
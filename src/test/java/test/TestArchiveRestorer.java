@@ -0,0 +1,227 @@
+package test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import backupmanager.Compression.ArchiveRestorer;
+import backupmanager.Compression.ZipArchiveWriter;
+import backupmanager.Deduplication.ChunkId;
+import backupmanager.Deduplication.ChunkRepository;
+import backupmanager.Deduplication.DeltaEncoder;
+import backupmanager.Deduplication.RepositoryEngine;
+import backupmanager.Deduplication.Snapshot;
+import backupmanager.Entities.BackupManifest;
+
+public class TestArchiveRestorer {
+
+    private static final long LAST_MODIFIED = 1700000000000L;
+    private static Path temp_dir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        temp_dir = Files.createTempDirectory("archive_restorer_test");
+    }
+
+    @Test
+    void testChainRestored() throws IOException {
+        byte[] bigPrevious = TestData.randomBytes(300_000, 1);
+        byte[] big = bigPrevious.clone();
+        for (int i = 0; i < 100; i++) big[150_000 + i] ^= 0x5A;
+        List<Path> chain = writeChain(bigPrevious, big);
+
+        Path target = temp_dir.resolve("restored");
+        ArchiveRestorer restorer = new ArchiveRestorer(4, 64 * 1024, false);
+        restorer.restore(chain, target);
+
+        assertArrayEquals(TestData.text("second version"), Files.readAllBytes(target.resolve("folder/a.txt")));
+        assertArrayEquals(TestData.text("new file"), Files.readAllBytes(target.resolve("c.txt")));
+        assertArrayEquals(big, Files.readAllBytes(target.resolve("big.bin")));
+        assertFalse(Files.exists(target.resolve("b.txt")));
+        assertEquals(LAST_MODIFIED, Files.getLastModifiedTime(target.resolve("big.bin")).toMillis());
+        assertEquals(LAST_MODIFIED, Files.getLastModifiedTime(target.resolve("folder")).toMillis());
+        assertEquals(3, restorer.getRestoredFiles());
+
+        // no temporary files left in the target
+        assertEquals(3, target.toFile().list().length);
+        assertEquals(1, target.resolve("folder").toFile().list().length);
+    }
+
+    @Test
+    void testUnchangedFilesSkipped() throws IOException {
+        byte[] big = TestData.randomBytes(300_000, 2);
+        List<Path> chain = writeChain(big, big);
+        Path target = temp_dir.resolve("restored");
+        new ArchiveRestorer(2, 64 * 1024, false).restore(chain, target);
+
+        // a file with the same size and date but a different content is restored again
+        Path modified = target.resolve("folder/a.txt");
+        Files.write(modified, TestData.text("second versioN"));
+        Files.setLastModifiedTime(modified, Files.getLastModifiedTime(target.resolve("c.txt")));
+
+        ArchiveRestorer restorer = new ArchiveRestorer(2, 64 * 1024, true);
+        restorer.restore(chain, target);
+        assertEquals(1, restorer.getRestoredFiles());
+        assertEquals(2, restorer.getSkippedFiles());
+        assertArrayEquals(TestData.text("second version"), Files.readAllBytes(modified));
+    }
+
+    @Test
+    void testProgressReported() throws IOException {
+        List<Path> chain = writeChain(TestData.randomBytes(300_000, 3), TestData.randomBytes(300_000, 4));
+        List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+
+        ArchiveRestorer restorer = new ArchiveRestorer(2, 64 * 1024, false);
+        restorer.setProgressListener((processedFiles, totalFiles) -> {
+            assertEquals(3, totalFiles);
+            processed.add(processedFiles);
+        });
+        restorer.restore(chain, temp_dir.resolve("restored"));
+
+        Collections.sort(processed);
+        assertEquals(List.of(1, 2, 3), processed);
+    }
+
+    @Test
+    void testCancelStopsRestore() throws IOException {
+        List<Path> chain = writeChain(TestData.randomBytes(300_000, 5), TestData.randomBytes(300_000, 6));
+        Path target = temp_dir.resolve("restored");
+
+        // a single thread: the restore is cancelled once the first file is written
+        ArchiveRestorer restorer = new ArchiveRestorer(1, 64 * 1024, false);
+        restorer.setProgressListener((processedFiles, totalFiles) -> restorer.cancel());
+        assertThrows(InterruptedIOException.class, () -> restorer.restore(chain, target));
+
+        assertEquals(1, restorer.getRestoredFiles());
+    }
+
+    @Test
+    void testEntryOutsideOfTargetRejected() throws IOException {
+        Path archive = temp_dir.resolve("full.zip");
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(archive)) {
+            TestData.store(writer, temp_dir, "../outside.txt", TestData.text("outside"), LAST_MODIFIED);
+        }
+
+        Path target = temp_dir.resolve("restored");
+        assertThrows(IOException.class, () -> new ArchiveRestorer(1, 64 * 1024, false).restore(List.of(archive), target));
+        assertFalse(Files.exists(temp_dir.resolve("outside.txt")));
+    }
+
+    @Test
+    void testEntryThroughLinkOutsideOfTargetRejected() throws IOException {
+        Path archive = temp_dir.resolve("full.zip");
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(archive)) {
+            TestData.store(writer, temp_dir, "link/outside.txt", TestData.text("outside"), LAST_MODIFIED);
+        }
+
+        // a directory of the target that is a link to a directory outside of it
+        Path target = temp_dir.resolve("restored");
+        Path outside = Files.createDirectories(temp_dir.resolve("outside"));
+        Files.createDirectories(target);
+        Files.createSymbolicLink(target.resolve("link"), outside);
+
+        assertThrows(IOException.class, () -> new ArchiveRestorer(1, 64 * 1024, false).restore(List.of(archive), target));
+        assertEquals(0, outside.toFile().list().length);
+    }
+
+    @Test
+    void testRestoredFileHasDefaultPermissions() throws IOException {
+        Path archive = temp_dir.resolve("full.zip");
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(archive)) {
+            TestData.store(writer, temp_dir, "a.txt", TestData.text("content"), LAST_MODIFIED);
+        }
+
+        Path target = temp_dir.resolve("restored");
+        new ArchiveRestorer(1, 64 * 1024, false).restore(List.of(archive), target);
+
+        // the same permissions of a file created in the target, not only readable by the owner as a temporary file
+        Path created = Files.createFile(target.resolve("created.txt"));
+        assertEquals(Files.getPosixFilePermissions(created), Files.getPosixFilePermissions(target.resolve("a.txt")));
+    }
+
+    @Test
+    void testSnapshotRestored() throws IOException {
+        byte[] big = TestData.randomBytes(300_000, 7);
+        Snapshot snapshot = new Snapshot(temp_dir.toString(), LAST_MODIFIED);
+        Path snapshotFile = temp_dir.resolve("backup (Backup 01-03-2024 10.00.00).snapshot");
+        try (ChunkRepository repository = ChunkRepository.open(RepositoryEngine.getRepositoryDirectory(snapshotFile))) {
+            snapshot.addDirectory("/", LAST_MODIFIED);
+            snapshot.addDirectory("folder/", LAST_MODIFIED);
+            snapshot.addFile("folder/a.txt", 13, LAST_MODIFIED, List.of(storeChunk(repository, TestData.text("first version"))));
+            snapshot.addFile("big.bin", big.length, LAST_MODIFIED, List.of(storeChunk(repository, Arrays.copyOf(big, 100_000)), storeChunk(repository, Arrays.copyOfRange(big, 100_000, big.length))));
+        }
+        snapshot.save(snapshotFile);
+
+        Path target = temp_dir.resolve("restored");
+        ArchiveRestorer restorer = new ArchiveRestorer(2, 64 * 1024, false);
+        restorer.restoreSnapshot(snapshotFile, target);
+
+        assertArrayEquals(TestData.text("first version"), Files.readAllBytes(target.resolve("folder/a.txt")));
+        assertArrayEquals(big, Files.readAllBytes(target.resolve("big.bin")));
+        assertEquals(LAST_MODIFIED, Files.getLastModifiedTime(target.resolve("big.bin")).toMillis());
+        assertEquals(LAST_MODIFIED, Files.getLastModifiedTime(target.resolve("folder")).toMillis());
+        assertEquals(2, restorer.getRestoredFiles());
+
+        // a chunk of big.bin changed: only that file is restored again
+        Path modified = target.resolve("big.bin");
+        byte[] changed = big.clone();
+        changed[200_000] ^= 0x5A;
+        Files.write(modified, changed);
+        Files.setLastModifiedTime(modified, Files.getLastModifiedTime(target.resolve("folder/a.txt")));
+
+        ArchiveRestorer skipping = new ArchiveRestorer(2, 64 * 1024, true);
+        skipping.restoreSnapshot(snapshotFile, target);
+        assertEquals(1, skipping.getRestoredFiles());
+        assertEquals(1, skipping.getSkippedFiles());
+        assertArrayEquals(big, Files.readAllBytes(modified));
+    }
+
+    private static ChunkId storeChunk(ChunkRepository repository, byte[] chunk) throws IOException {
+        ChunkId id = ChunkId.of(chunk, 0, chunk.length);
+        repository.store(id, chunk.length, 0, chunk, chunk.length);
+        return id;
+    }
+
+    // a full backup and two incremental ones: a.txt modified, b.txt deleted, big.bin saved as delta, then c.txt added
+    private static List<Path> writeChain(byte[] bigPrevious, byte[] big) throws IOException {
+        Path full = temp_dir.resolve("full.zip");
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(full)) {
+            writer.writeDirectory("/", LAST_MODIFIED);
+            writer.writeDirectory("folder/", LAST_MODIFIED);
+            TestData.store(writer, temp_dir, "folder/a.txt", TestData.text("first version"), LAST_MODIFIED);
+            TestData.store(writer, temp_dir, "b.txt", TestData.text("deleted later"), LAST_MODIFIED);
+            TestData.store(writer, temp_dir, "big.bin", bigPrevious, LAST_MODIFIED);
+        }
+
+        Path incremental1 = temp_dir.resolve("incremental1.zip");
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(incremental1)) {
+            TestData.store(writer, temp_dir, "folder/a.txt", TestData.text("second version"), LAST_MODIFIED);
+            TestData.store(writer, temp_dir, BackupManifest.DELETED_FILES_ENTRY, TestData.text("b.txt\n"), LAST_MODIFIED);
+            TestData.store(writer, temp_dir, DeltaEncoder.ENTRY_PREFIX + "big.bin", TestData.delta(bigPrevious, big), LAST_MODIFIED);
+        }
+
+        Path incremental2 = temp_dir.resolve("incremental2.zip");
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(incremental2)) {
+            TestData.store(writer, temp_dir, "c.txt", TestData.text("new file"), LAST_MODIFIED);
+        }
+        return List.of(full, incremental1, incremental2);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        TestData.deleteDirectory(temp_dir);
+    }
+}
@@ -0,0 +1,134 @@
+package test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import backupmanager.Entities.Backup;
+import backupmanager.Entities.ZippingContext;
+import backupmanager.Services.BackupJobExecutor;
+
+public class TestBackupJobExecutor {
+
+    private static Path temp_dir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        temp_dir = Files.createTempDirectory("jobs");
+    }
+
+    @Test
+    void testJobsOnTheSameDiskLimited() throws InterruptedException {
+        assertEquals(1, maxConcurrentJobs(new BackupJobExecutor(4, 1)));
+        assertEquals(3, maxConcurrentJobs(new BackupJobExecutor(4, 3)));
+        assertEquals(2, maxConcurrentJobs(new BackupJobExecutor(2, 3)));
+    }
+
+    @Test
+    void testInterruptRunningAndWaitingJobs() throws InterruptedException {
+        BackupJobExecutor executor = new BackupJobExecutor(4, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger completed = new AtomicInteger();
+
+        // the job stops when it is cancelled, its thread is never interrupted
+        Runnable blocking = () -> {
+            CountDownLatch cancelled = new CountDownLatch(1);
+            executor.getCurrentJob().onCancel(cancelled::countDown);
+            started.countDown();
+            try {
+                if (!cancelled.await(60, TimeUnit.SECONDS)) completed.incrementAndGet();
+            } catch (InterruptedException e) {
+                completed.incrementAndGet();
+            }
+        };
+        executor.submit(context("running"), temp_dir, temp_dir.resolve("running.zip"), blocking);
+        executor.submit(context("waiting"), temp_dir, temp_dir.resolve("waiting.zip"), completed::incrementAndGet);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(executor.isRunning("waiting"));
+
+        assertTrue(executor.interrupt(job -> job.getBackupName().equals("waiting"), 5));
+        assertFalse(executor.isRunning("waiting"));
+        assertTrue(executor.interrupt(job -> job.getBackupName().equals("running"), 5));
+        assertFalse(executor.isRunning("running"));
+        assertFalse(executor.interrupt(job -> true, 5));
+        assertEquals(0, completed.get());
+    }
+
+    @Test
+    void testSecondJobOfTheSameBackupRejected() throws InterruptedException {
+        BackupJobExecutor executor = new BackupJobExecutor(4, 4);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+
+        assertNotNull(executor.submit(context("backup"), temp_dir, temp_dir.resolve("backup.zip"), () -> {
+            runs.incrementAndGet();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        }));
+
+        // the same partial archive would be written twice
+        assertNull(executor.submit(context("backup"), temp_dir, temp_dir.resolve("backup.zip"), runs::incrementAndGet));
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        CountDownLatch after = new CountDownLatch(1);
+        executor.runAfter("backup", after::countDown);
+        assertTrue(after.await(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+
+        // once it has finished the backup can run again
+        CountDownLatch again = new CountDownLatch(1);
+        assertNotNull(executor.submit(context("backup"), temp_dir, temp_dir.resolve("backup.zip"), again::countDown));
+        assertTrue(again.await(5, TimeUnit.SECONDS));
+    }
+
+    // submits 6 jobs on the same disk and returns how many of them have run at the same time
+    private int maxConcurrentJobs(BackupJobExecutor executor) throws InterruptedException {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(6);
+
+        for (int i = 0; i < 6; i++) {
+            executor.submit(context("backup" + i), temp_dir, temp_dir.resolve("backup" + i + ".zip"), () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        return maxRunning.get();
+    }
+
+    private ZippingContext context(String backupName) {
+        Backup backup = new Backup(backupName, "source", "destination", null, false, null, null, "", null, null, 0, 5);
+        return new ZippingContext(backup, null, null, null, null, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        temp_dir.toFile().delete();
+    }
+}
@@ -0,0 +1,93 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import backupmanager.Entities.Backup;
+import backupmanager.Json.BackupJournal;
+import backupmanager.Json.JSONBackup;
+
+public class TestBackupJournal {
+
+    private static Path temp_dir;
+    private BackupJournal journal;
+
+    @BeforeEach
+    void setup() throws IOException {
+        temp_dir = Files.createTempDirectory("journal");
+        journal = new BackupJournal(temp_dir.toString() + File.separator, "backup_list.json");
+    }
+
+    @Test
+    void testChangesAppliedToTheList() throws IOException {
+        JSONBackup.updateBackupListJSON(temp_dir.toString() + File.separator, "backup_list.json", List.of(backup("first", "notes"), backup("second", "notes")));
+
+        journal.append(List.of(BackupJournal.Entry.put(backup("second", "updated")), BackupJournal.Entry.remove("first")));
+        journal.append(List.of(BackupJournal.Entry.put(backup("third", "notes"))));
+
+        List<Backup> backups = journal.load();
+        assertEquals(2, backups.size());
+        assertEquals("updated", Backup.getBackupByName(backups, "second").getNotes());
+        assertEquals("third", backups.get(1).getBackupName());
+
+        List<Backup> compacted = journal.compact();
+        assertEquals(0, journal.getJournalSize());
+        assertEquals(2, compacted.size());
+        assertEquals(2, JSONBackup.readBackupListFromJSON(temp_dir.toString() + File.separator, "backup_list.json").size());
+    }
+
+    @Test
+    void testIncompleteChangeDiscarded() throws IOException {
+        journal.append(List.of(BackupJournal.Entry.put(backup("first", "notes"))));
+        long validSize = journal.getJournalSize();
+
+        // a change cut by a crash
+        Path journalFile = temp_dir.resolve(BackupJournal.getJournalFileName("backup_list.json"));
+        Files.write(journalFile, "{\"put\": {\"backup_na".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        // reading the journal doesn't change it, the incomplete line is removed by the next append
+        List<Backup> backups = journal.load();
+        assertEquals(1, backups.size());
+        assertTrue(journal.getJournalSize() > validSize);
+
+        journal.append(List.of(BackupJournal.Entry.put(backup("second", "notes"))));
+        assertEquals(2, journal.load().size());
+        assertFalse(Files.readString(journalFile).contains("{\"put\": {\"backup_na"));
+    }
+
+    @Test
+    void testInvalidChangeSkipped() throws IOException {
+        journal.append(List.of(BackupJournal.Entry.put(backup("first", "notes"))));
+        Path journalFile = temp_dir.resolve(BackupJournal.getJournalFileName("backup_list.json"));
+        Files.write(journalFile, "{\"unknown\": 1}\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        journal.append(List.of(BackupJournal.Entry.put(backup("second", "notes"))));
+
+        List<Backup> backups = journal.load();
+        assertEquals(2, backups.size());
+        assertEquals("second", backups.get(1).getBackupName());
+    }
+
+    private Backup backup(String backupName, String notes) {
+        return new Backup(backupName, "source", "destination", null, false, null, null, notes, null, null, 0, 5);
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (File file : temp_dir.toFile().listFiles()) {
+            file.delete();
+        }
+        temp_dir.toFile().delete();
+    }
+}
@@ -0,0 +1,82 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import backupmanager.Entities.BackupManifest;
+
+public class TestBackupManifest {
+
+    private static Path temp_dir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        temp_dir = Files.createTempDirectory("manifest_test");
+    }
+
+    @Test
+    void testChangedAndDeletedFiles() throws IOException {
+        Path unchanged = Files.writeString(temp_dir.resolve("unchanged.txt"), "unchanged");
+        Path modified = Files.writeString(temp_dir.resolve("modified.txt"), "modified");
+        Path deleted = Files.writeString(temp_dir.resolve("deleted.txt"), "deleted");
+
+        BackupManifest previous = new BackupManifest(temp_dir.toString(), 0);
+        previous.add("unchanged.txt", attributes(unchanged));
+        previous.add("modified.txt", attributes(modified));
+        previous.add("deleted.txt", attributes(deleted));
+
+        Path manifestFile = BackupManifest.getManifestPath(temp_dir.resolve("backup").toString());
+        previous.save(manifestFile);
+
+        Files.writeString(modified, "modified again");
+        Files.setLastModifiedTime(modified, FileTime.fromMillis(1700000000000L));
+        Files.delete(deleted);
+
+        BackupManifest loaded = BackupManifest.load(manifestFile);
+        assertNotNull(loaded);
+        assertEquals(temp_dir.toString(), loaded.getSourcePath());
+        assertEquals(3, loaded.getFilesCount());
+
+        BackupManifest current = new BackupManifest(temp_dir.toString(), loaded.getIncrementalCount() + 1);
+        current.add("unchanged.txt", attributes(unchanged));
+        current.add("modified.txt", attributes(modified));
+
+        assertTrue(loaded.isUnchanged("unchanged.txt", attributes(unchanged)));
+        assertFalse(loaded.isUnchanged("modified.txt", attributes(modified)));
+        assertEquals(List.of("deleted.txt"), loaded.getDeletedFiles(current));
+    }
+
+    @Test
+    void testMissingManifest() {
+        assertNull(BackupManifest.load(temp_dir.resolve("missing.manifest")));
+    }
+
+    private BasicFileAttributes attributes(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        File[] files = temp_dir.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        temp_dir.toFile().delete();
+    }
+}
@@ -0,0 +1,39 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import backupmanager.Compression.ThroughputMeter;
+import backupmanager.Entities.BackupProgress;
+
+public class TestBackupProgress {
+
+    @Test
+    void testPercentageMeasuredInBytes() {
+        // one huge file and many tiny ones: the bytes decide the percentage, not the files
+        assertEquals(50, BackupProgress.computePercentage(99_000, 100_001, 20_000_000_000L, 40_000_000_000L));
+
+        // without the bytes the files are used, and the estimate never reaches 100
+        assertEquals(25, BackupProgress.computePercentage(1, 4, 0, -1));
+        assertEquals(99, BackupProgress.computePercentage(10, 4, 500, 100));
+        assertEquals(0, BackupProgress.computePercentage(10, -1, 500, -1));
+    }
+
+    @Test
+    void testSmoothedThroughputAndEta() {
+        ThroughputMeter meter = new ThroughputMeter(0.5);
+        assertFalse(meter.update(0, 0));
+        assertFalse(meter.update(100, 100)); // before the sample interval
+        assertTrue(meter.update(1000, 1000));
+        assertEquals(1000, meter.getBytesPerSecond(), 0.001);
+
+        assertTrue(meter.update(4000, 2000));
+        assertEquals(2000, meter.getBytesPerSecond(), 0.001);
+
+        BackupProgress progress = new BackupProgress(40, 1, 2, 4000, 10000, 3000, meter.getBytesPerSecond());
+        assertEquals(3, progress.getEtaSeconds());
+        assertEquals(-1, new BackupProgress(40, 1, 2, 4000, -1, 3000, meter.getBytesPerSecond()).getEtaSeconds());
+    }
+}
@@ -0,0 +1,103 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import backupmanager.Entities.Backup;
+import backupmanager.Entities.BackupList;
+import backupmanager.Json.BackupJournal;
+import backupmanager.Json.JSONBackup;
+import backupmanager.Services.BackupRepository;
+
+public class TestBackupRepository {
+
+    private static Path temp_dir;
+    private BackupList backupList;
+    private BackupRepository repository;
+
+    @BeforeEach
+    void setup() throws IOException {
+        temp_dir = Files.createTempDirectory("repository");
+        backupList = new BackupList(temp_dir.toString() + File.separator, "backup_list.json");
+        repository = new BackupRepository(() -> backupList, 60000);
+    }
+
+    @Test
+    void testChangesWrittenOnFlush() throws IOException {
+        repository.save(backup("first", "notes"));
+        repository.save(backup("second", "notes"));
+        repository.save(backup("first", "updated"));
+
+        assertEquals(2, repository.getBackups().size());
+        assertEquals("updated", repository.getBackup("first").getNotes());
+        assertEquals(0, readFromFile().size());
+
+        repository.flush();
+        List<Backup> written = readFromFile();
+        assertEquals(2, written.size());
+        assertEquals("updated", Backup.getBackupByName(written, "first").getNotes());
+    }
+
+    @Test
+    void testCompactionWritesTheListFile() throws IOException {
+        repository.save(backup("first", "notes"));
+        repository.saveAll(List.of(backup("second", "notes")));
+        repository.compact();
+
+        List<Backup> backups = JSONBackup.readBackupListFromJSON(backupList.getDirectory(), backupList.getFile());
+        assertEquals(1, backups.size());
+        assertEquals("second", backups.get(0).getBackupName());
+        assertEquals(0, new BackupJournal(backupList.getDirectory(), backupList.getFile()).getJournalSize());
+    }
+
+    @Test
+    void testReadersGetCopies() {
+        repository.save(backup("first", "notes"));
+
+        Backup backup = repository.getBackup("first");
+        backup.setNotes("modified");
+        repository.getBackups().clear();
+
+        assertEquals("notes", repository.getBackup("first").getNotes());
+        assertEquals(1, repository.getBackups().size());
+        assertNull(repository.getBackup("missing"));
+    }
+
+    @Test
+    void testReloadReadsExternalChanges() {
+        repository.save(backup("first", "notes"));
+        repository.compact();
+        JSONBackup.updateBackupListJSON(backupList.getDirectory(), backupList.getFile(), List.of(backup("other", "notes")));
+        assertNotNull(repository.getBackup("first"));
+
+        repository.reload();
+        assertNull(repository.getBackup("first"));
+        assertNotNull(repository.getBackup("other"));
+    }
+
+    private List<Backup> readFromFile() throws IOException {
+        return new BackupJournal(backupList.getDirectory(), backupList.getFile()).load();
+    }
+
+    private Backup backup(String backupName, String notes) {
+        return new Backup(backupName, "source", "destination", null, false, null, null, notes, null, null, 0, 5);
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (File file : temp_dir.toFile().listFiles()) {
+            file.delete();
+        }
+        temp_dir.toFile().delete();
+    }
+}
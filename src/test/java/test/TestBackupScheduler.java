@@ -0,0 +1,109 @@
+package test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import backupmanager.Entities.Backup;
+import backupmanager.Services.BackupScheduler;
+
+public class TestBackupScheduler {
+
+    private final BlockingQueue<String> fired = new LinkedBlockingQueue<>();
+    private BackupScheduler scheduler;
+
+    @BeforeEach
+    void setup() {
+        scheduler = new BackupScheduler(backup -> fired.add(backup.getBackupName()));
+        scheduler.start();
+    }
+
+    @Test
+    void testBackupsFireInOrderOfNextDate() throws InterruptedException {
+        LocalDateTime now = LocalDateTime.now();
+        scheduler.reload(List.of(
+            backup("later", now.plusNanos(600_000_000)),
+            backup("sooner", now.plusNanos(300_000_000)),
+            backup("disabled", null)
+        ));
+
+        long start = System.nanoTime();
+        assertEquals("sooner", fired.poll(5, TimeUnit.SECONDS));
+        long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+        assertTrue(elapsedMillis >= 250 && elapsedMillis < 2000, "Fired after " + elapsedMillis + " ms");
+
+        assertEquals("later", fired.poll(5, TimeUnit.SECONDS));
+        assertNull(fired.poll(300, TimeUnit.MILLISECONDS));
+        assertNull(scheduler.getNextFireTime());
+    }
+
+    @Test
+    void testScheduleReplacesPreviousDate() throws InterruptedException {
+        Backup backup = backup("backup", LocalDateTime.now().plusHours(1));
+        scheduler.reload(List.of(backup));
+        assertNotNull(scheduler.getNextFireTime());
+
+        // the scheduler wakes up for the new date without waiting for the old one
+        scheduler.schedule(backup, LocalDateTime.now().plusNanos(100_000_000));
+        assertEquals("backup", fired.poll(5, TimeUnit.SECONDS));
+        assertNull(fired.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testSlowJobDoesntDelayOtherBackups() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.stop();
+        scheduler = new BackupScheduler(backup -> {
+            fired.add(backup.getBackupName());
+            if (backup.getBackupName().equals("slow")) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        scheduler.start();
+
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            scheduler.reload(List.of(
+                backup("slow", now.plusNanos(100_000_000)),
+                backup("fast", now.plusNanos(200_000_000))
+            ));
+            assertEquals("slow", fired.poll(5, TimeUnit.SECONDS));
+            assertEquals("fast", fired.poll(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void testStoppedSchedulerNotRunning() {
+        assertTrue(scheduler.isRunning());
+        scheduler.stop();
+        assertFalse(scheduler.isRunning());
+    }
+
+    private Backup backup(String name, LocalDateTime nextDate) {
+        return new Backup(name, "source", "destination", null, nextDate != null, nextDate, null, "", null, null, 0, 5);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.stop();
+    }
+}
@@ -0,0 +1,121 @@
+package test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import backupmanager.Deduplication.BlockSignature;
+import backupmanager.Deduplication.DeltaDecoder;
+import backupmanager.Deduplication.DeltaEncoder;
+
+public class TestBlockDelta {
+
+    private static final int BLOCK_SIZE = 4 * 1024;
+    private static Path temp_dir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        temp_dir = Files.createTempDirectory("block_delta_test");
+    }
+
+    @Test
+    void testDeltaOfInsertionAndModification() throws IOException {
+        byte[] previous = TestData.randomBytes(2 * 1024 * 1024 + 123, 1);
+
+        // 100 bytes inserted, 10 bytes changed further on
+        byte[] current = new byte[previous.length + 100];
+        System.arraycopy(previous, 0, current, 0, 500_000);
+        System.arraycopy(TestData.randomBytes(100, 2), 0, current, 500_000, 100);
+        System.arraycopy(previous, 500_000, current, 500_100, previous.length - 500_000);
+        for (int i = 0; i < 10; i++) current[1_500_000 + i] ^= 0x5A;
+
+        BlockSignature signature = signatureOf(previous);
+        ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        DeltaEncoder encoder = encode(signature, current, delta, new BlockSignature.Builder(BLOCK_SIZE));
+
+        assertEquals(current.length, encoder.getSize());
+        assertTrue(delta.size() < 5 * BLOCK_SIZE, "delta too large: " + delta.size());
+        assertArrayEquals(current, decode(previous, delta.toByteArray()));
+    }
+
+    @Test
+    void testSignatureComputedWithTheDelta() throws IOException {
+        byte[] previous = TestData.randomBytes(1024 * 1024, 3);
+        byte[] current = previous.clone();
+        current[300_000] ^= 1;
+
+        BlockSignature.Builder builder = new BlockSignature.Builder(BLOCK_SIZE);
+        encode(signatureOf(previous), current, new ByteArrayOutputStream(), builder);
+        BlockSignature signature = builder.finish(42);
+        assertEquals(current.length, signature.getFileSize());
+        assertEquals(current.length / BLOCK_SIZE, signature.getBlocksCount());
+
+        // the same content against its own signature: nothing but copies
+        DeltaEncoder encoder = encode(signature, current, new ByteArrayOutputStream(), new BlockSignature.Builder(BLOCK_SIZE));
+        assertEquals(0, encoder.getLiteralBytes());
+        assertEquals(current.length, encoder.getCopiedBytes());
+    }
+
+    @Test
+    void testSignatureSaveAndLoad() throws IOException {
+        byte[] data = TestData.randomBytes(100_000, 4);
+        Path file = temp_dir.resolve("test.sig");
+        signatureOf(data).save(file);
+
+        BlockSignature loaded = BlockSignature.load(file);
+        DeltaEncoder encoder = encode(loaded, data, new ByteArrayOutputStream(), new BlockSignature.Builder(BLOCK_SIZE));
+        assertEquals(data.length - data.length % BLOCK_SIZE, encoder.getCopiedBytes());
+    }
+
+    @Test
+    void testWrongPreviousVersionRejected() throws IOException {
+        byte[] previous = TestData.randomBytes(200_000, 5);
+        ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        encode(signatureOf(previous), previous, delta, new BlockSignature.Builder(BLOCK_SIZE));
+
+        assertThrows(IOException.class, () -> decode(TestData.randomBytes(100_000, 6), delta.toByteArray()));
+    }
+
+    private static DeltaEncoder encode(BlockSignature previous, byte[] data, ByteArrayOutputStream delta, BlockSignature.Builder builder) throws IOException {
+        DeltaEncoder encoder = new DeltaEncoder(previous, delta, builder);
+        // passed in uneven chunks, as they are read from the file
+        for (int offset = 0; offset < data.length; offset += 70_001) {
+            encoder.write(ByteBuffer.wrap(data, offset, Math.min(70_001, data.length - offset)));
+        }
+        encoder.finish();
+        return encoder;
+    }
+
+    private static byte[] decode(byte[] previous, byte[] delta) throws IOException {
+        Path previousFile = temp_dir.resolve("previous.bin");
+        Files.write(previousFile, previous);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FileChannel channel = FileChannel.open(previousFile)) {
+            DeltaDecoder.apply(new ByteArrayInputStream(delta), channel, out);
+        }
+        return out.toByteArray();
+    }
+
+    private static BlockSignature signatureOf(byte[] data) {
+        BlockSignature.Builder builder = new BlockSignature.Builder(BLOCK_SIZE);
+        builder.update(data, 0, data.length);
+        return builder.finish(0);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        TestData.deleteDirectory(temp_dir);
+    }
+}
@@ -0,0 +1,145 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import backupmanager.BackupOperations;
+import backupmanager.CachedFileWalker;
+import backupmanager.Entities.Backup;
+import backupmanager.Entities.ScanCache;
+import backupmanager.Enums.ArchiveFormatEnum;
+
+public class TestCachedFileWalker {
+
+    private static Path temp_dir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        temp_dir = Files.createTempDirectory("scan_test");
+        Path sub = Files.createDirectory(temp_dir.resolve("sub"));
+        Files.writeString(temp_dir.resolve("a.txt"), "a");
+        Files.writeString(sub.resolve("b.txt"), "b");
+        Files.writeString(sub.resolve("c.txt"), "c");
+
+        // directories modified just before the scan are never trusted
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 60000);
+        Files.setLastModifiedTime(sub, old);
+        Files.setLastModifiedTime(temp_dir, old);
+    }
+
+    @Test
+    void testUnchangedTreeFromCache() throws IOException {
+        List<String> visited = new ArrayList<>();
+        ScanCache first = new CachedFileWalker(null).walk(temp_dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                visited.add(temp_dir.relativize(file).toString());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        assertEquals(3, visited.size());
+        assertEquals(3, first.getFilesCount());
+
+        CachedFileWalker second = new CachedFileWalker(first);
+        assertFalse(second.hasChanges(temp_dir));
+        assertEquals(3, second.getScanCache().getFilesCount());
+    }
+
+    @Test
+    void testModifiedFileDetected() throws IOException {
+        ScanCache first = new CachedFileWalker(null).walk(temp_dir, new SimpleFileVisitor<Path>() {});
+
+        // the content changes but the directory keeps its last modified time
+        Path file = temp_dir.resolve("sub").resolve("b.txt");
+        Files.writeString(file, "changed");
+        Files.setLastModifiedTime(temp_dir.resolve("sub"), Files.getLastModifiedTime(temp_dir));
+
+        assertTrue(new CachedFileWalker(first).hasChanges(temp_dir));
+    }
+
+    @Test
+    void testEstimateRefinedWhileWalking() throws IOException {
+        ScanCache first = new CachedFileWalker(null).walk(temp_dir, new SimpleFileVisitor<Path>() {});
+
+        // a new directory, and a file removed from another one
+        Path added = Files.createDirectory(temp_dir.resolve("added"));
+        Files.writeString(added.resolve("d.txt"), "dd");
+        Files.writeString(added.resolve("e.txt"), "ee");
+        Files.delete(temp_dir.resolve("sub").resolve("c.txt"));
+
+        CachedFileWalker walker = new CachedFileWalker(first);
+        List<String> estimates = new ArrayList<>();
+        ScanCache second = walker.walk(temp_dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                estimates.add(temp_dir.relativize(dir) + ":" + walker.getEstimatedFilesCount() + ":" + walker.getEstimatedTotalBytes());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        // every directory corrects the estimate as soon as it is walked (in any order), at the end it is the count of the tree
+        assertEquals(3, estimates.size());
+        assertTrue(List.of("added:5:7", "sub:2:2").contains(estimates.get(0)), estimates.toString());
+        assertTrue(List.of("added:4:6", "sub:4:6").contains(estimates.get(1)), estimates.toString());
+        assertEquals(":4:6", estimates.get(2));
+        assertEquals(4, second.getFilesCount());
+        assertEquals(6, second.getTotalBytes());
+    }
+
+    @Test
+    void testBackupNeededWithoutItsArchive() throws IOException {
+        Path destination = Files.createTempDirectory("scan_test_destination");
+        Path archive = Files.writeString(destination.resolve("scan test (Backup 01-03-2024 10.00.00).zip"), "archive");
+        Backup backup = new Backup("scan test", temp_dir.toString(), destination.toString(), null, false, null, null, "", null, null, 0, 5);
+
+        try {
+            ScanCache scan = new CachedFileWalker(null).walk(temp_dir, new SimpleFileVisitor<Path>() {});
+            scan.setArchive(archive.toString(), BackupOperations.getArchiveSettings(backup));
+            assertFalse(BackupOperations.isBackupNeeded(backup, scan));
+
+            // the same tree, but the archive would be written in another format
+            backup.setArchiveFormat(ArchiveFormatEnum.Tar);
+            assertTrue(BackupOperations.isBackupNeeded(backup, scan));
+            backup.setArchiveFormat(ArchiveFormatEnum.Zip);
+
+            assertFalse(BackupOperations.isBackupNeeded(backup, scan));
+            Files.delete(archive);
+            assertTrue(BackupOperations.isBackupNeeded(backup, scan));
+        } finally {
+            Files.deleteIfExists(archive);
+            Files.delete(destination);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        deleteDirectory(temp_dir.toFile());
+    }
+
+    private void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) deleteDirectory(file);
+                else file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,196 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import backupmanager.Deduplication.ChunkId;
+import backupmanager.Deduplication.ChunkIndex;
+import backupmanager.Deduplication.ChunkLocation;
+import backupmanager.Deduplication.ChunkRepository;
+import backupmanager.Deduplication.Snapshot;
+
+public class TestChunkRepository {
+
+    private static Path temp_dir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        temp_dir = Files.createTempDirectory("chunk_repository_test");
+    }
+
+    @Test
+    void testIndexGrowsAndReopens() throws IOException {
+        List<ChunkId> ids = new ArrayList<>();
+        ChunkIndex index = ChunkIndex.create(temp_dir);
+        try {
+            // more than the initial capacity: the index grows twice
+            for (int i = 0; i < 200_000; i++) {
+                ChunkId id = chunkId("chunk " + i);
+                ids.add(id);
+                index = index.put(id, new ChunkLocation(1 + i % 7, i, i % 1000, i));
+            }
+            index.commit();
+        } finally {
+            index.close();
+        }
+
+        ChunkIndex reopened = ChunkIndex.open(temp_dir);
+        assertNotNull(reopened);
+        try {
+            assertEquals(ids.size(), reopened.size());
+            for (int i = 0; i < ids.size(); i += 997) {
+                ChunkLocation location = reopened.get(ids.get(i));
+                assertNotNull(location);
+                assertEquals(1 + i % 7, location.getPack());
+                assertEquals(i, location.getOffset());
+                assertEquals(i, location.getRawLength());
+            }
+            assertFalse(reopened.contains(chunkId("missing")));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void testChunksStoredOnceAndReadBack() throws IOException {
+        byte[] text = "the same line in every file of the backup\n".repeat(2000).getBytes(StandardCharsets.UTF_8);
+        ChunkId id = ChunkId.of(text, 0, text.length);
+
+        try (ChunkRepository repository = ChunkRepository.open(temp_dir)) {
+            repository.store(id, text.length, 0, text, text.length);
+            long written = repository.getBytesWritten();
+            repository.store(id, text.length, 0, text, text.length);
+
+            assertEquals(written, repository.getBytesWritten());
+            assertEquals(1, repository.getChunksCount());
+            assertArrayEquals(text, repository.read(id));
+        }
+    }
+
+    @Test
+    void testRepositoryLockedWhileOpen() throws IOException {
+        ChunkRepository repository = ChunkRepository.open(temp_dir);
+        try {
+            assertThrows(IOException.class, () -> ChunkRepository.open(temp_dir));
+        } finally {
+            repository.close();
+        }
+    }
+
+    @Test
+    void testUncleanIndexRebuiltFromPacks() throws IOException {
+        byte[] first = "first chunk".getBytes(StandardCharsets.UTF_8);
+        byte[] second = "second chunk".getBytes(StandardCharsets.UTF_8);
+        ChunkId firstId = ChunkId.of(first, 0, first.length);
+        ChunkId secondId = ChunkId.of(second, 0, second.length);
+
+        try (ChunkRepository repository = ChunkRepository.open(temp_dir)) {
+            repository.store(firstId, first.length, 0, first, first.length);
+            repository.store(secondId, second.length, 0, second, second.length);
+        }
+
+        // a crash: the index is not clean and the last record is cut
+        markIndexUnclean();
+        Path pack = temp_dir.resolve("packs").resolve("pack-00000001.pack");
+        try (RandomAccessFile file = new RandomAccessFile(pack.toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        try (ChunkRepository repository = ChunkRepository.open(temp_dir)) {
+            assertEquals(1, repository.getChunksCount());
+            assertArrayEquals(first, repository.read(firstId));
+            assertFalse(repository.contains(secondId));
+        }
+    }
+
+    @Test
+    void testPruneRemovesUnreferencedChunks() throws IOException {
+        byte[] kept = "a chunk still referenced".getBytes(StandardCharsets.UTF_8);
+        byte[] deleted = "a chunk of a deleted snapshot\n".repeat(100).getBytes(StandardCharsets.UTF_8);
+        byte[] added = "a chunk of the new snapshot".getBytes(StandardCharsets.UTF_8);
+        ChunkId keptId = ChunkId.of(kept, 0, kept.length);
+        ChunkId deletedId = ChunkId.of(deleted, 0, deleted.length);
+        ChunkId addedId = ChunkId.of(added, 0, added.length);
+
+        try (ChunkRepository repository = ChunkRepository.open(temp_dir)) {
+            repository.store(keptId, kept.length, 0, kept, kept.length);
+            repository.store(deletedId, deleted.length, 0, deleted, deleted.length);
+        }
+
+        Path firstPack = temp_dir.resolve("packs").resolve("pack-00000001.pack");
+        try (ChunkRepository repository = ChunkRepository.open(temp_dir)) {
+            repository.store(addedId, added.length, 0, added, added.length);
+            long packSize = Files.size(firstPack);
+
+            // the pack is mostly the deleted chunk: it is rewritten with only the kept one
+            long freed = repository.prune(Set.of(keptId, addedId));
+            assertTrue(freed > deleted.length && freed < packSize);
+            assertFalse(Files.exists(firstPack));
+            assertFalse(repository.contains(deletedId));
+            assertArrayEquals(kept, repository.read(keptId));
+            assertArrayEquals(added, repository.read(addedId));
+        }
+
+        try (ChunkRepository repository = ChunkRepository.open(temp_dir)) {
+            assertEquals(2, repository.getChunksCount());
+            assertArrayEquals(kept, repository.read(keptId));
+            assertEquals(0, repository.prune(Set.of(keptId, addedId)));
+        }
+    }
+
+    @Test
+    void testSnapshotSaveAndLoad() throws IOException {
+        Snapshot snapshot = new Snapshot("C:\\source", 1000);
+        snapshot.addDirectory("dir/", 10);
+        snapshot.addFile("dir/file.txt", 42, 20, List.of(chunkId("a"), chunkId("b")));
+
+        Path file = temp_dir.resolve("test.snapshot");
+        snapshot.save(file);
+
+        Snapshot loaded = Snapshot.load(file);
+        assertNotNull(loaded);
+        assertEquals("C:\\source", loaded.getSourcePath());
+        assertEquals(2, loaded.getEntries().size());
+        assertTrue(loaded.getEntry("dir/").isDirectory());
+        assertEquals(List.of(chunkId("a"), chunkId("b")), loaded.getEntry("dir/file.txt").getChunkIds());
+        assertEquals(42, loaded.getEntry("dir/file.txt").getSize());
+    }
+
+    private static void markIndexUnclean() throws IOException {
+        File[] indexes = temp_dir.toFile().listFiles((dir, name) -> name.endsWith(".idx"));
+        assertNotNull(indexes);
+        for (File index : indexes) {
+            try (RandomAccessFile file = new RandomAccessFile(index, "rw")) {
+                file.seek(12);
+                file.writeInt(0);
+            }
+        }
+    }
+
+    private static ChunkId chunkId(String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return ChunkId.of(bytes, 0, bytes.length);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        TestData.deleteDirectory(temp_dir);
+    }
+}
@@ -0,0 +1,34 @@
+package test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+import backupmanager.Compression.CompressionAdvisor;
+import backupmanager.Enums.CompressionModeEnum;
+
+public class TestCompressionAdvisor {
+
+    @Test
+    void testSampleDecisions() {
+        byte[] random = new byte[CompressionAdvisor.SAMPLE_SIZE];
+        new Random(42).nextBytes(random);
+        assertEquals(CompressionModeEnum.Stored, CompressionAdvisor.adviseBySample(ByteBuffer.wrap(random)));
+
+        byte[] text = "2026-01-01 10:00:00 [INFO] backup completed\n".repeat(2000).getBytes(StandardCharsets.UTF_8);
+        assertEquals(CompressionModeEnum.Strong, CompressionAdvisor.adviseBySample(ByteBuffer.wrap(text)));
+
+        // too small to decide
+        assertEquals(CompressionModeEnum.Strong, CompressionAdvisor.adviseBySample(ByteBuffer.wrap(new byte[100])));
+    }
+
+    @Test
+    void testSampleIsNotConsumed() {
+        ByteBuffer sample = ByteBuffer.wrap(new byte[CompressionAdvisor.SAMPLE_SIZE * 2]);
+        CompressionAdvisor.adviseBySample(sample);
+        assertEquals(0, sample.position());
+    }
+}
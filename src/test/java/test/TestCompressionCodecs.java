@@ -0,0 +1,91 @@
+package test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import backupmanager.Compression.CompressionCodec;
+import backupmanager.Compression.CompressionCodecs;
+import backupmanager.Compression.CompressionDictionary;
+
+public class TestCompressionCodecs {
+
+    @Test
+    void testEveryCodecRoundTrip() throws IOException {
+        byte[] content = "2026-01-01 10:00:00 [INFO] backup completed\n".repeat(5000).getBytes(StandardCharsets.UTF_8);
+
+        for (CompressionCodec codec : CompressionCodecs.getAvailableCodecs()) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (OutputStream out = codec.newOutputStream(compressed, codec.getDefaultLevel())) {
+                out.write(content);
+            }
+            assertTrue(compressed.size() < content.length, codec.getName());
+
+            try (InputStream in = codec.newInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+                assertArrayEquals(content, in.readAllBytes(), codec.getName());
+            }
+            assertEquals(codec, CompressionCodecs.getByZipMethod(codec.getZipMethod()));
+        }
+    }
+
+    @Test
+    void testDictionaryRoundTrip() throws IOException {
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            samples.add(record(i));
+        }
+        byte[] content = record(1000);
+
+        for (CompressionCodec codec : CompressionCodecs.getAvailableCodecs()) {
+            byte[] trained = codec.trainDictionary(samples, 16 * 1024);
+            assertNotNull(trained, codec.getName());
+            CompressionDictionary dictionary = new CompressionDictionary(trained);
+
+            // the streams reuse the compressor of the thread: the level changes between the entries
+            for (int level : new int[] {codec.getMaxLevel(), codec.getFastLevel()}) {
+                ByteArrayOutputStream plain = new ByteArrayOutputStream();
+                try (OutputStream out = codec.newOutputStream(plain, level)) {
+                    out.write(content);
+                }
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (OutputStream out = codec.newOutputStream(compressed, level, dictionary)) {
+                    out.write(content);
+                }
+                assertTrue(compressed.size() < plain.size(), codec.getName() + " level " + level);
+
+                try (InputStream in = codec.newInputStream(new ByteArrayInputStream(compressed.toByteArray()), dictionary)) {
+                    assertArrayEquals(content, in.readAllBytes(), codec.getName() + " level " + level);
+                }
+            }
+        }
+    }
+
+    // a small json file, all the records share the keys and most of the values
+    private static byte[] record(int id) {
+        return ("{\n  \"id\": " + id + ",\n  \"type\": \"order\",\n  \"status\": \"" + (id % 3 == 0 ? "shipped" : "pending") + "\",\n"
+            + "  \"customer\": {\n    \"email\": \"user" + (id * 7919 % 10007) + "@example.com\",\n    \"city\": \"Milano\"\n  },\n"
+            + "  \"createdAt\": \"2026-01-" + (10 + id % 18) + "T10:00:00Z\"\n}\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testUnknownCodecFallsBackToDefault() {
+        assertEquals(CompressionCodecs.DEFAULT_CODEC, CompressionCodecs.get("unknown").getName());
+        assertEquals(CompressionCodecs.DEFAULT_CODEC, CompressionCodecs.get(null).getName());
+        assertNull(CompressionCodecs.getByZipMethod(-1));
+
+        CompressionCodec codec = CompressionCodecs.get(CompressionCodecs.DEFAULT_CODEC);
+        assertEquals(codec.getMaxLevel(), CompressionCodecs.clampLevel(codec, 100));
+    }
+}
@@ -0,0 +1,71 @@
+package test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import backupmanager.Deduplication.ChunkId;
+import backupmanager.Deduplication.ContentDefinedChunker;
+
+public class TestContentDefinedChunker {
+
+    @Test
+    void testChunkSizesWithinBounds() {
+        ContentDefinedChunker chunker = new ContentDefinedChunker(64 * 1024);
+        byte[] data = TestData.randomBytes(4 * 1024 * 1024, 1);
+
+        int chunks = 0;
+        for (int start = 0; start < data.length; ) {
+            int length = chunker.next(data, start, data.length - start);
+            assertTrue(length <= chunker.getMaxSize());
+            if (start + length < data.length) assertTrue(length >= chunker.getMinSize());
+            start += length;
+            chunks++;
+        }
+
+        // normalized chunking keeps the average near the configured one
+        int average = data.length / chunks;
+        assertTrue(average > chunker.getAverageSize() / 2 && average < chunker.getAverageSize() * 2, "average " + average);
+    }
+
+    @Test
+    void testBoundariesSurviveAnInsertion() {
+        ContentDefinedChunker chunker = new ContentDefinedChunker(16 * 1024);
+        byte[] original = TestData.randomBytes(2 * 1024 * 1024, 2);
+
+        // 100 bytes inserted near the start: with fixed size blocks nothing after them would match
+        byte[] changed = new byte[original.length + 100];
+        System.arraycopy(original, 0, changed, 0, 50_000);
+        System.arraycopy(TestData.randomBytes(100, 3), 0, changed, 50_000, 100);
+        System.arraycopy(original, 50_000, changed, 50_100, original.length - 50_000);
+
+        Set<ChunkId> originalChunks = chunkIds(chunker, original);
+        Set<ChunkId> changedChunks = chunkIds(chunker, changed);
+
+        int shared = 0;
+        for (ChunkId id : changedChunks) {
+            if (originalChunks.contains(id)) shared++;
+        }
+        assertTrue(changedChunks.size() - shared <= 3, (changedChunks.size() - shared) + " new chunks of " + changedChunks.size());
+    }
+
+    @Test
+    void testSameContentSameChunks() {
+        ContentDefinedChunker chunker = new ContentDefinedChunker(8 * 1024);
+        byte[] data = TestData.randomBytes(512 * 1024, 4);
+        assertEquals(chunkIds(chunker, data), chunkIds(new ContentDefinedChunker(8 * 1024), data.clone()));
+    }
+
+    private static Set<ChunkId> chunkIds(ContentDefinedChunker chunker, byte[] data) {
+        Set<ChunkId> ids = new HashSet<>();
+        for (int start = 0; start < data.length; ) {
+            int length = chunker.next(data, start, data.length - start);
+            ids.add(ChunkId.of(data, start, length));
+            start += length;
+        }
+        return ids;
+    }
+}
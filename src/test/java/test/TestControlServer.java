@@ -0,0 +1,190 @@
+package test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import backupmanager.Entities.BackupProgress;
+import backupmanager.Services.ControlClient;
+import backupmanager.Services.ControlServer;
+
+public class TestControlServer {
+
+    private static Path temp_dir;
+    private ControlServer server;
+    private final List<String> commands = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setup() throws IOException {
+        temp_dir = Files.createTempDirectory("control");
+        server = new ControlServer(temp_dir.resolve("control.endpoint"), (command, argument) -> {
+            commands.add(command + " " + argument);
+            return command.equals("RUN") ? null : "unknown command " + command;
+        });
+        server.listen(temp_dir.resolve("service.sock"));
+    }
+
+    @Test
+    void testCommands() {
+        ControlClient client = new ControlClient(temp_dir.resolve("control.endpoint"));
+
+        assertTrue(client.isServiceRunning());
+        assertEquals("OK", client.sendCommand("RUN backup è"));
+        assertEquals("ERROR unknown command STOP", client.sendCommand("STOP"));
+        assertEquals(List.of("RUN backup è", "STOP "), commands);
+
+        server.close();
+        assertFalse(client.isServiceRunning());
+        assertNull(client.sendCommand("RUN backup"));
+    }
+
+    @Test
+    void testProgressPushed() throws InterruptedException {
+        ControlClient client = new ControlClient(temp_dir.resolve("control.endpoint"));
+        List<BackupProgress> received = new CopyOnWriteArrayList<>();
+        CountDownLatch completed = new CountDownLatch(1);
+
+        assertTrue(client.subscribe(new ControlClient.ProgressListener() {
+            @Override
+            public void onProgress(String backupName, BackupProgress progress) {
+                if (backupName.equals("my backup")) received.add(progress);
+            }
+
+            @Override
+            public void onCompleted(String backupName) {
+                completed.countDown();
+            }
+        }, () -> {}));
+
+        server.broadcastProgress("my backup", new BackupProgress(42, 10, 20, 4200, 10000, 2000, 1024));
+        server.broadcastCompleted("my backup");
+
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+        assertEquals(1, received.size());
+        assertEquals(42, received.get(0).getPercentage());
+        assertEquals(4200, received.get(0).getBytesRead());
+        assertEquals(1024, received.get(0).getBytesPerSecond());
+    }
+
+    @Test
+    void testClientNotReadingDetached() throws IOException, InterruptedException {
+        // attached to the progress, but it never reads it
+        List<String> endpoint = Files.readAllLines(temp_dir.resolve("control.endpoint"));
+        try (SocketChannel stuck = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            stuck.connect(UnixDomainSocketAddress.of(endpoint.get(0).substring("unix:".length())));
+            stuck.write(StandardCharsets.UTF_8.encode(endpoint.get(1) + "\nSUBSCRIBE\n"));
+
+            ControlClient client = new ControlClient(temp_dir.resolve("control.endpoint"));
+            CountDownLatch completed = new CountDownLatch(1);
+            assertTrue(client.subscribe(new ControlClient.ProgressListener() {
+                @Override
+                public void onProgress(String backupName, BackupProgress progress) {}
+
+                @Override
+                public void onCompleted(String backupName) {
+                    completed.countDown();
+                }
+            }, () -> {}));
+            Thread.sleep(200);
+
+            // more than the socket buffer and the queue of the stuck client, at a pace the other client keeps up with
+            CountDownLatch broadcasted = new CountDownLatch(1);
+            String backupName = "backup ".repeat(150);
+            Thread publisher = new Thread(() -> {
+                for (int i = 0; i < 3000; i++) {
+                    server.broadcastProgress(backupName, new BackupProgress(1, 1, 2, 1, 2, 1, 1));
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                server.broadcastCompleted("my backup");
+                broadcasted.countDown();
+            });
+            publisher.setDaemon(true);
+            publisher.start();
+
+            assertTrue(broadcasted.await(30, TimeUnit.SECONDS));
+            assertTrue(completed.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testSilentClientDisconnected() throws IOException {
+        // connected, but it never sends its token
+        List<String> endpoint = Files.readAllLines(temp_dir.resolve("control.endpoint"));
+        try (SocketChannel silent = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            silent.connect(UnixDomainSocketAddress.of(endpoint.get(0).substring("unix:".length())));
+
+            assertEquals(-1, assertTimeoutPreemptively(Duration.ofSeconds(15), () -> silent.read(ByteBuffer.allocate(64))));
+        }
+
+        assertEquals("OK", new ControlClient(temp_dir.resolve("control.endpoint")).sendCommand("RUN backup"));
+    }
+
+    @Test
+    void testRunningServiceNotTakenOver() throws IOException {
+        ControlServer second = new ControlServer(temp_dir.resolve("control.endpoint"), (command, argument) -> null);
+        assertThrows(IOException.class, () -> second.listen(temp_dir.resolve("service.sock")));
+
+        // the first service still owns the channel
+        ControlClient client = new ControlClient(temp_dir.resolve("control.endpoint"));
+        assertEquals("ERROR unknown command STOP", client.sendCommand("STOP"));
+
+        // the endpoint left by a service that is not running anymore is replaced
+        server.close();
+        Files.writeString(temp_dir.resolve("control.endpoint"), "unix:" + temp_dir.resolve("service.sock") + "\ntoken\n");
+        Files.createFile(temp_dir.resolve("service.sock"));
+        server = new ControlServer(temp_dir.resolve("control.endpoint"), (command, argument) -> null);
+        server.listen(temp_dir.resolve("service.sock"));
+        assertTrue(client.isServiceRunning());
+    }
+
+    @Test
+    void testServiceNotAnswering() throws IOException {
+        // a listener that accepts the connection (in the backlog) but never replies
+        try (ServerSocketChannel silent = ServerSocketChannel.open()) {
+            silent.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            Path endpointFile = temp_dir.resolve("silent.endpoint");
+            Files.writeString(endpointFile, "tcp:" + ((InetSocketAddress) silent.getLocalAddress()).getPort() + "\ntoken\n");
+            ControlClient client = new ControlClient(endpointFile);
+
+            long start = System.nanoTime();
+            assertNull(client.sendCommand("RUN backup"));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.close();
+        try (var files = Files.list(temp_dir)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        temp_dir.toFile().delete();
+    }
+}
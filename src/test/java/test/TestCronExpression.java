@@ -0,0 +1,41 @@
+package test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+import backupmanager.Entities.CronExpression;
+
+public class TestCronExpression {
+
+    @Test
+    void testNext() {
+        LocalDateTime friday = LocalDateTime.of(2024, 3, 15, 10, 30, 20);
+
+        assertEquals(LocalDateTime.of(2024, 3, 15, 10, 31), new CronExpression("* * * * *").next(friday));
+        assertEquals(LocalDateTime.of(2024, 3, 15, 10, 45), new CronExpression("*/15 * * * *").next(friday));
+        assertEquals(LocalDateTime.of(2024, 3, 18, 2, 0), new CronExpression("0 2 * * 1-5").next(friday));
+        assertEquals(LocalDateTime.of(2024, 3, 17, 23, 0), new CronExpression("0 23 * * 7").next(friday));
+        assertEquals(LocalDateTime.of(2024, 4, 1, 0, 0), new CronExpression("0 0 1 * *").next(friday));
+        assertEquals(LocalDateTime.of(2028, 2, 29, 12, 0), new CronExpression("0 12 29 2 *").next(friday));
+
+        // day of month and day of week both restricted: either of them
+        assertEquals(LocalDateTime.of(2024, 3, 16, 0, 0), new CronExpression("0 0 20 * 6").next(friday));
+
+        // a step starting with "*" doesn't restrict its field: both of them, the first Monday on an odd day
+        assertEquals(LocalDateTime.of(2024, 3, 25, 0, 0), new CronExpression("0 0 */2 * 1").next(friday));
+        assertEquals(LocalDateTime.of(2024, 3, 20, 0, 0), new CronExpression("0 0 20 * */3").next(friday));
+    }
+
+    @Test
+    void testInvalidExpressions() {
+        assertThrows(IllegalArgumentException.class, () -> new CronExpression("0 2 * *"));
+        assertThrows(IllegalArgumentException.class, () -> new CronExpression("60 * * * *"));
+        assertThrows(IllegalArgumentException.class, () -> new CronExpression("0 5-2 * * *"));
+        assertThrows(IllegalArgumentException.class, () -> new CronExpression("0 2 * * mon"));
+        assertNull(CronExpression.getCronExpressionFromString(" "));
+    }
+}
@@ -0,0 +1,61 @@
+package test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+
+import backupmanager.Compression.CompressedEntry;
+import backupmanager.Compression.ZipArchiveWriter;
+import backupmanager.Deduplication.BlockSignature;
+import backupmanager.Deduplication.DeltaEncoder;
+
+// content and archives shared by the tests that write files
+final class TestData {
+
+    private static final int DELTA_BLOCK_SIZE = 4 * 1024;
+
+    private TestData() {}
+
+    // incompressible, the same for the same seed
+    static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    static byte[] text(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // an entry stored without compression, its content is written in a temporary file of the directory
+    static void store(ZipArchiveWriter writer, Path directory, String name, byte[] content, long lastModified) throws IOException {
+        Path file = Files.createTempFile(directory, "entry", ".tmp");
+        Files.write(file, content);
+        writer.writeEntry(CompressedEntry.stored(name, content.length, lastModified, file));
+        Files.delete(file);
+    }
+
+    // the delta of an incremental backup from the previous content to the current one
+    static byte[] delta(byte[] previous, byte[] current) throws IOException {
+        BlockSignature.Builder previousSignature = new BlockSignature.Builder(DELTA_BLOCK_SIZE);
+        previousSignature.update(previous, 0, previous.length);
+
+        ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        DeltaEncoder encoder = new DeltaEncoder(previousSignature.finish(0), delta, new BlockSignature.Builder(DELTA_BLOCK_SIZE));
+        encoder.write(ByteBuffer.wrap(current));
+        encoder.finish();
+        return delta.toByteArray();
+    }
+
+    // the directory and everything in it, the children before their parent
+    static void deleteDirectory(Path directory) throws IOException {
+        try (var paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import backupmanager.Compression.FileChunkReader;
+
+public class TestFileChunkReader {
+
+    private static Path temp_dir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        temp_dir = Files.createTempDirectory("file_chunk_reader_test");
+    }
+
+    @Test
+    void testSmallFileReadWithTheBuffer() throws IOException {
+        byte[] content = TestData.randomBytes(100_000, 1);
+        Path file = temp_dir.resolve("small.bin");
+        Files.write(file, content);
+
+        ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+        try (FileChunkReader reader = new FileChunkReader(file, readBuffer)) {
+            byte[] read = new byte[content.length];
+            int offset = 0;
+            ByteBuffer chunk;
+            while ((chunk = reader.next()) != null) {
+                assertSame(readBuffer, chunk);
+                int length = chunk.remaining();
+                chunk.get(read, offset, length);
+                offset += length;
+            }
+            assertEquals(content.length, offset);
+            assertArrayEquals(content, read);
+        }
+    }
+
+    @Test
+    void testTruncatedFileReadWithTheChannel() throws IOException {
+        // sparse, two windows
+        Path file = temp_dir.resolve("large.bin");
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(FileChunkReader.MAP_WINDOW + FileChunkReader.MAP_THRESHOLD);
+        }
+
+        try (FileChunkReader reader = new FileChunkReader(file, ByteBuffer.allocate(64 * 1024))) {
+            ByteBuffer window = reader.next();
+            assertEquals(FileChunkReader.MAP_WINDOW, window.remaining());
+
+            // the second window would be past the end of the file: the rest is read with the channel
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+                raf.setLength(FileChunkReader.MAP_WINDOW + 100);
+            }
+            ByteBuffer rest = reader.next();
+            assertEquals(100, rest.remaining());
+            assertNull(reader.next());
+            assertEquals(FileChunkReader.MAP_WINDOW + 100, reader.getPosition());
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        TestData.deleteDirectory(temp_dir);
+    }
+}
@@ -0,0 +1,74 @@
+package test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import backupmanager.Compression.ParallelDeflaterOutputStream;
+
+public class TestParallelDeflaterOutputStream {
+
+    private ExecutorService pool;
+
+    @BeforeEach
+    void setup() {
+        // a single worker: its deflater compresses the blocks of all the streams, changing level between them
+        pool = Executors.newFixedThreadPool(1);
+    }
+
+    @Test
+    void testMultiBlockEntriesWithMixedLevels() throws IOException, DataFormatException {
+        byte[] content = compressibleBytes(3 * ParallelDeflaterOutputStream.BLOCK_SIZE + 12345, 1);
+        int[] levels = {Deflater.BEST_SPEED, Deflater.BEST_COMPRESSION, Deflater.DEFAULT_COMPRESSION, Deflater.BEST_SPEED, Deflater.NO_COMPRESSION, Deflater.BEST_COMPRESSION};
+
+        for (int level : levels) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            ParallelDeflaterOutputStream out = new ParallelDeflaterOutputStream(compressed, pool, level, 4);
+            out.write(content, 0, content.length);
+            out.finish();
+
+            assertArrayEquals(content, inflate(compressed.toByteArray(), content.length), "level " + level);
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int size) throws DataFormatException {
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(compressed);
+        byte[] output = new byte[size];
+        int count = 0;
+        while (!inflater.finished() && count < size) {
+            int inflated = inflater.inflate(output, count, size - count);
+            if (inflated == 0 && inflater.needsInput()) break;
+            count += inflated;
+        }
+        inflater.end();
+        return count == size ? output : Arrays.copyOf(output, count);
+    }
+
+    // text-like data, so that every level produces a different stream
+    private static byte[] compressibleBytes(int length, long seed) {
+        Random random = new Random(seed);
+        String[] words = {"backup", "archive", "entry", "deflate", "block", "level", "stream", "file"};
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = random.nextInt(10) == 0 ? (byte) random.nextInt(256) : (byte) words[i / 8 % words.length].charAt(i % words[i / 8 % words.length].length());
+        }
+        return bytes;
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,420 @@
+package test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import backupmanager.Compression.ArchiveRestorer;
+import backupmanager.Compression.CompressedEntry;
+import backupmanager.Compression.CompressionDictionary;
+import backupmanager.Compression.ParallelZipEngine;
+import backupmanager.Compression.ScatterBuffer;
+import backupmanager.Compression.ZipArchiveReader;
+import backupmanager.Compression.ZipArchiveWriter;
+import backupmanager.Compression.ZipCheckpoint;
+import backupmanager.Entities.Backup;
+import backupmanager.Entities.BackupManifest;
+import backupmanager.Entities.BackupProgress;
+import backupmanager.Entities.ZippingContext;
+import backupmanager.Enums.CompressionModeEnum;
+import backupmanager.Services.BackupJobExecutor;
+import backupmanager.Services.ProgressEventBus;
+import backupmanager.ZipFileVisitor;
+
+public class TestParallelZipEngine {
+
+    private static final int FILES_COUNT = 200;
+    private static final int FILE_SIZE = 256 * 1024;
+    private static final int LARGE_FILE_SIZE = 64 * 1024 * 1024;
+    private static Path temp_dir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        temp_dir = Files.createTempDirectory("parallel_zip_test");
+    }
+
+    @Test
+    void testPausedWhileWritingAndResumed() throws Exception {
+        Path source = createSource();
+        Path large = createLargeFile();
+        Path zip = temp_dir.resolve("t (Backup 01-01-2026 10.00.00).zip");
+        BackupJobExecutor executor = new BackupJobExecutor(1, 1);
+
+        pauseWhileWriting(executor, source, large, zip);
+        resume(executor, source, large, zip);
+        assertArchiveOf(source, large, zip);
+    }
+
+    @Test
+    void testFilesChangedSincePauseWrittenAgain() throws Exception {
+        Path source = createSource();
+        Path large = createLargeFile();
+        Path zip = temp_dir.resolve("t (Backup 01-01-2026 10.00.00).zip");
+        BackupJobExecutor executor = new BackupJobExecutor(1, 1);
+
+        pauseWhileWriting(executor, source, large, zip);
+
+        // two files already in the checkpoint: one with another content of the same size, one shorter
+        List<Path> written = new ArrayList<>();
+        try (ZipCheckpoint checkpoint = ZipCheckpoint.load(zip)) {
+            for (int i = 0; i < FILES_COUNT && written.size() < 2; i++) {
+                String name = String.format("file%03d.bin", i);
+                if (checkpoint.contains(name)) written.add(source.resolve(name));
+            }
+        }
+        assertEquals(2, written.size());
+        FileTime lastModified = Files.getLastModifiedTime(written.get(0));
+        Files.write(written.get(0), TestData.randomBytes(FILE_SIZE, 1000));
+        Files.setLastModifiedTime(written.get(0), FileTime.fromMillis(lastModified.toMillis() + 10000));
+        Files.write(written.get(1), TestData.randomBytes(FILE_SIZE / 2, 1001));
+
+        resume(executor, source, large, zip);
+        assertArchiveOf(source, large, zip);
+    }
+
+    @Test
+    void testDeletedFilesStoredAtLevelZero() throws IOException {
+        Path full = temp_dir.resolve("t (Backup 01-01-2026 10.00.00).zip");
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(full)) {
+            TestData.store(writer, temp_dir, "a.txt", "kept".getBytes(StandardCharsets.UTF_8), 1700000000000L);
+            TestData.store(writer, temp_dir, "b.txt", "deleted later".getBytes(StandardCharsets.UTF_8), 1700000000000L);
+        }
+
+        // the incremental backup only records that b.txt has been deleted
+        Path incremental = temp_dir.resolve("t (Incremental 01-01-2026 11.00.00).zip");
+        ZippingContext context = context("stored");
+        context.backup.setCompressionLevel(0);
+        try (ParallelZipEngine engine = new ParallelZipEngine(incremental, "source", incremental.toString(), -1, -1, context, null)) {
+            engine.addContent(BackupManifest.DELETED_FILES_ENTRY, "b.txt\n".getBytes(StandardCharsets.UTF_8), 1700000000000L);
+        }
+
+        try (ZipFile zipFile = new ZipFile(incremental.toFile())) {
+            ZipEntry entry = zipFile.getEntry(BackupManifest.DELETED_FILES_ENTRY);
+            assertNotNull(entry);
+            assertEquals(ZipEntry.STORED, entry.getMethod());
+            assertArrayEquals("b.txt\n".getBytes(StandardCharsets.UTF_8), zipFile.getInputStream(entry).readAllBytes());
+        }
+
+        Path target = temp_dir.resolve("restored");
+        new ArchiveRestorer(1, 64 * 1024, false).restore(List.of(full, incremental), target);
+        assertTrue(Files.exists(target.resolve("a.txt")));
+        assertFalse(Files.exists(target.resolve("b.txt")));
+    }
+
+    @Test
+    void testFileStoredWhenFirstBlocksDontShrink() throws IOException {
+        // the sample at the start of the file is text, then random blocks and text again at the end:
+        // compressed to the end the file would get smaller, but the compression stops at the first blocks
+        Path source = temp_dir.resolve("source");
+        Files.createDirectories(source);
+        byte[] content = new byte[12 * 1024 * 1024];
+        byte[] text = "backup manager ".repeat(5000).getBytes(StandardCharsets.UTF_8);
+        byte[] random = TestData.randomBytes(6 * 1024 * 1024, 3);
+        System.arraycopy(text, 0, content, 0, text.length);
+        System.arraycopy(random, 0, content, text.length, random.length);
+        Path mixed = source.resolve("mixed.dat");
+        Files.write(mixed, content);
+
+        Path zip = temp_dir.resolve("t (Backup 01-01-2026 10.00.00).zip");
+        try (ParallelZipEngine engine = new ParallelZipEngine(zip, source.toString(), zip.toString(), -1, -1, context("mixed"), null)) {
+            engine.addFile(mixed, "mixed.dat", Files.readAttributes(mixed, BasicFileAttributes.class));
+            writePendingEntries(engine);
+            assertEquals(1, engine.getStatistics().getFilesCount(CompressionModeEnum.Stored));
+        }
+
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            ZipEntry entry = zipFile.getEntry("mixed.dat");
+            assertEquals(ZipEntry.STORED, entry.getMethod());
+            assertArrayEquals(content, zipFile.getInputStream(entry).readAllBytes());
+        }
+    }
+
+    @Test
+    void testUnchangedFileCopiedFromPreviousArchive() throws IOException {
+        byte[] content = textBytes(1);
+        Path previous = temp_dir.resolve("t (Backup 01-01-2026 10.00.00).zip");
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(previous)) {
+            writer.writeEntry(deflate("file.txt", content, CompressionDictionary.NO_DICTIONARY));
+        }
+
+        Path zip = recycle(previous, "file.txt", content);
+
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            assertArrayEquals(content, zipFile.getInputStream(zipFile.getEntry("file.txt")).readAllBytes());
+        }
+        // the compressed data of the previous archive, not compressed again at the level of the backup
+        assertArrayEquals(rawData(previous, "file.txt"), rawData(zip, "file.txt"));
+    }
+
+    @Test
+    void testFileWithSameSizeAndDateCompressedAgain() throws IOException {
+        Path previous = temp_dir.resolve("t (Backup 01-01-2026 10.00.00).zip");
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(previous)) {
+            writer.writeEntry(deflate("file.txt", textBytes(1), CompressionDictionary.NO_DICTIONARY));
+        }
+
+        // another content of the same size with the same modification time: only the crc is different
+        byte[] changed = textBytes(2);
+        Path zip = recycle(previous, "file.txt", changed);
+
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            assertArrayEquals(changed, zipFile.getInputStream(zipFile.getEntry("file.txt")).readAllBytes());
+        }
+        assertFalse(Arrays.equals(rawData(previous, "file.txt"), rawData(zip, "file.txt")));
+    }
+
+    @Test
+    void testEntryOfAnotherDictionaryNotCopied() throws IOException {
+        byte[] content = textBytes(1);
+        Path previous = temp_dir.resolve("t (Backup 01-01-2026 10.00.00).zip");
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(previous)) {
+            writer.writeEntry(deflate("file.txt", content, 12345));
+        }
+
+        // the new archive has no dictionary, the entry is compressed again without it
+        Path zip = recycle(previous, "file.txt", content);
+
+        try (ZipArchiveReader reader = ZipArchiveReader.open(zip)) {
+            ZipArchiveReader.Entry entry = reader.getEntry("file.txt");
+            assertEquals(CompressionDictionary.NO_DICTIONARY, entry.getDictionaryId());
+            assertArrayEquals(content, reader.newInputStream(entry).readAllBytes());
+        }
+        assertFalse(Arrays.equals(rawData(previous, "file.txt"), rawData(zip, "file.txt")));
+    }
+
+    @Test
+    void testProgressUsesRefinedTotalsCappedBeforeFinish() throws IOException {
+        List<BackupProgress> received = new CopyOnWriteArrayList<>();
+        ProgressEventBus.getInstance().subscribe("totals-test", 0, event -> {
+            if (event.getBackupName().equals("totals")) received.add(event.getProgress());
+        });
+
+        Path source = temp_dir.resolve("source");
+        Files.createDirectories(source);
+        Path zip = temp_dir.resolve("t (Backup 01-01-2026 10.00.00).zip");
+        try (ParallelZipEngine engine = new ParallelZipEngine(zip, source.toString(), zip.toString(), 1000, 1L << 40, context("totals"), null)) {
+            // the tree turned out smaller than the estimate: even the refined totals are passed before the end
+            engine.setTotals(1, FILE_SIZE);
+            for (int i = 0; i < 2; i++) {
+                Path file = source.resolve("file" + i + ".bin");
+                Files.write(file, TestData.randomBytes(FILE_SIZE, i));
+                engine.addFile(file, file.getFileName().toString(), Files.readAttributes(file, BasicFileAttributes.class));
+            }
+            writePendingEntries(engine);
+            ProgressEventBus.getInstance().flush();
+        }
+
+        assertFalse(received.isEmpty());
+        for (BackupProgress progress : received) {
+            assertTrue(progress.getPercentage() <= 99, "Progress " + progress.getPercentage() + " before finish");
+            assertEquals(FILE_SIZE, progress.getTotalBytes());
+        }
+        BackupProgress last = received.get(received.size() - 1);
+        assertEquals(99, last.getPercentage());
+        assertEquals(3, last.getFilesProcessed());
+        assertEquals(3, last.getTotalFiles()); // never less than the files already written
+    }
+
+    // writes the file with the date of the entries of the previous archive, and zips it recycling from that archive
+    private static Path recycle(Path previous, String name, byte[] content) throws IOException {
+        Path source = temp_dir.resolve("source");
+        Files.createDirectories(source);
+        Path file = source.resolve(name);
+        Files.write(file, content);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1700000000000L));
+
+        Path zip = temp_dir.resolve("t (Backup 02-01-2026 10.00.00).zip");
+        try (ParallelZipEngine engine = new ParallelZipEngine(zip, source.toString(), zip.toString(), -1, -1, context("recycled"), null)) {
+            engine.recycleFrom(previous);
+            engine.addFile(file, name, Files.readAttributes(file, BasicFileAttributes.class));
+            writePendingEntries(engine);
+        }
+        return zip;
+    }
+
+    // compressed at the fastest level, the backup compresses at a stronger one
+    private static CompressedEntry deflate(String name, byte[] content, long dictionaryId) throws IOException {
+        ScatterBuffer buffer = new ScatterBuffer(temp_dir, 1024 * 1024);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(buffer, deflater)) {
+            out.write(content);
+        } finally {
+            deflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return new CompressedEntry(name, ZipEntry.DEFLATED, crc.getValue(), content.length, buffer.size(), 1700000000000L, buffer, dictionaryId);
+    }
+
+    private static byte[] rawData(Path archive, String name) throws IOException {
+        try (ZipArchiveReader reader = ZipArchiveReader.open(archive);
+             FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ)) {
+            ZipArchiveReader.Entry entry = reader.getEntry(name);
+            ByteBuffer data = ByteBuffer.allocate((int) entry.getCompressedSize());
+            channel.read(data, reader.getDataOffset(entry));
+            return data.array();
+        }
+    }
+
+    // lines of text of a fixed size, different for every seed
+    private static byte[] textBytes(int seed) {
+        StringBuilder text = new StringBuilder();
+        Random random = new Random(seed);
+        while (text.length() < 200_000) {
+            text.append("backup manager line ").append(random.nextInt(1000)).append('\n');
+        }
+        return text.substring(0, 200_000).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // a large file is written after all the pending entries, so they are in the archive without finish (see submit)
+    private static void writePendingEntries(ParallelZipEngine engine) throws IOException {
+        Path empty = temp_dir.resolve("empty.bin");
+        try (RandomAccessFile file = new RandomAccessFile(empty.toFile(), "rw")) {
+            file.setLength(LARGE_FILE_SIZE);
+        }
+        engine.addFile(empty, "empty.bin", Files.readAttributes(empty, BasicFileAttributes.class));
+    }
+
+    private static Path createSource() throws IOException {
+        Path source = temp_dir.resolve("source");
+        Files.createDirectories(source);
+        for (int i = 0; i < FILES_COUNT; i++) {
+            Files.write(source.resolve(String.format("file%03d.bin", i)), TestData.randomBytes(FILE_SIZE, i));
+        }
+        return source;
+    }
+
+    private static Path createLargeFile() throws IOException {
+        Path large = temp_dir.resolve("large.bin");
+        Files.write(large, TestData.randomBytes(LARGE_FILE_SIZE, -1));
+        return large;
+    }
+
+    // paused while the entries are being written in the archive, the entries written so far are in the checkpoint
+    private static void pauseWhileWriting(BackupJobExecutor executor, Path source, Path large, Path zip) throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        AtomicBoolean resumed = new AtomicBoolean();
+        submit(executor, source, large, zip, done, failure, resumed);
+        while (done.getCount() > 0 && (!Files.exists(zip) || Files.size(zip) < 4 * FILE_SIZE)) {
+            Thread.sleep(1);
+        }
+        assertTrue(executor.pause(job -> true, 30));
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertNull(failure.get());
+        assertFalse(resumed.get());
+
+        try (ZipCheckpoint checkpoint = ZipCheckpoint.load(zip)) {
+            assertNotNull(checkpoint);
+            int checkpointed = checkpoint.getEntries().size();
+            assertTrue(checkpointed > 0 && checkpointed < FILES_COUNT + 1);
+        }
+    }
+
+    // the next run continues from the checkpoint and completes the archive
+    private static void resume(BackupJobExecutor executor, Path source, Path large, Path zip) throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        AtomicBoolean resumed = new AtomicBoolean();
+        submit(executor, source, large, zip, done, failure, resumed);
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertNull(failure.get());
+        assertTrue(resumed.get());
+    }
+
+    // every file of the source once, with its current content
+    private static void assertArchiveOf(Path source, Path large, Path zip) throws IOException {
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            Set<String> files = new HashSet<>();
+            for (ZipEntry entry : Collections.list(zipFile.entries())) {
+                if (entry.isDirectory()) continue;
+                assertTrue(files.add(entry.getName()), entry.getName());
+                Path file = entry.getName().equals("large.bin") ? large : source.resolve(entry.getName());
+                assertArrayEquals(Files.readAllBytes(file), zipFile.getInputStream(entry).readAllBytes(), entry.getName());
+            }
+            assertEquals(FILES_COUNT + 1, files.size());
+        }
+    }
+
+    /*
+     * Zips the source as the ZippingThread does, a little slower so that the pause finds it still writing.
+     * The large file is written after all the pending entries, so the archive is complete without finish
+     * (that would report the backup as completed to the application).
+     */
+    private static void submit(BackupJobExecutor executor, Path source, Path large, Path zip, CountDownLatch done, AtomicReference<Exception> failure, AtomicBoolean resumed) {
+        ZippingContext context = context("paused");
+        executor.submit(context, source, zip, () -> {
+            ZipCheckpoint checkpoint = ZipCheckpoint.load(zip);
+            try {
+                if (checkpoint == null) checkpoint = ZipCheckpoint.create(zip, source.toString());
+                try (ParallelZipEngine engine = new ParallelZipEngine(zip, source.toString(), zip.toString(), -1, -1, context, checkpoint)) {
+                    executor.getCurrentJob().onCancel(engine::cancel);
+                    resumed.set(engine.isResumed());
+                    Files.walkFileTree(source, new ZipFileVisitor(source, engine) {
+                        @Override
+                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                            try {
+                                Thread.sleep(2);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            return super.visitFile(file, attrs);
+                        }
+                    });
+                    if (!engine.isInterrupted()) {
+                        engine.addFile(large, "large.bin", Files.readAttributes(large, BasicFileAttributes.class));
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                failure.set(e);
+            } finally {
+                done.countDown();
+            }
+        });
+    }
+
+    private static ZippingContext context(String backupName) {
+        Backup backup = new Backup(backupName, "source", "destination", null, false, null, null, "", null, null, 0, 5);
+        return new ZippingContext(backup, null, null, null, null, null);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        TestData.deleteDirectory(temp_dir);
+    }
+}
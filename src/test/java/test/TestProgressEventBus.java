@@ -0,0 +1,56 @@
+package test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import backupmanager.Entities.Backup;
+import backupmanager.Entities.BackupProgress;
+import backupmanager.Entities.ProgressEvent;
+import backupmanager.Entities.ZippingContext;
+import backupmanager.Services.ProgressEventBus;
+
+public class TestProgressEventBus {
+
+    @Test
+    void testEventsCoalescedPerBackup() {
+        ProgressEventBus bus = new ProgressEventBus();
+        List<ProgressEvent> received = new CopyOnWriteArrayList<>();
+        bus.subscribe("test", 60000, received::add);
+
+        ZippingContext first = context("first");
+        ZippingContext second = context("second");
+        for (int i = 0; i <= 99; i++) {
+            bus.publish(event(first, i));
+            bus.publish(event(second, i / 2));
+        }
+        bus.flush();
+
+        // the first event is delivered at once, then only the last one of each backup
+        assertTrue(received.size() <= 4, "Too many events delivered: " + received.size());
+        assertEquals(99, lastPercentage(received, "first"));
+        assertEquals(49, lastPercentage(received, "second"));
+    }
+
+    private int lastPercentage(List<ProgressEvent> events, String backupName) {
+        int percentage = -1;
+        for (ProgressEvent event : events) {
+            if (event.getBackupName().equals(backupName)) {
+                percentage = event.getProgress().getPercentage();
+            }
+        }
+        return percentage;
+    }
+
+    private ZippingContext context(String backupName) {
+        Backup backup = new Backup(backupName, "source", "destination", null, false, null, null, "", null, null, 0, 5);
+        return new ZippingContext(backup, null, null, null, null, null);
+    }
+
+    private ProgressEvent event(ZippingContext context, int percentage) {
+        return new ProgressEvent(context, "source", "destination", "file" + percentage, new BackupProgress(percentage, percentage, 100, percentage, 100, percentage, -1));
+    }
+}
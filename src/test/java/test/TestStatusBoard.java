@@ -0,0 +1,130 @@
+package test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import backupmanager.Entities.RunningBackups;
+import backupmanager.Entities.StatusBoard;
+import backupmanager.Enums.BackupStatusEnum;
+
+public class TestStatusBoard {
+
+    private static Path temp_file;
+
+    @BeforeEach
+    void setup() throws IOException {
+        temp_file = Files.createTempFile("status_board", ".board");
+    }
+
+    @Test
+    void testWriteReadAndRemove() throws IOException {
+        StatusBoard board = new StatusBoard(temp_file);
+        RunningBackups backup = new RunningBackups("backup è", "/tmp/backup.zip", 42, BackupStatusEnum.Progress);
+        backup.bytesRead = 4200;
+        board.write(backup);
+        board.write(new RunningBackups("other", "/tmp/other.zip", 10, BackupStatusEnum.Progress));
+
+        // a new mapping of the same file sees the same slots, as another process would
+        RunningBackups read = new StatusBoard(temp_file).read("backup è");
+        assertNotNull(read);
+        assertEquals("/tmp/backup.zip", read.path);
+        assertEquals(42, read.progress);
+        assertEquals(4200, read.bytesRead);
+        assertEquals(BackupStatusEnum.Progress, read.status);
+        assertTrue(read.heartbeat > 0);
+
+        assertEquals("backup è", board.removeIf(running -> running.backupName.equals("backup è")).get(0).backupName);
+        assertNull(board.read("backup è"));
+        assertEquals(1, board.readAll().size());
+    }
+
+    @Test
+    void testReaderNeverSeesTornSlot() throws Exception {
+        StatusBoard board = new StatusBoard(temp_file);
+        RunningBackups first = new RunningBackups("backup", "/tmp/backup.zip", 0, BackupStatusEnum.Progress);
+        first.totalBytes = 0;
+        board.write(first);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            for (int i = 0; running.get(); i++) {
+                RunningBackups backup = new RunningBackups("backup", "/tmp/backup.zip", i % 100, BackupStatusEnum.Progress);
+                backup.bytesRead = (i % 100) * 1000L;
+                backup.totalBytes = (i % 100) * 2000L;
+                board.write(backup);
+            }
+        });
+        writer.start();
+
+        try {
+            for (int i = 0; i < 100000; i++) {
+                RunningBackups read = board.read("backup");
+                assertNotNull(read);
+                assertEquals(read.progress * 1000L, read.bytesRead);
+                assertEquals(read.progress * 2000L, read.totalBytes);
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+
+    @Test
+    void testSlotTornByDeadWriterRecovered() throws IOException {
+        StatusBoard board = new StatusBoard(temp_file);
+        board.write(new RunningBackups("backup", "/tmp/backup.zip", 42, BackupStatusEnum.Progress));
+        board.write(new RunningBackups("other", "/tmp/other.zip", 10, BackupStatusEnum.Progress));
+
+        // a writer that died in the middle of the first slot leaves its sequence odd
+        makeSequenceOdd(0);
+        assertNull(board.read("backup"));
+        assertEquals(0, readSequence(0) & 1); // freed by the reader that gave up on it
+        assertEquals(1, board.readAll().size());
+
+        // the next write of the slot publishes it again
+        board.write(new RunningBackups("backup", "/tmp/backup.zip", 50, BackupStatusEnum.Progress));
+        assertEquals(50, board.read("backup").progress);
+
+        // the board opened after the crash frees the torn slot
+        makeSequenceOdd(0);
+        StatusBoard reopened = new StatusBoard(temp_file);
+        assertNull(reopened.read("backup"));
+        assertEquals(10, reopened.read("other").progress);
+        reopened.write(new RunningBackups("backup", "/tmp/backup.zip", 60, BackupStatusEnum.Progress));
+        assertEquals(60, board.read("backup").progress);
+    }
+
+    // the sequence is the first long of the slot, after the 64 bytes of the header
+    private static void makeSequenceOdd(int slot) throws IOException {
+        try (FileChannel channel = FileChannel.open(temp_file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long position = 64 + slot * 4096L;
+            channel.write(ByteBuffer.allocate(8).putLong(0, readSequence(slot) | 1), position);
+        }
+    }
+
+    private static long readSequence(int slot) throws IOException {
+        try (FileChannel channel = FileChannel.open(temp_file, StandardOpenOption.READ)) {
+            ByteBuffer sequence = ByteBuffer.allocate(8);
+            channel.read(sequence, 64 + slot * 4096L);
+            return sequence.flip().getLong();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        temp_file.toFile().delete();
+    }
+}
@@ -0,0 +1,95 @@
+package test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+import backupmanager.Compression.ParallelDeflaterOutputStream;
+import backupmanager.Compression.TarArchiveWriter;
+
+public class TestTarArchiveWriter {
+
+    @Test
+    void testSolidGzipArchiveIsReadable() throws IOException {
+        String longName = "directory/".repeat(12) + "città.txt";
+        byte[] small = "backup\n".getBytes(StandardCharsets.UTF_8);
+        // more than one block of the parallel deflater, at a level different from the default one
+        byte[] large = "2026-01-01 10:00:00 [INFO] backup completed\n".repeat(60000).getBytes(StandardCharsets.UTF_8);
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream gzip = ParallelDeflaterOutputStream.gzip(compressed, pool, 6, 4)) {
+            TarArchiveWriter tar = new TarArchiveWriter(gzip);
+            tar.writeDirectory("/", 0);
+            tar.writeDirectory("directory/", 1000);
+            tar.writeEntry("small.txt", small, 1000);
+            tar.writeEntry(longName, large, 1000);
+            tar.finish();
+            assertEquals(0, tar.getBytesWritten() % TarArchiveWriter.BLOCK_SIZE);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        byte[] archive = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())).readAllBytes();
+        Map<String, byte[]> entries = readTar(archive);
+
+        assertEquals(3, entries.size());
+        assertEquals(0, entries.get("directory/").length);
+        assertArrayEquals(small, entries.get("small.txt"));
+        assertArrayEquals(large, entries.get(longName));
+    }
+
+    @Test
+    void testEntrySizeIsEnforced() throws IOException {
+        TarArchiveWriter tar = new TarArchiveWriter(new ByteArrayOutputStream());
+        tar.beginEntry("file.txt", 4, 0);
+        assertThrows(IOException.class, () -> tar.write(new byte[5], 0, 5));
+        tar.write(new byte[3], 0, 3);
+        assertThrows(IOException.class, tar::endEntry);
+    }
+
+    // reads the names (from the pax headers when present) and the contents of the entries
+    private Map<String, byte[]> readTar(byte[] archive) {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        String paxPath = null;
+        int position = 0;
+
+        while (position + TarArchiveWriter.BLOCK_SIZE <= archive.length && archive[position] != 0) {
+            String name = readString(archive, position, 100);
+            int size = Integer.parseInt(readString(archive, position + 124, 12).trim(), 8);
+            byte type = archive[position + 156];
+            byte[] content = Arrays.copyOfRange(archive, position + TarArchiveWriter.BLOCK_SIZE, position + TarArchiveWriter.BLOCK_SIZE + size);
+            position += TarArchiveWriter.BLOCK_SIZE + (size + TarArchiveWriter.BLOCK_SIZE - 1) / TarArchiveWriter.BLOCK_SIZE * TarArchiveWriter.BLOCK_SIZE;
+
+            if (type == 'x') {
+                String record = new String(content, StandardCharsets.UTF_8);
+                assertEquals(size, Integer.parseInt(record.substring(0, record.indexOf(' '))), "pax record length");
+                paxPath = record.substring(record.indexOf("path=") + 5, record.length() - 1);
+                continue;
+            }
+
+            entries.put(paxPath != null ? paxPath : name, content);
+            paxPath = null;
+        }
+        return entries;
+    }
+
+    private String readString(byte[] bytes, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && bytes[end] != 0) end++;
+        return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+    }
+}
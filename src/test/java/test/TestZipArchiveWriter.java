@@ -0,0 +1,295 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import backupmanager.Compression.CompressedEntry;
+import backupmanager.Compression.ParallelDeflaterOutputStream;
+import backupmanager.Compression.ScatterBuffer;
+import backupmanager.Compression.ZipArchiveReader;
+import backupmanager.Compression.ZipArchiveWriter;
+import backupmanager.Compression.ZipCheckpoint;
+
+public class TestZipArchiveWriter {
+
+    private static Path temp_dir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        temp_dir = Files.createTempDirectory("zip_writer_test");
+    }
+
+    @Test
+    void testWrittenArchiveIsReadable() throws IOException {
+        byte[] content = "backup manager ".repeat(1000).getBytes(StandardCharsets.UTF_8);
+        long lastModified = 1700000000000L;
+        Path zip = temp_dir.resolve("test.zip");
+
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(zip)) {
+            writer.writeDirectory("folder/", lastModified);
+            CompressedEntry inMemory = deflate("folder/file.txt", content, lastModified, 64 * 1024);
+            CompressedEntry spilled = deflate("spilled.txt", content, lastModified, 16); // forces the temporary file
+            writer.writeEntry(inMemory);
+            writer.writeEntry(spilled);
+            inMemory.release();
+            spilled.release();
+        }
+
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            assertEquals(3, zipFile.size());
+            assertTrue(zipFile.getEntry("folder/").isDirectory());
+
+            for (String name : new String[] {"folder/file.txt", "spilled.txt"}) {
+                ZipEntry entry = zipFile.getEntry(name);
+                assertNotNull(entry);
+                assertEquals(lastModified, entry.getLastModifiedTime().toMillis());
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    assertArrayEquals(content, in.readAllBytes());
+                }
+            }
+        }
+
+        // no temporary files left in the directory
+        assertEquals(1, temp_dir.toFile().list().length);
+    }
+
+    @Test
+    void testStreamedEntryCompressedInParallelBlocks() throws IOException {
+        // more than 3 blocks, with repeated content crossing the block boundaries
+        byte[] content = new byte[ParallelDeflaterOutputStream.BLOCK_SIZE * 3 + 12345];
+        byte[] pattern = new byte[4096];
+        new Random(42).nextBytes(pattern);
+        for (int i = 0; i < content.length; i++) {
+            content[i] = pattern[(i * 7) % pattern.length];
+        }
+        long lastModified = 1700000000000L;
+        Path zip = temp_dir.resolve("streamed.zip");
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(zip)) {
+            ParallelDeflaterOutputStream out = new ParallelDeflaterOutputStream(writer.beginEntry("big.bin", ZipEntry.DEFLATED, lastModified, content.length), pool, Deflater.DEFAULT_COMPRESSION, 2);
+            out.write(content, 0, content.length);
+            out.finish();
+            writer.endEntry(out.getCrc(), out.getBytesRead());
+            assertTrue(out.getBytesWritten() < content.length);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            ZipEntry entry = zipFile.getEntry("big.bin");
+            assertEquals(content.length, entry.getSize());
+            try (InputStream in = zipFile.getInputStream(entry)) {
+                assertArrayEquals(content, in.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    void testStoredEntryCopiedFromFile() throws IOException {
+        byte[] content = new byte[3 * 1024 * 1024];
+        new Random(7).nextBytes(content);
+        Path source = temp_dir.resolve("random.bin");
+        Files.write(source, content);
+        Path zip = temp_dir.resolve("stored.zip");
+
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(zip)) {
+            writer.writeEntry(CompressedEntry.stored("random.bin", content.length, 1700000000000L, source));
+        }
+
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            ZipEntry entry = zipFile.getEntry("random.bin");
+            assertEquals(ZipEntry.STORED, entry.getMethod());
+            assertEquals(content.length, entry.getCompressedSize());
+            try (InputStream in = zipFile.getInputStream(entry)) {
+                assertArrayEquals(content, in.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    void testStoredEntryOfChangedFileIsConsistent() throws IOException {
+        byte[] content = new byte[200 * 1024];
+        new Random(11).nextBytes(content);
+        Path source = temp_dir.resolve("changed.bin");
+        Files.write(source, content);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        Path zip = temp_dir.resolve("changed.zip");
+
+        // the file was bigger when it was visited: the entry has the bytes copied, not the expected size
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(zip)) {
+            writer.writeEntry(CompressedEntry.stored("changed.bin", content.length + 4096, 1700000000000L, source));
+            writer.writeDirectory("after/", 1700000000000L);
+        }
+
+        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(zip))) {
+            ZipEntry entry = in.getNextEntry();
+            assertEquals("changed.bin", entry.getName());
+            assertEquals(content.length, entry.getSize());
+            assertEquals(crc.getValue(), entry.getCrc());
+            assertArrayEquals(content, in.readAllBytes()); // the crc is checked at the end of the entry
+            assertEquals("after/", in.getNextEntry().getName());
+        }
+    }
+
+    @Test
+    void testArchiveResumedFromCheckpoint() throws IOException {
+        byte[] content = "backup manager ".repeat(1000).getBytes(StandardCharsets.UTF_8);
+        long lastModified = 1700000000000L;
+        Path zip = temp_dir.resolve("resumed.zip");
+
+        // the second entry is written after the last commit, so it is lost with the interruption
+        try (ZipCheckpoint checkpoint = ZipCheckpoint.create(zip, "source");
+             ZipArchiveWriter writer = new ZipArchiveWriter(zip)) {
+            writer.writeEntry(deflate("first.txt", content, lastModified, 64 * 1024));
+            assertTrue(writer.checkpoint(checkpoint));
+            writer.writeEntry(deflate("lost.txt", content, lastModified, 64 * 1024));
+        }
+
+        try (ZipCheckpoint checkpoint = ZipCheckpoint.load(zip)) {
+            assertNotNull(checkpoint);
+            assertEquals("source", checkpoint.getSourcePath());
+            assertTrue(checkpoint.contains("first.txt"));
+
+            try (ZipArchiveWriter writer = new ZipArchiveWriter(zip, checkpoint)) {
+                writer.writeEntry(deflate("second.txt", content, lastModified, 64 * 1024));
+            }
+        }
+        ZipCheckpoint.delete(zip);
+        assertNull(ZipCheckpoint.load(zip));
+
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            assertEquals(2, zipFile.size());
+            assertNull(zipFile.getEntry("lost.txt"));
+            for (String name : new String[] {"first.txt", "second.txt"}) {
+                try (InputStream in = zipFile.getInputStream(zipFile.getEntry(name))) {
+                    assertArrayEquals(content, in.readAllBytes());
+                }
+            }
+        }
+    }
+
+    @Test
+    void testEntryWrittenAgainReplacesCheckpointed() throws IOException {
+        byte[] content = "backup manager ".repeat(1000).getBytes(StandardCharsets.UTF_8);
+        byte[] changed = "changed content ".repeat(1000).getBytes(StandardCharsets.UTF_8);
+        long lastModified = 1700000000000L;
+        Path zip = temp_dir.resolve("rewritten.zip");
+
+        try (ZipCheckpoint checkpoint = ZipCheckpoint.create(zip, "source");
+             ZipArchiveWriter writer = new ZipArchiveWriter(zip)) {
+            writer.writeEntry(deflate("file.txt", content, lastModified, 64 * 1024));
+            assertTrue(writer.checkpoint(checkpoint));
+        }
+
+        // the file changed: the resumed run drops its entry and writes it again
+        try (ZipCheckpoint checkpoint = ZipCheckpoint.load(zip);
+             ZipArchiveWriter writer = new ZipArchiveWriter(zip, checkpoint)) {
+            assertTrue(writer.discardEntry("file.txt"));
+            assertFalse(writer.discardEntry("other.txt"));
+            writer.writeEntry(deflate("file.txt", changed, lastModified + 1000, 64 * 1024));
+            assertTrue(writer.checkpoint(checkpoint));
+        }
+
+        try (ZipCheckpoint checkpoint = ZipCheckpoint.load(zip)) {
+            assertEquals(1, checkpoint.getEntries().size());
+            assertNotNull(checkpoint.getEntry("file.txt"));
+            new ZipArchiveWriter(zip, checkpoint).close();
+        }
+        ZipCheckpoint.delete(zip);
+
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            assertEquals(1, zipFile.size());
+            try (InputStream in = zipFile.getInputStream(zipFile.getEntry("file.txt"))) {
+                assertArrayEquals(changed, in.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    void testEntriesCopiedFromAnotherArchive() throws IOException {
+        byte[] content = "backup manager ".repeat(1000).getBytes(StandardCharsets.UTF_8);
+        long lastModified = 1700000000000L;
+        Path previous = temp_dir.resolve("previous.zip");
+        Path zip = temp_dir.resolve("copied.zip");
+
+        try (ZipArchiveWriter writer = new ZipArchiveWriter(previous)) {
+            writer.writeDirectory("folder/", lastModified);
+            writer.writeEntry(deflate("folder/file.txt", content, lastModified, 64 * 1024));
+        }
+
+        try (ZipArchiveReader reader = ZipArchiveReader.open(previous)) {
+            assertEquals(2, reader.getEntries().size());
+            assertTrue(reader.getEntry("folder/").isDirectory());
+            assertNull(reader.getEntry("missing.txt"));
+
+            ZipArchiveReader.Entry entry = reader.getEntry("folder/file.txt");
+            assertEquals(content.length, entry.getSize());
+            assertEquals(lastModified, entry.getLastModified());
+            assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+
+            try (ZipArchiveWriter writer = new ZipArchiveWriter(zip)) {
+                writer.writeEntry(reader.copyEntry(entry, lastModified));
+            }
+        }
+
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            assertEquals(1, zipFile.size());
+            try (InputStream in = zipFile.getInputStream(zipFile.getEntry("folder/file.txt"))) {
+                assertArrayEquals(content, in.readAllBytes());
+            }
+        }
+    }
+
+    private CompressedEntry deflate(String name, byte[] content, long lastModified, int memoryLimit) throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(content);
+        deflater.finish();
+
+        ScatterBuffer buffer = new ScatterBuffer(temp_dir, memoryLimit);
+        byte[] output = new byte[32];
+        while (!deflater.finished()) {
+            int len = deflater.deflate(output);
+            buffer.write(output, 0, len);
+        }
+        deflater.end();
+
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return new CompressedEntry(name, ZipEntry.DEFLATED, crc.getValue(), content.length, buffer.size(), lastModified, buffer);
+    }
+
+    @AfterEach
+    void tearDown() {
+        File[] files = temp_dir.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        temp_dir.toFile().delete();
+    }
+}